@@ -0,0 +1,108 @@
+/*
+ * Created on 23.01.2007
+ */
+package ai;
+
+import gameelements.Position;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The result of analyzing a game situation: the legal moves of the player who
+ * has the turn, ordered from the best to the worst, each with its evaluated
+ * score, together with the tree depth the scores have been calculated with.
+ * An analysis is not changed after its creation, so it can be shared.
+ */
+public class Analysis
+{
+	/**
+	 * The evaluated moves, best move first.
+	 */
+	private List<EvaluablePosition> moves;
+
+	/**
+	 * The tree depth of the evaluation.
+	 */
+	private int depth;
+
+	/**
+	 * The time in milliseconds the analysis has taken.
+	 */
+	private long time;
+
+	/**
+	 * Initiates an analysis.
+	 * @param moves the evaluated moves, best move first.
+	 * @param depth the tree depth of the evaluation.
+	 * @param time the time in milliseconds the analysis has taken.
+	 */
+	Analysis(List<EvaluablePosition> moves, int depth, long time)
+	{
+		this.moves = moves;
+		this.depth = depth;
+		this.time = time;
+	}
+
+	/**
+	 * Returns the number of evaluated moves.
+	 * @return the number of evaluated moves.
+	 */
+	public int size()
+	{
+		return moves.size();
+	}
+
+	/**
+	 * Returns an evaluated move.
+	 * @param index the rank of the move, 0 for the best move.
+	 * @return the move.
+	 */
+	public Position getMove(int index)
+	{
+		EvaluablePosition move = moves.get(index);
+		return new Position(move.getX(), move.getY());
+	}
+
+	/**
+	 * Returns the score of an evaluated move. Higher scores are better for
+	 * the player who has the turn.
+	 * @param index the rank of the move, 0 for the best move.
+	 * @return the score of the move.
+	 */
+	public double getScore(int index)
+	{
+		return moves.get(index).getEvaluation();
+	}
+
+	/**
+	 * Returns the tree depth the scores have been calculated with.
+	 * @return the tree depth of the evaluation.
+	 */
+	public int getDepth()
+	{
+		return depth;
+	}
+
+	/**
+	 * Returns the time in milliseconds the analysis has taken.
+	 * @return the time of the analysis.
+	 */
+	public long getTime()
+	{
+		return time;
+	}
+
+	/**
+	 * Returns the analysis of the best moves only.
+	 * @param k the number of moves to keep.
+	 * @return an analysis of at most k moves.
+	 */
+	public Analysis top(int k)
+	{
+		if (k >= moves.size())
+			return this;
+
+		return new Analysis(new ArrayList<EvaluablePosition>(moves.subList(0, k)), depth, time);
+	}
+}
@@ -35,6 +35,18 @@ abstract class Evaluator
 	 */
 	long passedThinkingTime;
 
+	/**
+	 * The maximum thinking time in milliseconds granted for the current
+	 * evaluation, 0 if the thinking time of the preferences applies.
+	 */
+	long maxThinkingTime;
+	
+	/**
+	 * The tree depth the moves of the latest analysis have been evaluated 
+	 * with.
+	 */
+	int analyzedDepth;
+
 	/**
 	 * Initiates evaluation method for chosen strategy.
 	 * @param strategy the strategy for which the evaluator is needed.
@@ -56,11 +68,14 @@ abstract class Evaluator
 	/**
 	 * Triggers the evaluation process, notes the passing time for evaluation,
 	 * and returns the move, that has been evaluated as best move.
+	 * @param maxThinkingTime the maximum thinking time in milliseconds, 0 for
+	 * the thinking time of the preferences.
 	 * @return the best evaluated move.
 	 */
-	Position selectMove()
+	Position selectMove(long maxThinkingTime)
 	{
 		System.out.println("calculate next move");
+		this.maxThinkingTime = maxThinkingTime;
 		startTime = System.currentTimeMillis();
 		
 		Position selectedPos;
@@ -73,6 +88,36 @@ abstract class Evaluator
 		return selectedPos;
 	}
 
+	/**
+	 * Evaluates all legal moves of the player within the given thinking time.
+	 * @param maxThinkingTime the maximum thinking time in milliseconds, 0 for
+	 * the thinking time of the preferences.
+	 * @return the analysis of all legal moves.
+	 */
+	Analysis analyze(long maxThinkingTime)
+	{
+		this.maxThinkingTime = maxThinkingTime;
+		startTime = System.currentTimeMillis();
+		analyzedDepth = 1;
+		
+		List<EvaluablePosition> evaluatedPositions = analyzePositions();
+		
+		passedThinkingTime = System.currentTimeMillis()-startTime;
+		
+		return new Analysis(evaluatedPositions, analyzedDepth, passedThinkingTime);
+	}
+	
+	/**
+	 * Returns all legal moves, evaluated and sorted from the best to the 
+	 * worst move.
+	 * @return the evaluated legal moves.
+	 */
+	List<EvaluablePosition> analyzePositions()
+	{
+		List<Position> legalPositions = getLegalPositions(getPlayer(), getPlayer().getSituation());
+		return getEvaluatedPositions(legalPositions, getPlayer());
+	}
+	
 	/**
 	 * Returns the best move according to evaluation.
 	 * @return the best move according to evaluation.
@@ -3,12 +3,15 @@
  */
 package ai;
 
+import gameelements.EventBus;
+import gameelements.GameEvent;
 import gameelements.GameSituation;
 import gameelements.ConsoleGame;
 import gameelements.GamePreferences;
 import gameelements.Position;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import network.ServerPreferences;
@@ -36,6 +39,11 @@ class GameTreeEvaluator extends Evaluator
 	 */
 	private static int MAX_TREE_DEPTH = 20;
 	
+	/**
+	 * The interval in milliseconds of reports of the search's progress.
+	 */
+	private static final long REPORT_INTERVAL = 100;
+	
 	/**
 	 * Tree depth of current tree iteration.
 	 */
@@ -52,6 +60,38 @@ class GameTreeEvaluator extends Evaluator
 	 */
 	private RuleBasedEvaluator secondaryEvaluator;
 	
+	/**
+	 * The number of situations examined by the current search.
+	 */
+	private long nodes;
+	
+	/**
+	 * The thinking time in milliseconds of the next report of the search's
+	 * progress.
+	 */
+	private long nextReport;
+	
+	/**
+	 * The latest ratings of the moves of the current search by index, NaN 
+	 * for moves not rated yet.
+	 */
+	private double[] rootScores;
+	
+	/**
+	 * The best move of the deepest completed iteration.
+	 */
+	private Position bestMove;
+	
+	/**
+	 * The best move rated so far within the current iteration.
+	 */
+	private Position iterationBestMove;
+	
+	/**
+	 * The rating of the best move within the current iteration.
+	 */
+	private double iterationBestScore;
+	
 	/**
 	 * Initiates an evaluator.
 	 * @param strategy the strategy the evaluator is used for.
@@ -73,6 +113,7 @@ class GameTreeEvaluator extends Evaluator
 		
 		currentMaxTreeDepth = 0;
 		isWinningSituation = false;
+		this.startReports();
 				
 		List<Position> bestPositions = getLegalPositions(getPlayer(), getPlayer().getSituation());
 		bestPositions = getSecondaryEvaluatedPositions(bestPositions, getPlayer()); // presort
@@ -81,6 +122,7 @@ class GameTreeEvaluator extends Evaluator
 		do
 		{
 			currentMaxTreeDepth++;
+			iterationBestMove = null;
 			
 			List<EvaluablePosition> evaluatedPositions = getEvaluatedPositions(bestPositions, getPlayer());
 			
@@ -93,6 +135,7 @@ class GameTreeEvaluator extends Evaluator
 			else
 			{
 				bestPositions = currentBestPositions;
+				bestMove = bestPositions.get(0);
 			}
 		}
 		while (!hasReachedMaxThinkingTime && !isWinningSituation && currentMaxTreeDepth < MAX_TREE_DEPTH);
@@ -104,10 +147,50 @@ class GameTreeEvaluator extends Evaluator
 		
 		bestPos = getOneBestPosition(bestPositions);
 		
+		bestMove = bestPos;
+		this.reportProgress(true);
+		
 		return bestPos;
 	}
 	
 	
+	/**
+	 * Evaluates all legal moves with an iterative tree search, as long as the
+	 * thinking time allows. Unlike the search for the best move, every move 
+	 * is evaluated on each tree depth, and the evaluation of the deepest 
+	 * completed iteration is returned.
+	 * @see ai.Evaluator#analyzePositions()
+	 */
+	List<EvaluablePosition> analyzePositions()
+	{
+		currentMaxTreeDepth = 0;
+		isWinningSituation = false;
+		this.startReports();
+		
+		List<Position> positions = getLegalPositions(getPlayer(), getPlayer().getSituation());
+		positions = getSecondaryEvaluatedPositions(positions, getPlayer()); // presort
+		
+		List<EvaluablePosition> analyzedPositions = new ArrayList<EvaluablePosition>();
+		do
+		{
+			currentMaxTreeDepth++;
+			iterationBestMove = null;
+			
+			List<EvaluablePosition> evaluatedPositions = getEvaluatedPositions(positions, getPlayer());
+			if (evaluatedPositions.isEmpty())
+			{
+				break; // iteration not completed in time
+			}
+			analyzedPositions = evaluatedPositions;
+			analyzedDepth = currentMaxTreeDepth;
+			bestMove = new Position(analyzedPositions.get(0).getX(), analyzedPositions.get(0).getY());
+		}
+		while (!isWinningSituation && currentMaxTreeDepth < MAX_TREE_DEPTH);
+		
+		this.reportProgress(true);
+		return analyzedPositions;
+	}
+	
 	/**
 	 * Sorts the given list of positions according to a fast evaluation 
 	 * algorithm. 
@@ -139,9 +222,15 @@ class GameTreeEvaluator extends Evaluator
 		double initialBeta = Double.MAX_VALUE;
 		
 		Double rating = this.alphabeta(situationCopy, 1, initialAlpha, initialBeta); 
-		
-		System.out.println(
-				"move(x=" + pos.getX() + ", y=" + pos.getY()+ ") --> rating (level= " + + currentMaxTreeDepth +"): " + rating);
+		if (rating != null)
+		{
+			rootScores[pos.getY()*situation.getDimX() + pos.getX()] = rating;
+			if (iterationBestMove == null || rating > iterationBestScore)
+			{
+				iterationBestMove = pos;
+				iterationBestScore = rating;
+			}
+		}
 		
 		return rating;
 	}
@@ -193,6 +282,11 @@ class GameTreeEvaluator extends Evaluator
 	private Double alphabeta(GameSituation situation, int depth, Double alpha, Double beta)
 	{
 		this.addThinkingTime();
+		nodes++;
+		if (passedThinkingTime >= nextReport)
+		{
+			this.reportProgress(false);
+		}
 		if (!isInTime())
 		{
 			return null; // quit, if over time
@@ -269,9 +363,46 @@ class GameTreeEvaluator extends Evaluator
 		}
 	}
 
+	/**
+	 * Resets the progress of the search at its start.
+	 */
+	private void startReports()
+	{
+		GameSituation situation = getPlayer().getSituation();
+		rootScores = new double[situation.getDimX() * situation.getDimY()];
+		Arrays.fill(rootScores, Double.NaN);
+		nodes = 0;
+		nextReport = REPORT_INTERVAL;
+		bestMove = null;
+		iterationBestMove = null;
+	}
+	
+	/**
+	 * Publishes the progress of the search on the event bus of the game, if
+	 * anybody has subscribed to it. Called for every examined situation, but
+	 * only reports once per interval, so the search is hardly slowed down.
+	 * @param finished true, if the search is finished.
+	 */
+	private void reportProgress(boolean finished)
+	{
+		nextReport = passedThinkingTime + REPORT_INTERVAL;
+		
+		EventBus events = getPlayer().getGame().getEvents();
+		if (events.isObserved(GameEvent.SearchProgress.class))
+		{
+			events.publish( new GameEvent.SearchProgress(getPlayer(), currentMaxTreeDepth, nodes, 
+					System.currentTimeMillis() - startTime, bestMove != null ? bestMove : iterationBestMove, 
+					getPlayer().getSituation().getDimX(), rootScores.clone(), finished) );
+		}
+	}
+
 	private long getMaxThinkingTime()
 	{
-		if (getPlayer().getGame() instanceof ConsoleGame)
+		if (maxThinkingTime > 0)
+		{
+			return maxThinkingTime;
+		}
+		else if (getPlayer().getGame() instanceof ConsoleGame)
 		{
 			return ServerPreferences.getInstance().getThinkingTime();
 		}
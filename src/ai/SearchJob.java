@@ -0,0 +1,286 @@
+/*
+ * Created on 19.01.2007
+ */
+package ai;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * A search of a strategy, e.g. for the next move of a computer player, 
+ * submitted to the search scheduler. The search is made as soon as a worker 
+ * of the scheduler is available, within the thinking time granted by the 
+ * scheduler. Notes how long it has been queued and how much CPU time it has 
+ * used.
+ * @param <V> the type of the search's result.
+ */
+public abstract class SearchJob<V> implements Callable<V>
+{
+	/**
+	 * The owner the search is made for, e.g. a server session.
+	 */
+	private Object owner;
+
+	/**
+	 * The strategy making the search.
+	 */
+	private Strategy strategy;
+
+	/**
+	 * The thinking time in milliseconds requested for the search.
+	 */
+	private long thinkingTime;
+
+	/**
+	 * The system time in milliseconds by which the move is expected. 
+	 * Guarded by the scheduler.
+	 */
+	private long deadline;
+
+	/**
+	 * The sequence number of the job, to order jobs with equal deadlines.
+	 */
+	private long sequence;
+
+	/**
+	 * The system time in milliseconds of the job's submission.
+	 */
+	private long submitTime;
+
+	/**
+	 * The system time in milliseconds of the start of the search.
+	 */
+	private volatile long startTime;
+
+	/**
+	 * The thinking time in milliseconds granted by the scheduler.
+	 */
+	private volatile long grantedThinkingTime;
+
+	/**
+	 * The CPU time in nanoseconds used by the search.
+	 */
+	private volatile long cpuTime;
+
+	/**
+	 * The result of the search.
+	 */
+	private FutureTask<V> result;
+
+	/**
+	 * The listeners to be called when the search is finished, null once it is
+	 * finished.
+	 */
+	private List<Runnable> listeners = new LinkedList<Runnable>();
+
+	/**
+	 * Initiates a search job.
+	 * @param owner the owner the search is made for.
+	 * @param strategy the strategy making the search.
+	 * @param thinkingTime the requested thinking time in milliseconds.
+	 * @param sequence the sequence number of the job.
+	 */
+	SearchJob(Object owner, Strategy strategy, long thinkingTime, long sequence)
+	{
+		this.owner = owner;
+		this.strategy = strategy;
+		this.thinkingTime = thinkingTime;
+		this.sequence = sequence;
+		this.submitTime = System.currentTimeMillis();
+		this.deadline = submitTime + thinkingTime;
+		this.result = new FutureTask<V>(this)
+		{
+			protected void done()
+			{
+				finished();
+			}
+		};
+	}
+
+	/**
+	 * Makes the search with the given strategy.
+	 * @param strategy the strategy making the search.
+	 * @param granted the thinking time in milliseconds granted for the search.
+	 * @return the result of the search.
+	 */
+	abstract V search(Strategy strategy, long granted);
+
+	/**
+	 * Makes the search within the granted thinking time.
+	 * @see java.util.concurrent.Callable#call()
+	 */
+	public V call()
+	{
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		boolean measure = threads.isCurrentThreadCpuTimeSupported();
+		long cpuStart = measure ? threads.getCurrentThreadCpuTime() : 0;
+		try
+		{
+			return search(strategy, grantedThinkingTime);
+		}
+		finally
+		{
+			if (measure)
+			{
+				cpuTime = threads.getCurrentThreadCpuTime() - cpuStart;
+			}
+		}
+	}
+
+	/**
+	 * Runs the search on the calling worker thread.
+	 * @param granted the thinking time in milliseconds granted for the search.
+	 */
+	void run(long granted)
+	{
+		this.startTime = System.currentTimeMillis();
+		this.grantedThinkingTime = granted;
+		result.run();
+	}
+
+	/**
+	 * Waits for the search to finish and returns its result.
+	 * @return the result of the search.
+	 * @throws InterruptedException if interrupted while waiting.
+	 * @throws ExecutionException if the search has failed.
+	 */
+	public V get() throws InterruptedException, ExecutionException
+	{
+		return result.get();
+	}
+
+	/**
+	 * Registers a listener, that is called as soon as the search is finished
+	 * or cancelled, by the thread finishing it. If the search is already 
+	 * finished, the listener is called immediately by the calling thread.
+	 * The result can then be taken with {@link #get()} without waiting.
+	 * @param listener the listener to register.
+	 */
+	public void addListener(Runnable listener)
+	{
+		synchronized (this)
+		{
+			if (listeners != null)
+			{
+				listeners.add(listener);
+				return;
+			}
+		}
+		listener.run();
+	}
+
+	private void finished()
+	{
+		List<Runnable> waiting;
+		synchronized (this)
+		{
+			waiting = listeners;
+			listeners = null;
+		}
+		for (Runnable aListener : waiting)
+		{
+			aListener.run();
+		}
+	}
+
+	/**
+	 * Cancels the search, if it has not been started yet.
+	 * @return true, if the search has been cancelled.
+	 */
+	public boolean cancel()
+	{
+		return result.cancel(false);
+	}
+
+	/**
+	 * Indicates if the search has been cancelled.
+	 * @return true, if the search has been cancelled.
+	 */
+	public boolean isCancelled()
+	{
+		return result.isCancelled();
+	}
+
+	/**
+	 * Returns the owner the search is made for.
+	 * @return the owner of the search.
+	 */
+	public Object getOwner()
+	{
+		return owner;
+	}
+
+	/**
+	 * Returns the thinking time in milliseconds requested for the search.
+	 * @return the requested thinking time.
+	 */
+	public long getThinkingTime()
+	{
+		return thinkingTime;
+	}
+
+	/**
+	 * Returns the thinking time in milliseconds granted by the scheduler, 0 if
+	 * the search has not been started yet.
+	 * @return the granted thinking time.
+	 */
+	public long getGrantedThinkingTime()
+	{
+		return grantedThinkingTime;
+	}
+
+	/**
+	 * Returns the system time in milliseconds by which the result is expected.
+	 * @return the deadline of the search.
+	 */
+	public long getDeadline()
+	{
+		return deadline;
+	}
+
+	/**
+	 * Moves the deadline of a search that has been waiting behind other 
+	 * searches of its owner to a thinking time after it becomes a candidate, 
+	 * so the owner's backlog does not take precedence over the searches of
+	 * other owners.
+	 * @param now the current system time in milliseconds.
+	 */
+	void postpone(long now)
+	{
+		deadline = Math.max(deadline, now + thinkingTime);
+	}
+
+	/**
+	 * Returns the time in milliseconds the search has been queued before it
+	 * has been started.
+	 * @return the queueing delay of the search.
+	 */
+	public long getQueueDelay()
+	{
+		long start = startTime;
+		return (start == 0 ? System.currentTimeMillis() : start) - submitTime;
+	}
+
+	/**
+	 * Returns the CPU time in nanoseconds used by the search.
+	 * @return the CPU time of the search.
+	 */
+	public long getCpuTime()
+	{
+		return cpuTime;
+	}
+
+	/**
+	 * Returns the sequence number of the job.
+	 * @return the sequence number of the job.
+	 */
+	long getSequence()
+	{
+		return sequence;
+	}
+}
@@ -0,0 +1,373 @@
+/*
+ * Created on 19.01.2007
+ */
+package ai;
+
+import gameelements.Position;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Runs the searches of many computer players, and analyses of game 
+ * situations, on a bounded pool of worker threads. Among the waiting 
+ * searches the one with the earliest deadline is started first. Each owner
+ * has at most one search among the candidates, so an owner submitting many
+ * searches cannot delay the searches of other owners. When more searches 
+ * are pending than workers are available, the thinking time of each search
+ * is scaled down accordingly.
+ */
+public class SearchScheduler
+{
+	/**
+	 * The smallest share of the requested thinking time a search is granted
+	 * under load.
+	 */
+	private static final int MIN_THINKING_SHARE = 8;
+
+	/**
+	 * The number of worker threads.
+	 */
+	private int workers;
+
+	/**
+	 * The first waiting search of each owner, ordered by deadline.
+	 */
+	private PriorityQueue<SearchJob<?>> candidates =
+		new PriorityQueue<SearchJob<?>>(11, new Comparator<SearchJob<?>>()
+		{
+			public int compare(SearchJob<?> a, SearchJob<?> b)
+			{
+				if (a.getDeadline() != b.getDeadline())
+					return a.getDeadline() < b.getDeadline() ? -1 : 1;
+				return a.getSequence() < b.getSequence() ? -1 : 1;
+			}
+		});
+
+	/**
+	 * The waiting searches of each owner in order of submission.
+	 */
+	private Map<Object, LinkedList<SearchJob<?>>> waiting = new HashMap<Object, LinkedList<SearchJob<?>>>();
+
+	/**
+	 * The number of waiting searches.
+	 */
+	private int queued = 0;
+
+	/**
+	 * The number of running searches.
+	 */
+	private int running = 0;
+
+	/**
+	 * The sequence number of the next search.
+	 */
+	private long nextSequence = 0;
+
+	/**
+	 * The number of finished searches.
+	 */
+	private long finished = 0;
+
+	/**
+	 * The sum of the queueing delays in milliseconds of all started searches.
+	 */
+	private long totalQueueDelay = 0;
+
+	/**
+	 * The largest queueing delay in milliseconds of all started searches.
+	 */
+	private long maxQueueDelay = 0;
+
+	/**
+	 * The number of started searches.
+	 */
+	private long started = 0;
+
+	/**
+	 * Indicates if the scheduler has been shut down.
+	 */
+	private boolean shutdown = false;
+
+	/**
+	 * Initiates a scheduler and starts its worker threads.
+	 * @param workers the number of worker threads.
+	 */
+	public SearchScheduler(int workers)
+	{
+		this.workers = Math.max(1, workers);
+		for (int i = 1; i <= this.workers; i++)
+		{
+			Thread t = new Thread(new Runnable()
+			{
+				public void run()
+				{
+					work();
+				}
+			}, "kaskade-search-" + i);
+			t.setDaemon(true);
+			t.start();
+		}
+	}
+
+	/**
+	 * Submits a search for the next move of a strategy.
+	 * @param owner the owner the search is made for, e.g. a server session.
+	 * @param strategy the strategy searching for the move.
+	 * @param thinkingTime the requested thinking time in milliseconds. The move
+	 * is expected within this time after submission.
+	 * @return the submitted search.
+	 */
+	public SearchJob<Position> submit(Object owner, Strategy strategy, long thinkingTime)
+	{
+		return this.enqueue( new SearchJob<Position>(owner, strategy, thinkingTime, nextSequence())
+		{
+			Position search(Strategy strategy, long granted)
+			{
+				return strategy.requestMove(granted);
+			}
+		});
+	}
+
+	/**
+	 * Submits an analysis of all legal moves of a strategy's player.
+	 * @param owner the owner the analysis is made for, e.g. a server session.
+	 * @param strategy the strategy analyzing the moves.
+	 * @param thinkingTime the requested thinking time in milliseconds. The 
+	 * analysis is expected within this time after submission.
+	 * @return the submitted analysis.
+	 */
+	public SearchJob<Analysis> submitAnalysis(Object owner, Strategy strategy, long thinkingTime)
+	{
+		return this.enqueue( new SearchJob<Analysis>(owner, strategy, thinkingTime, nextSequence())
+		{
+			Analysis search(Strategy strategy, long granted)
+			{
+				return strategy.analyze(granted);
+			}
+		});
+	}
+
+	private synchronized long nextSequence()
+	{
+		return nextSequence++;
+	}
+
+	/**
+	 * Queues a search behind the waiting searches of its owner.
+	 * @param job the search to queue.
+	 * @return the queued search.
+	 */
+	private synchronized <V> SearchJob<V> enqueue(SearchJob<V> job)
+	{
+		Object owner = job.getOwner();
+		if (shutdown)
+		{
+			job.cancel();
+			return job;
+		}
+
+		LinkedList<SearchJob<?>> jobs = waiting.get(owner);
+		if (jobs == null)
+		{
+			jobs = new LinkedList<SearchJob<?>>();
+			waiting.put(owner, jobs);
+			candidates.add(job);
+		}
+		jobs.add(job);
+		queued++;
+		this.notify();
+		return job;
+	}
+
+	/**
+	 * Cancels all waiting searches of an owner. Running searches are finished.
+	 * @param owner the owner whose searches are cancelled.
+	 */
+	public synchronized void cancel(Object owner)
+	{
+		LinkedList<SearchJob<?>> jobs = waiting.remove(owner);
+		if (jobs == null)
+			return;
+
+		candidates.remove(jobs.getFirst());
+		queued -= jobs.size();
+		for (SearchJob<?> aJob : jobs)
+		{
+			aJob.cancel();
+		}
+	}
+
+	/**
+	 * Stops the workers after their running searches and cancels all waiting
+	 * searches.
+	 */
+	public void shutdown()
+	{
+		List<SearchJob<?>> cancelled = new ArrayList<SearchJob<?>>();
+		synchronized (this)
+		{
+			shutdown = true;
+			for (LinkedList<SearchJob<?>> jobs : waiting.values())
+			{
+				cancelled.addAll(jobs);
+			}
+			waiting.clear();
+			candidates.clear();
+			queued = 0;
+			this.notifyAll();
+		}
+		for (SearchJob<?> aJob : cancelled)
+		{
+			aJob.cancel();
+		}
+	}
+
+	/**
+	 * Takes the waiting search with the earliest deadline and runs it, until
+	 * the scheduler is shut down.
+	 */
+	private void work()
+	{
+		while (true)
+		{
+			SearchJob<?> job;
+			long granted;
+			synchronized (this)
+			{
+				while (!shutdown && candidates.isEmpty())
+				{
+					try
+					{
+						this.wait();
+					}
+					catch (InterruptedException e)
+					{
+						return;
+					}
+				}
+				if (shutdown)
+					return;
+
+				job = this.take();
+				granted = this.grant(job);
+				running++;
+				started++;
+				totalQueueDelay += job.getQueueDelay();
+				maxQueueDelay = Math.max(maxQueueDelay, job.getQueueDelay());
+			}
+
+			try
+			{
+				job.run(granted);
+			}
+			finally
+			{
+				synchronized (this)
+				{
+					running--;
+					finished++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Removes the waiting search with the earliest deadline and makes the next
+	 * search of its owner a candidate, whose deadline is counted from now on.
+	 * @return the search to run next.
+	 */
+	private SearchJob<?> take()
+	{
+		SearchJob<?> job = candidates.poll();
+		LinkedList<SearchJob<?>> jobs = waiting.get(job.getOwner());
+		jobs.removeFirst();
+		if (jobs.isEmpty())
+			waiting.remove(job.getOwner());
+		else
+		{
+			jobs.getFirst().postpone(System.currentTimeMillis());
+			candidates.add(jobs.getFirst());
+		}
+		queued--;
+		return job;
+	}
+
+	/**
+	 * Determines the thinking time of a search about to be started. The
+	 * requested thinking time is shared by all pending searches, if they
+	 * exceed the number of workers, and is limited by the deadline of the
+	 * search, but never falls below a minimal share.
+	 * @param job the search about to be started.
+	 * @return the granted thinking time in milliseconds.
+	 */
+	private long grant(SearchJob<?> job)
+	{
+		int pending = running + 1 + queued;
+		long requested = job.getThinkingTime();
+		long granted = requested * workers / Math.max(workers, pending);
+		granted = Math.min(granted, job.getDeadline() - System.currentTimeMillis());
+		return Math.max(granted, Math.max(1, requested / MIN_THINKING_SHARE));
+	}
+
+	/**
+	 * Returns the number of worker threads.
+	 * @return the number of worker threads.
+	 */
+	public int getWorkers()
+	{
+		return workers;
+	}
+
+	/**
+	 * Returns the number of waiting searches.
+	 * @return the number of waiting searches.
+	 */
+	public synchronized int getQueuedSearches()
+	{
+		return queued;
+	}
+
+	/**
+	 * Returns the number of running searches.
+	 * @return the number of running searches.
+	 */
+	public synchronized int getRunningSearches()
+	{
+		return running;
+	}
+
+	/**
+	 * Returns the number of finished searches.
+	 * @return the number of finished searches.
+	 */
+	public synchronized long getFinishedSearches()
+	{
+		return finished;
+	}
+
+	/**
+	 * Returns the average time in milliseconds a search has been queued before
+	 * it has been started.
+	 * @return the average queueing delay.
+	 */
+	public synchronized long getAverageQueueDelay()
+	{
+		return started == 0 ? 0 : totalQueueDelay / started;
+	}
+
+	/**
+	 * Returns the longest time in milliseconds a search has been queued before
+	 * it has been started.
+	 * @return the largest queueing delay.
+	 */
+	public synchronized long getMaxQueueDelay()
+	{
+		return maxQueueDelay;
+	}
+}
@@ -71,7 +71,28 @@ public class Strategy
 	 */
 	public Position requestMove()
 	{
-		return evaluator.selectMove();
+		return evaluator.selectMove(0);
+	}
+	
+	/**
+	 * Returns the next move of the player, searched within the given thinking
+	 * time instead of the thinking time of the preferences.
+	 * @param maxThinkingTime the maximum thinking time in milliseconds.
+	 * @return the next move of the player.
+	 */
+	public Position requestMove(long maxThinkingTime)
+	{
+		return evaluator.selectMove(maxThinkingTime);
+	}
+
+	/**
+	 * Evaluates all legal moves of the player within the given thinking time.
+	 * @param maxThinkingTime the maximum thinking time in milliseconds.
+	 * @return the analysis of all legal moves, best move first.
+	 */
+	public Analysis analyze(long maxThinkingTime)
+	{
+		return evaluator.analyze(maxThinkingTime);
 	}
 
 	/**
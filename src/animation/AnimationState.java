@@ -3,19 +3,29 @@
  */
 package animation;
 
+import gameelements.CascadeDelta;
 import gameelements.GameSituation;
-import gameelements.GameColor;
 import gameelements.Position;
 
 /**
  * A container holding information for help displaying a situation on the view.
+ * A state holds the changes of one step of a move only, the situation itself 
+ * is reconstructed by applying the steps in order to the latest keyframe, 
+ * i.e. a state holding a whole situation.
  */
 public class AnimationState
 {
 	/**
-	 * The situation the animation state is displaying.
+	 * The situation the animation state is displaying, if the state is a 
+	 * keyframe.
 	 */
-	private GameSituation situation;
+	private GameSituation keyframe;
+	
+	/**
+	 * The changes of the step the state is displaying, if the state is not a
+	 * keyframe.
+	 */
+	private CascadeDelta delta;
 	
 	/**
 	 * The move that lead to the game situation represented by this state.
@@ -23,67 +33,67 @@ public class AnimationState
 	private Position currentMove;
 	
 	/**
-	 * Initiates an animation state.
-	 * @param situation the situation the state stands for.
-	 * @param currentMove the move that lead to the situation.
+	 * Indicates if the state is the last state of a move.
 	 */
-	AnimationState(GameSituation situation, Position currentMove)
-	{
-		this.situation = situation;
-		this.currentMove = currentMove;
-	}
-
+	private boolean last;
+	
 	/**
-	 * @see GameSituation#isUniColored()
+	 * Initiates a keyframe.
+	 * @param keyframe the situation the state stands for.
+	 * @param currentMove the move that lead to the situation.
 	 */
-	boolean isUniColored()
+	AnimationState(GameSituation keyframe, Position currentMove)
 	{
-		return situation.isUniColored();
+		this.keyframe = keyframe;
+		this.currentMove = currentMove;
+		this.last = true;
 	}
 	
 	/**
-	 * Returns the color of the given position.
-	 * @param pos the position in question.
-	 * @return the color of the given position.
+	 * Initiates the state of a step.
+	 * @param delta the changes of the step.
+	 * @param currentMove the move, if the step is its first step, else null.
+	 * @param last true, if the step is the last step of its move.
 	 */
-	GameColor getColor(Position pos)
+	AnimationState(CascadeDelta delta, Position currentMove, boolean last)
 	{
-		return situation.getColor(pos);
+		this.delta = delta;
+		this.currentMove = currentMove;
+		this.last = last;
 	}
 	
 	/**
-	 * Returns the number of tokens in a position.
-	 * @param pos the position in question.
-	 * @return the number of tokens in a position.
+	 * Reconstructs the situation of the state.
+	 * @param previous the situation of the preceding state, which is changed
+	 * by the step and must not be shared.
+	 * @return the situation of the state.
 	 */
-	int getTokens(Position pos)
+	GameSituation applyTo(GameSituation previous)
 	{
-		return situation.getTokens(pos);
+		if (keyframe != null)
+			return keyframe.clone();
+		
+		previous.apply(delta);
+		return previous;
 	}
-
+	
 	/**
-	 * Returns true if the given position of the current game situation 
-	 * displayed on the view is flowing over, else false.
-	 * @param pos the position in question.
-	 * @return true, if position is flowing over, else false.
+	 * Returns the changes of the step the state stands for.
+	 * @return the changes of the step, null for a keyframe.
 	 */
-	boolean isFlowingOver(Position pos)
+	CascadeDelta getDelta()
 	{
-		return situation.isFlowingOver(pos);
+		return delta;
 	}
-
+	
 	/**
-	 * returns true if any field in the state is flowing over, else false.
-	 * @return true if any field in the state is flowing over, else false.
+	 * Returns true, if the state is the last state of a move, so no field is
+	 * flowing over anymore.
+	 * @return true, if no step of the move follows.
 	 */
-	boolean isFlowingOver()
+	boolean isLast()
 	{
-		for (int x=0; x<situation.getDimX(); x++)
-			for (int y=0; y<situation.getDimY(); y++)
-				if (situation.isFlowingOver(new Position(x, y)))
-					return true;
-		
-		return false;
+		return last;
 	}
 	
 	/**
@@ -95,39 +105,4 @@ public class AnimationState
 		return currentMove;
 	}
 
-	/**
-	 * Returns the number of tokens on the whole board with the given 
-	 * color.
-	 * @param color color of the tokens being counted.
-	 * @return the number of tokens in given color.
-	 */
-	int getTokensOfColor(GameColor color)
-	{
-		int count = 0;
-		
-		for (int x=0; x<situation.getDimX(); x++)
-		{
-			for (int y=0; y<situation.getDimY(); y++)
-			{
-				Position aPos = new Position(x, y);
-				GameColor aColor = situation.getColor(aPos);
-				
-				if (color.equals(aColor))
-				{
-					count += situation.getTokens(aPos);
-				}
-			}
-		}
-		return count;
-	}
-
-	/**
-	 * Returns the game situation the animation state is associated with.
-	 * @return the game situation the animation state is associated with.
-	 */
-	GameSituation getSituation()
-	{
-		return situation;
-	}
-
 }
@@ -3,15 +3,27 @@
  */
 package animation;
 
+import gameelements.GameSituation;
+import gameelements.Position;
+
 import java.util.LinkedList;
 import java.util.Queue;
 
 /**
  * A complex data structure for helping the animator to queue animation states,
  * so that the states can be allocated to the turns they were created in.
+ * The queue is bounded by the number of turns waiting: if the animation lags
+ * behind too far, the waiting turns are replaced by a keyframe of the latest
+ * situation.
  */
 class AnimationStateQueue
 {
+	/**
+	 * The maximal number of states of a turn waiting to be displayed. The 
+	 * steps of longer cascades are replaced by a keyframe.
+	 */
+	static final int MAX_STATES_PER_TURN = 100;
+	
 	/**
 	 * Nested queue. The inner queue covers all animation states within one
 	 * turn while the outer queue covers the animation queues for all turns.
@@ -33,6 +45,16 @@ class AnimationStateQueue
 	 */
 	private Queue<AnimationState> openAnimationStateQueue;
 	
+	/**
+	 * The situation after all states added, for creating keyframes.
+	 */
+	private GameSituation latestSituation;
+	
+	/**
+	 * The latest move added.
+	 */
+	private Position latestMove;
+	
 	/**
 	 * Initiates a new animation state queue.
 	 */
@@ -46,14 +68,28 @@ class AnimationStateQueue
 	
 	/**
 	 * Adds an animation state to the current open queue. Also opens a new
-	 * queue if a new turn starts.
+	 * queue if a new turn starts. If too many states of the open turn are 
+	 * waiting, they are replaced by a keyframe.
 	 * @param animationState
 	 */
 	void add(AnimationState animationState)
 	{
-		openAnimationStateQueue.add(animationState);
+		latestSituation = animationState.applyTo(latestSituation);
+		if (animationState.getCurrentMove() != null)
+			latestMove = animationState.getCurrentMove();
+		
+		if (openAnimationStateQueue.size() >= MAX_STATES_PER_TURN)
+		{
+			// skip the waiting steps of a long cascade
+			openAnimationStateQueue.clear();
+			openAnimationStateQueue.add( new AnimationState(latestSituation.clone(), latestMove) );
+		}
+		else
+		{
+			openAnimationStateQueue.add(animationState);
+		}
 		
-		if (!animationState.isFlowingOver())
+		if (animationState.isLast())
 		{
 			openAnimationStateQueue.add( animationState );
 			openAnimationStateQueue = new LinkedList<AnimationState>();
@@ -61,6 +97,30 @@ class AnimationStateQueue
 		}
 	}
 
+	/**
+	 * Replaces all turns waiting to be displayed, including the turn being
+	 * displayed, by a keyframe of the latest situation, if more than the 
+	 * given number of complete turns are waiting. Only done between turns.
+	 * @param maxTurns the maximal number of complete turns waiting.
+	 */
+	void limitLag(int maxTurns)
+	{
+		// the open queue is the last one of the turn queue
+		int waitingTurns = turnQueue.size() - 1;
+		if (!openAnimationStateQueue.isEmpty() || waitingTurns <= maxTurns)
+			return;
+		
+		AnimationState keyframe = new AnimationState(latestSituation.clone(), latestMove);
+		Queue<AnimationState> keyframeQueue = new LinkedList<AnimationState>();
+		keyframeQueue.add(keyframe);
+		keyframeQueue.add(keyframe);
+		
+		turnQueue.clear();
+		turnQueue.add(keyframeQueue);
+		turnQueue.add(openAnimationStateQueue);
+		currentAnimationStateQueue = new LinkedList<AnimationState>();
+	}
+
 	/**
 	 * Returns true if queue is empty, else false.
 	 * @return true if queue is empty, else false.
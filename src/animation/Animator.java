@@ -3,15 +3,17 @@
  */
 package animation;
 
+import gameelements.CascadeDelta;
 import gameelements.Game;
 import gameelements.GameColor;
+import gameelements.GameEvent;
+import gameelements.GameListener;
 import gameelements.GamePreferences;
+import gameelements.GameSituation;
 import gameelements.Position;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Observable;
-import java.util.Observer;
 
 import player.Player;
 
@@ -19,7 +21,7 @@ import player.Player;
  * Connects view and model by observing the model and creating information
  * for representation on the gui.
  */
-public class Animator implements Observer
+public class Animator implements GameListener
 {
 	/**
 	 * The current game the animator runs for.
@@ -37,14 +39,10 @@ public class Animator implements Observer
 	private AnimationStateQueue animationStateQueue;
 	
 	/**
-	 * The current state that is being called by the view.
+	 * The situation of the current state that is being called by the view, 
+	 * reconstructed from the latest keyframe and the following steps.
 	 */
-	private AnimationState currentAnimationState;
-	
-	/**
-	 * The state preceding the current state.
-	 */
-	private AnimationState previousAnimationState;
+	private GameSituation currentSituation;
 	
 	/**
 	 * The move that lead to the current state.
@@ -65,7 +63,7 @@ public class Animator implements Observer
 		this.game = game;
 		
 		this.animationStateQueue = new AnimationStateQueue();
-		AnimationState initialState = new AnimationState(game.getSituation().clone(), null);
+		AnimationState initialState = new AnimationState(game.getSnapshot().getSituation().clone(), null);
 		this.animationStateQueue.add( initialState );
 		
 		this.currentTurn = 1;
@@ -78,6 +76,7 @@ public class Animator implements Observer
 	void addAnimationState(AnimationState newAnimationState)
 	{
 		this.animationStateQueue.add(newAnimationState);
+		this.animationStateQueue.limitLag( GamePreferences.getInstance().getMaxAnimationLag() );
 	}
 
 	/**
@@ -85,58 +84,73 @@ public class Animator implements Observer
 	 * turn and determining all needed information needed for displaying the
 	 * current animation step on the view.
 	 */
-	public void processStateQueue()
+	public synchronized void processStateQueue()
 	{
 		if (animationStateQueue.isEmpty())
 			return;
 		
+		// the displayed situation is replaced, not changed, as the view may
+		// be painting it; skipped steps are applied to the same copy
+		GameSituation nextSituation = null;
+		
 		if (!GamePreferences.getInstance().isAnimatedSteps())
 			while(!animationStateQueue.isEndOfTurn())
-				animationStateQueue.remove();
+				nextSituation = this.applyState(animationStateQueue.remove(), nextSituation);
 		
 		AnimationState nextAnimationState = animationStateQueue.remove();
+		nextSituation = this.applyState(nextAnimationState, nextSituation);
 		
 		if (animationStateQueue.isStartOfCurrentQueue())
 			currentMove = nextAnimationState.getCurrentMove();
 		
-		currentChangedPositions.addAll( compareAnmiationStates(previousAnimationState, nextAnimationState) );
+		currentSituation = nextSituation;
 		
-		previousAnimationState = currentAnimationState;
-		currentAnimationState = nextAnimationState;
-		
-		if (animationStateQueue.isEndOfCurrentQueue() && !currentAnimationState.getSituation().isUniColored())
+		if (animationStateQueue.isEndOfCurrentQueue() && !currentSituation.isUniColored())
 		{
 			currentChangedPositions = new ArrayList<Position>();
 			currentMove = null;
-			currentTurn = currentAnimationState.getSituation().getTokens()+1;
+			currentTurn = currentSituation.getTokens()+1;
 		}
 	}
 	
-	private List<Position> compareAnmiationStates(AnimationState prevState, AnimationState nextState)
+	/**
+	 * Applies a state taken from the queue and registers the positions it
+	 * has changed.
+	 * @param state the state.
+	 * @param working the situation the preceding states have been applied
+	 * to, null if no state has been applied yet.
+	 * @return the situation of the state.
+	 */
+	private GameSituation applyState(AnimationState state, GameSituation working)
 	{
-		List<Position> changedPositions = new ArrayList<Position>();
+		if (working == null && currentSituation != null)
+			working = currentSituation.clone();
 		
-		if (prevState == null)
-			changedPositions.add( nextState.getCurrentMove() );
+		CascadeDelta delta = state.getDelta();
+		if (delta == null)
+		{
+			currentChangedPositions.add( state.getCurrentMove() );
+		}
 		else
-			for (int x=0; x<game.getSituation().getDimX(); x++)
-				for (int y=0; y<game.getSituation().getDimY(); y++)
+		{
+			for (int i=0; i<delta.size(); i++)
+			{
+				Position aPos = delta.getPosition(i);
+				if (delta.getOldValue(i) != delta.getNewValue(i) && !currentChangedPositions.contains(aPos))
 				{
-					Position aPos = new Position(x, y);
-					if (prevState.getTokens(aPos) != nextState.getTokens(aPos))
-					{
-						changedPositions.add(aPos);
-					}
+					currentChangedPositions.add(aPos);
 				}
+			}
+		}
 		
-		return changedPositions;
+		return state.applyTo(working);
 	}
 
 	/**
 	 * Returns true if animation queue has more elements, else false.
 	 * @return true if animation queue has more elements, else false. 
 	 */
-	public boolean hasNext()
+	public synchronized boolean hasNext()
 	{
 		return !animationStateQueue.isEmpty();
 	}
@@ -186,47 +200,59 @@ public class Animator implements Observer
 	 */
 	public boolean hasCurrentAnimationState()
 	{
-		return currentAnimationState != null;
+		return currentSituation != null;
 	}
 	
 	/**
-	 * @see AnimationState#getTokensOfColor(GameColor)
+	 * Returns the number of tokens on the whole board with the given 
+	 * color.
+	 * @param color color of the tokens being counted.
+	 * @return the number of tokens in given color.
 	 */
 	public int getTokensOfColor(GameColor color)
 	{
-		return currentAnimationState.getTokensOfColor(color);
+		int count = 0;
+		
+		for (Position aPos : currentSituation.getPositions())
+		{
+			if (color.equals(currentSituation.getColor(aPos)))
+			{
+				count += currentSituation.getTokens(aPos);
+			}
+		}
+		return count;
 	}
 	
 	/**
-	 * @see AnimationState#isFlowingOver(Position)
+	 * @see GameSituation#isFlowingOver(Position)
 	 */
 	public boolean isFlowingOver(Position pos)
 	{
-		return currentAnimationState.isFlowingOver(pos);
+		return currentSituation.isFlowingOver(pos);
 	}
 
 	/**
-	 * @see AnimationState#getColor(Position)
+	 * @see GameSituation#getColor(Position)
 	 */
 	public GameColor getColor(Position pos)
 	{
-		return currentAnimationState.getColor(pos);
+		return currentSituation.getColor(pos);
 	}
 	
 	/**
-	 * @see AnimationState#getTokens(Position)
+	 * @see GameSituation#getTokens(Position)
 	 */
 	public int getTokens(Position pos)
 	{
-		return currentAnimationState.getTokens(pos);
+		return currentSituation.getTokens(pos);
 	}
 
 	/**
-	 * @see AnimationState#isUniColored()
+	 * @see GameSituation#isUniColored()
 	 */
 	public boolean isUniColored()
 	{
-		return currentAnimationState.isUniColored();
+		return currentSituation.isUniColored();
 	}
 	
 	/**
@@ -234,18 +260,19 @@ public class Animator implements Observer
 	 * new state added, another copy of the state will be added for realizing
 	 * animation effects.
 	 * 
-	 * @see java.util.Observer#update(java.util.Observable, java.lang.Object)
+	 * @see gameelements.GameListener#handleEvent(gameelements.GameEvent)
 	 */
-	public void update(Observable o, Object arg)
+	public void handleEvent(GameEvent event)
 	{
-		if (arg instanceof Exception)
+		if ( !(event instanceof GameEvent.CascadeStep) )
 			return;
 		
-		Position newMove = null;
-		if (arg instanceof Position)
-			newMove = (Position) arg;
-		
-		AnimationState newSituation = new AnimationState(game.getSituation().clone(), newMove);
+		GameEvent.CascadeStep step = (GameEvent.CascadeStep) event;
+		AnimationState newSituation;
+		if (step.getKeyframe() != null)
+			newSituation = new AnimationState(step.getKeyframe(), step.getMove());
+		else
+			newSituation = new AnimationState(step.getDelta(), step.getMove(), step.isLast());
 		
 		synchronized(this)
 		{
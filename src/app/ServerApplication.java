@@ -0,0 +1,227 @@
+/*
+ * Created on 02.02.2007
+ */
+package app;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Properties;
+
+import network.Server;
+import network.ServerPreferences;
+
+/**
+ * Main class of the dedicated server, which runs the game server without
+ * any window, e.g. on machines without display. Neither AWT nor Swing are
+ * loaded, so the server is ready within a fraction of the startup time of
+ * the application. The server preferences are taken from a properties file
+ * given by -config, overridden by the options of the command line:
+ * <pre>
+ * option      property
+ * -port       serverPort
+ * -think      thinkingTime         in milliseconds
+ * -sessions   maxSessions
+ * -searches   maxSearches
+ * -idle       idleTimeout          in milliseconds
+ * -grace      resumeGracePeriod    in milliseconds
+ * -analysis   maxAnalysisTime      in milliseconds
+ * -cache      analysisCacheSize
+ * -archive    archiveDirectory
+ * </pre>
+ * The server reports the time from the start of the virtual machine until
+ * it accepts connections. With -exit it stops as soon as it is ready, which
+ * serves as training run for an application class data sharing archive of
+ * the classes loaded at startup, given the classes are in a jar:
+ * <pre>
+ * java -XX:ArchiveClassesAtExit=server.jsa -cp kaskade.jar app.ServerApplication -exit
+ * java -XX:SharedArchiveFile=server.jsa -cp kaskade.jar app.ServerApplication
+ * </pre>
+ */
+public class ServerApplication
+{
+	/**
+	 * The usage message.
+	 */
+	private static final String USAGE =
+		"usage: ServerApplication [-config file] [-port n] [-think ms] [-sessions n] [-searches n]"
+		+ " [-idle ms] [-grace ms] [-analysis ms] [-cache n] [-archive dir] [-exit]";
+
+	/**
+	 * The options of the command line and the properties they set, in
+	 * pairs.
+	 */
+	private static final String[] OPTIONS = {
+		"-port", "serverPort",
+		"-think", "thinkingTime",
+		"-sessions", "maxSessions",
+		"-searches", "maxSearches",
+		"-idle", "idleTimeout",
+		"-grace", "resumeGracePeriod",
+		"-analysis", "maxAnalysisTime",
+		"-cache", "analysisCacheSize",
+		"-archive", "archiveDirectory",
+	};
+
+	/**
+	 * Indicates if the server is stopped as soon as it is ready.
+	 */
+	private boolean exitWhenReady = false;
+
+	/**
+	 * Starts the server.
+	 * @param args the arguments, see USAGE.
+	 */
+	public static void main(String[] args)
+	{
+		long start = System.currentTimeMillis();
+		ServerApplication application = new ServerApplication();
+		ServerPreferences prefs = ServerPreferences.getInstance();
+		try
+		{
+			application.configure(args, prefs);
+		}
+		catch (IllegalArgumentException e)
+		{
+			System.err.println(e.getMessage());
+			System.err.println(USAGE);
+			System.exit(1);
+		}
+
+		final Server server = Server.getInstance();
+		try
+		{
+			server.startServer(prefs.getServerPort());
+		}
+		catch (IOException e)
+		{
+			System.err.println("could not start server on port " + prefs.getServerPort() + ": " + e.getMessage());
+			System.exit(1);
+		}
+
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable()
+		{
+			public void run()
+			{
+				server.stopServer();
+			}
+		}, "kaskade-shutdown"));
+
+		long ready = System.currentTimeMillis();
+		System.out.println("Kaskade server ready on port " + prefs.getServerPort() + " after "
+				+ ManagementFactory.getRuntimeMXBean().getUptime() + " ms (" + (ready - start) + " ms in main)");
+
+		if (application.exitWhenReady)
+		{
+			System.exit(0);
+		}
+	}
+
+	/**
+	 * Sets the server preferences from the config file and the options of the
+	 * command line.
+	 * @param args the arguments.
+	 * @param prefs the preferences to set.
+	 */
+	private void configure(String[] args, ServerPreferences prefs)
+	{
+		Properties options = new Properties();
+		String config = null;
+		for (int i = 0; i < args.length; i++)
+		{
+			String arg = args[i];
+			if (arg.equals("-exit"))
+			{
+				exitWhenReady = true;
+				continue;
+			}
+			if (i + 1 >= args.length)
+			{
+				throw new IllegalArgumentException("missing value for " + arg);
+			}
+			String value = args[++i];
+			if (arg.equals("-config"))
+			{
+				config = value;
+				continue;
+			}
+			String property = null;
+			for (int j = 0; j < OPTIONS.length; j += 2)
+			{
+				if (OPTIONS[j].equals(arg))
+					property = OPTIONS[j + 1];
+			}
+			if (property == null)
+			{
+				throw new IllegalArgumentException("unknown argument: " + arg);
+			}
+			options.setProperty(property, value);
+		}
+
+		Properties properties = new Properties();
+		if (config != null)
+		{
+			try
+			{
+				InputStream in = new FileInputStream(config);
+				try
+				{
+					properties.load(in);
+				}
+				finally
+				{
+					in.close();
+				}
+			}
+			catch (IOException e)
+			{
+				throw new IllegalArgumentException("could not read " + config + ": " + e.getMessage());
+			}
+		}
+		properties.putAll(options);
+
+		int port = getInt(properties, "serverPort", prefs.getServerPort());
+		if (port > 65535)
+		{
+			throw new IllegalArgumentException("illegal value for serverPort: " + port);
+		}
+		prefs.setServerPort(port);
+		prefs.setThinkingTime(getLong(properties, "thinkingTime", prefs.getThinkingTime()));
+		prefs.setMaxSessions(getInt(properties, "maxSessions", prefs.getMaxSessions()));
+		prefs.setMaxSearches(getInt(properties, "maxSearches", prefs.getMaxSearches()));
+		prefs.setIdleTimeout(getLong(properties, "idleTimeout", prefs.getIdleTimeout()));
+		prefs.setResumeGracePeriod(getLong(properties, "resumeGracePeriod", prefs.getResumeGracePeriod()));
+		prefs.setMaxAnalysisTime(getLong(properties, "maxAnalysisTime", prefs.getMaxAnalysisTime()));
+		prefs.setAnalysisCacheSize(getInt(properties, "analysisCacheSize", prefs.getAnalysisCacheSize()));
+		prefs.setArchiveDirectory(properties.getProperty("archiveDirectory", prefs.getArchiveDirectory()));
+	}
+
+	private static int getInt(Properties properties, String name, int defaultValue)
+	{
+		long value = getLong(properties, name, defaultValue);
+		if (value > Integer.MAX_VALUE)
+		{
+			throw new IllegalArgumentException("illegal value for " + name + ": " + value);
+		}
+		return (int) value;
+	}
+
+	private static long getLong(Properties properties, String name, long defaultValue)
+	{
+		String value = properties.getProperty(name);
+		if (value == null)
+			return defaultValue;
+		try
+		{
+			long number = Long.parseLong(value.trim());
+			if (number < 0)
+				throw new NumberFormatException();
+			return number;
+		}
+		catch (NumberFormatException e)
+		{
+			throw new IllegalArgumentException("illegal value for " + name + ": " + value);
+		}
+	}
+}
@@ -0,0 +1,433 @@
+/*
+ * Created on 30.01.2007
+ */
+package archive;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+/**
+ * Reads the games of an archive in the order they have been written, by
+ * mapping the segments into memory one after the other. The scanner is a
+ * cursor: each call of next() moves it to the next game, whose values are
+ * read through the getters of the scanner. Only the header of a game is
+ * decoded when moving on, the names of the players and the moves are decoded
+ * when asked for, so scanning for e.g. the results of the games hardly does
+ * more than following the lengths of the records. A record cut off at the
+ * end of a segment, e.g. by a crash of the server, ends the segment.
+ * A scanner is used by one thread only.
+ */
+public class ArchiveScanner
+{
+	/**
+	 * The segment files of the archive.
+	 */
+	private List<File> segments;
+
+	/**
+	 * The number of the next segment to be mapped.
+	 */
+	private int nextSegment = 0;
+
+	/**
+	 * The numbers of the first games of the segments.
+	 */
+	private long[] segmentStarts;
+
+	/**
+	 * The number of the current game.
+	 */
+	private long number = -1;
+
+	/**
+	 * The current segment, null before the first and after the last one.
+	 */
+	private ByteBuffer buffer;
+
+	/**
+	 * The offset of the end of the current record.
+	 */
+	private int recordEnd;
+
+	private long startTime;
+
+	private int dimX;
+
+	private int dimY;
+
+	private int setupSize;
+
+	private int[] setupIndices = new int[16];
+
+	private byte[] setupValues = new byte[16];
+
+	private int[] nameOffsets = new int[2];
+
+	private int[] nameLengths = new int[2];
+
+	private int[] playerTypes = new int[2];
+
+	private int strategy;
+
+	private int result;
+
+	private int moveCount;
+
+	/**
+	 * The offset of the first move of the current record.
+	 */
+	private int movesOffset;
+
+	/**
+	 * The moves of the current record, once they are asked for.
+	 */
+	private int[] moves = new int[64];
+
+	/**
+	 * Indicates if the moves of the current record have been decoded.
+	 */
+	private boolean movesDecoded;
+
+	/**
+	 * Initiates a scanner positioned before the first game of an archive.
+	 * @param directory the directory of the archive.
+	 */
+	public ArchiveScanner(File directory)
+	{
+		this.segments = GameArchive.listSegments(directory);
+		this.segmentStarts = new long[segments.size()];
+		for (int i = 1; i < segments.size(); i++)
+		{
+			segmentStarts[i] = segmentStarts[i-1] + indexFile(segments.get(i-1)).length() / 4;
+		}
+	}
+
+	/**
+	 * Scans an archive and reports the number of games, their results and
+	 * the speed of the scan.
+	 * @param args the directory of the archive.
+	 */
+	public static void main(String[] args)
+	{
+		if (args.length != 1)
+		{
+			System.err.println("usage: ArchiveScanner dir");
+			System.exit(1);
+		}
+
+		long start = System.currentTimeMillis();
+		long games = 0;
+		long[] results = new long[3];
+		try
+		{
+			ArchiveScanner scanner = new ArchiveScanner(new File(args[0]));
+			while (scanner.next())
+			{
+				games++;
+				results[scanner.getResult()]++;
+			}
+		}
+		catch (IOException e)
+		{
+			System.err.println("could not read archive: " + e.getMessage());
+			System.exit(1);
+		}
+		long elapsed = Math.max(1, System.currentTimeMillis() - start);
+		System.out.println(games + " games, white won " + results[GameRecord.RESULT_WHITE]
+				+ ", black won " + results[GameRecord.RESULT_BLACK] + ", not finished " + results[GameRecord.RESULT_NONE]);
+		System.out.println("scanned in " + elapsed + " ms, " + (games * 1000 / elapsed) + " games/sec");
+	}
+
+	/**
+	 * Counts the games of an archive from the indices of its segments,
+	 * without reading the segments.
+	 * @param directory the directory of the archive.
+	 * @return the number of games.
+	 */
+	public static long count(File directory)
+	{
+		long count = 0;
+		for (File aSegment : GameArchive.listSegments(directory))
+		{
+			count += indexFile(aSegment).length() / 4;
+		}
+		return count;
+	}
+
+	/**
+	 * Moves the scanner behind the given number of games, using the indices
+	 * of the segments, so the next call of next() reads the game with that
+	 * number.
+	 * @param number the number of the game, starting with 0.
+	 * @return true, if the archive holds a game with that number.
+	 * @throws IOException if a segment could not be read.
+	 */
+	public boolean seek(long number) throws IOException
+	{
+		long start = number;
+		for (int i = 0; i < segments.size(); i++)
+		{
+			long size = indexFile(segments.get(i)).length() / 4;
+			if (number < size)
+			{
+				DataInputStream index = new DataInputStream(new BufferedInputStream(
+						new FileInputStream(indexFile(segments.get(i)))));
+				try
+				{
+					index.skipBytes((int) number * 4);
+					int offset = index.readInt();
+					this.map(i);
+					buffer.position(offset);
+					recordEnd = offset;
+					this.number = start - 1;
+					return true;
+				}
+				finally
+				{
+					index.close();
+				}
+			}
+			number -= size;
+		}
+		buffer = null;
+		nextSegment = segments.size();
+		return false;
+	}
+
+	/**
+	 * Moves to the next game.
+	 * @return true, if there is a next game, false at the end of the archive.
+	 * @throws IOException if a segment could not be read.
+	 */
+	public boolean next() throws IOException
+	{
+		while (true)
+		{
+			if (buffer != null)
+			{
+				buffer.position(recordEnd);
+				if (this.readHeader())
+					return true;
+			}
+			if (nextSegment >= segments.size())
+			{
+				buffer = null;
+				return false;
+			}
+			this.map(nextSegment);
+		}
+	}
+
+	private void map(int segment) throws IOException
+	{
+		File file = segments.get(segment);
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try
+		{
+			FileChannel channel = raf.getChannel();
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (mapped.limit() < RecordFormat.HEADER_SIZE || mapped.getInt() != RecordFormat.MAGIC)
+				throw new IOException(file + " is no segment of a game archive");
+			if (mapped.get() != RecordFormat.VERSION)
+				throw new IOException(file + " has an unknown version");
+			buffer = mapped;
+			recordEnd = RecordFormat.HEADER_SIZE;
+			nextSegment = segment + 1;
+			number = segmentStarts[segment] - 1;
+		}
+		finally
+		{
+			raf.close(); // the mapping stays valid
+		}
+	}
+
+	/**
+	 * Decodes the header of the record at the position of the buffer.
+	 * @return false, if there is no complete record.
+	 */
+	private boolean readHeader()
+	{
+		try
+		{
+			if (!buffer.hasRemaining())
+				return false;
+			int length = RecordFormat.getVarInt(buffer);
+			if (length > buffer.remaining())
+				return false; // cut off
+
+			recordEnd = buffer.position() + length;
+			startTime = RecordFormat.getVarLong(buffer);
+			dimX = RecordFormat.getVarInt(buffer);
+			dimY = RecordFormat.getVarInt(buffer);
+			setupSize = RecordFormat.getVarInt(buffer);
+			if (setupSize > setupIndices.length)
+			{
+				setupIndices = new int[setupSize];
+				setupValues = new byte[setupSize];
+			}
+			for (int i = 0; i < setupSize; i++)
+			{
+				setupIndices[i] = RecordFormat.getVarInt(buffer);
+				int zigzag = RecordFormat.getVarInt(buffer);
+				setupValues[i] = (byte) ((zigzag >>> 1) ^ -(zigzag & 1));
+			}
+			for (int i = 0; i < 2; i++)
+			{
+				nameLengths[i] = RecordFormat.getVarInt(buffer);
+				nameOffsets[i] = buffer.position();
+				buffer.position(nameOffsets[i] + nameLengths[i]);
+			}
+			playerTypes[0] = buffer.get();
+			playerTypes[1] = buffer.get();
+			strategy = buffer.get() - 1;
+			result = buffer.get();
+			moveCount = RecordFormat.getVarInt(buffer);
+			movesOffset = buffer.position();
+			movesDecoded = false;
+			number++;
+			return true;
+		}
+		catch (RuntimeException e)
+		{
+			return false; // cut off within the length
+		}
+	}
+
+	private static File indexFile(File segment)
+	{
+		String name = segment.getName();
+		return new File(segment.getParentFile(),
+				name.substring(0, name.length() - RecordFormat.SEGMENT_EXTENSION.length()) + RecordFormat.INDEX_EXTENSION);
+	}
+
+	/**
+	 * Returns the number of the current game, as counted by the indices of
+	 * the segments, so a game keeps its number even if a game before it has
+	 * been cut off.
+	 * @return the number of the game, starting with 0.
+	 */
+	public long getNumber()
+	{
+		return number;
+	}
+
+	/**
+	 * Returns the start of the current game.
+	 * @return the system time in milliseconds of the game's start.
+	 */
+	public long getStartTime()
+	{
+		return startTime;
+	}
+
+	/**
+	 * Returns the dimension of the board of the current game on x-axis.
+	 * @return the dimension on x-axis.
+	 */
+	public int getDimX()
+	{
+		return dimX;
+	}
+
+	/**
+	 * Returns the dimension of the board of the current game on y-axis.
+	 * @return the dimension on y-axis.
+	 */
+	public int getDimY()
+	{
+		return dimY;
+	}
+
+	/**
+	 * Returns the name of a player of the current game.
+	 * @param i 0 for white, 1 for black.
+	 * @return the name of the player.
+	 */
+	public String getPlayerName(int i)
+	{
+		return RecordFormat.getString(buffer, nameOffsets[i], nameLengths[i]);
+	}
+
+	/**
+	 * Returns the type of a player of the current game.
+	 * @param i 0 for white, 1 for black.
+	 * @return the type of the player.
+	 */
+	public int getPlayerType(int i)
+	{
+		return playerTypes[i];
+	}
+
+	/**
+	 * Returns the strategy of the computer player of the current game.
+	 * @return the strategy, GameRecord.NO_STRATEGY if there is none.
+	 */
+	public int getStrategy()
+	{
+		return strategy;
+	}
+
+	/**
+	 * Returns the result of the current game.
+	 * @return one of the results defined by GameRecord.
+	 */
+	public int getResult()
+	{
+		return result;
+	}
+
+	/**
+	 * Returns the number of moves of the current game.
+	 * @return the number of moves.
+	 */
+	public int getMoveCount()
+	{
+		return moveCount;
+	}
+
+	/**
+	 * Returns the index of the field of a move of the current game.
+	 * @param i the number of the move, starting with 0 for white's first move.
+	 * @return the index of the field.
+	 */
+	public int getMove(int i)
+	{
+		if (!movesDecoded)
+		{
+			if (moveCount > moves.length)
+				moves = new int[moveCount];
+			buffer.position(movesOffset);
+			for (int j = 0; j < moveCount; j++)
+				moves[j] = RecordFormat.getVarInt(buffer);
+			movesDecoded = true;
+		}
+		return moves[i];
+	}
+
+	/**
+	 * Returns a record of the current game.
+	 * @return the record.
+	 */
+	public GameRecord getRecord()
+	{
+		int[] indices = new int[setupSize];
+		byte[] values = new byte[setupSize];
+		System.arraycopy(setupIndices, 0, indices, 0, setupSize);
+		System.arraycopy(setupValues, 0, values, 0, setupSize);
+		int[] allMoves = new int[moveCount];
+		for (int i = 0; i < moveCount; i++)
+			allMoves[i] = this.getMove(i);
+
+		return new GameRecord(startTime, dimX, dimY, indices, values,
+				new String[] { this.getPlayerName(0), this.getPlayerName(1) },
+				new int[] { playerTypes[0], playerTypes[1] }, strategy, result, allMoves);
+	}
+}
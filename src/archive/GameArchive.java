@@ -0,0 +1,563 @@
+/*
+ * Created on 30.01.2007
+ */
+package archive;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An append-only archive of played games in a directory. Games are handed
+ * over to the archive without waiting, and are encoded and written by a
+ * thread of the archive, so the games are not slowed down by the archive.
+ * If the thread falls behind that far, that its queue is full, games are
+ * dropped rather than holding up the game. The records are written in
+ * segment files of limited size, each with an index of the offsets of its
+ * records. Each archive opened starts a new segment, segments are never
+ * changed once they are closed. If writing fails, the segment is cut back
+ * to the games that have been written completely, the other games are 
+ * dropped, and the next segment is started. See {@link RecordFormat} for 
+ * the format and {@link ArchiveScanner} for reading the archive. The thread
+ * also adds the games written to the {@link PositionIndex} of the archive.
+ * Games left unindexed by the previous run, up to a chunk of the index, are
+ * indexed by a thread of their own, so neither opening the archive nor 
+ * writing games waits for them. Until they are indexed, the games written
+ * are not added to the index, and lookups only find the games of the
+ * chunks written before; afterwards the games written meanwhile are read
+ * back and indexed.
+ */
+public class GameArchive
+{
+	/**
+	 * The size of a segment, after which the next segment is started.
+	 */
+	static final int SEGMENT_SIZE = 64 * 1024 * 1024;
+
+	/**
+	 * The maximum number of games waiting to be written.
+	 */
+	private static final int QUEUE_CAPACITY = 10000;
+
+	/**
+	 * The maximum number of games written before the files are flushed, 
+	 * even if more games are waiting.
+	 */
+	private static final int FLUSH_INTERVAL = 256;
+
+	/**
+	 * Marks the end of the queue when the archive is closed.
+	 */
+	private static final GameRecord END = new GameRecord(0, 0, 0, null, null, null, null, 0, 0, null);
+
+	/**
+	 * The directory of the archive.
+	 */
+	private File directory;
+
+	/**
+	 * The games waiting to be written.
+	 */
+	private BlockingQueue<GameRecord> queue = new ArrayBlockingQueue<GameRecord>(QUEUE_CAPACITY);
+
+	/**
+	 * The thread writing the games.
+	 */
+	private Thread writer;
+
+	/**
+	 * The number of the current segment.
+	 */
+	private int segment;
+
+	/**
+	 * The file of the current segment.
+	 */
+	private File segmentFile;
+
+	/**
+	 * The file of the index of the current segment.
+	 */
+	private File indexFile;
+
+	/**
+	 * The current segment, null if it could not be started.
+	 */
+	private OutputStream segmentOut;
+
+	/**
+	 * The index of the current segment.
+	 */
+	private DataOutputStream indexOut;
+
+	/**
+	 * The number of bytes written to the current segment.
+	 */
+	private int segmentSize;
+
+	/**
+	 * The number of bytes of the current segment that have been flushed.
+	 */
+	private int flushedSegmentSize;
+
+	/**
+	 * The number of bytes written to the index of the current segment.
+	 */
+	private int indexSize;
+
+	/**
+	 * The number of bytes of the index of the current segment that have been
+	 * flushed.
+	 */
+	private int flushedIndexSize;
+
+	/**
+	 * The games written since the files have been flushed, in their order.
+	 */
+	private List<GameRecord> unflushed = new ArrayList<GameRecord>();
+
+	/**
+	 * The number of games written.
+	 */
+	private volatile long written = 0;
+
+	/**
+	 * The number of games in the archive, written and flushed before or by 
+	 * this archive, which is the number of the first unflushed game.
+	 */
+	private long games;
+
+	/**
+	 * The index of the positions of the games.
+	 */
+	private PositionIndex positions;
+
+	/**
+	 * Indicates if the games written are added to the position index.
+	 */
+	private boolean indexing = true;
+
+	/**
+	 * Indicates if the games left unindexed by the previous run have been 
+	 * indexed. Until then, the position index belongs to the thread indexing
+	 * them, afterwards to the writing thread.
+	 */
+	private volatile boolean caughtUp = false;
+
+	/**
+	 * The number of games dropped, because the queue was full or they could
+	 * not be written.
+	 */
+	private AtomicLong dropped = new AtomicLong();
+
+	/**
+	 * Indicates if the archive is closed. Guarded by the lock of the queue, 
+	 * so no game is queued behind the end of the queue.
+	 */
+	private boolean closed = false;
+
+	/**
+	 * Opens an archive in the given directory, which is created if needed,
+	 * and starts a new segment behind the existing ones. The games not yet
+	 * in the position index are indexed in the background.
+	 * @param directory the directory of the archive.
+	 * @throws IOException if the first segment could not be created.
+	 */
+	public GameArchive(File directory) throws IOException
+	{
+		this.directory = directory;
+		if (!directory.isDirectory() && !directory.mkdirs())
+		{
+			throw new IOException("could not create " + directory);
+		}
+
+		for (File aFile : listSegments(directory))
+		{
+			segment = Math.max(segment, RecordFormat.getSegmentNumber(aFile));
+		}
+		games = ArchiveScanner.count(directory);
+		positions = new PositionIndex(directory, true);
+		this.startSegment();
+
+		final long end = games;
+		Thread indexer = new Thread(new Runnable()
+		{
+			public void run()
+			{
+				catchUp(end);
+			}
+		}, "kaskade-archive-index");
+		indexer.setDaemon(true);
+		indexer.start();
+
+		writer = new Thread(new Runnable()
+		{
+			public void run()
+			{
+				writeRecords();
+			}
+		}, "kaskade-archive");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Returns the segment files of an archive in their order.
+	 * @param directory the directory of the archive.
+	 * @return the segment files.
+	 */
+	static List<File> listSegments(File directory)
+	{
+		List<File> segments = new ArrayList<File>();
+		File[] files = directory.listFiles();
+		if (files != null)
+		{
+			for (File aFile : files)
+			{
+				if (RecordFormat.getSegmentNumber(aFile) >= 0)
+					segments.add(aFile);
+			}
+		}
+		// the numbers have a fixed number of digits
+		Collections.sort(segments);
+		return segments;
+	}
+
+	/**
+	 * Hands a game over to be written. Does not wait, the game is dropped if
+	 * too many games are waiting or the archive is closed.
+	 * @param record the record of the game.
+	 * @return true, if the game will be written.
+	 */
+	public boolean append(GameRecord record)
+	{
+		synchronized (queue)
+		{
+			if (!closed && queue.offer(record))
+				return true;
+		}
+		dropped.incrementAndGet();
+		return false;
+	}
+
+	/**
+	 * Returns the number of games written.
+	 * @return the number of games written.
+	 */
+	public long getWritten()
+	{
+		return written;
+	}
+
+	/**
+	 * Returns the index of the positions of the archive's games. Games are
+	 * found once the chunk of the index holding them has been written.
+	 * @return the position index.
+	 */
+	public PositionIndex getPositions()
+	{
+		return positions;
+	}
+
+	/**
+	 * Returns the number of games that have not been written, because too
+	 * many games were waiting or the games could not be written.
+	 * @return the number of dropped games.
+	 */
+	public long getDropped()
+	{
+		return dropped.get();
+	}
+
+	/**
+	 * Writes the games waiting and closes the archive.
+	 */
+	public void close()
+	{
+		synchronized (queue)
+		{
+			if (closed)
+				return;
+			closed = true;
+		}
+
+		try
+		{
+			queue.put(END);
+			writer.join();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Indexes the games of the archive missing in the position index, which
+	 * may take a while after the server has not been stopped cleanly. If 
+	 * indexing fails, the games written are not indexed either, until the
+	 * archive is opened again.
+	 * @param end the number of the first game written by this archive.
+	 */
+	private void catchUp(long end)
+	{
+		long from = positions.getIndexedGames();
+		if (from < end)
+		{
+			System.out.println("indexing the positions of " + (end - from) + " archived games");
+		}
+		long start = System.currentTimeMillis();
+		try
+		{
+			positions.catchUp(end);
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+			return;
+		}
+		if (from < end)
+		{
+			System.out.println("indexed the positions of " + (end - from) + " archived games in "
+					+ (System.currentTimeMillis() - start) + " ms");
+		}
+		caughtUp = true;
+	}
+
+	/**
+	 * Writes the games until the archive is closed. The files are flushed
+	 * whenever no more games are waiting, or many games have been written
+	 * since the last flush.
+	 */
+	private void writeRecords()
+	{
+		RecordFormat.Buffer buffer = new RecordFormat.Buffer();
+		try
+		{
+			while (true)
+			{
+				GameRecord record = queue.take();
+				if (record == END)
+					break;
+
+				try
+				{
+					this.write(record, buffer);
+					if (queue.isEmpty() || unflushed.size() >= FLUSH_INTERVAL)
+						this.flush();
+				}
+				catch (IOException e)
+				{
+					e.printStackTrace();
+					this.recover(record);
+				}
+			}
+		}
+		catch (InterruptedException e)
+		{
+			// archive is closed
+		}
+
+		try
+		{
+			if (segmentOut != null)
+			{
+				this.flush();
+				segmentOut.close();
+				indexOut.close();
+			}
+			if (indexing && caughtUp)
+				positions.flush();
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+			this.recover(null);
+		}
+	}
+
+	/**
+	 * Writes a game. The game is only complete in the archive, once the files
+	 * have been flushed.
+	 */
+	private void write(GameRecord record, RecordFormat.Buffer buffer) throws IOException
+	{
+		buffer.clear();
+		RecordFormat.encode(record, buffer);
+
+		if (segmentOut == null)
+		{
+			this.startSegment();
+		}
+		else if (segmentSize > RecordFormat.HEADER_SIZE && segmentSize + buffer.size() + 5 > SEGMENT_SIZE)
+		{
+			this.flush();
+			segmentOut.close();
+			indexOut.close();
+			this.startSegment();
+		}
+
+		unflushed.add(record);
+		int offset = segmentSize;
+
+		// length of the record as varint
+		int length = buffer.size();
+		while ((length & ~0x7f) != 0)
+		{
+			segmentOut.write((length & 0x7f) | 0x80);
+			length >>>= 7;
+			segmentSize++;
+		}
+		segmentOut.write(length);
+		segmentSize++;
+
+		segmentOut.write(buffer.getBytes(), 0, buffer.size());
+		segmentSize += buffer.size();
+
+		// the index entry follows the record, so it never points to a torn record
+		indexOut.writeInt(offset);
+		indexSize += 4;
+	}
+
+	/**
+	 * Flushes the files and adds the games written since the last flush to
+	 * the archive and, once the games of the previous run are indexed, to 
+	 * the position index.
+	 * @throws IOException if the files could not be flushed.
+	 */
+	private void flush() throws IOException
+	{
+		segmentOut.flush();
+		indexOut.flush();
+		flushedSegmentSize = segmentSize;
+		flushedIndexSize = indexSize;
+
+		for (GameRecord aRecord : unflushed)
+		{
+			long number = games++;
+			written++;
+			if (indexing && caughtUp)
+			{
+				try
+				{
+					// the games flushed while the previous run was indexed
+					if (positions.getIndexedGames() < number)
+						positions.catchUp(number);
+					positions.add(number, aRecord);
+				}
+				catch (IOException e)
+				{
+					e.printStackTrace();
+					indexing = false; // indexed again when reopened
+				}
+			}
+		}
+		unflushed.clear();
+	}
+
+	/**
+	 * Recovers from a failed write. The files of the current segment are cut
+	 * back to the end of the last flush and closed, and the games written 
+	 * since are dropped. The next segment is started with the next game.
+	 * @param failed the game whose writing has failed, null if none.
+	 */
+	private void recover(GameRecord failed)
+	{
+		int lost = unflushed.size();
+		if (failed != null && !unflushed.contains(failed))
+			lost++;
+		dropped.addAndGet(lost);
+		unflushed.clear();
+
+		if (segmentOut != null)
+		{
+			closeQuietly(segmentOut);
+			closeQuietly(indexOut);
+			segmentOut = null;
+			indexOut = null;
+			truncate(segmentFile, flushedSegmentSize);
+			truncate(indexFile, flushedIndexSize);
+		}
+	}
+
+	private void startSegment() throws IOException
+	{
+		segment++;
+		File newSegmentFile = new File(directory, RecordFormat.getFileName(segment, RecordFormat.SEGMENT_EXTENSION));
+		File newIndexFile = new File(directory, RecordFormat.getFileName(segment, RecordFormat.INDEX_EXTENSION));
+		OutputStream newSegmentOut = null;
+		DataOutputStream newIndexOut = null;
+		try
+		{
+			newSegmentOut = new BufferedOutputStream(new FileOutputStream(newSegmentFile), 64 * 1024);
+			newIndexOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(newIndexFile)));
+
+			DataOutputStream header = new DataOutputStream(newSegmentOut);
+			header.writeInt(RecordFormat.MAGIC);
+			header.writeByte(RecordFormat.VERSION);
+			header.flush(); // an empty segment can be read
+		}
+		catch (IOException e)
+		{
+			// leave no segment behind, that cannot be read
+			closeQuietly(newSegmentOut);
+			closeQuietly(newIndexOut);
+			newSegmentFile.delete();
+			newIndexFile.delete();
+			throw e;
+		}
+
+		segmentFile = newSegmentFile;
+		indexFile = newIndexFile;
+		segmentOut = newSegmentOut;
+		indexOut = newIndexOut;
+		segmentSize = RecordFormat.HEADER_SIZE;
+		flushedSegmentSize = segmentSize;
+		indexSize = 0;
+		flushedIndexSize = 0;
+	}
+
+	private static void truncate(File file, long length)
+	{
+		try
+		{
+			RandomAccessFile out = new RandomAccessFile(file, "rw");
+			try
+			{
+				out.setLength(length);
+			}
+			finally
+			{
+				out.close();
+			}
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+
+	private static void closeQuietly(OutputStream out)
+	{
+		if (out == null)
+			return;
+		try
+		{
+			out.close();
+		}
+		catch (IOException e)
+		{
+			// the stream is given up
+		}
+	}
+}
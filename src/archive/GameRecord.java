@@ -0,0 +1,228 @@
+/*
+ * Created on 30.01.2007
+ */
+package archive;
+
+import gameelements.GameBoard;
+import gameelements.GameColor;
+import gameelements.GameSituation;
+import gameelements.Position;
+import gameelements.GameSituation.FieldSetup;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The record of a played game as kept in the game archive: the board, its
+ * setup, the players, the strategy of the computer player, the result and
+ * all moves. Fields are given by their index counted line by line, setup
+ * values as in the game situation, the number of tokens with the sign of
+ * the color, positive for white. A record is not changed after its creation.
+ */
+public class GameRecord
+{
+	/**
+	 * Result of a game that has been stopped before it was won.
+	 */
+	public static final int RESULT_NONE = 0;
+
+	/**
+	 * Result of a game won by white, the first player.
+	 */
+	public static final int RESULT_WHITE = 1;
+
+	/**
+	 * Result of a game won by black, the second player.
+	 */
+	public static final int RESULT_BLACK = 2;
+
+	/**
+	 * Strategy of a game without computer player.
+	 */
+	public static final int NO_STRATEGY = -1;
+
+	private long startTime;
+
+	private int dimX;
+
+	private int dimY;
+
+	private int[] setupIndices;
+
+	private byte[] setupValues;
+
+	private String[] playerNames;
+
+	private int[] playerTypes;
+
+	private int strategy;
+
+	private int result;
+
+	private int[] moves;
+
+	/**
+	 * Initiates a record.
+	 * @param startTime the system time in milliseconds of the game's start.
+	 * @param dimX the dimension of the board on x-axis.
+	 * @param dimY the dimension of the board on y-axis.
+	 * @param setupIndices the indices of the fields set up before the game.
+	 * @param setupValues the values of the fields set up.
+	 * @param playerNames the names of white and black.
+	 * @param playerTypes the types of white and black, as defined by the
+	 * player class.
+	 * @param strategy the strategy of the computer player, as defined by the
+	 * strategy class, NO_STRATEGY if there is none.
+	 * @param result the result, RESULT_NONE, RESULT_WHITE or RESULT_BLACK.
+	 * @param moves the indices of the fields of all moves.
+	 */
+	public GameRecord(long startTime, int dimX, int dimY, int[] setupIndices, byte[] setupValues,
+			String[] playerNames, int[] playerTypes, int strategy, int result, int[] moves)
+	{
+		this.startTime = startTime;
+		this.dimX = dimX;
+		this.dimY = dimY;
+		this.setupIndices = setupIndices;
+		this.setupValues = setupValues;
+		this.playerNames = playerNames;
+		this.playerTypes = playerTypes;
+		this.strategy = strategy;
+		this.result = result;
+		this.moves = moves;
+	}
+
+	/**
+	 * Returns the start of the game.
+	 * @return the system time in milliseconds of the game's start.
+	 */
+	public long getStartTime()
+	{
+		return startTime;
+	}
+
+	/**
+	 * Returns the dimension of the board on x-axis.
+	 * @return the dimension on x-axis.
+	 */
+	public int getDimX()
+	{
+		return dimX;
+	}
+
+	/**
+	 * Returns the dimension of the board on y-axis.
+	 * @return the dimension on y-axis.
+	 */
+	public int getDimY()
+	{
+		return dimY;
+	}
+
+	/**
+	 * Returns the number of fields set up before the game.
+	 * @return the number of fields set up.
+	 */
+	public int getSetupSize()
+	{
+		return setupIndices.length;
+	}
+
+	/**
+	 * Returns the index of a field set up before the game.
+	 * @param i the number of the field set up.
+	 * @return the index of the field.
+	 */
+	public int getSetupIndex(int i)
+	{
+		return setupIndices[i];
+	}
+
+	/**
+	 * Returns the value of a field set up before the game.
+	 * @param i the number of the field set up.
+	 * @return the number of tokens, negative for black.
+	 */
+	public byte getSetupValue(int i)
+	{
+		return setupValues[i];
+	}
+
+	/**
+	 * Returns the name of a player.
+	 * @param i 0 for white, 1 for black.
+	 * @return the name of the player.
+	 */
+	public String getPlayerName(int i)
+	{
+		return playerNames[i];
+	}
+
+	/**
+	 * Returns the type of a player.
+	 * @param i 0 for white, 1 for black.
+	 * @return the type of the player.
+	 */
+	public int getPlayerType(int i)
+	{
+		return playerTypes[i];
+	}
+
+	/**
+	 * Returns the strategy of the computer player.
+	 * @return the strategy, NO_STRATEGY if there is no computer player.
+	 */
+	public int getStrategy()
+	{
+		return strategy;
+	}
+
+	/**
+	 * Returns the result of the game.
+	 * @return RESULT_NONE, RESULT_WHITE or RESULT_BLACK.
+	 */
+	public int getResult()
+	{
+		return result;
+	}
+
+	/**
+	 * Returns the number of moves.
+	 * @return the number of moves.
+	 */
+	public int getMoveCount()
+	{
+		return moves.length;
+	}
+
+	/**
+	 * Returns the index of the field of a move.
+	 * @param i the number of the move, starting with 0 for white's first move.
+	 * @return the index of the field.
+	 */
+	public int getMove(int i)
+	{
+		return moves[i];
+	}
+
+	/**
+	 * Creates the situation at the start of the game, with the fields set up.
+	 * @param board the board of the game, with the dimensions of the record.
+	 * @return the situation before the first move.
+	 */
+	public GameSituation createSituation(GameBoard board)
+	{
+		if (setupIndices.length == 0)
+			return new GameSituation(board, null);
+
+		List<FieldSetup> setup = new ArrayList<FieldSetup>();
+		for (int i = 0; i < setupIndices.length; i++)
+		{
+			FieldSetup aFieldSetting = new FieldSetup();
+			aFieldSetting.position = new Position(setupIndices[i] % dimX, setupIndices[i] / dimX);
+			aFieldSetting.color = setupValues[i] < 0 ? GameColor.BLACK : GameColor.WHITE;
+			aFieldSetting.tokens = Math.abs(setupValues[i]);
+			setup.add(aFieldSetting);
+		}
+		return new GameSituation(board, setup);
+	}
+}
@@ -0,0 +1,813 @@
+/*
+ * Created on 01.02.2007
+ */
+package archive;
+
+import gameelements.Game;
+import gameelements.GameBoard;
+import gameelements.GameColor;
+import gameelements.GameSituation;
+import gameelements.Position;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An index of the positions of an archive, telling in which games and after
+ * which move a position occurred. Positions are identified by the canonical
+ * hash value of their situation, so mirror images and rotations of a
+ * position are the same position, together with the dimensions of the board
+ * and the player to move. The position reached by the winning move is an
+ * exception: as the overflows stop once the game is won, the tokens left
+ * depend on the order of the overflows, so that position is only found in
+ * the orientation it occurred in.
+ * <p>
+ * The index is kept beside the archive in chunk files, each covering the
+ * positions of a range of games. A chunk is an open-addressing hash table
+ * with linear probing, whose slots hold a key and the offset and number of
+ * its postings, followed by the postings of all keys. A posting holds the
+ * number of the game, the number of moves leading to the position and the
+ * symmetry mapping the game's situation onto its canonical form, sorted by
+ * game and move. The chunks are mapped into memory, so a lookup is a probe
+ * of a few slots in each chunk.
+ * <p>
+ * The archive adds each game to the index after writing it. The positions
+ * are collected in memory and written as a chunk once there are enough of
+ * them or the archive is closed. Games of chunks not written, e.g. because
+ * of a crash of the server, are indexed again from the archive when it is
+ * opened the next time. Lookups see the chunks written so far.
+ */
+public class PositionIndex
+{
+	/**
+	 * The usage message.
+	 */
+	private static final String USAGE =
+		"usage: PositionIndex -in dir [-build] [-dim XxY -moves \"x,y x,y ...\"] [-max n]";
+
+	/**
+	 * The magic number at the start of each chunk, written when the chunk is
+	 * complete.
+	 */
+	private static final int MAGIC = 0x4B534B50; // "KSKP"
+
+	/**
+	 * The version of the format.
+	 */
+	private static final int VERSION = 1;
+
+	/**
+	 * The length of the header of a chunk: magic number, version, number of
+	 * slots, number of postings, first and end game.
+	 */
+	private static final int HEADER_SIZE = 32;
+
+	/**
+	 * The length of a slot: key, offset and number of its postings.
+	 */
+	private static final int SLOT_SIZE = 16;
+
+	/**
+	 * The number of positions after which a chunk is written.
+	 */
+	static final int CHUNK_POSITIONS = 3 * 1024 * 1024;
+
+	/**
+	 * The maximum number of moves of a game that are indexed.
+	 */
+	static final int MAX_PLY = (1 << 13) - 1;
+
+	/**
+	 * The prefix of chunk files.
+	 */
+	private static final String PREFIX = "positions-";
+
+	/**
+	 * The extension of chunk files.
+	 */
+	private static final String EXTENSION = ".pos";
+
+	/**
+	 * The directory of the archive.
+	 */
+	private File directory;
+
+	/**
+	 * The chunks written, replaced by a new list whenever a chunk is added.
+	 */
+	private volatile List<Chunk> chunks;
+
+	/**
+	 * The number of the last chunk.
+	 */
+	private int lastChunk = 0;
+
+	/**
+	 * The end of the games indexed, written or collected.
+	 */
+	private long indexedGames = 0;
+
+	/**
+	 * The first game of the positions collected.
+	 */
+	private long firstCollectedGame;
+
+	/**
+	 * The keys of the positions collected.
+	 */
+	private long[] keys = new long[1024];
+
+	/**
+	 * The postings of the positions collected.
+	 */
+	private long[] postings = new long[1024];
+
+	/**
+	 * The number of positions collected.
+	 */
+	private int collected = 0;
+
+	/**
+	 * The boards by dimensions.
+	 */
+	private Map<Integer, GameBoard> boards = new HashMap<Integer, GameBoard>();
+
+	/**
+	 * Opens the index of an archive for lookups.
+	 * @param directory the directory of the archive.
+	 * @throws IOException if a chunk could not be read.
+	 */
+	public PositionIndex(File directory) throws IOException
+	{
+		this(directory, false);
+	}
+
+	/**
+	 * Opens the index of an archive.
+	 * @param directory the directory of the archive.
+	 * @param writable true, if games will be added, in which case chunks not
+	 * completed are deleted.
+	 * @throws IOException if a chunk could not be read.
+	 */
+	PositionIndex(File directory, boolean writable) throws IOException
+	{
+		this.directory = directory;
+
+		List<File> files = new ArrayList<File>();
+		File[] all = directory.listFiles();
+		if (all != null)
+		{
+			for (File aFile : all)
+			{
+				if (getChunkNumber(aFile) >= 0)
+					files.add(aFile);
+			}
+		}
+		Collections.sort(files);
+
+		List<Chunk> opened = new ArrayList<Chunk>();
+		for (File aFile : files)
+		{
+			lastChunk = Math.max(lastChunk, getChunkNumber(aFile));
+			Chunk chunk = Chunk.open(aFile);
+			if (chunk != null)
+			{
+				opened.add(chunk);
+				indexedGames = Math.max(indexedGames, chunk.endGame);
+			}
+			else if (writable && !aFile.delete())
+			{
+				throw new IOException("could not delete incomplete " + aFile);
+			}
+		}
+		chunks = Collections.unmodifiableList(opened);
+		firstCollectedGame = indexedGames;
+	}
+
+	/**
+	 * Builds the index of an archive or looks up the games in which a
+	 * position occurred, with the moves following the position.
+	 * @param args the arguments, see USAGE.
+	 */
+	public static void main(String[] args)
+	{
+		File input = null;
+		boolean build = false;
+		int dimX = 0;
+		int dimY = 0;
+		String moves = null;
+		int max = 1000;
+		GameSituation situation = null;
+		int ply = 0;
+		try
+		{
+			for (int i = 0; i < args.length; i++)
+			{
+				String arg = args[i];
+				if (arg.equals("-build"))
+				{
+					build = true;
+					continue;
+				}
+				if (i + 1 >= args.length)
+					throw new IllegalArgumentException("missing value for " + arg);
+				String value = args[++i];
+				if (arg.equals("-in"))
+					input = new File(value);
+				else if (arg.equals("-moves"))
+					moves = value;
+				else if (arg.equals("-dim"))
+				{
+					int separator = value.indexOf('x');
+					try
+					{
+						dimX = Integer.parseInt(value.substring(0, separator));
+						dimY = Integer.parseInt(value.substring(separator + 1));
+					}
+					catch (RuntimeException e)
+					{
+						throw new IllegalArgumentException("illegal dimensions: " + value);
+					}
+					if (dimX < Game.NR_OF_FIELDS_MIN || dimX > Game.NR_OF_FIELDS_MAX
+							|| dimY < Game.NR_OF_FIELDS_MIN || dimY > Game.NR_OF_FIELDS_MAX)
+						throw new IllegalArgumentException("illegal dimensions: " + value);
+				}
+				else if (arg.equals("-max"))
+				{
+					try
+					{
+						max = Integer.parseInt(value);
+						if (max < 1)
+							throw new NumberFormatException();
+					}
+					catch (NumberFormatException e)
+					{
+						throw new IllegalArgumentException("illegal value for -max: " + value);
+					}
+				}
+				else
+					throw new IllegalArgumentException("unknown argument: " + arg);
+			}
+			if (input == null || !input.isDirectory())
+				throw new IllegalArgumentException("missing archive");
+			if (!build && moves == null)
+				throw new IllegalArgumentException("missing position");
+			if (moves != null)
+			{
+				if (dimX == 0)
+					throw new IllegalArgumentException("missing dimensions");
+				String[] fields = moves.trim().length() == 0 ? new String[0] : moves.trim().split("\\s+");
+				situation = createPosition(dimX, dimY, fields);
+				ply = fields.length;
+			}
+		}
+		catch (IllegalArgumentException e)
+		{
+			System.err.println(e.getMessage());
+			System.err.println(USAGE);
+			System.exit(1);
+		}
+
+		try
+		{
+			if (build)
+			{
+				long start = System.currentTimeMillis();
+				PositionIndex index = new PositionIndex(input, true);
+				long from = index.getIndexedGames();
+				index.catchUp(ArchiveScanner.count(input));
+				index.flush();
+				System.out.println((index.getIndexedGames() - from) + " games indexed in "
+						+ (System.currentTimeMillis() - start) + " ms");
+			}
+			if (situation != null)
+			{
+				query(new PositionIndex(input), input, situation, ply, max);
+			}
+		}
+		catch (IOException e)
+		{
+			System.err.println("could not use position index: " + e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Plays the moves of a position, alternately by white and black, on an
+	 * empty board.
+	 * @param dimX the width of the board.
+	 * @param dimY the height of the board.
+	 * @param fields the moves, each as "x,y".
+	 * @return the situation of the position.
+	 * @throws IllegalArgumentException if a move is malformed, outside of the
+	 * board, on a field of the opponent or after the end of the game.
+	 */
+	private static GameSituation createPosition(int dimX, int dimY, String[] fields)
+	{
+		GameSituation situation = new GameSituation(new GameBoard(dimX, dimY), null);
+		GameColor color = GameColor.WHITE;
+		for (String aField : fields)
+		{
+			Position pos;
+			try
+			{
+				int separator = aField.indexOf(',');
+				pos = new Position(Integer.parseInt(aField.substring(0, separator)),
+						Integer.parseInt(aField.substring(separator + 1)));
+			}
+			catch (RuntimeException e)
+			{
+				throw new IllegalArgumentException("illegal move: " + aField);
+			}
+			if (pos.getX() < 0 || pos.getX() >= dimX || pos.getY() < 0 || pos.getY() >= dimY)
+				throw new IllegalArgumentException("move outside of the board: " + aField);
+			if (situation.isUniColored())
+				throw new IllegalArgumentException("move after the end of the game: " + aField);
+			if (!situation.isEmpty(pos) && situation.getColor(pos) != color)
+				throw new IllegalArgumentException("move on a field of the opponent: " + aField);
+			situation.addToken(pos, color, false);
+			color = color.getOppositeColor();
+		}
+		return situation;
+	}
+
+	private static void query(PositionIndex index, File input, GameSituation situation, int ply, int max)
+		throws IOException
+	{
+		int dimX = situation.getDimX();
+		long start = System.nanoTime();
+		List<Occurrence> occurrences = index.lookup(situation, ply);
+		long elapsed = System.nanoTime() - start;
+		System.out.println(occurrences.size() + " occurrences found in " + (elapsed / 1000) + " microseconds");
+
+		// the moves following the position, in the orientation of the query
+		final Map<Integer, long[]> next = new HashMap<Integer, long[]>();
+		ArchiveScanner scanner = new ArchiveScanner(input);
+		for (int i = 0; i < occurrences.size() && i < max; i++)
+		{
+			Occurrence anOccurrence = occurrences.get(i);
+			if (!scanner.seek(anOccurrence.getGame()) || !scanner.next()
+					|| anOccurrence.getPly() >= scanner.getMoveCount())
+				continue;
+			Integer move = Integer.valueOf(anOccurrence.toQuery(scanner.getMove(anOccurrence.getPly())));
+			long[] results = next.get(move);
+			if (results == null)
+			{
+				results = new long[3];
+				next.put(move, results);
+			}
+			results[0]++;
+			if (scanner.getResult() != GameRecord.RESULT_NONE)
+				results[scanner.getResult()]++;
+		}
+
+		List<Integer> sorted = new ArrayList<Integer>(next.keySet());
+		Collections.sort(sorted, new Comparator<Integer>()
+		{
+			public int compare(Integer a, Integer b)
+			{
+				long countA = next.get(a)[0];
+				long countB = next.get(b)[0];
+				return countA > countB ? -1 : countA < countB ? 1 : a.compareTo(b);
+			}
+		});
+		System.out.println("x,y,games,whiteWins,blackWins");
+		for (Integer aMove : sorted)
+		{
+			long[] results = next.get(aMove);
+			System.out.println((aMove.intValue() % dimX) + "," + (aMove.intValue() / dimX) + ","
+					+ results[0] + "," + results[GameRecord.RESULT_WHITE] + "," + results[GameRecord.RESULT_BLACK]);
+		}
+	}
+
+	/**
+	 * Returns the end of the games indexed, i.e. the number of the first game
+	 * not yet indexed.
+	 * @return the number of the first game not indexed.
+	 */
+	long getIndexedGames()
+	{
+		return indexedGames;
+	}
+
+	/**
+	 * Looks up the games in which a position occurred.
+	 * @param situation the situation of the position.
+	 * @param ply the number of moves leading to the position, which decides
+	 * the player to move.
+	 * @return the occurrences of the position, by game and move.
+	 */
+	public List<Occurrence> lookup(GameSituation situation, int ply)
+	{
+		int symmetry = situation.getCanonicalSymmetry();
+		long key = key(situation.getHash(symmetry), situation.getDimX(), situation.getDimY(), ply);
+
+		List<Occurrence> occurrences = new ArrayList<Occurrence>();
+		for (Chunk aChunk : chunks)
+		{
+			aChunk.lookup(key, situation.getDimX(), situation.getDimY(), symmetry, occurrences);
+		}
+		return occurrences;
+	}
+
+	/**
+	 * Counts the games and moves in which a position occurred, without
+	 * reading the occurrences.
+	 * @param situation the situation of the position.
+	 * @param ply the number of moves leading to the position.
+	 * @return the number of occurrences of the position.
+	 */
+	public int count(GameSituation situation, int ply)
+	{
+		long key = key(situation.getHash(situation.getCanonicalSymmetry()),
+				situation.getDimX(), situation.getDimY(), ply);
+
+		int count = 0;
+		for (Chunk aChunk : chunks)
+		{
+			count += aChunk.count(key);
+		}
+		return count;
+	}
+
+	/**
+	 * Indexes the games of the archive from the first game not indexed up to
+	 * the given game.
+	 * @param end the number of the first game not to be indexed.
+	 * @throws IOException if the archive could not be read or a chunk could
+	 * not be written.
+	 */
+	void catchUp(long end) throws IOException
+	{
+		ArchiveScanner scanner = new ArchiveScanner(directory);
+		if (indexedGames >= end || !scanner.seek(indexedGames))
+			return;
+		while (indexedGames < end && scanner.next() && scanner.getNumber() < end)
+		{
+			this.add(scanner.getNumber(), scanner.getRecord());
+		}
+		// games cut off are skipped
+		indexedGames = Math.max(indexedGames, end);
+	}
+
+	/**
+	 * Adds the positions of a game, after each of its moves. Games are added
+	 * in the order of their numbers.
+	 * @param game the number of the game.
+	 * @param record the record of the game.
+	 * @throws IOException if a chunk could not be written.
+	 */
+	void add(long game, GameRecord record) throws IOException
+	{
+		int dimX = record.getDimX();
+		int dimY = record.getDimY();
+		Integer dimensions = Integer.valueOf((dimX << 16) | dimY);
+		GameBoard board = boards.get(dimensions);
+		if (board == null)
+		{
+			board = new GameBoard(dimX, dimY);
+			boards.put(dimensions, board);
+		}
+
+		GameSituation situation = record.createSituation(board);
+		GameColor color = GameColor.WHITE;
+		int moves = Math.min(record.getMoveCount(), MAX_PLY);
+		for (int i = 0; i < moves; i++)
+		{
+			int index = record.getMove(i);
+			if (index < 0 || index >= dimX * dimY)
+				break;
+			situation.addToken(new Position(index % dimX, index / dimX), color, false);
+			color = color.getOppositeColor();
+
+			int symmetry = situation.getCanonicalSymmetry();
+			if (collected == keys.length)
+			{
+				keys = grow(keys);
+				postings = grow(postings);
+			}
+			keys[collected] = key(situation.getHash(symmetry), dimX, dimY, i + 1);
+			postings[collected] = (game << 16) | ((i + 1) << 3) | symmetry;
+			collected++;
+		}
+		indexedGames = game + 1;
+
+		if (collected >= CHUNK_POSITIONS)
+			this.flush();
+	}
+
+	/**
+	 * Writes the positions collected as a chunk.
+	 * @throws IOException if the chunk could not be written.
+	 */
+	void flush() throws IOException
+	{
+		if (collected == 0)
+		{
+			firstCollectedGame = indexedGames;
+			return;
+		}
+
+		File file = new File(directory, getFileName(++lastChunk));
+		Chunk chunk = Chunk.write(file, keys, postings, collected, firstCollectedGame, indexedGames);
+
+		List<Chunk> extended = new ArrayList<Chunk>(chunks);
+		extended.add(chunk);
+		chunks = Collections.unmodifiableList(extended);
+
+		collected = 0;
+		firstCollectedGame = indexedGames;
+		if (keys.length > CHUNK_POSITIONS)
+		{
+			keys = new long[1024];
+			postings = new long[1024];
+		}
+	}
+
+	private static long[] grow(long[] array)
+	{
+		long[] larger = new long[array.length * 2];
+		System.arraycopy(array, 0, larger, 0, array.length);
+		return larger;
+	}
+
+	/**
+	 * Returns the key of a position.
+	 * @param hash the canonical hash value of the situation.
+	 * @param dimX the dimension of the board on x-axis.
+	 * @param dimY the dimension of the board on y-axis.
+	 * @param ply the number of moves leading to the position.
+	 * @return the key, never 0, which marks empty slots.
+	 */
+	private static long key(long hash, int dimX, int dimY, int ply)
+	{
+		// SplitMix64 finalizer on the dimensions and the player to move
+		long z = (((long) dimX << 32) | ((long) dimY << 1) | (ply & 1)) * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		long key = hash ^ z ^ (z >>> 31);
+		return key == 0L ? 1L : key;
+	}
+
+	private static int slot(long key, int mask)
+	{
+		return (int) (key ^ (key >>> 32)) & mask;
+	}
+
+	private static String getFileName(int chunk)
+	{
+		String number = String.valueOf(chunk);
+		StringBuilder name = new StringBuilder(PREFIX);
+		for (int i = number.length(); i < 8; i++)
+			name.append('0');
+		return name.append(number).append(EXTENSION).toString();
+	}
+
+	private static int getChunkNumber(File file)
+	{
+		String name = file.getName();
+		if (!name.startsWith(PREFIX) || !name.endsWith(EXTENSION)
+				|| name.length() != PREFIX.length() + 8 + EXTENSION.length())
+			return -1;
+		try
+		{
+			return Integer.parseInt(name.substring(PREFIX.length(), PREFIX.length() + 8));
+		}
+		catch (NumberFormatException e)
+		{
+			return -1;
+		}
+	}
+
+	/**
+	 * An occurrence of a position in a game.
+	 */
+	public static class Occurrence
+	{
+		private long game;
+
+		private int ply;
+
+		private int symmetry;
+
+		private int querySymmetry;
+
+		private int dimX;
+
+		private int dimY;
+
+		Occurrence(long game, int ply, int symmetry, int querySymmetry, int dimX, int dimY)
+		{
+			this.game = game;
+			this.ply = ply;
+			this.symmetry = symmetry;
+			this.querySymmetry = querySymmetry;
+			this.dimX = dimX;
+			this.dimY = dimY;
+		}
+
+		/**
+		 * Returns the number of the game in the archive.
+		 * @return the number of the game.
+		 */
+		public long getGame()
+		{
+			return game;
+		}
+
+		/**
+		 * Returns the number of moves of the game leading to the position,
+		 * which is also the number of the next move of the game.
+		 * @return the number of moves before the position.
+		 */
+		public int getPly()
+		{
+			return ply;
+		}
+
+		/**
+		 * Maps the index of a field of the game onto the field of the
+		 * situation looked up, as the game may have reached the position
+		 * mirrored or rotated.
+		 * @param index the index of the field in the game.
+		 * @return the index of the field in the situation looked up.
+		 */
+		public int toQuery(int index)
+		{
+			int canonical = GameSituation.transform(index, symmetry, dimX, dimY);
+			return GameSituation.transform(canonical, GameSituation.inverse(querySymmetry), dimX, dimY);
+		}
+	}
+
+	/**
+	 * A chunk file mapped into memory.
+	 */
+	private static class Chunk
+	{
+		private ByteBuffer buffer;
+
+		private int mask;
+
+		private int postingsOffset;
+
+		private long endGame;
+
+		/**
+		 * Maps a chunk.
+		 * @param file the chunk file.
+		 * @return the chunk, null if the chunk is not complete.
+		 * @throws IOException if the chunk could not be read.
+		 */
+		static Chunk open(File file) throws IOException
+		{
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try
+			{
+				if (raf.length() < HEADER_SIZE || raf.readInt() != MAGIC)
+					return null;
+				if (raf.readInt() != VERSION)
+					throw new IOException(file + " has an unknown version");
+				FileChannel channel = raf.getChannel();
+				return new Chunk(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+			}
+			finally
+			{
+				raf.close(); // the mapping stays valid
+			}
+		}
+
+		/**
+		 * Writes a chunk. The magic number is written last, so a chunk
+		 * cut off is recognized as not complete.
+		 * @param file the chunk file.
+		 * @param keys the keys of the positions.
+		 * @param postings the postings of the positions, sorted for each key.
+		 * @param size the number of positions.
+		 * @param firstGame the number of the first game of the chunk.
+		 * @param endGame the number of the first game behind the chunk.
+		 * @return the chunk.
+		 * @throws IOException if the chunk could not be written.
+		 */
+		static Chunk write(File file, long[] keys, long[] postings, int size, long firstGame, long endGame)
+			throws IOException
+		{
+			long[] sorted = new long[size];
+			System.arraycopy(keys, 0, sorted, 0, size);
+			Arrays.sort(sorted);
+			int distinct = 0;
+			for (int i = 0; i < size; i++)
+			{
+				if (i == 0 || sorted[i] != sorted[i-1])
+					distinct++;
+			}
+			sorted = null;
+
+			// at most three quarters of the slots are used
+			int slots = 2;
+			while (slots * 3 < distinct * 4)
+				slots <<= 1;
+			int mask = slots - 1;
+			int postingsOffset = HEADER_SIZE + slots * SLOT_SIZE;
+
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			MappedByteBuffer mapped;
+			try
+			{
+				raf.setLength(0);
+				FileChannel channel = raf.getChannel();
+				mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, postingsOffset + (long) size * 8);
+			}
+			finally
+			{
+				raf.close(); // the mapping stays valid
+			}
+
+			// count the postings of each key
+			for (int i = 0; i < size; i++)
+			{
+				int s = findSlot(mapped, keys[i], mask);
+				int base = HEADER_SIZE + s * SLOT_SIZE;
+				mapped.putLong(base, keys[i]);
+				mapped.putInt(base + 12, mapped.getInt(base + 12) + 1);
+			}
+			// assign the ranges of the postings, then fill them in
+			int offset = 0;
+			for (int s = 0; s < slots; s++)
+			{
+				int base = HEADER_SIZE + s * SLOT_SIZE;
+				mapped.putInt(base + 8, offset);
+				offset += mapped.getInt(base + 12);
+				mapped.putInt(base + 12, 0);
+			}
+			for (int i = 0; i < size; i++)
+			{
+				int base = HEADER_SIZE + findSlot(mapped, keys[i], mask) * SLOT_SIZE;
+				int count = mapped.getInt(base + 12);
+				mapped.putLong(postingsOffset + (mapped.getInt(base + 8) + count) * 8, postings[i]);
+				mapped.putInt(base + 12, count + 1);
+			}
+
+			mapped.putInt(4, VERSION);
+			mapped.putInt(8, slots);
+			mapped.putInt(12, size);
+			mapped.putLong(16, firstGame);
+			mapped.putLong(24, endGame);
+			mapped.force();
+			mapped.putInt(0, MAGIC);
+			mapped.force();
+			return new Chunk(mapped);
+		}
+
+		private static int findSlot(ByteBuffer buffer, long key, int mask)
+		{
+			int s = slot(key, mask);
+			while (true)
+			{
+				long slotKey = buffer.getLong(HEADER_SIZE + s * SLOT_SIZE);
+				if (slotKey == key || slotKey == 0L)
+					return s;
+				s = (s + 1) & mask;
+			}
+		}
+
+		private Chunk(ByteBuffer buffer)
+		{
+			this.buffer = buffer;
+			this.mask = buffer.getInt(8) - 1;
+			this.postingsOffset = HEADER_SIZE + (mask + 1) * SLOT_SIZE;
+			this.endGame = buffer.getLong(24);
+		}
+
+		int count(long key)
+		{
+			int base = HEADER_SIZE + findSlot(buffer, key, mask) * SLOT_SIZE;
+			return buffer.getLong(base) == key ? buffer.getInt(base + 12) : 0;
+		}
+
+		void lookup(long key, int dimX, int dimY, int querySymmetry, List<Occurrence> occurrences)
+		{
+			int base = HEADER_SIZE + findSlot(buffer, key, mask) * SLOT_SIZE;
+			if (buffer.getLong(base) != key)
+				return;
+			int offset = postingsOffset + buffer.getInt(base + 8) * 8;
+			int count = buffer.getInt(base + 12);
+			for (int i = 0; i < count; i++)
+			{
+				long posting = buffer.getLong(offset + i * 8);
+				occurrences.add(new Occurrence(posting >>> 16, (int) (posting >>> 3) & MAX_PLY,
+						(int) posting & 7, querySymmetry, dimX, dimY));
+			}
+		}
+	}
+}
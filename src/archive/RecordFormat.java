@@ -0,0 +1,259 @@
+/*
+ * Created on 30.01.2007
+ */
+package archive;
+
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+
+/**
+ * The binary format of the game archive. The archive is a directory of
+ * segment files, each starting with a header of a magic number and the
+ * version of the format, followed by the records, each preceded by its
+ * length. Beside each segment an index file holds the offset of each record
+ * within the segment as int. Numbers are written as varints, seven bits per
+ * byte, lowest first, the highest bit set on all but the last byte.
+ * <p>
+ * A record consists of the start time, the dimensions, the number of set up
+ * fields with their index and zigzag-encoded value, the names of the players
+ * as UTF-8 preceded by their length, one byte each for the types of the
+ * players, the strategy plus one and the result, and the number of moves
+ * followed by the indices of their fields.
+ */
+class RecordFormat
+{
+	/**
+	 * The magic number at the start of each segment.
+	 */
+	static final int MAGIC = 0x4B534B41; // "KSKA"
+
+	/**
+	 * The version of the format.
+	 */
+	static final byte VERSION = 1;
+
+	/**
+	 * The length of the header of a segment.
+	 */
+	static final int HEADER_SIZE = 5;
+
+	/**
+	 * The extension of segment files.
+	 */
+	static final String SEGMENT_EXTENSION = ".seg";
+
+	/**
+	 * The extension of index files.
+	 */
+	static final String INDEX_EXTENSION = ".idx";
+
+	/**
+	 * The prefix of segment and index files.
+	 */
+	private static final String PREFIX = "games-";
+
+	/**
+	 * The number of digits of the segment number in file names.
+	 */
+	private static final int DIGITS = 8;
+
+	private RecordFormat() { }
+
+	/**
+	 * Returns the name of a segment file.
+	 * @param segment the number of the segment.
+	 * @param extension the extension of the file.
+	 * @return the name of the file.
+	 */
+	static String getFileName(int segment, String extension)
+	{
+		String number = String.valueOf(segment);
+		StringBuilder name = new StringBuilder(PREFIX);
+		for (int i = number.length(); i < DIGITS; i++)
+			name.append('0');
+		return name.append(number).append(extension).toString();
+	}
+
+	/**
+	 * Returns the number of a segment file.
+	 * @param file the file.
+	 * @return the number of the segment, -1 if the file is no segment file.
+	 */
+	static int getSegmentNumber(File file)
+	{
+		String name = file.getName();
+		if (!name.startsWith(PREFIX) || !name.endsWith(SEGMENT_EXTENSION)
+				|| name.length() != PREFIX.length() + DIGITS + SEGMENT_EXTENSION.length())
+			return -1;
+		try
+		{
+			return Integer.parseInt(name.substring(PREFIX.length(), PREFIX.length() + DIGITS));
+		}
+		catch (NumberFormatException e)
+		{
+			return -1;
+		}
+	}
+
+	/**
+	 * Encodes a record.
+	 * @param record the record.
+	 * @param out the buffer the record is appended to.
+	 */
+	static void encode(GameRecord record, Buffer out)
+	{
+		out.putVarLong(record.getStartTime());
+		out.putVarInt(record.getDimX());
+		out.putVarInt(record.getDimY());
+		out.putVarInt(record.getSetupSize());
+		for (int i = 0; i < record.getSetupSize(); i++)
+		{
+			out.putVarInt(record.getSetupIndex(i));
+			int value = record.getSetupValue(i);
+			out.putVarInt((value << 1) ^ (value >> 31));
+		}
+		out.putString(record.getPlayerName(0));
+		out.putString(record.getPlayerName(1));
+		out.put(record.getPlayerType(0));
+		out.put(record.getPlayerType(1));
+		out.put(record.getStrategy() + 1);
+		out.put(record.getResult());
+		out.putVarInt(record.getMoveCount());
+		for (int i = 0; i < record.getMoveCount(); i++)
+		{
+			out.putVarInt(record.getMove(i));
+		}
+	}
+
+	/**
+	 * Reads a varint.
+	 * @param in the buffer positioned at the varint.
+	 * @return the value.
+	 */
+	static int getVarInt(ByteBuffer in)
+	{
+		int b = in.get();
+		if (b >= 0)
+			return b;
+		int value = b & 0x7f;
+		for (int shift = 7; ; shift += 7)
+		{
+			b = in.get();
+			value |= (b & 0x7f) << shift;
+			if (b >= 0)
+				return value;
+		}
+	}
+
+	/**
+	 * Reads a varint of up to 64 bits.
+	 * @param in the buffer positioned at the varint.
+	 * @return the value.
+	 */
+	static long getVarLong(ByteBuffer in)
+	{
+		long value = 0;
+		for (int shift = 0; ; shift += 7)
+		{
+			int b = in.get();
+			value |= (long) (b & 0x7f) << shift;
+			if (b >= 0)
+				return value;
+		}
+	}
+
+	/**
+	 * Decodes a string.
+	 * @param in the buffer holding the string.
+	 * @param offset the offset of the UTF-8 bytes.
+	 * @param length the number of bytes.
+	 * @return the string.
+	 */
+	static String getString(ByteBuffer in, int offset, int length)
+	{
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++)
+			bytes[i] = in.get(offset + i);
+		try
+		{
+			return new String(bytes, "UTF-8");
+		}
+		catch (UnsupportedEncodingException e)
+		{
+			throw new IllegalStateException(e.toString());
+		}
+	}
+
+	/**
+	 * A growable buffer records are encoded into.
+	 */
+	static class Buffer
+	{
+		private byte[] bytes = new byte[256];
+
+		private int size = 0;
+
+		void clear()
+		{
+			size = 0;
+		}
+
+		int size()
+		{
+			return size;
+		}
+
+		byte[] getBytes()
+		{
+			return bytes;
+		}
+
+		void put(int b)
+		{
+			if (size == bytes.length)
+			{
+				byte[] larger = new byte[bytes.length * 2];
+				System.arraycopy(bytes, 0, larger, 0, size);
+				bytes = larger;
+			}
+			bytes[size++] = (byte) b;
+		}
+
+		void putVarInt(int value)
+		{
+			while ((value & ~0x7f) != 0)
+			{
+				this.put((value & 0x7f) | 0x80);
+				value >>>= 7;
+			}
+			this.put(value);
+		}
+
+		void putVarLong(long value)
+		{
+			while ((value & ~0x7fL) != 0)
+			{
+				this.put((int) (value & 0x7f) | 0x80);
+				value >>>= 7;
+			}
+			this.put((int) value);
+		}
+
+		void putString(String text)
+		{
+			byte[] utf;
+			try
+			{
+				utf = text == null ? new byte[0] : text.getBytes("UTF-8");
+			}
+			catch (UnsupportedEncodingException e)
+			{
+				throw new IllegalStateException(e.toString());
+			}
+			this.putVarInt(utf.length);
+			for (byte b : utf)
+				this.put(b);
+		}
+	}
+}
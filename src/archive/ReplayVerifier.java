@@ -0,0 +1,593 @@
+/*
+ * Created on 31.01.2007
+ */
+package archive;
+
+import gameelements.GameBoard;
+import gameelements.GameColor;
+import gameelements.GameSituation;
+import gameelements.Position;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Replays the games of an archive on bare game situations, without any game,
+ * players or display, and checks that each game is legal and ends with the
+ * recorded result. Writes statistics of the games as CSV files:
+ * <ul>
+ * <li>firstmoves.csv: the results by board size and first move,</li>
+ * <li>cascades.csv: the number of moves by the number of overflows they
+ * have caused,</li>
+ * <li>lengths.csv: the number of moves of the games by board size,</li>
+ * <li>games.csv, only with -games: one line per game with its result and
+ * the hash value of its final board, for comparing the replays of two
+ * versions of the game engine.</li>
+ * </ul>
+ * The archive is read by one thread, which hands the games in batches over
+ * to a pool of threads, one per core by default. The results of the batches
+ * are collected in the order of the archive, and only a few batches per
+ * thread are in progress at a time, so the archive is streamed without
+ * being held in memory.
+ */
+public class ReplayVerifier
+{
+	/**
+	 * The usage message.
+	 */
+	private static final String USAGE =
+		"usage: ReplayVerifier -in dir [-out dir] [-threads n] [-batch n] [-games]";
+
+	/**
+	 * The number of batches per thread in progress at a time.
+	 */
+	private static final int BATCHES_PER_THREAD = 4;
+
+	/**
+	 * The maximum number of failed games reported on the console.
+	 */
+	private static final int MAX_REPORTED_FAILURES = 20;
+
+	/**
+	 * The directory of the archive.
+	 */
+	private File input = null;
+
+	/**
+	 * The directory the reports are written to.
+	 */
+	private File outputDir = new File(".");
+
+	/**
+	 * The number of threads replaying the games.
+	 */
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * The number of games replayed by one task.
+	 */
+	private int batchSize = 1000;
+
+	/**
+	 * Indicates if a line per game is written.
+	 */
+	private boolean writeGames = false;
+
+	/**
+	 * Verifies the archive given by the arguments.
+	 * @param args the arguments, see USAGE.
+	 */
+	public static void main(String[] args)
+	{
+		ReplayVerifier verifier = new ReplayVerifier();
+		try
+		{
+			verifier.parseArgs(args);
+		}
+		catch (IllegalArgumentException e)
+		{
+			System.err.println(e.getMessage());
+			System.err.println(USAGE);
+			System.exit(1);
+		}
+
+		long failed = 0;
+		try
+		{
+			failed = verifier.run();
+		}
+		catch (IOException e)
+		{
+			System.err.println("could not verify archive: " + e.getMessage());
+			System.exit(1);
+		}
+		System.exit(failed == 0 ? 0 : 1);
+	}
+
+	private void parseArgs(String[] args)
+	{
+		for (int i = 0; i < args.length; i++)
+		{
+			String arg = args[i];
+			if (arg.equals("-games"))
+			{
+				writeGames = true;
+				continue;
+			}
+			if (i + 1 >= args.length)
+			{
+				throw new IllegalArgumentException("missing value for " + arg);
+			}
+			String value = args[++i];
+			if (arg.equals("-in"))
+				input = new File(value);
+			else if (arg.equals("-out"))
+				outputDir = new File(value);
+			else
+			{
+				try
+				{
+					int number = Integer.parseInt(value);
+					if (number < 1)
+						throw new NumberFormatException();
+					if (arg.equals("-threads"))
+						threads = number;
+					else if (arg.equals("-batch"))
+						batchSize = number;
+					else
+						throw new IllegalArgumentException("unknown argument: " + arg);
+				}
+				catch (NumberFormatException e)
+				{
+					throw new IllegalArgumentException("illegal value for " + arg + ": " + value);
+				}
+			}
+		}
+		if (input == null)
+		{
+			throw new IllegalArgumentException("missing argument: -in");
+		}
+		if (!input.isDirectory())
+		{
+			throw new IllegalArgumentException("no archive: " + input);
+		}
+	}
+
+	/**
+	 * Replays all games of the archive and writes the reports.
+	 * @return the number of games that are illegal or end with another
+	 * result than recorded.
+	 * @throws IOException if the archive could not be read or a report could
+	 * not be written.
+	 */
+	private long run() throws IOException
+	{
+		if (!outputDir.isDirectory() && !outputDir.mkdirs())
+		{
+			throw new IOException("could not create " + outputDir);
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory()
+		{
+			private int count = 0;
+
+			public synchronized Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, "kaskade-verify-" + (++count));
+				t.setDaemon(true);
+				return t;
+			}
+		});
+
+		long start = System.currentTimeMillis();
+		Statistics total = new Statistics();
+		PrintWriter games = null;
+		try
+		{
+			if (writeGames)
+			{
+				games = new PrintWriter(new FileWriter(new File(outputDir, "games.csv")));
+				games.println("game,dimX,dimY,moves,recorded,replayed,verified,overflows,longestCascade,hash");
+			}
+
+			Queue<Future<Statistics>> pending = new LinkedList<Future<Statistics>>();
+			ArchiveScanner scanner = new ArchiveScanner(input);
+			List<GameRecord> batch = new ArrayList<GameRecord>(batchSize);
+			long[] numbers = new long[batchSize];
+			while (scanner.next())
+			{
+				numbers[batch.size()] = scanner.getNumber();
+				batch.add(scanner.getRecord());
+				if (batch.size() == batchSize)
+				{
+					pending.add(executor.submit(new Replay(numbers, batch, writeGames)));
+					batch = new ArrayList<GameRecord>(batchSize);
+					numbers = new long[batchSize];
+					if (pending.size() >= threads * BATCHES_PER_THREAD)
+						this.collect(pending.remove(), total, games);
+				}
+			}
+			if (!batch.isEmpty())
+			{
+				pending.add(executor.submit(new Replay(numbers, batch, writeGames)));
+			}
+			while (!pending.isEmpty())
+			{
+				this.collect(pending.remove(), total, games);
+			}
+		}
+		finally
+		{
+			executor.shutdown();
+			if (games != null)
+				games.close();
+		}
+
+		total.writeReports(outputDir);
+
+		long elapsed = Math.max(1, System.currentTimeMillis() - start);
+		System.out.println(total.games + " games replayed in " + elapsed + " ms, "
+				+ (total.games * 1000 / elapsed) + " games/sec, " + total.failed + " failed");
+		return total.failed;
+	}
+
+	private void collect(Future<Statistics> result, Statistics total, PrintWriter games) throws IOException
+	{
+		Statistics statistics;
+		try
+		{
+			statistics = result.get();
+		}
+		catch (ExecutionException e)
+		{
+			throw new IOException("replay failed: " + e.getCause());
+		}
+		catch (InterruptedException e)
+		{
+			throw new IOException("interrupted");
+		}
+
+		total.merge(statistics);
+		if (games != null)
+			games.print(statistics.lines);
+		for (String aFailure : statistics.failures)
+		{
+			if (total.reportedFailures++ < MAX_REPORTED_FAILURES)
+				System.err.println(aFailure);
+		}
+	}
+
+	/**
+	 * Replays a batch of games on a thread of the pool.
+	 */
+	private static class Replay implements Callable<Statistics>
+	{
+		/**
+		 * The numbers of the games in the archive.
+		 */
+		private long[] numbers;
+
+		private List<GameRecord> records;
+
+		private boolean writeGames;
+
+		/**
+		 * The boards by dimensions, as they can be shared by the situations
+		 * of one thread.
+		 */
+		private Map<Integer, GameBoard> boards = new HashMap<Integer, GameBoard>();
+
+		Replay(long[] numbers, List<GameRecord> records, boolean writeGames)
+		{
+			this.numbers = numbers;
+			this.records = records;
+			this.writeGames = writeGames;
+		}
+
+		/**
+		 * Replays the games of the batch. A game that cannot be replayed at
+		 * all, e.g. because its record is corrupt, counts as failed.
+		 * @return the statistics of the batch.
+		 * @see java.util.concurrent.Callable#call()
+		 */
+		public Statistics call()
+		{
+			Statistics statistics = new Statistics();
+			for (int i = 0; i < records.size(); i++)
+			{
+				try
+				{
+					this.replay(numbers[i], records.get(i), statistics);
+				}
+				catch (RuntimeException e)
+				{
+					statistics.addBrokenGame(numbers[i], e);
+				}
+			}
+			return statistics;
+		}
+
+		private void replay(long number, GameRecord record, Statistics statistics)
+		{
+			int dimX = record.getDimX();
+			int dimY = record.getDimY();
+			GameSituation situation = record.createSituation(this.getBoard(dimX, dimY));
+
+			String error = null;
+			int overflows = 0;
+			int longestCascade = 0;
+			GameColor color = GameColor.WHITE;
+			for (int i = 0; i < record.getMoveCount() && error == null; i++)
+			{
+				int index = record.getMove(i);
+				Position move = new Position(index % dimX, index / dimX);
+				if (index < 0 || index >= dimX*dimY)
+					error = "move " + (i+1) + " is outside of the board";
+				else if (situation.isUniColored())
+					error = "move " + (i+1) + " follows the end of the game";
+				else if (!situation.isEmpty(move) && situation.getColor(move) != color)
+					error = "move " + (i+1) + " is on a field of the opponent";
+				else
+				{
+					int cascade = situation.addToken(move, color, false);
+					statistics.addCascade(cascade);
+					overflows += cascade;
+					longestCascade = Math.max(longestCascade, cascade);
+					color = color == GameColor.WHITE ? GameColor.BLACK : GameColor.WHITE;
+				}
+			}
+
+			GameColor winner = situation.getColor();
+			int result = winner == null ? GameRecord.RESULT_NONE
+					: winner == GameColor.WHITE ? GameRecord.RESULT_WHITE : GameRecord.RESULT_BLACK;
+			if (error == null && result != record.getResult())
+				error = "result " + result + " differs from recorded result " + record.getResult();
+
+			statistics.addGame(record, result);
+			if (error != null)
+				statistics.addFailure(number, error);
+			if (writeGames)
+			{
+				statistics.lines.append(number).append(',').append(dimX).append(',').append(dimY).append(',')
+					.append(record.getMoveCount()).append(',').append(record.getResult()).append(',')
+					.append(result).append(',').append(error == null).append(',').append(overflows).append(',')
+					.append(longestCascade).append(',').append(Long.toHexString(situation.getHash())).append('\n');
+			}
+		}
+
+		private GameBoard getBoard(int dimX, int dimY)
+		{
+			Integer key = Integer.valueOf((dimX << 16) | dimY);
+			GameBoard board = boards.get(key);
+			if (board == null)
+			{
+				board = new GameBoard(dimX, dimY);
+				boards.put(key, board);
+			}
+			return board;
+		}
+	}
+
+	/**
+	 * The statistics of the replayed games, of a batch or of all games.
+	 */
+	private static class Statistics
+	{
+		private long games = 0;
+
+		private long failed = 0;
+
+		private int reportedFailures = 0;
+
+		/**
+		 * The results by board size and first move: games, won by white,
+		 * won by black, not finished.
+		 */
+		private Map<Long, long[]> firstMoves = new TreeMap<Long, long[]>();
+
+		/**
+		 * The number of moves by the number of their overflows.
+		 */
+		private long[] cascades = new long[16];
+
+		/**
+		 * The lengths by board size: games, moves, shortest, longest.
+		 */
+		private Map<Integer, long[]> lengths = new TreeMap<Integer, long[]>();
+
+		/**
+		 * The CSV lines of the games.
+		 */
+		private StringBuilder lines = new StringBuilder();
+
+		/**
+		 * The failures of the games.
+		 */
+		private List<String> failures = new ArrayList<String>();
+
+		void addCascade(int overflows)
+		{
+			this.ensureCapacity(overflows + 1);
+			cascades[overflows]++;
+		}
+
+		/**
+		 * Notes the failure of a game, that has been counted by addGame().
+		 * @param number the number of the game in the archive.
+		 * @param error the description of the failure.
+		 */
+		void addFailure(long number, String error)
+		{
+			failed++;
+			failures.add("game " + number + ": " + error);
+		}
+
+		/**
+		 * Counts a game, that could not be replayed, as failed.
+		 * @param number the number of the game in the archive.
+		 * @param e the exception thrown by the replay.
+		 */
+		void addBrokenGame(long number, RuntimeException e)
+		{
+			games++;
+			this.addFailure(number, "replay failed: " + e);
+		}
+
+		void addGame(GameRecord record, int result)
+		{
+			games++;
+
+			Integer size = Integer.valueOf((record.getDimX() << 16) | record.getDimY());
+			long[] length = lengths.get(size);
+			if (length == null)
+			{
+				length = new long[] { 0, 0, Long.MAX_VALUE, 0 };
+				lengths.put(size, length);
+			}
+			length[0]++;
+			length[1] += record.getMoveCount();
+			length[2] = Math.min(length[2], record.getMoveCount());
+			length[3] = Math.max(length[3], record.getMoveCount());
+
+			if (record.getMoveCount() > 0)
+			{
+				Long key = Long.valueOf(((long) size.intValue() << 32) | record.getMove(0));
+				long[] results = firstMoves.get(key);
+				if (results == null)
+				{
+					results = new long[4];
+					firstMoves.put(key, results);
+				}
+				results[0]++;
+				results[result == GameRecord.RESULT_WHITE ? 1 : result == GameRecord.RESULT_BLACK ? 2 : 3]++;
+			}
+		}
+
+		void merge(Statistics other)
+		{
+			games += other.games;
+			failed += other.failed;
+			this.ensureCapacity(other.cascades.length);
+			for (int i = 0; i < other.cascades.length; i++)
+			{
+				cascades[i] += other.cascades[i];
+			}
+			for (Map.Entry<Integer, long[]> anEntry : other.lengths.entrySet())
+			{
+				long[] length = lengths.get(anEntry.getKey());
+				long[] otherLength = anEntry.getValue();
+				if (length == null)
+				{
+					lengths.put(anEntry.getKey(), otherLength.clone());
+					continue;
+				}
+				length[0] += otherLength[0];
+				length[1] += otherLength[1];
+				length[2] = Math.min(length[2], otherLength[2]);
+				length[3] = Math.max(length[3], otherLength[3]);
+			}
+			for (Map.Entry<Long, long[]> anEntry : other.firstMoves.entrySet())
+			{
+				long[] results = firstMoves.get(anEntry.getKey());
+				if (results == null)
+				{
+					firstMoves.put(anEntry.getKey(), anEntry.getValue().clone());
+					continue;
+				}
+				for (int i = 0; i < results.length; i++)
+					results[i] += anEntry.getValue()[i];
+			}
+		}
+
+		/**
+		 * Makes sure the counts of moves by overflows hold the given number
+		 * of counts.
+		 * @param capacity the number of counts.
+		 */
+		private void ensureCapacity(int capacity)
+		{
+			if (capacity > cascades.length)
+			{
+				long[] larger = new long[Math.max(capacity, cascades.length * 2)];
+				System.arraycopy(cascades, 0, larger, 0, cascades.length);
+				cascades = larger;
+			}
+		}
+
+		void writeReports(File outputDir) throws IOException
+		{
+			PrintWriter out = new PrintWriter(new FileWriter(new File(outputDir, "firstmoves.csv")));
+			try
+			{
+				out.println("dimX,dimY,x,y,games,whiteWins,blackWins,unfinished,whiteWinRate");
+				for (Map.Entry<Long, long[]> anEntry : firstMoves.entrySet())
+				{
+					long key = anEntry.getKey().longValue();
+					int dimX = (int) (key >>> 48);
+					int dimY = (int) (key >>> 32) & 0xffff;
+					int index = (int) key;
+					long[] results = anEntry.getValue();
+					out.println(dimX + "," + dimY + "," + (index % dimX) + "," + (index / dimX) + ","
+							+ results[0] + "," + results[1] + "," + results[2] + "," + results[3] + ","
+							+ format((double) results[1] / results[0]));
+				}
+			}
+			finally
+			{
+				out.close();
+			}
+
+			out = new PrintWriter(new FileWriter(new File(outputDir, "cascades.csv")));
+			try
+			{
+				out.println("overflows,moves");
+				int last = cascades.length - 1;
+				while (last > 0 && cascades[last] == 0)
+					last--;
+				for (int i = 0; i <= last; i++)
+					out.println(i + "," + cascades[i]);
+			}
+			finally
+			{
+				out.close();
+			}
+
+			out = new PrintWriter(new FileWriter(new File(outputDir, "lengths.csv")));
+			try
+			{
+				out.println("dimX,dimY,games,meanMoves,minMoves,maxMoves");
+				for (Map.Entry<Integer, long[]> anEntry : lengths.entrySet())
+				{
+					int size = anEntry.getKey().intValue();
+					long[] length = anEntry.getValue();
+					out.println((size >>> 16) + "," + (size & 0xffff) + "," + length[0] + ","
+							+ format((double) length[1] / length[0]) + "," + length[2] + "," + length[3]);
+				}
+			}
+			finally
+			{
+				out.close();
+			}
+		}
+
+		private static String format(double value)
+		{
+			return String.valueOf( Math.round(value * 10000) / 10000.0 );
+		}
+	}
+}
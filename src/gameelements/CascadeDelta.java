@@ -0,0 +1,99 @@
+/*
+ * Created on 25.01.2007
+ */
+package gameelements;
+
+/**
+ * The changes of one step of a move, i.e. of placing the token or of one
+ * overflow: the fields changed by the step, each with its value before and
+ * after the step. Values are stored as in the game situation, the number of
+ * tokens with the sign of the color. A delta is not changed after its
+ * creation, so it can be shared.
+ */
+public class CascadeDelta
+{
+	/**
+	 * The dimension of the board on x-axis, for converting indices to
+	 * positions.
+	 */
+	private int dimX;
+
+	/**
+	 * The indices of the changed fields, counted line by line.
+	 */
+	private int[] indices;
+
+	/**
+	 * The values of the changed fields before the step.
+	 */
+	private byte[] oldValues;
+
+	/**
+	 * The values of the changed fields after the step.
+	 */
+	private byte[] newValues;
+
+	/**
+	 * Initiates a delta.
+	 * @param dimX the dimension of the board on x-axis.
+	 * @param indices the indices of the changed fields.
+	 * @param oldValues the values of the fields before the step.
+	 * @param newValues the values of the fields after the step.
+	 */
+	CascadeDelta(int dimX, int[] indices, byte[] oldValues, byte[] newValues)
+	{
+		this.dimX = dimX;
+		this.indices = indices;
+		this.oldValues = oldValues;
+		this.newValues = newValues;
+	}
+
+	/**
+	 * Returns the number of changed fields.
+	 * @return the number of changed fields.
+	 */
+	public int size()
+	{
+		return indices.length;
+	}
+
+	/**
+	 * Returns the index of a changed field, counted line by line.
+	 * @param i the number of the change.
+	 * @return the index of the field.
+	 */
+	public int getIndex(int i)
+	{
+		return indices[i];
+	}
+
+	/**
+	 * Returns the position of a changed field.
+	 * @param i the number of the change.
+	 * @return the position of the field.
+	 */
+	public Position getPosition(int i)
+	{
+		return new Position(indices[i] % dimX, indices[i] / dimX);
+	}
+
+	/**
+	 * Returns the value of a changed field before the step.
+	 * @param i the number of the change.
+	 * @return the old value of the field.
+	 */
+	public byte getOldValue(int i)
+	{
+		return oldValues[i];
+	}
+
+	/**
+	 * Returns the value of a changed field after the step.
+	 * @param i the number of the change.
+	 * @return the new value of the field.
+	 */
+	public byte getNewValue(int i)
+	{
+		return newValues[i];
+	}
+}
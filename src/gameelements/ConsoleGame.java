@@ -6,8 +6,8 @@ package gameelements;
 import player.ConsolePlayer;
 
 /**
- * Overrides the game class mainly for the purpose of suppressing the creation
- * of any animations, which are not needed for console games.
+ * A game played by a client over the network, one of whose players is the
+ * console player of the client's connection.
  */
 public class ConsoleGame extends Game
 {
@@ -20,29 +20,6 @@ public class ConsoleGame extends Game
 		super(prefs);
 	}
 	
-	/**
-	 * Console games should not be observed by the gui.
-	 * @see gameelements.Game#addGUIObserver()
-	 */
-	void addGUIObserver()
-	{
-		// do not add GUI as observer
-	}
-		
-	/**
-	 * If a console game is stopped, the console player should be notified.
-	 * @see gameelements.Game#stopGame()
-	 */
-	public void stopGame()
-	{
-		super.stopGame();
-
-		synchronized (this.getConsolePlayer())
-		{
-			this.getConsolePlayer().notifyAll();
-		}
-	}
-	
 	/**
 	 * Returns the console player of this game.
 	 * @return the console player of this game.
@@ -0,0 +1,255 @@
+/*
+ * Created on 24.01.2007
+ */
+package gameelements;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Delivers the events of a game to its subscribers. Each subscriber has a
+ * bounded queue of its own, which is drained by the threads of the game
+ * scheduler, so a slow subscriber never holds up the game or the other
+ * subscribers. What happens when the queue of a subscriber is full, is
+ * chosen per subscriber: the game waits for the subscriber, the event is
+ * dropped, or the event replaces the latest queued event of the same type.
+ */
+public class EventBus
+{
+	/**
+	 * Policy for a full queue: the publisher waits until there is room.
+	 */
+	public static final int BLOCK = 0;
+
+	/**
+	 * Policy for a full queue: the new event is dropped.
+	 */
+	public static final int DROP = 1;
+
+	/**
+	 * Policy for a full queue: the new event replaces the latest queued event
+	 * of the same type, or is dropped, if there is none.
+	 */
+	public static final int CONFLATE = 2;
+
+	/**
+	 * Default maximum number of events queued for a subscriber.
+	 */
+	public static final int DEFAULT_CAPACITY = 64;
+
+	/**
+	 * The subscriptions of the bus.
+	 */
+	private List<Subscription> subscriptions = new CopyOnWriteArrayList<Subscription>();
+
+	/**
+	 * Subscribes a listener to the events of the given type.
+	 * @param listener the listener.
+	 * @param type the type of the events, GameEvent for all events.
+	 * @param policy the policy for a full queue, BLOCK, DROP or CONFLATE.
+	 * @param capacity the maximum number of events queued for the listener.
+	 */
+	public void subscribe(GameListener listener, Class<? extends GameEvent> type, int policy, int capacity)
+	{
+		subscriptions.add( new Subscription(listener, type, policy, Math.max(1, capacity)) );
+	}
+
+	/**
+	 * Ends all subscriptions of a listener. Events already queued are still
+	 * delivered.
+	 * @param listener the listener.
+	 */
+	public void unsubscribe(GameListener listener)
+	{
+		for (Subscription aSubscription : subscriptions)
+		{
+			if (aSubscription.listener == listener)
+			{
+				subscriptions.remove(aSubscription);
+				aSubscription.cancel();
+			}
+		}
+	}
+
+	/**
+	 * Indicates if any listener has subscribed to events of the given type,
+	 * so the publisher can avoid creating events nobody receives.
+	 * @param type the type of the events.
+	 * @return true, if events of the type are delivered to any listener.
+	 */
+	public boolean isObserved(Class<? extends GameEvent> type)
+	{
+		for (Subscription aSubscription : subscriptions)
+		{
+			if (aSubscription.accepts(type))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Queues an event for all listeners subscribed to its type.
+	 * @param event the event.
+	 */
+	public void publish(GameEvent event)
+	{
+		for (Subscription aSubscription : subscriptions)
+		{
+			if (aSubscription.accepts(event.getClass()))
+			{
+				aSubscription.offer(event);
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of events dropped or replaced for a listener,
+	 * because it has not kept up with the game.
+	 * @param listener the listener.
+	 * @return the number of events the listener has missed.
+	 */
+	public int getDropped(GameListener listener)
+	{
+		int dropped = 0;
+		for (Subscription aSubscription : subscriptions)
+		{
+			if (aSubscription.listener == listener)
+				dropped += aSubscription.getDropped();
+		}
+		return dropped;
+	}
+
+	/**
+	 * The subscription of a listener with its queue of events.
+	 */
+	private static class Subscription implements Runnable
+	{
+		private GameListener listener;
+
+		private Class<? extends GameEvent> type;
+
+		private int policy;
+
+		private int capacity;
+
+		private LinkedList<GameEvent> events = new LinkedList<GameEvent>();
+
+		private boolean draining = false;
+
+		private boolean cancelled = false;
+
+		private int dropped = 0;
+
+		Subscription(GameListener listener, Class<? extends GameEvent> type, int policy, int capacity)
+		{
+			this.listener = listener;
+			this.type = type;
+			this.policy = policy;
+			this.capacity = capacity;
+		}
+
+		/**
+		 * Indicates if events of the given type are delivered to the
+		 * listener.
+		 */
+		boolean accepts(Class<? extends GameEvent> eventType)
+		{
+			return type.isAssignableFrom(eventType);
+		}
+
+		synchronized void offer(GameEvent event)
+		{
+			while (!cancelled && events.size() >= capacity)
+			{
+				if (policy == BLOCK)
+				{
+					try
+					{
+						this.wait();
+					}
+					catch (InterruptedException e)
+					{
+						Thread.currentThread().interrupt();
+						dropped++;
+						return;
+					}
+				}
+				else if (policy == CONFLATE && this.removeLatest(event.getClass()))
+				{
+					dropped++;
+				}
+				else
+				{
+					dropped++;
+					return;
+				}
+			}
+			if (cancelled)
+				return;
+
+			events.add(event);
+			if (!draining)
+			{
+				draining = true;
+				GameScheduler.execute(this);
+			}
+		}
+
+		private boolean removeLatest(Class<?> eventType)
+		{
+			for (ListIterator<GameEvent> i = events.listIterator(events.size()); i.hasPrevious(); )
+			{
+				if (i.previous().getClass() == eventType)
+				{
+					i.remove();
+					return true;
+				}
+			}
+			return false;
+		}
+
+		synchronized void cancel()
+		{
+			cancelled = true;
+			this.notifyAll();
+		}
+
+		synchronized int getDropped()
+		{
+			return dropped;
+		}
+
+		/**
+		 * Delivers the queued events to the listener.
+		 * @see java.lang.Runnable#run()
+		 */
+		public void run()
+		{
+			while (true)
+			{
+				GameEvent event;
+				synchronized (this)
+				{
+					event = events.poll();
+					if (event == null)
+					{
+						draining = false;
+						return;
+					}
+					this.notifyAll(); // room for a blocked publisher
+				}
+
+				try
+				{
+					listener.handleEvent(event);
+				}
+				catch (RuntimeException e)
+				{
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+}
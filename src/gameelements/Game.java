@@ -3,14 +3,20 @@
  */
 package gameelements;
 
-import gui.GamePanel;
-import gui.MainFrame;
+import gameelements.GameSituation.FieldSetup;
 
-import java.util.Observable;
-import java.util.Observer;
+import java.util.List;
 import java.util.Stack;
+import java.util.concurrent.Future;
 
+import archive.GameArchive;
+import archive.GameRecord;
+
+import player.AsynchronousPlayer;
+import player.ComputerPlayer;
 import player.HumanPlayer;
+import player.MoveCallback;
+import player.NonBlockingPlayer;
 import player.Player;
 import player.SynchronousPlayer;
 
@@ -18,9 +24,15 @@ import player.SynchronousPlayer;
  * Represents a running game, containing the game board, the game situation, 
  * and the two players and manages each turn by asking the current player for 
  * its next move and applying it to the game, until the game is stopped or the 
- * game is won by one player.
+ * game is won by one player. The game has no thread of its own, but is run by
+ * the {@link GameScheduler}. While a non-blocking player is asked for its 
+ * move, the game does not hold any thread, but is continued by the 
+ * scheduler as soon as the move has been delivered, so idle games do not 
+ * need any threads. Moves, their steps, the end of the game and errors are
+ * published on the event bus of the game, where views subscribe to them, so
+ * the game itself does not depend on any view.
  */
-public class Game extends Observable implements Runnable
+public class Game implements Runnable
 {
 	/**
 	 * Minimal allowed number of fields on the game board on each axis.
@@ -82,6 +94,56 @@ public class Game extends Observable implements Runnable
 	 */
 	protected Stack<Position> allMoves;
 	
+	/**
+	 * The move requested from a non-blocking player, that has not been 
+	 * delivered yet. Guarded by the game's lock.
+	 */
+	private Future<Position> pendingMove;
+	
+	/**
+	 * The number of moves requested from non-blocking players. Guarded by the
+	 * game's lock.
+	 */
+	private int requestedMoves = 0;
+	
+	/**
+	 * The number of the latest request whose move has been delivered or has
+	 * failed. Guarded by the game's lock.
+	 */
+	private int answeredMoves = 0;
+	
+	/**
+	 * The event bus the events of the game are published on.
+	 */
+	private EventBus events = new EventBus();
+	
+	/**
+	 * The latest snapshot of the game, read by other threads without 
+	 * locking.
+	 */
+	private volatile GameSnapshot snapshot;
+	
+	/**
+	 * The fields set up before the game, null if none.
+	 */
+	private List<FieldSetup> setup;
+	
+	/**
+	 * The types of the players, white first.
+	 */
+	private int[] playerTypes;
+	
+	/**
+	 * The system time in milliseconds of the start of the game.
+	 */
+	private long startTime;
+	
+	/**
+	 * The archive the game is recorded in when it ends, null if the game is
+	 * not recorded.
+	 */
+	private GameArchive archive;
+	
 	
 	/**
 	 * Constructs a new game with the preferences set.
@@ -90,52 +152,56 @@ public class Game extends Observable implements Runnable
 	public Game(GamePreferences prefs) 
 	{
 		gameBoard = new GameBoard(prefs.getDimX(), prefs.getDimY());
+		gameBoard.setEventBus(events);
 		
 		this.situation = new GameSituation(gameBoard, prefs.getSetup());
+		this.snapshot = new GameSnapshot(0, situation.clone(), null, 1);
+		this.setup = prefs.getSetup();
+		this.playerTypes = new int[] { prefs.getPlayerType(0), prefs.getPlayerType(1) };
 		
 		playerA = Player.createPlayer( prefs.getPlayerName(0), this, GameColor.WHITE, prefs.getPlayerType(0) );
 		playerB = Player.createPlayer( prefs.getPlayerName(1), this, GameColor.BLACK, prefs.getPlayerType(1) );
 		
 		this.addObservingPlayers();
-		this.addGUIObserver();
-	}
-	
-	
-	/**
-	 * Registers the main window as observer for occuring exceptions.
-	 */
-	void addGUIObserver()
-	{
-		this.addObserver(MainFrame.getInstance());
 	}
 	
 
 	/**
-	 * Registers certain player types as observers enabling them to perform
+	 * Registers certain player types as listeners enabling them to perform
 	 * custom behavior like validation or creating responses to a remote client.
+	 * The players must not miss any move, so the game waits for them, if they
+	 * lag behind too far. They only receive the moves and errors, so neither
+	 * the steps of the cascades nor the progress of searches can hold up the
+	 * game.
 	 */
 	private void addObservingPlayers()
 	{
-		if (playerA instanceof Observer)
-			this.addObserver((Observer) playerA);
-		if (playerB instanceof Observer)
-			this.addObserver((Observer) playerB);
+		if (playerA instanceof GameListener)
+			this.addObservingPlayer((GameListener) playerA);
+		if (playerB instanceof GameListener)
+			this.addObservingPlayer((GameListener) playerB);
+	}
+	
+	private void addObservingPlayer(GameListener player)
+	{
+		events.subscribe(player, GameEvent.MoveApplied.class, EventBus.BLOCK, EventBus.DEFAULT_CAPACITY);
+		events.subscribe(player, GameEvent.GameError.class, EventBus.BLOCK, EventBus.DEFAULT_CAPACITY);
 	}
 	
 
 	/**
-	 * Connects the view and the model by registering the views animator object
-	 * as observer to the games game board.
-	 * @param view
+	 * Returns the event bus the events of the game are published on.
+	 * @return the event bus of the game.
 	 */
-	public void connectView(GamePanel view)
+	public EventBus getEvents()
 	{
-		this.gameBoard.addObserver(view.getAnimator());
+		return events;
 	}
 	
 	
 	/**
-	 * Starts the game by doing some initializing and starting its own thread. 
+	 * Starts the game by doing some initializing and running it on the game
+	 * scheduler. 
 	 */
 	public void startGame()
 	{
@@ -144,9 +210,9 @@ public class Game extends Observable implements Runnable
 		this.initSynchronousPlayers();
 		
 		allMoves = new Stack<Position>();
+		startTime = System.currentTimeMillis();
 		
-		Thread t = new Thread(this);
-		t.start();
+		GameScheduler.execute(this);
 	}
 
 	private void initSynchronousPlayers()
@@ -163,14 +229,109 @@ public class Game extends Observable implements Runnable
 	
 
 	/**
-	 * Stops the game and its thread.
+	 * Stops the game and cancels the request for the next move.
 	 */
 	public void stopGame()
 	{
 		stopped = true;
+		this.archive();
+		
+		Future<Position> move;
+		synchronized (this)
+		{
+			move = pendingMove;
+		}
+		if (move != null)
+		{
+			move.cancel(true);
+		}
+		
+		// release the game's thread waiting for a move
+		if (playerA instanceof AsynchronousPlayer)
+		{
+			((AsynchronousPlayer) playerA).cancelNextMove();
+		}
+		if (playerB instanceof AsynchronousPlayer)
+		{
+			((AsynchronousPlayer) playerB).cancelNextMove();
+		}
 	}
 	
 	
+	/**
+	 * Sets the archive the game is recorded in when it ends, e.g. when it is
+	 * won or stopped.
+	 * @param archive the archive, null if the game is not to be recorded.
+	 */
+	public void setArchive(GameArchive archive)
+	{
+		this.archive = archive;
+	}
+	
+	/**
+	 * Hands the record of the game over to the archive, once per game. The
+	 * archive writes it without holding up the game.
+	 */
+	private void archive()
+	{
+		GameArchive target;
+		synchronized (this)
+		{
+			target = archive;
+			archive = null;
+		}
+		if (target != null && allMoves != null)
+		{
+			target.append( this.createRecord() );
+		}
+	}
+	
+	/**
+	 * Creates the record of the game as far as it has been played, up to the
+	 * move of the latest snapshot.
+	 * @return the record of the game.
+	 */
+	public GameRecord createRecord()
+	{
+		int dimX = gameBoard.getDimX();
+		
+		int setupSize = setup == null ? 0 : setup.size();
+		int[] setupIndices = new int[setupSize];
+		byte[] setupValues = new byte[setupSize];
+		for (int i = 0; i < setupSize; i++)
+		{
+			FieldSetup aFieldSetting = setup.get(i);
+			setupIndices[i] = aFieldSetting.position.getY()*dimX + aFieldSetting.position.getX();
+			setupValues[i] = (byte) (aFieldSetting.color == GameColor.BLACK ? -aFieldSetting.tokens : aFieldSetting.tokens);
+		}
+		
+		// moves and result are taken from the same snapshot, which holds a 
+		// consistent situation, even while a move is made
+		GameSnapshot current = snapshot;
+		Object[] moves = allMoves.toArray();
+		int moveCount = Math.min(moves.length, current.getTurn() - 1);
+		int[] moveIndices = new int[moveCount];
+		for (int i = 0; i < moveCount; i++)
+		{
+			Position aMove = (Position) moves[i];
+			moveIndices[i] = aMove.getY()*dimX + aMove.getX();
+		}
+		
+		int strategy = GameRecord.NO_STRATEGY;
+		if (playerA instanceof ComputerPlayer)
+			strategy = ((ComputerPlayer) playerA).getUsedStrategyType();
+		else if (playerB instanceof ComputerPlayer)
+			strategy = ((ComputerPlayer) playerB).getUsedStrategyType();
+		
+		GameColor winner = current.getSituation().getColor();
+		int result = winner == null ? GameRecord.RESULT_NONE 
+				: winner == playerA.getColor() ? GameRecord.RESULT_WHITE : GameRecord.RESULT_BLACK;
+		
+		return new GameRecord(startTime, dimX, gameBoard.getDimY(), setupIndices, setupValues,
+				new String[] { playerA.getPlayerName(), playerB.getPlayerName() }, playerTypes, 
+				strategy, result, moveIndices);
+	}
+	
 	/**
 	 * Indicates if a game is stopped.
 	 * @return true, if game is stopped, else false. 
@@ -183,13 +344,21 @@ public class Game extends Observable implements Runnable
 
 	/**
 	 * Calls all necessary actions for each turn until the game is either
-	 * stopped or won by one player.
+	 * stopped or won by one player. If the active player is a non-blocking
+	 * player, its move is requested and the thread is released.
 	 * @see java.lang.Runnable#run()
 	 */
 	public void run()
 	{
 		while ( !isGameOver() && !isStopped() )
 		{	
+			activePlayer = getPlayerOfTurn( getTurn() );
+			if (activePlayer instanceof NonBlockingPlayer)
+			{
+				this.requestMove( (NonBlockingPlayer) activePlayer );
+				return;
+			}
+			
 			try
 			{
 				this.processTurn();
@@ -204,17 +373,90 @@ public class Game extends Observable implements Runnable
 		this.stopGame();
 	}
 	
+	/**
+	 * Requests the next move of a non-blocking player. As soon as the move is
+	 * delivered, it is processed and the game is continued on a thread of the
+	 * game scheduler.
+	 * @param player the active non-blocking player.
+	 */
+	private void requestMove(NonBlockingPlayer player)
+	{
+		final int request;
+		synchronized (this)
+		{
+			request = ++requestedMoves;
+		}
+		
+		Future<Position> move = player.requestNextMove(new MoveCallback()
+		{
+			public void moveReady(final Position move)
+			{
+				moveAnswered(request);
+				GameScheduler.execute(new Runnable()
+				{
+					public void run()
+					{
+						if (isStopped())
+							return;
+						
+						try
+						{
+							processMove(move);
+						} 
+						catch (IllegalMoveException e)
+						{
+							e.printStackTrace();
+							notifyWithError(e);
+						}
+						Game.this.run();
+					}
+				});
+			}
+
+			public void moveFailed(Exception e)
+			{
+				moveAnswered(request);
+				if (isStopped())
+					return;
+				
+				notifyWithError(e);
+				stopGame();
+			}
+		});
+		
+		// the move may have been delivered before the request has returned
+		synchronized (this)
+		{
+			if (request > answeredMoves)
+			{
+				pendingMove = move;
+			}
+		}
+	}
+	
+	/**
+	 * Notes that the move of a request has been delivered or has failed, and
+	 * forgets the pending move, unless a later move has been requested.
+	 * @param request the number of the request.
+	 */
+	private synchronized void moveAnswered(int request)
+	{
+		answeredMoves = Math.max(answeredMoves, request);
+		if (request == requestedMoves)
+		{
+			pendingMove = null;
+		}
+	}
+	
 
 	/**
 	 * Takes notifications from other connected components, if an error occurs
-	 * and notifies registered observers with the exception, that has been 
-	 * thrown.
+	 * and publishes the exception, that has been thrown.
 	 * @param e the exception that has been thrwon by the notifying component.
 	 */
 	public void notifyWithError(Exception e)
 	{
-		this.setChanged();
-		this.notifyObservers(e);
+		events.publish( new GameEvent.GameError(e) );
 	}
 	
 
@@ -226,15 +468,33 @@ public class Game extends Observable implements Runnable
 	protected void processTurn() throws IllegalMoveException
 	{
 		activePlayer = getPlayerOfTurn( getTurn() );
-		Position move = activePlayer.getNextMove();
+		this.processMove( activePlayer.getNextMove() );
+	}
+	
+	/**
+	 * Applies the move of the active player and publishes it together with a
+	 * copy of the resulting situation.
+	 * @param move the move of the active player, ignored if null.
+	 * @throws IllegalMoveException
+	 */
+	private void processMove(Position move) throws IllegalMoveException
+	{
 		if (move != null)
 		{
 			prepareUndo();
 			
 			this.makeMove(activePlayer, move);
 			
-			this.setChanged();
-			this.notifyObservers(move);
+			Player winner = getWinner();
+			if (events.isObserved(GameEvent.MoveApplied.class))
+			{
+				// the snapshot's copy is shared, as neither is changed
+				events.publish( new GameEvent.MoveApplied(activePlayer, move, snapshot.getSituation(), winner) );
+			}
+			if (winner != null)
+			{
+				events.publish( new GameEvent.GameOver(winner) );
+			}
 		}
 	}
 
@@ -252,8 +512,9 @@ public class Game extends Observable implements Runnable
 			this.allMoves.pop();
 			
 			this.isUndone = true;
+			this.publishSnapshot();
 			
-			gameBoard.triggerAnimation(getLatestMove());
+			gameBoard.triggerAnimation(situation, getLatestMove());
 		}
 	}
 	
@@ -398,18 +659,48 @@ public class Game extends Observable implements Runnable
 		situation.addToken(move, player.getColor(), true);
 		
 		this.allMoves.push(move);
+		this.publishSnapshot();
+	}
+	
+	/**
+	 * Publishes a snapshot of the current state of the game, unless nobody
+	 * reads the snapshots: neither subscribers of the moves, nor views 
+	 * subscribed to their steps, nor the archive.
+	 */
+	private void publishSnapshot()
+	{
+		if (archive == null && !events.isObserved(GameEvent.MoveApplied.class) 
+				&& !events.isObserved(GameEvent.CascadeStep.class))
+			return;
+		
+		this.snapshot = new GameSnapshot(snapshot.getVersion() + 1, situation.clone(), getLatestMove(), getTurn());
 	}
 	
 	
 	/**
-	 * Returns the current game situation.
+	 * Returns the current game situation. The situation is changed by the
+	 * game's thread while moves are applied, other threads read the 
+	 * situation of the latest snapshot instead.
 	 * @return the current game situation.
+	 * @see #getSnapshot()
 	 */
 	public GameSituation getSituation()
 	{
 		return situation;
 	}
 	
+	/**
+	 * Returns the latest snapshot of the game, which is consistent and never
+	 * changed, so it can be read by any thread without locking. The snapshot
+	 * is only kept up to date while moves or their steps are observed or the
+	 * game is recorded in an archive.
+	 * @return the latest snapshot of the game.
+	 */
+	public GameSnapshot getSnapshot()
+	{
+		return snapshot;
+	}
+	
 	/**
 	 * Returns the current turn number.
 	 * @return the current turn number.
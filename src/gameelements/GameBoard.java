@@ -7,16 +7,16 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Observable;
 import java.util.Queue;
 
 /**
  * Represents the layout of the game board used during the whole duration of a 
  * game. It is used for the context of the game situations that will be created 
  * during the game. All situations during a game will share the same 
- * dimensions, that are defined by the game board.
+ * dimensions, that are defined by the game board. The steps of the moves are
+ * published on the event bus of the game, if anybody has subscribed to them.
  */
-public class GameBoard extends Observable
+public class GameBoard
 {
 	/**
 	 * Constant for northern orientation.
@@ -59,6 +59,12 @@ public class GameBoard extends Observable
 	 */
 	private int[][][] neighbors;
 	
+	/**
+	 * The event bus of the game the board is used for, null if the board is 
+	 * not used for a game.
+	 */
+	private EventBus events;
+	
 	/**
 	 * Returns the dimension for x.
 	 * @return the dimension for x.
@@ -220,19 +226,19 @@ public class GameBoard extends Observable
 	}
 	
 	/**
-	 * Triggers overflows, if any overflowing fields exist. Notifies observers
-	 * about any state change of the situation.
+	 * Triggers overflows, if any overflowing fields exist. Publishes the 
+	 * changes of every step of the move, i.e. the placement of the token and
+	 * each overflow, as delta of the changed fields.
 	 * @param situation the current game situation.
 	 * @param startPos the position form where to start with overflows.
+	 * @param previousValue the value of the start position before the token
+	 * has been placed.
 	 * @param display if true, gui will be notified, else no notifications.
+	 * @return the number of overflows.
 	 */
-	void manageOverflows(GameSituation situation, Position startPos, boolean display)
+	int manageOverflows(GameSituation situation, Position startPos, byte previousValue, boolean display)
 	{
-		if (display)
-		{
-			// take snapshot of current state
-			this.triggerAnimation(startPos);
-		}
+		boolean animated = display && events != null && events.isObserved(GameEvent.CascadeStep.class);
 		
 		// Queue for managing all upcoming overflows.
 		Queue<Position> overflowingPositions = new LinkedList<Position>();
@@ -243,17 +249,36 @@ public class GameBoard extends Observable
 			overflowingPositions.add(startPos);
 		}
 		
+		if (animated)
+		{
+			// publish the placement of the token
+			int[] cells = { this.getIndex(startPos) };
+			CascadeDelta placement = new CascadeDelta(dimX, cells, new byte[] { previousValue }, getValues(situation, cells));
+			this.triggerAnimation(placement, startPos, overflowingPositions.isEmpty());
+		}
+		
 		// Process the overflows.
 		// Process will be abandoned if win-situation is reached.
+		int overflows = 0;
 		while ( overflowingPositions.size() > 0 && !situation.isUniColored() )
 		{
-			overflowStep(situation, overflowingPositions, display);
+			overflowStep(situation, overflowingPositions, animated);
+			overflows++;
 		}
+		return overflows;
 	}
 
-	private void overflowStep(GameSituation situation, Queue<Position> overflowingPositions, boolean display)
+	private void overflowStep(GameSituation situation, Queue<Position> overflowingPositions, boolean animated)
 	{
 		Position anOverflowingPosition = overflowingPositions.element();
+		
+		int[] cells = null;
+		byte[] oldValues = null;
+		if (animated)
+		{
+			cells = this.getCells(anOverflowingPosition);
+			oldValues = getValues(situation, cells);
+		}
 
 		// Process overflow.
 		List<Position> overflowingNeighbors = this.overflow( situation, anOverflowingPosition );
@@ -274,12 +299,51 @@ public class GameBoard extends Observable
 			overflowingPositions.remove();
 		}
 		
-		if (display)
+		if (animated)
 		{
-			this.triggerAnimation();
+			CascadeDelta step = new CascadeDelta(dimX, cells, oldValues, getValues(situation, cells));
+			this.triggerAnimation(step, null, overflowingPositions.isEmpty() || situation.isUniColored());
 		}
 	}
 	
+	/**
+	 * Returns the index of a position, counted line by line.
+	 * @param pos the position.
+	 * @return the index of the position.
+	 */
+	private int getIndex(Position pos)
+	{
+		return pos.getY() * dimX + pos.getX();
+	}
+	
+	/**
+	 * Returns the indices of the fields changed by an overflow: the 
+	 * overflowing field and its neighbors.
+	 * @param pos the overflowing position.
+	 * @return the indices of the changed fields.
+	 */
+	private int[] getCells(Position pos)
+	{
+		List<Position> neighborList = this.getNeighbors(pos);
+		int[] cells = new int[neighborList.size() + 1];
+		cells[0] = this.getIndex(pos);
+		for (int i=0; i<neighborList.size(); i++)
+		{
+			cells[i+1] = this.getIndex(neighborList.get(i));
+		}
+		return cells;
+	}
+	
+	private static byte[] getValues(GameSituation situation, int[] cells)
+	{
+		byte[] values = new byte[cells.length];
+		for (int i=0; i<cells.length; i++)
+		{
+			values[i] = situation.getField(cells[i]);
+		}
+		return values;
+	}
+	
 	private List<Position> overflow(GameSituation situation, Position pos)
 	{
 		List<Position> overflowingNeighbors = new ArrayList<Position>();
@@ -299,22 +363,39 @@ public class GameBoard extends Observable
 
 	
 	/**
-	 * Triggers the animator for animating the current gameboard situation.
+	 * Sets the event bus the steps of the moves are published on.
+	 * @param events the event bus of the game.
 	 */
-	public void triggerAnimation()
+	void setEventBus(EventBus events)
 	{
-		this.setChanged();
-		this.notifyObservers();
+		this.events = events;
 	}
 
 	/**
-	 * @see GameBoard#triggerAnimation()
-	 * @param move the move which caused the current game situation.
+	 * Triggers the animator for animating the given situation from scratch,
+	 * e.g. after an undo, by publishing a copy of it as keyframe. The copy is
+	 * only taken, if anybody has subscribed to the steps of the moves.
+	 * @param situation the current game situation.
+	 * @param move the move which caused the situation.
+	 */
+	public void triggerAnimation(GameSituation situation, Position move)
+	{
+		if (events != null && events.isObserved(GameEvent.CascadeStep.class))
+		{
+			events.publish( new GameEvent.CascadeStep(move, situation.clone()) );
+		}
+	}
+	
+	/**
+	 * Triggers the animator for animating a step of a move.
+	 * @param delta the changes of the step.
+	 * @param move the move, if the step is the placement of its token, else
+	 * null.
+	 * @param last true, if the step is the last step of the move.
 	 */
-	public void triggerAnimation(Position move)
+	private void triggerAnimation(CascadeDelta delta, Position move, boolean last)
 	{
-		this.setChanged();
-		this.notifyObservers( move );
+		events.publish( new GameEvent.CascadeStep(move, delta, last) );
 	}
 	
 }
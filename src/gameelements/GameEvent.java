@@ -0,0 +1,357 @@
+/*
+ * Created on 24.01.2007
+ */
+package gameelements;
+
+import player.Player;
+
+/**
+ * An event of a game, published on the game's event bus. Events carry copies
+ * of the game situation they refer to, as they are delivered after the game
+ * may have moved on. These copies are shared by all subscribers and must not
+ * be changed.
+ */
+public abstract class GameEvent
+{
+	/**
+	 * A move has been applied to the game, including all overflows it has
+	 * caused.
+	 */
+	public static class MoveApplied extends GameEvent
+	{
+		private Player player;
+
+		private Position move;
+
+		private GameSituation situation;
+
+		private Player winner;
+
+		/**
+		 * Initiates the event of an applied move.
+		 * @param player the player who has moved.
+		 * @param move the move.
+		 * @param situation a copy of the situation after the move.
+		 * @param winner the winner, if the move has ended the game, else null.
+		 */
+		MoveApplied(Player player, Position move, GameSituation situation, Player winner)
+		{
+			this.player = player;
+			this.move = move;
+			this.situation = situation;
+			this.winner = winner;
+		}
+
+		/**
+		 * Returns the player who has moved.
+		 * @return the player who has moved.
+		 */
+		public Player getPlayer()
+		{
+			return player;
+		}
+
+		/**
+		 * Returns the move.
+		 * @return the move.
+		 */
+		public Position getMove()
+		{
+			return move;
+		}
+
+		/**
+		 * Returns a copy of the situation after the move.
+		 * @return the situation after the move.
+		 */
+		public GameSituation getSituation()
+		{
+			return situation;
+		}
+
+		/**
+		 * Returns the winner, if the move has ended the game.
+		 * @return the winner, null if the game goes on.
+		 */
+		public Player getWinner()
+		{
+			return winner;
+		}
+	}
+
+	/**
+	 * A step of a move, i.e. the placement of the token or one overflow, has
+	 * been applied to the situation. Only published for the game's own
+	 * situation, not for the situations examined by the computer players.
+	 * A step carries the fields it has changed only, so subscribers have to
+	 * apply the steps in order to a situation of their own. Where the 
+	 * situation has not been reached by steps, e.g. after an undo, a keyframe 
+	 * carrying a copy of the whole situation is published instead.
+	 */
+	public static class CascadeStep extends GameEvent
+	{
+		private Position move;
+
+		private CascadeDelta delta;
+
+		private GameSituation keyframe;
+
+		private boolean last;
+
+		/**
+		 * Initiates the event of a step.
+		 * @param move the move, if the step is its first step, else null.
+		 * @param delta the changes of the step.
+		 * @param last true, if the step is the last step of the move.
+		 */
+		CascadeStep(Position move, CascadeDelta delta, boolean last)
+		{
+			this.move = move;
+			this.delta = delta;
+			this.last = last;
+		}
+
+		/**
+		 * Initiates the event of a keyframe.
+		 * @param move the move that has lead to the situation.
+		 * @param keyframe a copy of the situation.
+		 */
+		CascadeStep(Position move, GameSituation keyframe)
+		{
+			this.move = move;
+			this.keyframe = keyframe;
+			this.last = true;
+		}
+
+		/**
+		 * Returns the move, if the step is its first step.
+		 * @return the move, null for overflows.
+		 */
+		public Position getMove()
+		{
+			return move;
+		}
+
+		/**
+		 * Returns the changes of the step.
+		 * @return the changes of the step, null for a keyframe.
+		 */
+		public CascadeDelta getDelta()
+		{
+			return delta;
+		}
+
+		/**
+		 * Returns a copy of the whole situation, if the event is a keyframe.
+		 * @return the situation, null for a step.
+		 */
+		public GameSituation getKeyframe()
+		{
+			return keyframe;
+		}
+
+		/**
+		 * Indicates if the step is the last step of its move.
+		 * @return true, if no overflow follows.
+		 */
+		public boolean isLast()
+		{
+			return last;
+		}
+	}
+
+	/**
+	 * The game has been won by one player.
+	 */
+	public static class GameOver extends GameEvent
+	{
+		private Player winner;
+
+		/**
+		 * Initiates the event of the end of a game.
+		 * @param winner the winner of the game.
+		 */
+		GameOver(Player winner)
+		{
+			this.winner = winner;
+		}
+
+		/**
+		 * Returns the winner of the game.
+		 * @return the winner of the game.
+		 */
+		public Player getWinner()
+		{
+			return winner;
+		}
+	}
+
+	/**
+	 * The progress of the search of a computer player for its next move, 
+	 * published repeatedly while the search goes on and once when it is
+	 * finished. As it must never hold up the search, it should be 
+	 * subscribed to with a policy, that does not block.
+	 */
+	public static class SearchProgress extends GameEvent
+	{
+		private Player player;
+
+		private int depth;
+
+		private long nodes;
+
+		private long elapsedTime;
+
+		private Position bestMove;
+
+		private int dimX;
+
+		private double[] scores;
+
+		private boolean finished;
+
+		/**
+		 * Initiates the event of the progress of a search.
+		 * @param player the searching player.
+		 * @param depth the tree depth currently searched.
+		 * @param nodes the number of situations examined so far.
+		 * @param elapsedTime the time in milliseconds since the start of the
+		 * search.
+		 * @param bestMove the best move found so far, may be null.
+		 * @param dimX the dimension of the board on x-axis.
+		 * @param scores a copy of the ratings of the moves by index counted 
+		 * line by line, NaN for moves not rated yet.
+		 * @param finished true, if the search is finished.
+		 */
+		public SearchProgress(Player player, int depth, long nodes, long elapsedTime, 
+				Position bestMove, int dimX, double[] scores, boolean finished)
+		{
+			this.player = player;
+			this.depth = depth;
+			this.nodes = nodes;
+			this.elapsedTime = elapsedTime;
+			this.bestMove = bestMove;
+			this.dimX = dimX;
+			this.scores = scores;
+			this.finished = finished;
+		}
+
+		/**
+		 * Returns the searching player.
+		 * @return the searching player.
+		 */
+		public Player getPlayer()
+		{
+			return player;
+		}
+
+		/**
+		 * Returns the tree depth currently searched.
+		 * @return the tree depth.
+		 */
+		public int getDepth()
+		{
+			return depth;
+		}
+
+		/**
+		 * Returns the number of situations examined so far.
+		 * @return the number of nodes of the game tree.
+		 */
+		public long getNodes()
+		{
+			return nodes;
+		}
+
+		/**
+		 * Returns the time since the start of the search.
+		 * @return the elapsed time in milliseconds.
+		 */
+		public long getElapsedTime()
+		{
+			return elapsedTime;
+		}
+
+		/**
+		 * Returns the number of situations examined per second.
+		 * @return the nodes per second.
+		 */
+		public long getNodesPerSecond()
+		{
+			return elapsedTime > 0 ? nodes * 1000 / elapsedTime : 0;
+		}
+
+		/**
+		 * Returns the best move found so far.
+		 * @return the best move, null if no move has been rated yet.
+		 */
+		public Position getBestMove()
+		{
+			return bestMove;
+		}
+
+		/**
+		 * Returns the dimension of the board on x-axis.
+		 * @return the dimension on x-axis.
+		 */
+		public int getDimX()
+		{
+			return dimX;
+		}
+
+		/**
+		 * Returns the dimension of the board on y-axis.
+		 * @return the dimension on y-axis.
+		 */
+		public int getDimY()
+		{
+			return scores.length / dimX;
+		}
+
+		/**
+		 * Returns the rating of a move.
+		 * @param pos the position of the move.
+		 * @return the rating, NaN if the move has not been rated yet.
+		 */
+		public double getScore(Position pos)
+		{
+			return scores[pos.getY()*dimX + pos.getX()];
+		}
+
+		/**
+		 * Indicates if the search is finished.
+		 * @return true, if the search is finished.
+		 */
+		public boolean isFinished()
+		{
+			return finished;
+		}
+	}
+
+	/**
+	 * An error has occurred, e.g. an illegal move or a lost synchronization
+	 * with a remote server.
+	 */
+	public static class GameError extends GameEvent
+	{
+		private Exception error;
+
+		/**
+		 * Initiates the event of an error.
+		 * @param error the error.
+		 */
+		GameError(Exception error)
+		{
+			this.error = error;
+		}
+
+		/**
+		 * Returns the error.
+		 * @return the error.
+		 */
+		public Exception getError()
+		{
+			return error;
+		}
+	}
+}
@@ -0,0 +1,17 @@
+/*
+ * Created on 24.01.2007
+ */
+package gameelements;
+
+/**
+ * A subscriber of the events of a game.
+ */
+public interface GameListener
+{
+	/**
+	 * Called for every event of the types the listener has subscribed to,
+	 * in the order of publication, but not by the thread of the game.
+	 * @param event the event.
+	 */
+	void handleEvent(GameEvent event);
+}
@@ -58,6 +58,18 @@ public class GamePreferences
 	 */
 	private int remoteServerPort = 4711;
 	
+	/**
+	 * The time in milliseconds to wait for a response of the remote server,
+	 * 0 for no timeout.
+	 */
+	private long remoteServerTimeout = 60000;
+	
+	/**
+	 * Setting, whether boards of network games are validated by hash values
+	 * instead of full boards.
+	 */
+	private boolean isRemoteHashValidation = true;
+	
 	/**
 	 * The strategy type.
 	 */
@@ -78,6 +90,12 @@ public class GamePreferences
 	 */
 	private long animationSpeed = 500;
 	
+	/**
+	 * The maximal number of turns the animation may lag behind the game,
+	 * before the turns in between are skipped.
+	 */
+	private int maxAnimationLag = 2;
+	
 	/**
 	 * The singleton instance of the game preferences.
 	 */
@@ -257,6 +275,45 @@ public class GamePreferences
 		this.remoteServerPort = remoteServerPort;
 	}
 	
+	/**
+	 * Returns the time in milliseconds to wait for a response of the remote
+	 * server in network games, 0 for no timeout.
+	 * @return the remote server timeout.
+	 */
+	public long getRemoteServerTimeout()
+	{
+		return remoteServerTimeout;
+	}
+	
+	/**
+	 * Sets the time in milliseconds to wait for a response of the remote 
+	 * server in network games, 0 for no timeout.
+	 * @param remoteServerTimeout the remote server timeout to set.
+	 */
+	public void setRemoteServerTimeout(long remoteServerTimeout)
+	{
+		this.remoteServerTimeout = remoteServerTimeout;
+	}
+	
+	/**
+	 * Returns true, if the boards of network games are validated by hash 
+	 * values, and full boards are only requested on a mismatch.
+	 * @return true, if boards are validated by hash values.
+	 */
+	public boolean isRemoteHashValidation()
+	{
+		return isRemoteHashValidation;
+	}
+	
+	/**
+	 * Sets whether the boards of network games are validated by hash values.
+	 * @param isRemoteHashValidation true, for validation by hash values.
+	 */
+	public void setRemoteHashValidation(boolean isRemoteHashValidation)
+	{
+		this.isRemoteHashValidation = isRemoteHashValidation;
+	}
+	
 	/**
 	 * Returns a list of gamefield properties, to set up a board 
 	 * situation at game initialization.
@@ -339,4 +396,25 @@ public class GamePreferences
 	{
 		this.isAnimatedSteps = isAnimatedSteps;
 	}
+
+	/**
+	 * Returns the maximal number of complete turns waiting to be displayed.
+	 * If the game is faster than the animation, e.g. in games of two 
+	 * computer players, the waiting turns are skipped and the gui jumps to 
+	 * the latest board situation.
+	 * @return the maximal number of turns the gui lags behind the game.
+	 */
+	public int getMaxAnimationLag()
+	{
+		return maxAnimationLag;
+	}
+
+	/**
+	 * Sets the maximal number of complete turns waiting to be displayed.
+	 * @param maxAnimationLag the maximal number of turns to set.
+	 */
+	public void setMaxAnimationLag(int maxAnimationLag)
+	{
+		this.maxAnimationLag = maxAnimationLag;
+	}
 }
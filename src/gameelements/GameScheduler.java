@@ -0,0 +1,48 @@
+/*
+ * Created on 16.01.2007
+ */
+package gameelements;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Shared pool of threads that run the games, and continue them after a 
+ * non-blocking player has delivered its move. Threads are only held while a
+ * game actually has work to do, i.e. applying a move, notifying its 
+ * observers or a local computer player's search, and are reused by all 
+ * games.
+ */
+public class GameScheduler
+{
+	/**
+	 * The pool of threads shared by all games.
+	 */
+	private static final ExecutorService executor =
+		Executors.newCachedThreadPool(new ThreadFactory()
+		{
+			private int count = 0;
+
+			public synchronized Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, "kaskade-game-" + (++count));
+				t.setDaemon(true);
+				return t;
+			}
+		});
+
+	/**
+	 * Should not be instantiated.
+	 */
+	private GameScheduler() { }
+
+	/**
+	 * Executes the given task on one of the shared game threads.
+	 * @param task the task to execute.
+	 */
+	public static void execute(Runnable task)
+	{
+		executor.execute(task);
+	}
+}
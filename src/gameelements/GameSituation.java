@@ -19,6 +19,13 @@ public class GameSituation implements Cloneable
 	 */
 	private byte[][] fields;
 	
+	/**
+	 * Hash value of the fields, which is updated incrementally with every
+	 * change of a field. Equal situations on equal boards have equal hash 
+	 * values.
+	 */
+	private long hash;
+	
 	/**
 	 * The corresponding game board the game situation belongs to.
 	 */
@@ -67,7 +74,7 @@ public class GameSituation implements Cloneable
 				int x = aFieldSetting.position.getX();
 				int y = aFieldSetting.position.getY();
 				int col = aFieldSetting.color == GameColor.BLACK ? -1 : 1;
-				fields[x][y] = (byte) (col * aFieldSetting.tokens);
+				this.setField(x, y, (byte) (col * aFieldSetting.tokens));
 			}
 		}
 	}
@@ -76,6 +83,167 @@ public class GameSituation implements Cloneable
 	{
 		this.gameBoard = gameBoard;
 		this.fields = new byte[gameBoard.getDimX()][gameBoard.getDimY()];
+		this.hash = 0L;
+	}
+	
+	/**
+	 * Sets the value of a field and updates the hash value accordingly.
+	 * @param x the x-coordinate of the field.
+	 * @param y the y-coordinate of the field.
+	 * @param value the new value of the field.
+	 */
+	private void setField(int x, int y, byte value)
+	{
+		int index = y * gameBoard.getDimX() + x;
+		hash ^= fieldHash(index, fields[x][y]) ^ fieldHash(index, value);
+		fields[x][y] = value;
+	}
+	
+	/**
+	 * Returns the value of a field, the number of tokens with the sign of 
+	 * the color.
+	 * @param index the index of the field, counted line by line.
+	 * @return the value of the field.
+	 */
+	byte getField(int index)
+	{
+		return fields[index % gameBoard.getDimX()][index / gameBoard.getDimX()];
+	}
+	
+	/**
+	 * Applies the changes of a step of a move to the situation, which must 
+	 * be the situation before the step.
+	 * @param delta the changes of the step.
+	 */
+	public void apply(CascadeDelta delta)
+	{
+		for (int i=0; i<delta.size(); i++)
+		{
+			int index = delta.getIndex(i);
+			this.setField(index % gameBoard.getDimX(), index / gameBoard.getDimX(), delta.getNewValue(i));
+		}
+	}
+	
+	/**
+	 * Returns the hash contribution of a field with the given index and 
+	 * value. Empty fields do not contribute, so the hash of an empty board 
+	 * is 0.
+	 * @param index the index of the field, counted line by line.
+	 * @param value the value of the field.
+	 * @return the hash contribution of the field.
+	 */
+	static long fieldHash(int index, byte value)
+	{
+		if (value == 0)
+			return 0L;
+		
+		// SplitMix64 finalizer on the combined index and value
+		long z = (((long) index << 8) | (value & 0xFF)) * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+	
+	/**
+	 * Returns the hash value of the situation, which is maintained 
+	 * incrementally and therefore available in constant time.
+	 * @return the hash value of the situation.
+	 */
+	public long getHash()
+	{
+		return hash;
+	}
+	
+	/**
+	 * Returns the number of symmetries of a board, the mirror images and 
+	 * rotations mapping the board onto itself: eight on square boards, four 
+	 * on others. Symmetry 0 is the identity, symmetries 4 to 7 swap the axes.
+	 * @param dimX the dimension of the board on x-axis.
+	 * @param dimY the dimension of the board on y-axis.
+	 * @return the number of symmetries.
+	 */
+	public static int getSymmetries(int dimX, int dimY)
+	{
+		return dimX == dimY ? 8 : 4;
+	}
+	
+	/**
+	 * Maps the index of a field by a symmetry of the board.
+	 * @param index the index of the field, counted line by line.
+	 * @param symmetry the symmetry, see getSymmetries(int, int).
+	 * @param dimX the dimension of the board on x-axis.
+	 * @param dimY the dimension of the board on y-axis.
+	 * @return the index of the mapped field.
+	 */
+	public static int transform(int index, int symmetry, int dimX, int dimY)
+	{
+		int x = index % dimX;
+		int y = index / dimX;
+		if ((symmetry & 1) != 0)
+			x = dimX - 1 - x;
+		if ((symmetry & 2) != 0)
+			y = dimY - 1 - y;
+		if ((symmetry & 4) != 0)
+			return x * dimX + y; // only on square boards
+		return y * dimX + x;
+	}
+	
+	/**
+	 * Returns the symmetry reverting a symmetry.
+	 * @param symmetry the symmetry.
+	 * @return the inverse symmetry.
+	 */
+	public static int inverse(int symmetry)
+	{
+		// mirroring one axis and swapping the axes is a rotation
+		if (symmetry == 5)
+			return 6;
+		if (symmetry == 6)
+			return 5;
+		return symmetry;
+	}
+	
+	/**
+	 * Returns the hash value of the situation mapped by a symmetry of the 
+	 * board.
+	 * @param symmetry the symmetry, see getSymmetries(int, int).
+	 * @return the hash value of the mapped situation.
+	 */
+	public long getHash(int symmetry)
+	{
+		if (symmetry == 0)
+			return hash;
+		
+		int dimX = gameBoard.getDimX();
+		int dimY = gameBoard.getDimY();
+		long mapped = 0L;
+		for (int y=0; y<dimY; y++)
+			for (int x=0; x<dimX; x++)
+				mapped ^= fieldHash(transform(y * dimX + x, symmetry, dimX, dimY), fields[x][y]);
+		return mapped;
+	}
+	
+	/**
+	 * Returns the symmetry mapping the situation onto its canonical form, 
+	 * the one of all its mirror images and rotations with the lowest hash 
+	 * value. Situations equal but for a symmetry have equal canonical forms.
+	 * @return the symmetry with the lowest hash value, the lowest symmetry 
+	 * if several map the situation onto the same form.
+	 */
+	public int getCanonicalSymmetry()
+	{
+		int canonical = 0;
+		long lowest = hash;
+		for (int i=1; i<getSymmetries(getDimX(), getDimY()); i++)
+		{
+			long mapped = this.getHash(i);
+			if (mapped < lowest)
+			{
+				lowest = mapped;
+				canonical = i;
+			}
+		}
+		return canonical;
 	}
 	
 	/**
@@ -207,11 +375,13 @@ public class GameSituation implements Cloneable
 	 * triggered in case of a full field.
 	 * @param pos the position of the field.
 	 * @param color the color of the token being added.
+	 * @return the number of overflows caused by the token.
 	 */
-	public void addToken(Position pos, GameColor color, boolean display)
+	public int addToken(Position pos, GameColor color, boolean display)
 	{
+		byte previousValue = fields[pos.getX()][pos.getY()];
 		this.relocateToken( pos, color );
-		gameBoard.manageOverflows( this, pos, display );
+		return gameBoard.manageOverflows( this, pos, previousValue, display );
 	}
 
 	/**
@@ -227,11 +397,11 @@ public class GameSituation implements Cloneable
 		byte t = (byte) (Math.abs(value) + 1);
 		if (color == GameColor.BLACK)
 		{
-			this.fields[pos.getX()][pos.getY()] = (byte) -t;
+			this.setField(pos.getX(), pos.getY(), (byte) -t);
 		}
 		else
 		{
-			this.fields[pos.getX()][pos.getY()] = t;
+			this.setField(pos.getX(), pos.getY(), t);
 		}
 	}
 
@@ -254,12 +424,12 @@ public class GameSituation implements Cloneable
 		if (value < 0)
 		{
 			color = GameColor.BLACK;
-			this.fields[pos.getX()][pos.getY()] = (byte) -t;
+			this.setField(pos.getX(), pos.getY(), (byte) -t);
 		}
 		else if (value > 0)
 		{
 			color = GameColor.WHITE;
-			this.fields[pos.getX()][pos.getY()] = t;
+			this.setField(pos.getX(), pos.getY(), t);
 		}
 		return color;
 	}
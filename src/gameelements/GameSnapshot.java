@@ -0,0 +1,88 @@
+/*
+ * Created on 27.01.2007
+ */
+package gameelements;
+
+/**
+ * A consistent state of a game, taken after a move has been applied. The game
+ * publishes a new snapshot after every move and undo, so threads other than
+ * the game's thread, e.g. the gui or the services of the server, can read the
+ * state of the game without locking and without seeing a move half applied.
+ * A snapshot is never changed after its creation. Its situation is shared by
+ * all readers and must not be changed.
+ */
+public class GameSnapshot
+{
+	/**
+	 * The number of snapshots published before this one.
+	 */
+	private final long version;
+
+	/**
+	 * A copy of the situation of the game.
+	 */
+	private final GameSituation situation;
+
+	/**
+	 * The latest move of the game, null if no move has been made.
+	 */
+	private final Position latestMove;
+
+	/**
+	 * The turn of the game, i.e. the number of the next move.
+	 */
+	private final int turn;
+
+	/**
+	 * Initiates a snapshot.
+	 * @param version the number of snapshots published before.
+	 * @param situation a copy of the situation, which is not changed anymore.
+	 * @param latestMove the latest move, null if no move has been made.
+	 * @param turn the turn of the game.
+	 */
+	GameSnapshot(long version, GameSituation situation, Position latestMove, int turn)
+	{
+		this.version = version;
+		this.situation = situation;
+		this.latestMove = latestMove;
+		this.turn = turn;
+	}
+
+	/**
+	 * Returns the version of the snapshot, which is increased with every
+	 * snapshot published by a game, so readers can tell if the game has
+	 * changed since they have read it.
+	 * @return the version of the snapshot.
+	 */
+	public long getVersion()
+	{
+		return version;
+	}
+
+	/**
+	 * Returns the situation of the game, which must not be changed.
+	 * @return the situation of the game.
+	 */
+	public GameSituation getSituation()
+	{
+		return situation;
+	}
+
+	/**
+	 * Returns the latest move of the game.
+	 * @return the latest move, null if no move has been made.
+	 */
+	public Position getLatestMove()
+	{
+		return latestMove;
+	}
+
+	/**
+	 * Returns the turn of the game, i.e. the number of the next move.
+	 * @return the turn of the game.
+	 */
+	public int getTurn()
+	{
+		return turn;
+	}
+}
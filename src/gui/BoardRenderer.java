@@ -0,0 +1,229 @@
+/*
+ * Created on 28.01.2007
+ */
+package gui;
+
+import gameelements.GameColor;
+import gameelements.GameSituation;
+import gameelements.Position;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+
+/**
+ * Draws the fields of a game board, either on the screen for the game panel
+ * or offscreen without any window, e.g. for replays. Fields large enough show
+ * the single tokens, using cached images of the token piles. Smaller fields
+ * are drawn as tiles in the color of their tokens, whose strength shows how
+ * full the field is, with the number of tokens if there is room for it.
+ * A renderer is not thread-safe, each thread uses a renderer of its own.
+ */
+public class BoardRenderer
+{
+	/**
+	 * The minimal size of a field showing single tokens.
+	 */
+	static final int DETAIL_RECT_SIZE = 24;
+
+	/**
+	 * The minimal size of a field showing the number of tokens.
+	 */
+	static final int MIN_COUNT_RECT_SIZE = 12;
+
+	/**
+	 * The minimal size of a field showing its border.
+	 */
+	static final int MIN_GRID_RECT_SIZE = 5;
+
+	/**
+	 * The background of the latest move.
+	 */
+	static final Color MOVE_BACKGROUND = Color.orange;
+
+	/**
+	 * The background of overflowing fields.
+	 */
+	static final Color OVERFLOW_BACKGROUND = Color.darkGray;
+
+	/**
+	 * The background of fields changed since the latest move.
+	 */
+	static final Color CHANGED_BACKGROUND = Color.gray;
+
+	/**
+	 * The size of one field of the board.
+	 */
+	private int rectSize;
+
+	/**
+	 * The background of the board.
+	 */
+	private Color background;
+
+	/**
+	 * The images of the token piles.
+	 */
+	private TokenSprites sprites;
+
+	/**
+	 * The font for the numbers of tokens.
+	 */
+	private Font countFont;
+
+	/**
+	 * Initiates a renderer for drawing offscreen.
+	 * @param rectSize the size of one field.
+	 */
+	public BoardRenderer(int rectSize)
+	{
+		this(null, rectSize, new Font("SansSerif", Font.PLAIN, 12), Color.lightGray);
+	}
+
+	/**
+	 * Initiates a renderer.
+	 * @param config the configuration of the screen, null for drawing
+	 * offscreen.
+	 * @param rectSize the size of one field.
+	 * @param font the font the number of tokens is derived from.
+	 * @param background the background of the board.
+	 */
+	BoardRenderer(GraphicsConfiguration config, int rectSize, Font font, Color background)
+	{
+		this.rectSize = rectSize;
+		this.background = background;
+		this.sprites = new TokenSprites(config, rectSize);
+		this.countFont = font.deriveFont(Font.BOLD, rectSize * 0.6f);
+	}
+
+	/**
+	 * Returns the size of the fields drawn.
+	 * @return the size of one field.
+	 */
+	int getRectSize()
+	{
+		return rectSize;
+	}
+
+	/**
+	 * Creates an opaque image to draw on.
+	 * @param width the width of the image.
+	 * @param height the height of the image.
+	 * @return the image.
+	 */
+	BufferedImage createImage(int width, int height)
+	{
+		return sprites.createImage(width, height, Transparency.OPAQUE);
+	}
+
+	/**
+	 * Returns the background of a field according to its state.
+	 * @param isMove true, if the field is the latest move.
+	 * @param isFlowingOver true, if the field is flowing over.
+	 * @param isChanged true, if the field has changed since the latest move.
+	 * @return the background, null for the background of the board.
+	 */
+	static Color getFieldBackground(boolean isMove, boolean isFlowingOver, boolean isChanged)
+	{
+		if (isMove)
+			return MOVE_BACKGROUND;
+		else if (isFlowingOver)
+			return OVERFLOW_BACKGROUND;
+		else if (isChanged)
+			return CHANGED_BACKGROUND;
+		else
+			return null;
+	}
+
+	/**
+	 * Draws a whole situation into a new image.
+	 * @param situation the situation.
+	 * @param move the latest move, which is highlighted, may be null.
+	 * @param changed the fields changed by the latest move, which are
+	 * highlighted, by index counted line by line, may be null.
+	 * @return the image.
+	 */
+	public BufferedImage render(GameSituation situation, Position move, boolean[] changed)
+	{
+		int dimX = situation.getDimX();
+		BufferedImage image = this.createImage(dimX*rectSize+1, situation.getDimY()*rectSize+1);
+		Graphics2D g2 = image.createGraphics();
+		g2.setColor(background);
+		g2.fillRect(0, 0, image.getWidth(), image.getHeight());
+
+		for (Position aPos : situation.getPositions())
+		{
+			Color fieldBackground = null;
+			if (move != null)
+			{
+				fieldBackground = getFieldBackground(move.equals(aPos), situation.isFlowingOver(aPos),
+						changed != null && changed[aPos.getY()*dimX + aPos.getX()]);
+			}
+			this.drawField(g2, aPos.getX()*rectSize, aPos.getY()*rectSize, situation.getTokens(aPos),
+					situation.getColor(aPos), situation.getLimit(aPos), fieldBackground);
+		}
+		g2.dispose();
+		return image;
+	}
+
+	/**
+	 * Draws a field.
+	 * @param g2 the graphics to draw on.
+	 * @param currentX the left border of the field.
+	 * @param currentY the upper border of the field.
+	 * @param tokens the number of tokens on the field.
+	 * @param color the color of the tokens.
+	 * @param limit the number of tokens the field holds without overflowing.
+	 * @param fieldBackground the background of the field, null for the
+	 * background of the board.
+	 */
+	void drawField(Graphics2D g2, int currentX, int currentY, int tokens, GameColor color, int limit, Color fieldBackground)
+	{
+		g2.setColor(fieldBackground == null ? background : fieldBackground);
+		g2.fillRect(currentX, currentY, rectSize, rectSize);
+		if (tokens > 0)
+		{
+			if (rectSize >= DETAIL_RECT_SIZE)
+				g2.drawImage(sprites.get(tokens, color), currentX, currentY, null);
+			else
+				this.drawHeatTile(g2, tokens, limit, color, currentX, currentY);
+		}
+		if (rectSize >= MIN_GRID_RECT_SIZE)
+		{
+			g2.setColor(Color.black);
+			g2.drawRect( currentX, currentY, rectSize, rectSize );
+		}
+	}
+
+	/**
+	 * Draws a field, that is too small for showing the single tokens, as a
+	 * tile in the color of the tokens, whose strength shows how full the
+	 * field is, and the number of tokens, if the field is large enough.
+	 */
+	private void drawHeatTile(Graphics2D g2, int tokens, int limit, GameColor color, int currentX, int currentY)
+	{
+		float heat = 0.35f + 0.65f * Math.min(1f, tokens / (float) limit);
+		Color full = color == GameColor.BLACK ? Color.black : Color.white;
+		g2.setColor(new Color(
+				(int) (background.getRed() + heat * (full.getRed() - background.getRed())),
+				(int) (background.getGreen() + heat * (full.getGreen() - background.getGreen())),
+				(int) (background.getBlue() + heat * (full.getBlue() - background.getBlue()))));
+		int inset = rectSize / 8;
+		g2.fillRect(currentX + inset, currentY + inset, rectSize - 2*inset, rectSize - 2*inset);
+
+		if (rectSize >= MIN_COUNT_RECT_SIZE)
+		{
+			String count = String.valueOf(tokens);
+			g2.setFont(countFont);
+			FontMetrics metrics = g2.getFontMetrics();
+			g2.setColor(color == GameColor.BLACK ? Color.white : Color.black);
+			g2.drawString(count,
+					currentX + (rectSize - metrics.stringWidth(count)) / 2,
+					currentY + (rectSize + metrics.getAscent() - metrics.getDescent()) / 2);
+		}
+	}
+}
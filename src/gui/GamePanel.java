@@ -6,6 +6,7 @@ package gui;
 import gameelements.Game;
 import gameelements.GameColor;
 import gameelements.GamePreferences;
+import gameelements.GameSituation;
 import gameelements.Position;
 
 import java.awt.Color;
@@ -13,12 +14,21 @@ import java.awt.Cursor;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
-import java.awt.RenderingHints;
+import java.awt.Rectangle;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
+import java.awt.event.MouseMotionListener;
+import java.awt.event.MouseWheelEvent;
+import java.awt.event.MouseWheelListener;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.List;
 
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.Timer;
 
 import player.HumanPlayer;
 import player.Player;
@@ -26,25 +36,83 @@ import animation.Animator;
 
 /**
  * Panel which displays the game board and its game states and where all moves
- * can be set via mouse click.
+ * can be set via mouse click. The board is drawn into a back buffer, in which 
+ * only the fields that have changed are redrawn, using cached images of the 
+ * token piles. A timer paces the frames on the event dispatch thread.
+ * The board can be zoomed with the mouse wheel and moved by dragging. Only 
+ * the visible fields are drawn, and fields too small for showing single 
+ * tokens are drawn as colored tiles with the number of tokens.
  */
 @SuppressWarnings("serial")
-public class GamePanel extends JPanel implements MouseListener, Runnable
+public class GamePanel extends JPanel 
+	implements MouseListener, MouseMotionListener, MouseWheelListener, ActionListener
 {
+	/**
+	 * The time in milliseconds between two frames.
+	 */
+	private static final int FRAME_INTERVAL = 16;
+	
+	/**
+	 * The minimal size of a field when zooming out.
+	 */
+	private static final int MIN_RECT_SIZE = 2;
+	
+	/**
+	 * The maximal size of a field when zooming in.
+	 */
+	private static final int MAX_RECT_SIZE = 200;
+	
 	/**
 	 * The size of one rectangle which represents one field of the board.
 	 */
 	private int rectSize;
 	
 	/**
-	 * The size of one circle which represents a game token.
+	 * The timer that triggers the frames.
+	 */
+	private Timer timer;
+	
+	/**
+	 * The time the latest state has been displayed.
+	 */
+	private long lastFrame = 0;
+	
+	/**
+	 * The back buffer holding the drawn board, null until the panel has been
+	 * added to the main frame.
+	 */
+	private BufferedImage board;
+	
+	/**
+	 * The renderer drawing the fields.
 	 */
-	private int circleSize;
+	private BoardRenderer renderer;
 	
 	/**
-	 * Indicates if the panel's thread is running.
+	 * The appearance of each field as drawn in the back buffer, by index.
 	 */
-	private boolean running = false;
+	private int[] paintedFields;
+	
+	/**
+	 * The fields changed since the last move, by index, only set while 
+	 * drawing.
+	 */
+	private boolean[] changedFields;
+	
+	/**
+	 * The left border of the visible part of the board in pixels.
+	 */
+	private int viewX = 0;
+	
+	/**
+	 * The upper border of the visible part of the board in pixels.
+	 */
+	private int viewY = 0;
+	
+	/**
+	 * The latest position of the mouse while dragging the board.
+	 */
+	private int dragX, dragY;
 	
 	/**
 	 * The game that is being displayed on the panel.
@@ -67,18 +135,22 @@ public class GamePanel extends JPanel implements MouseListener, Runnable
 		setBackground(Color.lightGray);
 		
 		addMouseListener( this );
+		addMouseMotionListener( this );
+		addMouseWheelListener( this );
 		setCursor(new Cursor(Cursor.HAND_CURSOR));
 		
 		// init der Feldgren
-		int dimX = game.getSituation().getDimX();
-		int dimY = game.getSituation().getDimY();
+		int dimX = game.getSnapshot().getSituation().getDimX();
+		int dimY = game.getSnapshot().getSituation().getDimY();
 		int maxDim = dimX > dimY ? dimX : dimY;
-		rectSize = this.prefPanelSize()/maxDim;
-		circleSize = rectSize/5;
+		rectSize = Math.max(MIN_RECT_SIZE, this.prefPanelSize()/maxDim);
 		
 		animator = new Animator(game);
 		animator.processStateQueue();
 		
+		timer = new Timer(FRAME_INTERVAL, this);
+		timer.setCoalesce(true);
+		
 		setPreferredSize(new Dimension(dimX*rectSize+1, dimY*rectSize+1));
 	}
 	
@@ -101,214 +173,241 @@ public class GamePanel extends JPanel implements MouseListener, Runnable
 		return minFrameDim - 80;
 	}
 
-	private void start()
-	{
-		if (!running)
-		{
-			Thread t = new Thread(this);
-			t.start();
-		}
-	}
-	
 	/**
-	 * This ensures the panel's thread to be started just after the panel has 
+	 * This ensures the panel's timer to be started just after the panel has 
 	 * been added to the main frame. 
 	 * @see javax.swing.JComponent#addNotify()
 	 */
 	public void addNotify()
 	{
 		super.addNotify();
-		this.start();
+		
+		this.updateBoard();
+		this.updateStatus();
+		timer.start();
 	}
 	
 	/** 
-	 * This stops the panel's thread just after the panel has been removed from
+	 * This stops the panel's timer just after the panel has been removed from
 	 * the main frame.
 	 * @see javax.swing.JComponent#removeNotify()
 	 */
 	public void removeNotify()
 	{
-		this.running = false;
+		timer.stop();
+		super.removeNotify();
 	}
 	
-	/* (non-Javadoc)
+	/**
+	 * Draws the visible part of the board from the back buffer. Only the 
+	 * region to repaint is copied.
 	 * @see javax.swing.JComponent#paintComponent(java.awt.Graphics)
 	 */
 	public void paintComponent(Graphics g)
 	{
-		super.paintComponent(g);
+		if (board == null || board.getWidth() != getWidth() || board.getHeight() != getHeight())
+		{
+			this.drawBoard(); // resized
+		}
+		
+		if (board == null)
+		{
+			super.paintComponent(g);
+			return;
+		}
+		g.drawImage(board, 0, 0, null);
+	}
+	
+	/**
+	 * Draws the changed fields into the back buffer and repaints their
+	 * region.
+	 */
+	private void updateBoard()
+	{
+		Rectangle dirty = this.drawBoard();
+		if (dirty != null)
+		{
+			this.repaint(dirty);
+		}
+	}
+	
+	/**
+	 * Draws all visible fields into the back buffer, whose appearance has 
+	 * changed since they have been drawn last. Fields outside the visible 
+	 * part of the board are not examined at all. The back buffer covers the 
+	 * visible part only, and is redrawn completely after zooming, panning or
+	 * resizing.
+	 * @return the region of the drawn fields, null if no field has changed.
+	 */
+	private Rectangle drawBoard()
+	{
+		int width = getWidth();
+		int height = getHeight();
+		if (width <= 0 || height <= 0 || !animator.hasCurrentAnimationState())
+			return null;
 		
-		Graphics2D g2 = (Graphics2D) g;
-		g2.setRenderingHint(
-		        RenderingHints.KEY_ANTIALIASING,
-		        RenderingHints.VALUE_ANTIALIAS_ON); 
+		GameSituation situation = game.getSnapshot().getSituation();
+		int dimX = situation.getDimX();
+		int dimY = situation.getDimY();
 		
-		int currentX = 0;
-		int currentY = 0;
+		if (board != null && (board.getWidth() != width || board.getHeight() != height))
+		{
+			board = null;
+		}
+		if (renderer == null || renderer.getRectSize() != rectSize)
+		{
+			renderer = new BoardRenderer(getGraphicsConfiguration(), rectSize, getFont(), getBackground());
+			board = null;
+		}
 		
-		if (animator.hasCurrentAnimationState())
+		Graphics2D g2;
+		Rectangle dirty = null;
+		if (board == null)
 		{
-			MainFrame.getInstance().setStatus1( "turn " + animator.getCurrentTurn() ); 
-			MainFrame.getInstance().setStatus2( animator.getCurrentPlayer().getPlayerName() );
-			MainFrame.getInstance().setStatus3( 
-					"white: " + animator.getTokensOfColor(GameColor.WHITE) );
-			MainFrame.getInstance().setStatus4( 
-					"black: " + animator.getTokensOfColor(GameColor.BLACK) );
+			board = renderer.createImage(width, height);
+			paintedFields = new int[dimX*dimY];
+			changedFields = new boolean[dimX*dimY];
+			Arrays.fill(paintedFields, -1);
 			
-			for (Position aPos : game.getSituation().getPositions())
+			g2 = board.createGraphics();
+			g2.setColor(getBackground());
+			g2.fillRect(0, 0, width, height);
+			dirty = new Rectangle(0, 0, width, height);
+		}
+		else
+		{
+			g2 = board.createGraphics();
+		}
+		
+		// the positions changed since the last move
+		List<Position> changedPositions = animator.getCurrentChangedPositions();
+		for (Position aPos : changedPositions)
+		{
+			if (aPos != null)
+				changedFields[aPos.getY()*dimX + aPos.getX()] = true;
+		}
+		Position currentMove = animator.getCurrentMove();
+		
+		// visible fields only
+		int firstX = Math.max(0, viewX / rectSize);
+		int firstY = Math.max(0, viewY / rectSize);
+		int lastX = Math.min(dimX-1, (viewX + width) / rectSize);
+		int lastY = Math.min(dimY-1, (viewY + height) / rectSize);
+		
+		for (int y=firstY; y<=lastY; y++)
+		{
+			for (int x=firstX; x<=lastX; x++)
 			{
-				currentX = aPos.getX() * rectSize;
-				currentY = aPos.getY() * rectSize;
+				Position aPos = new Position(x, y);
+				int index = y*dimX + x;
 				
-				if ( animator.getCurrentMove() != null )
+				Color background = null;
+				if ( currentMove != null )
 				{
-					if ( animator.getCurrentMove().equals(aPos) )
-					{
-						g2.setColor(Color.orange);
-						g2.fillRect(currentX, currentY, rectSize, rectSize);
-					}
-					else if ( animator.isFlowingOver(aPos) )
-					{
-						g2.setColor(Color.darkGray);
-						g2.fillRect(currentX, currentY, rectSize, rectSize);
-					}
-					else if (animator.getCurrentChangedPositions().contains(aPos) )
-					{
-						g2.setColor(Color.gray);
-						g2.fillRect(currentX, currentY, rectSize, rectSize);
-					}
-					g2.setColor(Color.black);
+					background = BoardRenderer.getFieldBackground(currentMove.equals(aPos), 
+							animator.isFlowingOver(aPos), changedFields[index]);
 				}
+				int tokens = animator.getTokens(aPos);
+				GameColor color = animator.getColor(aPos);
 				
-				g2.drawRect( currentX, currentY, rectSize, rectSize );
-	
-				this.drawTokens(g2, animator.getTokens(aPos), animator.getColor(aPos), currentX, currentY);	
+				// tokens, color and background of the field
+				int appearance = (tokens << 3) 
+					| (color == GameColor.BLACK ? 4 : 0) 
+					| (background == BoardRenderer.MOVE_BACKGROUND ? 1 
+							: background == BoardRenderer.OVERFLOW_BACKGROUND ? 2 
+							: background == BoardRenderer.CHANGED_BACKGROUND ? 3 : 0);
+				if (appearance == paintedFields[index])
+					continue;
+				paintedFields[index] = appearance;
+				
+				int currentX = x * rectSize - viewX;
+				int currentY = y * rectSize - viewY;
+				
+				renderer.drawField(g2, currentX, currentY, tokens, color, situation.getLimit(aPos), background);
+				
+				Rectangle field = new Rectangle(currentX, currentY, rectSize+1, rectSize+1);
+				dirty = dirty == null ? field : dirty.union(field);
 			}
 		}
+		g2.dispose();
+		
+		for (Position aPos : changedPositions)
+		{
+			if (aPos != null)
+				changedFields[aPos.getY()*dimX + aPos.getX()] = false;
+		}
+		
+		return dirty;
 	}
-
-	private void drawTokens(
-			Graphics2D g2, int tokens, GameColor color, int currentFieldPosX, int currentFieldPosY)
+	
+	/**
+	 * Moves the visible part of the board, but not beyond the borders of the
+	 * board, and redraws it.
+	 * @param newViewX the left border of the visible part in pixels.
+	 * @param newViewY the upper border of the visible part in pixels.
+	 */
+	private void moveView(int newViewX, int newViewY)
 	{
-		if (tokens > 0)
-		{
-			double pileWidth = Math.ceil( Math.sqrt(tokens) );
-			double pileHeight = Math.ceil( tokens / pileWidth );
-			int pileCapacity = (int) (pileHeight * pileWidth);
-			
-			// start left bottom
-			int currentTokenPosX = 0;			// left
-			int currentTokenPosY = rectSize;	// bottom
-			
-			// arrange circles ...
-			for (int i=0; i<tokens; i++)
-			{
-				// ... in height
-				if (i % pileWidth == 0) // wenn wir eine Reihe voll haben, gehen wir einen hher
-				{
-					currentTokenPosX = 0;
-					currentTokenPosY -= rectSize / (pileHeight + 1);
-				}
-				// ... and width
-				int row = (int) Math.ceil((i+1)/pileWidth);
-				if (tokens % pileCapacity != 0 && row == pileHeight) // Rest in oberster Reihe
-				{
-					currentTokenPosX += rectSize / (pileWidth-(pileCapacity-tokens) + 1);
-				}
-				else // row is full
-				{
-					currentTokenPosX += rectSize / (pileWidth + 1);
-				}
-				
-				this.drawPositionedToken(g2, color, currentFieldPosX, currentFieldPosY, currentTokenPosX, currentTokenPosY);
-			}
-		}	
+		GameSituation situation = game.getSnapshot().getSituation();
+		int maxViewX = Math.max(0, situation.getDimX() * rectSize + 1 - getWidth());
+		int maxViewY = Math.max(0, situation.getDimY() * rectSize + 1 - getHeight());
+		newViewX = Math.max(0, Math.min(maxViewX, newViewX));
+		newViewY = Math.max(0, Math.min(maxViewY, newViewY));
+		if (newViewX == viewX && newViewY == viewY && board != null && renderer.getRectSize() == rectSize)
+			return;
+		
+		viewX = newViewX;
+		viewY = newViewY;
+		board = null;
+		this.updateBoard();
 	}
-
-	private void drawPositionedToken(
-			Graphics2D g2, GameColor color, int currentFieldPosX, int currentFieldPosY, int currentTokenPosX, int currentTokenPosY)
+	
+	private void updateStatus()
 	{
-		int x = currentFieldPosX - circleSize/2 + currentTokenPosX;
-		int y = currentFieldPosY - circleSize/2 + currentTokenPosY;
-
-		if (color != null)
-		{
-			if (color == GameColor.BLACK)
-			{
-				g2.drawOval(x, y, circleSize, circleSize);
-				g2.fillOval(x, y, circleSize, circleSize);
-			}
-			else if (color == GameColor.WHITE)
-			{
-				g2.setColor(Color.white);
-				g2.drawOval(x, y, circleSize, circleSize);
-				g2.fillOval(x, y, circleSize, circleSize);
-				g2.setColor(Color.black);
-			}
-		}
+		MainFrame.getInstance().setStatus1( "turn " + animator.getCurrentTurn() ); 
+		MainFrame.getInstance().setStatus2( animator.getCurrentPlayer().getPlayerName() );
+		MainFrame.getInstance().setStatus3( 
+				"white: " + animator.getTokensOfColor(GameColor.WHITE) );
+		MainFrame.getInstance().setStatus4( 
+				"black: " + animator.getTokensOfColor(GameColor.BLACK) );
 	}
 	
 	/**
-	 * Ensures that the panel will always receive the most recent state from
-	 * the model and triggers a repaint of the panel according to the selected 
-	 * animation speed. Stops if game is over.
-	 * @see java.lang.Runnable#run()
+	 * Called by the timer of the panel for every frame. Takes the next state 
+	 * from the animator, as soon as the previous state has been displayed for
+	 * the selected animation speed, and draws it. Stops if game is over.
+	 * @see java.awt.event.ActionListener#actionPerformed(java.awt.event.ActionEvent)
 	 */
-	public void run()
+	public void actionPerformed(ActionEvent e)
 	{
-		running = true;
+		long now = System.currentTimeMillis();
+		if ( now - lastFrame < GamePreferences.getInstance().getAnimationSpeed() || !animator.hasNext() )
+			return;
+		lastFrame = now;
 		
-		while (running)
+		animator.processStateQueue();
+		
+		this.updateBoard();
+		this.updateStatus();
+		
+		if ( animator.isUniColored() )
 		{
-			if ( !animator.hasNext() )
-			{
-				synchronized(animator)
-				{
-					try
-					{
-						animator.wait();
-					} 
-					catch (InterruptedException e)
-					{
-						e.printStackTrace();
-					}
-				}
-			}
-			animator.processStateQueue();
+			timer.stop();
 			
-			this.repaint();
+			int retval = JOptionPane.showConfirmDialog(this, 
+					"GAME OVER\nwinner: " 
+				  + game.getWinner().getPlayerName() 
+				  + "\nnew game?");
 			
-			try
+			if (retval == JOptionPane.YES_OPTION)
 			{
-				Thread.sleep( GamePreferences.getInstance().getAnimationSpeed() );
-			} 
-			catch (InterruptedException e)
-			{
-				e.printStackTrace();
+				MainFrame.getInstance().newGameDialog();
 			}
-			
-			if ( animator.isUniColored() )
+			else if (retval == JOptionPane.NO_OPTION)
 			{
-				this.repaint();
-				
-				running = false;
-				
-				int retval = JOptionPane.showConfirmDialog(this, 
-						"GAME OVER\nwinner: " 
-					  + game.getWinner().getPlayerName() 
-					  + "\nnew game?");
-				
-				if (retval == JOptionPane.YES_OPTION)
-				{
-					MainFrame.getInstance().newGameDialog();
-				}
-				else if (retval == JOptionPane.NO_OPTION)
-				{
-					MainFrame.getInstance().exit();
-				}
+				MainFrame.getInstance().exit();
 			}
 		}
-		
 	}
 	
 	/** 
@@ -320,10 +419,48 @@ public class GamePanel extends JPanel implements MouseListener, Runnable
 		Player activePlayer = game.getActivePlayer();
 		if ( activePlayer != null && activePlayer instanceof HumanPlayer )
 		{
-			Position nextMove = new Position( (e.getX()/rectSize), (e.getY()/rectSize) );
-			((HumanPlayer) activePlayer).setNextMove( nextMove );
+			Position nextMove = new Position( ((e.getX()+viewX)/rectSize), ((e.getY()+viewY)/rectSize) );
+			GameSituation situation = game.getSnapshot().getSituation();
+			if ( nextMove.getX() < situation.getDimX() && nextMove.getY() < situation.getDimY() )
+			{
+				((HumanPlayer) activePlayer).setNextMove( nextMove );
+			}
 		}
 	}
+	
+	/** 
+	 * Zooms the board in or out, keeping the field under the mouse in place.
+	 * @see java.awt.event.MouseWheelListener#mouseWheelMoved(java.awt.event.MouseWheelEvent)
+	 */
+	public void mouseWheelMoved(MouseWheelEvent e)
+	{
+		int newRectSize = e.getWheelRotation() < 0 ? rectSize * 5/4 + 1 : rectSize * 4/5;
+		newRectSize = Math.max(MIN_RECT_SIZE, Math.min(MAX_RECT_SIZE, newRectSize));
+		if (newRectSize == rectSize)
+			return;
+		
+		// board coordinates under the mouse
+		double boardX = (e.getX() + viewX) / (double) rectSize;
+		double boardY = (e.getY() + viewY) / (double) rectSize;
+		
+		rectSize = newRectSize;
+		this.moveView( (int) (boardX * rectSize) - e.getX(), (int) (boardY * rectSize) - e.getY() );
+	}
+	
+	/** 
+	 * Moves the board along with the mouse.
+	 * @see java.awt.event.MouseMotionListener#mouseDragged(java.awt.event.MouseEvent)
+	 */
+	public void mouseDragged(MouseEvent e)
+	{
+		this.moveView( viewX + dragX - e.getX(), viewY + dragY - e.getY() );
+		dragX = e.getX();
+		dragY = e.getY();
+	}
+
+	public void mouseMoved(MouseEvent e)
+	{
+	}
 
 	public void mouseEntered(MouseEvent e)
 	{
@@ -335,6 +472,8 @@ public class GamePanel extends JPanel implements MouseListener, Runnable
 
 	public void mousePressed(MouseEvent e)
 	{
+		dragX = e.getX();
+		dragY = e.getY();
 	}
 
 	public void mouseReleased(MouseEvent e)
@@ -3,7 +3,10 @@
  */
 package gui;
 
+import gameelements.EventBus;
 import gameelements.Game;
+import gameelements.GameEvent;
+import gameelements.GameListener;
 import gameelements.GamePreferences;
 import gameelements.IllegalMoveException;
 
@@ -15,8 +18,6 @@ import java.awt.Point;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.IOException;
-import java.util.Observable;
-import java.util.Observer;
 
 import javax.swing.JDialog;
 import javax.swing.JFrame;
@@ -27,6 +28,7 @@ import javax.swing.JTextField;
 import network.RemoteGameSynchronisationException;
 import network.Server;
 import network.ServerPreferences;
+import player.ComputerPlayer;
 
 /**
  * This class represents the main window of the application. It contains the 
@@ -39,7 +41,7 @@ import network.ServerPreferences;
  * everywhere. 
  */
 @SuppressWarnings("serial")
-public class MainFrame extends JFrame implements ActionListener, Observer
+public class MainFrame extends JFrame implements ActionListener, GameListener
 {
 	/**
 	 * The single instance of this class.
@@ -92,6 +94,12 @@ public class MainFrame extends JFrame implements ActionListener, Observer
 	 */
 	private Game game;
 	
+	/**
+	 * The panel showing the searches of the computer players of the current
+	 * game, null if no computer player takes part.
+	 */
+	private ThinkingPanel thinkingPanel;
+	
 	/**
 	 * Returns the instance of this singleton class. If no instance existsts,
 	 * a new instance will be created.
@@ -314,6 +322,13 @@ public class MainFrame extends JFrame implements ActionListener, Observer
 		}
 		
 		actionPanel.removeAll();
+		if (thinkingPanel != null)
+		{
+			if (game != null)
+				game.getEvents().unsubscribe(thinkingPanel);
+			getContentPane().remove(thinkingPanel);
+			thinkingPanel = null;
+		}
 		validate();
 	}
 	
@@ -378,11 +393,23 @@ public class MainFrame extends JFrame implements ActionListener, Observer
 		// create view
 		GamePanel view = new GamePanel(game);
 		
-		game.connectView( view );
+		// connect the view's animator to the steps of the moves, and this 
+		// frame to the errors of the game, dropping errors while a dialog 
+		// is open
+		game.getEvents().subscribe(view.getAnimator(), GameEvent.CascadeStep.class, EventBus.BLOCK, EventBus.DEFAULT_CAPACITY);
+		game.getEvents().subscribe(this, GameEvent.GameError.class, EventBus.DROP, 1);
 		
 		view.setVisible(true);
 		MainFrame.getInstance().getActionPanel().add( view );
 		
+		// show the searches of computer players next to the board
+		if (game.getPlayerOfTurn(1) instanceof ComputerPlayer || game.getPlayerOfTurn(2) instanceof ComputerPlayer)
+		{
+			thinkingPanel = new ThinkingPanel();
+			game.getEvents().subscribe(thinkingPanel, GameEvent.SearchProgress.class, EventBus.CONFLATE, 1);
+			getContentPane().add(thinkingPanel, BorderLayout.EAST);
+		}
+		
 		MainFrame.getInstance().validate();
 		
 		game.startGame();
@@ -393,10 +420,14 @@ public class MainFrame extends JFrame implements ActionListener, Observer
 	 * of an exception creates an alert window for displaying the error 
 	 * message.
 	 * 
-	 * @see java.util.Observer#update(java.util.Observable, java.lang.Object)
+	 * @see gameelements.GameListener#handleEvent(gameelements.GameEvent)
 	 */
-	public void update(Observable o, Object arg)
+	public void handleEvent(GameEvent event)
 	{
+		if ( !(event instanceof GameEvent.GameError) )
+			return;
+		
+		Exception arg = ((GameEvent.GameError) event).getError();
 		if (arg instanceof IllegalMoveException)
 		{
 			this.illegalMoveExceptionDialog();
@@ -0,0 +1,501 @@
+/*
+ * Created on 28.01.2007
+ */
+package gui;
+
+import gameelements.Game;
+import gameelements.GameBoard;
+import gameelements.GameColor;
+import gameelements.GameSituation;
+import gameelements.Position;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Replays recorded games without any window and renders them to images,
+ * using the same drawing as the game panel. Each game is rendered as a PNG
+ * of its final board, as a PNG per move or as an animated GIF with a frame
+ * per move. The games are rendered in parallel, one game per thread. The
+ * images only depend on the recorded moves, so rendering the same games
+ * twice gives the same files.
+ * <p>
+ * The games are read from a text file, one game per line:
+ * <pre>
+ * &lt;name&gt; &lt;dimX&gt;x&lt;dimY&gt; &lt;x&gt;,&lt;y&gt; &lt;x&gt;,&lt;y&gt; ...
+ * </pre>
+ * The moves alternate between white and black, white begins. Empty lines
+ * and lines starting with '#' are skipped. The names of the games are used
+ * for the names of the image files, so they may only consist of letters, 
+ * digits, '_' and '-'. The board sizes are limited like those of the games.
+ */
+public class ReplayRenderer
+{
+	/**
+	 * The usage message.
+	 */
+	private static final String USAGE =
+		"usage: ReplayRenderer -in file [-out dir] [-format png|frames|gif]" +
+		" [-size n] [-delay ms] [-threads n]";
+
+	/**
+	 * Format: a PNG of the final board.
+	 */
+	private static final String FORMAT_PNG = "png";
+
+	/**
+	 * Format: a PNG per move.
+	 */
+	private static final String FORMAT_FRAMES = "frames";
+
+	/**
+	 * Format: an animated GIF with a frame per move.
+	 */
+	private static final String FORMAT_GIF = "gif";
+
+	/**
+	 * The file holding the games.
+	 */
+	private File input = null;
+
+	/**
+	 * The directory the images are written to.
+	 */
+	private File outputDir = new File(".");
+
+	/**
+	 * The format of the images.
+	 */
+	private String format = FORMAT_GIF;
+
+	/**
+	 * The size of one field in pixels.
+	 */
+	private int rectSize = 24;
+
+	/**
+	 * The time in milliseconds each frame of an animated GIF is shown.
+	 */
+	private int delay = 500;
+
+	/**
+	 * The number of games rendered in parallel.
+	 */
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Renders the games given by the arguments.
+	 * @param args the arguments, see USAGE.
+	 */
+	public static void main(String[] args)
+	{
+		System.setProperty("java.awt.headless", "true");
+
+		ReplayRenderer renderer = new ReplayRenderer();
+		try
+		{
+			renderer.parseArgs(args);
+		}
+		catch (IllegalArgumentException e)
+		{
+			System.err.println(e.getMessage());
+			System.err.println(USAGE);
+			System.exit(1);
+		}
+
+		int failed = 0;
+		try
+		{
+			failed = renderer.run();
+		}
+		catch (IOException e)
+		{
+			System.err.println("could not read games: " + e.getMessage());
+			System.exit(1);
+		}
+		System.exit(failed == 0 ? 0 : 1);
+	}
+
+	private void parseArgs(String[] args)
+	{
+		for (int i=0; i<args.length; i++)
+		{
+			String arg = args[i];
+			if (i + 1 >= args.length)
+			{
+				throw new IllegalArgumentException("missing value for " + arg);
+			}
+			String value = args[++i];
+			if (arg.equals("-in"))
+				input = new File(value);
+			else if (arg.equals("-out"))
+				outputDir = new File(value);
+			else if (arg.equals("-format"))
+			{
+				if (!value.equals(FORMAT_PNG) && !value.equals(FORMAT_FRAMES) && !value.equals(FORMAT_GIF))
+					throw new IllegalArgumentException("unknown format: " + value);
+				format = value;
+			}
+			else
+			{
+				try
+				{
+					int number = Integer.parseInt(value);
+					if (number < 1)
+						throw new NumberFormatException();
+					if (arg.equals("-size"))
+						rectSize = number;
+					else if (arg.equals("-delay"))
+						delay = number;
+					else if (arg.equals("-threads"))
+						threads = number;
+					else
+						throw new IllegalArgumentException("unknown argument: " + arg);
+				}
+				catch (NumberFormatException e)
+				{
+					throw new IllegalArgumentException("illegal value for " + arg + ": " + value);
+				}
+			}
+		}
+		if (input == null)
+		{
+			throw new IllegalArgumentException("missing argument: -in");
+		}
+	}
+
+	/**
+	 * Reads the games and renders them in parallel. Reports the result of
+	 * each game in the order of the file.
+	 * @return the number of games that could not be rendered.
+	 * @throws IOException if the games could not be read.
+	 */
+	private int run() throws IOException
+	{
+		List<Replay> replays = this.readReplays();
+		if (!outputDir.isDirectory() && !outputDir.mkdirs())
+		{
+			throw new IOException("could not create " + outputDir);
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory()
+		{
+			private int count = 0;
+
+			public synchronized Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, "kaskade-render-" + (++count));
+				t.setDaemon(true);
+				return t;
+			}
+		});
+
+		List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+		for (Replay aReplay : replays)
+		{
+			results.add(executor.submit(aReplay));
+		}
+
+		int failed = 0;
+		for (int i=0; i<replays.size(); i++)
+		{
+			String name = replays.get(i).name;
+			try
+			{
+				System.out.println(name + ": " + results.get(i).get() + " frames");
+			}
+			catch (ExecutionException e)
+			{
+				System.err.println(name + ": " + e.getCause().getMessage());
+				failed++;
+			}
+			catch (InterruptedException e)
+			{
+				System.err.println(name + ": interrupted");
+				failed++;
+			}
+		}
+		executor.shutdown();
+		System.out.println(replays.size() - failed + " of " + replays.size() + " games rendered");
+		return failed;
+	}
+
+	/**
+	 * Reads the games from the input file.
+	 * @return the games.
+	 * @throws IOException if the file could not be read or is malformed.
+	 */
+	private List<Replay> readReplays() throws IOException
+	{
+		List<Replay> replays = new ArrayList<Replay>();
+		BufferedReader reader = new BufferedReader(new FileReader(input));
+		try
+		{
+			int lineNumber = 0;
+			String line;
+			while ((line = reader.readLine()) != null)
+			{
+				lineNumber++;
+				line = line.trim();
+				if (line.length() == 0 || line.startsWith("#"))
+					continue;
+
+				try
+				{
+					replays.add(this.parseReplay(line));
+				}
+				catch (RuntimeException e)
+				{
+					throw new IOException("line " + lineNumber + " is malformed: " + line);
+				}
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+		return replays;
+	}
+
+	private Replay parseReplay(String line)
+	{
+		String[] tokens = line.split("\\s+");
+		String[] dims = tokens[1].split("x");
+		if (dims.length != 2)
+			throw new IllegalArgumentException();
+		int dimX = Integer.parseInt(dims[0]);
+		int dimY = Integer.parseInt(dims[1]);
+		if (dimX < Game.NR_OF_FIELDS_MIN || dimY < Game.NR_OF_FIELDS_MIN
+				|| dimX > Game.NR_OF_FIELDS_MAX || dimY > Game.NR_OF_FIELDS_MAX)
+			throw new IllegalArgumentException();
+		if (!tokens[0].matches("[A-Za-z0-9_-]+"))
+			throw new IllegalArgumentException();
+
+		List<Position> moves = new ArrayList<Position>();
+		for (int i=2; i<tokens.length; i++)
+		{
+			String[] coords = tokens[i].split(",");
+			if (coords.length != 2)
+				throw new IllegalArgumentException();
+			moves.add( new Position(Integer.parseInt(coords[0]), Integer.parseInt(coords[1])) );
+		}
+		return new Replay(tokens[0], dimX, dimY, moves);
+	}
+
+	/**
+	 * A recorded game, which is replayed and rendered by one thread with a
+	 * renderer of its own.
+	 */
+	private class Replay implements Callable<Integer>
+	{
+		private String name;
+
+		private int dimX;
+
+		private int dimY;
+
+		private List<Position> moves;
+
+		Replay(String name, int dimX, int dimY, List<Position> moves)
+		{
+			this.name = name;
+			this.dimX = dimX;
+			this.dimY = dimY;
+			this.moves = moves;
+		}
+
+		/**
+		 * Replays the game and writes its images.
+		 * @return the number of frames rendered.
+		 * @throws IOException if an image could not be written or the game
+		 * holds an illegal move.
+		 * @see java.util.concurrent.Callable#call()
+		 */
+		public Integer call() throws IOException
+		{
+			BoardRenderer renderer = new BoardRenderer(rectSize);
+			GameSituation situation = new GameSituation(new GameBoard(dimX, dimY), null);
+			boolean[] changed = new boolean[dimX*dimY];
+
+			File gifFile = new File(outputDir, name + ".gif");
+			GifSequence gif = null;
+			if (format.equals(FORMAT_GIF))
+				gif = new GifSequence(gifFile, delay);
+			boolean complete = false;
+			try
+			{
+				BufferedImage frame = renderer.render(situation, null, null);
+				int frames = 0;
+				this.writeFrame(frame, frames++, gif);
+
+				GameColor color = GameColor.WHITE;
+				for (Iterator<Position> i = moves.iterator(); i.hasNext(); )
+				{
+					Position move = i.next();
+					this.checkMove(situation, move, color, frames);
+
+					GameSituation previous = situation.clone();
+					situation.addToken(move, color, false);
+					for (Position aPos : situation.getPositions())
+					{
+						changed[aPos.getY()*dimX + aPos.getX()] =
+							situation.getTokens(aPos) != previous.getTokens(aPos) ||
+							situation.getColor(aPos) != previous.getColor(aPos);
+					}
+
+					if (!format.equals(FORMAT_PNG) || !i.hasNext())
+					{
+						frame = renderer.render(situation, move, changed);
+						this.writeFrame(frame, frames, gif);
+					}
+					frames++;
+					color = color == GameColor.WHITE ? GameColor.BLACK : GameColor.WHITE;
+				}
+				complete = true;
+				return Integer.valueOf(format.equals(FORMAT_PNG) ? 1 : frames);
+			}
+			finally
+			{
+				if (gif != null)
+				{
+					gif.close();
+					if (!complete)
+						gifFile.delete();
+				}
+			}
+		}
+
+		private void checkMove(GameSituation situation, Position move, GameColor color, int turn) throws IOException
+		{
+			if (move.getX() < 0 || move.getX() >= dimX || move.getY() < 0 || move.getY() >= dimY)
+				throw new IOException("move " + turn + " is outside of the board");
+			if (situation.isUniColored())
+				throw new IOException("move " + turn + " follows the end of the game");
+			if (situation.getColor(move) != null && situation.getColor(move) != color)
+				throw new IOException("move " + turn + " is illegal");
+		}
+
+		private void writeFrame(BufferedImage frame, int number, GifSequence gif) throws IOException
+		{
+			if (gif != null)
+				gif.write(frame);
+			else if (format.equals(FORMAT_FRAMES))
+				ImageIO.write(frame, "png", new File(outputDir, name + "-" + pad(number) + ".png"));
+			else if (number > 0 || moves.isEmpty())
+				ImageIO.write(frame, "png", new File(outputDir, name + ".png"));
+		}
+	}
+
+	private static String pad(int number)
+	{
+		String text = String.valueOf(number);
+		while (text.length() < 4)
+			text = "0" + text;
+		return text;
+	}
+
+	/**
+	 * An animated GIF, written frame by frame, that is repeated endlessly.
+	 */
+	private static class GifSequence
+	{
+		private ImageWriter writer;
+
+		private ImageOutputStream out;
+
+		private int delay;
+
+		private boolean first = true;
+
+		GifSequence(File file, int delay) throws IOException
+		{
+			Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("gif");
+			if (!writers.hasNext())
+				throw new IOException("no GIF writer available");
+			this.writer = writers.next();
+			this.delay = delay;
+
+			// the stream does not truncate an existing file
+			file.delete();
+			this.out = ImageIO.createImageOutputStream(file);
+			if (out == null)
+				throw new IOException("could not write " + file);
+			writer.setOutput(out);
+			writer.prepareWriteSequence(null);
+		}
+
+		void write(BufferedImage frame) throws IOException
+		{
+			IIOMetadata metadata = writer.getDefaultImageMetadata(
+					ImageTypeSpecifier.createFromRenderedImage(frame), null);
+			String format = metadata.getNativeMetadataFormatName();
+			IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(format);
+
+			IIOMetadataNode control = getChild(root, "GraphicControlExtension");
+			control.setAttribute("disposalMethod", "none");
+			control.setAttribute("userInputFlag", "FALSE");
+			control.setAttribute("transparentColorFlag", "FALSE");
+			control.setAttribute("transparentColorIndex", "0");
+			control.setAttribute("delayTime", String.valueOf(delay / 10));
+
+			if (first)
+			{
+				// loop endlessly
+				IIOMetadataNode extension = new IIOMetadataNode("ApplicationExtension");
+				extension.setAttribute("applicationID", "NETSCAPE");
+				extension.setAttribute("authenticationCode", "2.0");
+				extension.setUserObject(new byte[] { 1, 0, 0 });
+				getChild(root, "ApplicationExtensions").appendChild(extension);
+				first = false;
+			}
+			metadata.setFromTree(format, root);
+			writer.writeToSequence(new IIOImage(frame, null, metadata), null);
+		}
+
+		void close() throws IOException
+		{
+			try
+			{
+				if (!first)
+					writer.endWriteSequence();
+			}
+			finally
+			{
+				out.close();
+				writer.dispose();
+			}
+		}
+
+		private static IIOMetadataNode getChild(IIOMetadataNode root, String name)
+		{
+			for (int i=0; i<root.getLength(); i++)
+			{
+				if (root.item(i).getNodeName().equals(name))
+					return (IIOMetadataNode) root.item(i);
+			}
+			IIOMetadataNode child = new IIOMetadataNode(name);
+			root.appendChild(child);
+			return child;
+		}
+	}
+}
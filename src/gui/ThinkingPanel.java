@@ -0,0 +1,163 @@
+/*
+ * Created on 29.01.2007
+ */
+package gui;
+
+import gameelements.GameEvent;
+import gameelements.GameListener;
+import gameelements.Position;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+
+import javax.swing.JPanel;
+
+/**
+ * Panel showing what a computer player is thinking while it searches for its
+ * next move: the tree depth being searched, the number of situations examined
+ * per second, the best move so far, and a heat map of the ratings of all
+ * moves, from red for the worst to green for the best move. Listens to the
+ * progress of the searches, which is published a few times per second.
+ */
+@SuppressWarnings("serial")
+public class ThinkingPanel extends JPanel implements GameListener
+{
+	/**
+	 * The width of the panel.
+	 */
+	private static final int PANEL_WIDTH = 160;
+
+	/**
+	 * The gap between the borders of the panel and its content.
+	 */
+	private static final int GAP = 5;
+
+	/**
+	 * The latest progress received, null until the first search reports.
+	 */
+	private volatile GameEvent.SearchProgress progress;
+
+	/**
+	 * Creates an empty thinking panel.
+	 */
+	public ThinkingPanel()
+	{
+		setPreferredSize(new Dimension(PANEL_WIDTH, PANEL_WIDTH));
+		setBackground(Color.lightGray);
+	}
+
+	/**
+	 * Takes the progress of a search and has it shown. Called by the threads
+	 * of the game scheduler.
+	 * @see gameelements.GameListener#handleEvent(gameelements.GameEvent)
+	 */
+	public void handleEvent(GameEvent event)
+	{
+		if ( !(event instanceof GameEvent.SearchProgress) )
+			return;
+
+		this.progress = (GameEvent.SearchProgress) event;
+		repaint();
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.swing.JComponent#paintComponent(java.awt.Graphics)
+	 */
+	public void paintComponent(Graphics g)
+	{
+		super.paintComponent(g);
+
+		GameEvent.SearchProgress current = progress;
+		g.setColor(Color.black);
+		FontMetrics metrics = g.getFontMetrics();
+		int lineHeight = metrics.getHeight();
+		int y = GAP + metrics.getAscent();
+		if (current == null)
+		{
+			g.drawString("no search yet", GAP, y);
+			return;
+		}
+
+		Position best = current.getBestMove();
+		g.drawString(current.getPlayer().getPlayerName() + (current.isFinished() ? " has moved" : " thinks"), GAP, y);
+		y += lineHeight;
+		g.drawString("depth: " + current.getDepth(), GAP, y);
+		y += lineHeight;
+		g.drawString("nodes/s: " + current.getNodesPerSecond(), GAP, y);
+		y += lineHeight;
+		g.drawString("time: " + current.getElapsedTime() + " ms", GAP, y);
+		y += lineHeight;
+		g.drawString("best: " + (best == null ? "-" : best.getX() + ", " + best.getY()), GAP, y);
+		y += lineHeight - metrics.getAscent() + GAP;
+
+		this.drawHeatMap(g, current, y);
+	}
+
+	/**
+	 * Draws the ratings of the moves as a map of the board, scaled to the
+	 * room left in the panel.
+	 */
+	private void drawHeatMap(Graphics g, GameEvent.SearchProgress current, int top)
+	{
+		int dimX = current.getDimX();
+		int dimY = current.getDimY();
+		int rectSize = Math.min((getWidth() - 2*GAP) / dimX, (getHeight() - top - GAP) / dimY);
+		if (rectSize < 1)
+			return;
+
+		// range of the ratings, wins and losses only mark the ends
+		double min = Double.MAX_VALUE;
+		double max = -Double.MAX_VALUE;
+		for (int y=0; y<dimY; y++)
+		{
+			for (int x=0; x<dimX; x++)
+			{
+				double score = current.getScore(new Position(x, y));
+				if (!Double.isNaN(score) && Math.abs(score) < Double.MAX_VALUE)
+				{
+					min = Math.min(min, score);
+					max = Math.max(max, score);
+				}
+			}
+		}
+
+		for (int y=0; y<dimY; y++)
+		{
+			for (int x=0; x<dimX; x++)
+			{
+				Position pos = new Position(x, y);
+				double score = current.getScore(pos);
+				int currentX = GAP + x * rectSize;
+				int currentY = top + y * rectSize;
+				if (!Double.isNaN(score))
+				{
+					float heat;
+					if (score >= Double.MAX_VALUE)
+						heat = 1f;
+					else if (score <= -Double.MAX_VALUE)
+						heat = 0f;
+					else if (max > min)
+						heat = (float) ((score - min) / (max - min));
+					else
+						heat = 0.5f;
+					g.setColor(Color.getHSBColor(heat / 3, 0.8f, 0.9f));
+					g.fillRect(currentX, currentY, rectSize, rectSize);
+				}
+				if (rectSize >= BoardRenderer.MIN_GRID_RECT_SIZE)
+				{
+					g.setColor(Color.darkGray);
+					g.drawRect(currentX, currentY, rectSize, rectSize);
+				}
+			}
+		}
+		
+		Position best = current.getBestMove();
+		if (best != null)
+		{
+			g.setColor(BoardRenderer.MOVE_BACKGROUND);
+			g.drawRect(GAP + best.getX() * rectSize, top + best.getY() * rectSize, rectSize, rectSize);
+		}
+	}
+}
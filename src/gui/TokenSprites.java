@@ -0,0 +1,162 @@
+/*
+ * Created on 26.01.2007
+ */
+package gui;
+
+import gameelements.GameColor;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps the images of the token piles drawn on the fields of the board, one
+ * for each number of tokens and color, so every pile is only laid out and
+ * drawn once. The images are compatible with the screen, have the size of a
+ * field and a transparent background.
+ */
+class TokenSprites
+{
+	/**
+	 * The configuration of the screen the images are created for, null if
+	 * unknown.
+	 */
+	private GraphicsConfiguration config;
+
+	/**
+	 * The size of one field of the board.
+	 */
+	private int rectSize;
+
+	/**
+	 * The size of one circle which represents a game token.
+	 */
+	private int circleSize;
+
+	/**
+	 * The images of the piles by number of tokens and color.
+	 */
+	private Map<Integer, BufferedImage> sprites = new HashMap<Integer, BufferedImage>();
+
+	/**
+	 * Initiates the images for fields of the given size.
+	 * @param config the configuration of the screen, may be null.
+	 * @param rectSize the size of one field.
+	 */
+	TokenSprites(GraphicsConfiguration config, int rectSize)
+	{
+		this.config = config;
+		this.rectSize = rectSize;
+		this.circleSize = rectSize/5;
+	}
+
+	/**
+	 * Returns the size of the fields the images are created for.
+	 * @return the size of one field.
+	 */
+	int getRectSize()
+	{
+		return rectSize;
+	}
+
+	/**
+	 * Returns the image of a pile of tokens.
+	 * @param tokens the number of tokens, at least 1.
+	 * @param color the color of the tokens.
+	 * @return the image of the pile.
+	 */
+	BufferedImage get(int tokens, GameColor color)
+	{
+		Integer key = Integer.valueOf( tokens * 2 + (color == GameColor.BLACK ? 1 : 0) );
+		BufferedImage sprite = sprites.get(key);
+		if (sprite == null)
+		{
+			sprite = this.createImage(rectSize, rectSize, Transparency.TRANSLUCENT);
+			Graphics2D g2 = sprite.createGraphics();
+			g2.setRenderingHint(
+			        RenderingHints.KEY_ANTIALIASING,
+			        RenderingHints.VALUE_ANTIALIAS_ON);
+			g2.setColor(Color.black);
+			this.drawTokens(g2, tokens, color);
+			g2.dispose();
+			sprites.put(key, sprite);
+		}
+		return sprite;
+	}
+
+	/**
+	 * Creates an image compatible with the screen, if the screen is known.
+	 * @param width the width of the image.
+	 * @param height the height of the image.
+	 * @param transparency the transparency of the image.
+	 * @return the image.
+	 */
+	BufferedImage createImage(int width, int height, int transparency)
+	{
+		if (config != null)
+			return config.createCompatibleImage(width, height, transparency);
+
+		if (transparency == Transparency.OPAQUE)
+			return new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		else
+			return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+	}
+
+	private void drawTokens(Graphics2D g2, int tokens, GameColor color)
+	{
+		double pileWidth = Math.ceil( Math.sqrt(tokens) );
+		double pileHeight = Math.ceil( tokens / pileWidth );
+		int pileCapacity = (int) (pileHeight * pileWidth);
+
+		// start left bottom
+		int currentTokenPosX = 0;			// left
+		int currentTokenPosY = rectSize;	// bottom
+
+		// arrange circles ...
+		for (int i=0; i<tokens; i++)
+		{
+			// ... in height
+			if (i % pileWidth == 0) // wenn wir eine Reihe voll haben, gehen wir einen hher
+			{
+				currentTokenPosX = 0;
+				currentTokenPosY -= rectSize / (pileHeight + 1);
+			}
+			// ... and width
+			int row = (int) Math.ceil((i+1)/pileWidth);
+			if (tokens % pileCapacity != 0 && row == pileHeight) // Rest in oberster Reihe
+			{
+				currentTokenPosX += rectSize / (pileWidth-(pileCapacity-tokens) + 1);
+			}
+			else // row is full
+			{
+				currentTokenPosX += rectSize / (pileWidth + 1);
+			}
+
+			this.drawPositionedToken(g2, color, currentTokenPosX, currentTokenPosY);
+		}
+	}
+
+	private void drawPositionedToken(Graphics2D g2, GameColor color, int currentTokenPosX, int currentTokenPosY)
+	{
+		int x = currentTokenPosX - circleSize/2;
+		int y = currentTokenPosY - circleSize/2;
+
+		if (color == GameColor.BLACK)
+		{
+			g2.drawOval(x, y, circleSize, circleSize);
+			g2.fillOval(x, y, circleSize, circleSize);
+		}
+		else if (color == GameColor.WHITE)
+		{
+			g2.setColor(Color.white);
+			g2.drawOval(x, y, circleSize, circleSize);
+			g2.fillOval(x, y, circleSize, circleSize);
+			g2.setColor(Color.black);
+		}
+	}
+}
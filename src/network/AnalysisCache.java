@@ -0,0 +1,134 @@
+/*
+ * Created on 23.01.2007
+ */
+package network;
+
+import gameelements.GameSituation;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import ai.Analysis;
+import ai.SearchJob;
+
+/**
+ * Keeps the analyses of the server, so that a situation that is analyzed
+ * repeatedly with the same thinking time is only analyzed once. Analyses are
+ * keyed by the hash value of the situation, the board size and the thinking
+ * time. Analyses still running are kept as well, so concurrent requests for
+ * the same situation wait for the same analysis. When the cache is full, the
+ * analysis used least recently is evicted.
+ */
+class AnalysisCache
+{
+	/**
+	 * The analyses by their keys, in the order of their latest use.
+	 */
+	private Map<String, SearchJob<Analysis>> analyses;
+
+	/**
+	 * The number of requests answered from the cache.
+	 */
+	private long hits = 0;
+
+	/**
+	 * The number of requests that had to be analyzed.
+	 */
+	private long misses = 0;
+
+	/**
+	 * Initiates a cache.
+	 * @param size the maximum number of analyses kept.
+	 */
+	AnalysisCache(final int size)
+	{
+		this.analyses = new LinkedHashMap<String, SearchJob<Analysis>>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<String, SearchJob<Analysis>> eldest)
+			{
+				return size() > size;
+			}
+		};
+	}
+
+	/**
+	 * Generates the key of an analysis.
+	 * @param situation the analyzed situation.
+	 * @param thinkingTime the thinking time of the analysis in milliseconds.
+	 * @return the key of the analysis.
+	 */
+	static String key(GameSituation situation, long thinkingTime)
+	{
+		return situation.getDimX() + "x" + situation.getDimY() + ":"
+			+ Long.toHexString( situation.getHash() ) + ":" + thinkingTime;
+	}
+
+	/**
+	 * Returns the analysis kept for a key and counts the request.
+	 * @param key the key of the analysis.
+	 * @return the analysis, which may still be running, or null if none is
+	 * kept for the key.
+	 */
+	synchronized SearchJob<Analysis> get(String key)
+	{
+		SearchJob<Analysis> job = analyses.get(key);
+		if (job == null)
+			misses++;
+		else
+			hits++;
+		return job;
+	}
+
+	/**
+	 * Keeps an analysis.
+	 * @param key the key of the analysis.
+	 * @param job the analysis.
+	 */
+	synchronized void put(String key, SearchJob<Analysis> job)
+	{
+		analyses.put(key, job);
+	}
+
+	/**
+	 * Removes an analysis that has failed or has been cancelled, unless it has
+	 * been replaced in the meantime.
+	 * @param key the key of the analysis.
+	 * @param job the analysis.
+	 */
+	synchronized void remove(String key, SearchJob<Analysis> job)
+	{
+		if (analyses.get(key) == job)
+		{
+			analyses.remove(key);
+		}
+	}
+
+	/**
+	 * Returns the number of analyses kept.
+	 * @return the number of analyses kept.
+	 */
+	synchronized int size()
+	{
+		return analyses.size();
+	}
+
+	/**
+	 * Returns the number of requests answered from the cache.
+	 * @return the number of cache hits.
+	 */
+	synchronized long getHits()
+	{
+		return hits;
+	}
+
+	/**
+	 * Returns the number of requests that had to be analyzed.
+	 * @return the number of cache misses.
+	 */
+	synchronized long getMisses()
+	{
+		return misses;
+	}
+}
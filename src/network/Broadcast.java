@@ -0,0 +1,208 @@
+/*
+ * Created on 21.01.2007
+ */
+package network;
+
+import gameelements.GameSituation;
+import gameelements.Position;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import player.Player;
+
+/**
+ * Streams a game played on the server to its spectators. Every move is
+ * encoded only once, and the same frame is queued for all spectators. New
+ * spectators and spectators that have fallen behind are sent a snapshot of
+ * the current board, which is encoded at most once per move.
+ */
+class Broadcast
+{
+	/**
+	 * The id of the game, i.e. the id of the session it is played in.
+	 */
+	private long gameId;
+
+	/**
+	 * The player that represents the server according to the protocol.
+	 */
+	private Player server;
+
+	/**
+	 * Copy of the situation after the latest move, so snapshots can be taken
+	 * without touching the game.
+	 */
+	private GameSituation situation;
+
+	/**
+	 * Indicates if the server has the next turn.
+	 */
+	private boolean serverMoves;
+
+	/**
+	 * The encoded snapshot of the current situation, null if it has not been
+	 * encoded since the latest move.
+	 */
+	private byte[] snapshot;
+
+	/**
+	 * The spectators of the game.
+	 */
+	private List<Spectator> spectators = new ArrayList<Spectator>();
+
+	/**
+	 * Indicates if the game has ended and the spectators have been closed.
+	 */
+	private boolean finished = false;
+
+	/**
+	 * Initiates a broadcast for a game about to be started.
+	 * @param gameId the id of the game.
+	 * @param server the player representing the server.
+	 * @param situation the initial situation of the game, which is not 
+	 * changed anymore.
+	 * @param serverMoves true, if the server has the first turn.
+	 */
+	Broadcast(long gameId, Player server, GameSituation situation, boolean serverMoves)
+	{
+		this.gameId = gameId;
+		this.server = server;
+		this.situation = situation;
+		this.serverMoves = serverMoves;
+	}
+
+	/**
+	 * Adds a spectator and sends it a snapshot of the current board.
+	 * @param spectator the spectator to add.
+	 * @return false, if the game has already ended.
+	 */
+	synchronized boolean subscribe(Spectator spectator)
+	{
+		if (finished)
+			return false;
+
+		spectators.add(spectator);
+		spectator.offer( this.getSnapshot() );
+		return true;
+	}
+
+	/**
+	 * Removes a spectator.
+	 * @param spectator the spectator to remove.
+	 */
+	synchronized void unsubscribe(Spectator spectator)
+	{
+		spectators.remove(spectator);
+	}
+
+	/**
+	 * Sends a move to all spectators, followed by the hash value of the
+	 * resulting board, or by 'bye' if the move has ended the game. Must be
+	 * called in the order of the moves.
+	 * @param move the move.
+	 * @param current a copy of the situation of the game after the move, 
+	 * which is not changed anymore.
+	 * @param serverMoves true, if the server has the next turn.
+	 * @param winner true, if the server has won, false if the client has
+	 * won, null if the game goes on.
+	 */
+	synchronized void publishMove(Position move, GameSituation current, boolean serverMoves, Boolean winner)
+	{
+		if (finished)
+			return;
+
+		this.situation = current;
+		this.serverMoves = serverMoves;
+		this.snapshot = null;
+
+		if (winner == null)
+		{
+			this.publish( ResponseWriter.encode(
+					ProtocolResponse.postMove(move) + ProtocolResponse.postHash(current) ) );
+		}
+		else
+		{
+			this.publish( ResponseWriter.encode( ProtocolResponse.postMove(move) ) );
+			this.finish( ProtocolResponse.postBye(winner.booleanValue()) );
+		}
+	}
+
+	/**
+	 * Sends a last frame to all spectators and closes them.
+	 * @param lastResponse the last response, e.g. 'bye'.
+	 */
+	synchronized void finish(String lastResponse)
+	{
+		if (finished)
+			return;
+		finished = true;
+
+		byte[] frame = ResponseWriter.encode(lastResponse);
+		for (Spectator aSpectator : spectators)
+		{
+			aSpectator.close(frame);
+		}
+		spectators.clear();
+	}
+
+	/**
+	 * Returns a copy of the game's situation after the latest published move.
+	 * @return the situation after the latest published move.
+	 */
+	synchronized GameSituation getSituation()
+	{
+		return situation;
+	}
+
+	/**
+	 * Indicates if the server has the next turn after the latest published
+	 * move.
+	 * @return true, if the server has the next turn.
+	 */
+	synchronized boolean isServerMoving()
+	{
+		return serverMoves;
+	}
+
+	/**
+	 * Returns the number of spectators.
+	 * @return the number of spectators.
+	 */
+	synchronized int getSpectatorCount()
+	{
+		return spectators.size();
+	}
+
+	/**
+	 * Queues a frame for all spectators. Spectators whose queue is full are
+	 * sent a snapshot instead of their queued frames.
+	 * @param frame the frame to queue.
+	 */
+	private void publish(byte[] frame)
+	{
+		for (Spectator aSpectator : spectators)
+		{
+			if (!aSpectator.offer(frame))
+			{
+				aSpectator.reset( this.getSnapshot() );
+			}
+		}
+	}
+
+	private byte[] getSnapshot()
+	{
+		if (snapshot == null)
+		{
+			StringBuffer s = new StringBuffer();
+			s.append( ProtocolResponse.postWatching(gameId, serverMoves) );
+			String[] boardCmds = ProtocolResponse.postBoard(server, situation);
+			for (int i=0; i<boardCmds.length; i++)
+			{
+				s.append( boardCmds[i] );
+			}
+			snapshot = ResponseWriter.encode( s.toString() );
+		}
+		return snapshot;
+	}
+}
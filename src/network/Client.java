@@ -7,51 +7,84 @@ import gameelements.GamePreferences;
 import gameelements.GameSituation;
 import gameelements.Position;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.PrintStream;
 import java.net.Socket;
 import java.util.LinkedList;
-import java.util.List;
 import java.util.Queue;
-import java.util.Stack;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
 
 import player.Player;
 
 /**
  * The client is used to connect to a remote server, to manage the 
  * communication between remote server and local client and to synchronize the
- * remote and local game.
+ * remote and local game. The responses of the server are decoded by a
+ * response reader running for the whole lifetime of the connection, which
+ * completes the pending responses of the client. Requests can therefore be
+ * made asynchronously, without holding a thread until the server responds.
  */
 public class Client
 {
+	/**
+	 * Timer for the timeouts of pending responses, shared by all clients.
+	 */
+	private static final ScheduledExecutorService timer =
+		Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+		{
+			public Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, "kaskade-client-timer");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+
 	/**
 	 * The socket the client is connected to.
 	 */
 	private Socket socket = null;
 	
 	/**
-	 * A queue where the command lines are being collected before they get 
-	 * sent to the remote server.
+	 * The print stream requests are sent with. Used for the whole lifetime
+	 * of the connection.
 	 */
-	private Queue<String> responseCmdsQueue = new LinkedList<String>();
+	private PrintStream output;
 	
 	/**
-	 * Number of rows of the game board used in the game.
+	 * The pending 'initialized'-response of the server.
 	 */
-	private int rows;
+	private PendingResponse<String> pendingInit;
 	
 	/**
-	 * Collects all board state strings that are being generated during client activity.
+	 * The pending move of the server, if a move has been requested.
 	 */
-	private Stack<String> boardStates = new Stack<String>();
-	
+	private PendingResponse<Position> pendingMove;
+
 	/**
-	 * A queue where 'board'-commands, received from the server, are being 
-	 * collected, before they get processed.
+	 * The pending board following the latest move of the server.
 	 */
-	private List<String> boardCmdsQueue = new LinkedList<String>();
+	private PendingResponse<ServerEvent> pendingBoard;
+
+	/**
+	 * The boards following the moves of the server, that have not been 
+	 * validated yet, in the order of the moves.
+	 */
+	private Queue<PendingResponse<ServerEvent>> unvalidatedBoards = new LinkedList<PendingResponse<ServerEvent>>();
+
+	/**
+	 * Moves that have been received from the server before they have been
+	 * requested.
+	 */
+	private Queue<Position> receivedMoves = new LinkedList<Position>();
+
+	/**
+	 * Indicates if the connection to the server has been closed.
+	 */
+	private boolean isClosed = false;
 
 	/**
 	 * The player the client is used by.
@@ -68,167 +101,353 @@ public class Client
 	}
 	
 	/**
-	 * Requests an init from the remote server.
+	 * Requests an init from the remote server and waits for the server to
+	 * confirm the initialization.
 	 * @param situation the current local situation.
 	 * @param clientBegins true, if the client's player begins, else false.
 	 * @param user the name of the client's player.
 	 */
 	public void requestInit(GameSituation situation, boolean clientBegins, String user)
 	{
-		rows = situation.getDimY();
-		
-		String request = ProtocolResponse.postInit( player, situation, clientBegins, user);
-		
-		int responseLines = (clientBegins ? 1 : 2) * (1 + rows);	// 'initialized' and rows * 'boards' for initial state
-																// plus 'move' und rows * 'boards' after first turn
-		
-		this.callRemoteServer( request.toString(), responseLines ); // fill response queue
+		try
+		{
+			this.requestInitAsync(situation, clientBegins, user).get();
+		}
+		catch (InterruptedException e)
+		{
+			e.printStackTrace();
+		}
+		catch (ExecutionException e)
+		{
+			e.printStackTrace();
+		}
 	}
 
 	/**
-	 * Requests a move from the remote server.
-	 * @return a move from the server.
-	 * @throws IllegalCommandException
+	 * Connects to the remote server and requests an init without waiting for
+	 * the server's confirmation.
+	 * @param situation the current local situation.
+	 * @param clientBegins true, if the client's player begins, else false.
+	 * @param user the name of the client's player.
+	 * @return the pending 'initialized'-response, holding the name of the
+	 * remote player.
 	 */
-	public Position requestMove() throws IllegalCommandException
+	public synchronized PendingResponse<String> requestInitAsync(GameSituation situation, boolean clientBegins, String user)
 	{
-		if (player.getGame().getTurn() > 1)
+		pendingInit = new PendingResponse<String>();
+
+		String request = ProtocolResponse.postInit( player, situation, clientBegins, user,
+				GamePreferences.getInstance().isRemoteHashValidation() );
+
+		try
 		{
-			String request = ProtocolResponse.postMove(player.getGame().getLatestMove());
-			
-			this.callRemoteServer( request.toString(), 1 + rows ); // 'move' and rows * 'boards' per turn
+			this.connect( situation.getDimY() );
+			this.send( request );
+			pendingInit.failAfter( GamePreferences.getInstance().getRemoteServerTimeout(), timer );
 		}
-		
-		Position move = null;
-		
-		move = processResponseCmdsQueue();
-		
-		return move;
+		catch (IOException e)
+		{
+			this.close();
+			pendingInit.fail(e);
+		}
+		return pendingInit;
 	}
-	
+
 	/**
-	 * Checks if local and remote boards are the same.
-	 * @throws RemoteGameSynchronisationException
+	 * Requests a move from the remote server and waits for it.
+	 * @return a move from the server.
+	 * @throws IllegalCommandException
 	 */
-	public void validate() throws RemoteGameSynchronisationException
+	public Position requestMove() throws IllegalCommandException
 	{
-		String strServerBoard = this.getCurrentBoardString();
-		String strClientBoard = Protocol.buildBoardString( player, player.getGame().getSituation() );
-		if (strServerBoard == null || strClientBoard == null)
-			return;
-		if ( strServerBoard.startsWith(Protocol.COMMAND_BYE) )
+		try
 		{
-			System.out.println("no validation, server said bye");
+			return this.requestMoveAsync(0).get();
 		}
-		else if ( !strServerBoard.equals(strClientBoard) )
+		catch (InterruptedException e)
 		{
-			throw new RemoteGameSynchronisationException("invalid board state on server or client");
+			throw new IllegalCommandException("interrupted while waiting for move");
 		}
-		else
+		catch (ExecutionException e)
 		{
-			System.out.println("boards validated");
+			throw new IllegalCommandException(e.getCause().getMessage());
 		}
 	}
 	
-	private Position processResponseCmdsQueue() throws IllegalCommandException
+	/**
+	 * Requests a move from the remote server without waiting for it. The
+	 * latest local move is sent to the server, unless the server has the
+	 * first move. If the server has already sent its move, the returned
+	 * response is completed immediately. Cancelling the response does not
+	 * affect the connection: a move arriving afterwards is kept for the next
+	 * request.
+	 * @param timeout the time in milliseconds after which the response fails,
+	 * 0 for no timeout.
+	 * @return the pending move of the server.
+	 */
+	public PendingResponse<Position> requestMoveAsync(long timeout)
 	{
-		Position retval = null;
-		
-		while ( ! responseCmdsQueue.isEmpty() )
+		PendingResponse<Position> response = new PendingResponse<Position>();
+		Position receivedMove = null;
+
+		synchronized (this)
 		{
-			String cmd = responseCmdsQueue.remove();
-			
-			if (cmd.startsWith(Protocol.COMMAND_INITIALIZED))
+			if (isClosed)
 			{
-				player.setPlayerName( ProtocolRequest.getInitialized(cmd) );
+				response.fail( new RemoteGameSynchronisationException("connection to remote server closed") );
+				return response;
 			}
-			else if ( cmd.startsWith(Protocol.COMMAND_BOARD))
+
+			if (player.getGame().getTurn() > 1)
 			{
-				boardCmdsQueue.add( cmd );
-				
-				// check if queue is full, then save board state
-				if ( boardCmdsQueue.size() > rows )
-					throw new RuntimeException("too many 'board' commands in queue");
-				if ( boardCmdsQueue.size() == rows )
-				{
-					String boardString = ProtocolRequest.getBoard( boardCmdsQueue );
-					boardStates.add( boardString );
-					boardCmdsQueue = new LinkedList<String>(); // und entleeren
-				}
+				this.send( ProtocolResponse.postMove(player.getGame().getLatestMove()) );
 			}
-			else if ( cmd.startsWith(Protocol.COMMAND_MOVE) )
+
+			if (receivedMoves.isEmpty())
+			{
+				pendingMove = response;
+				response.failAfter(timeout, timer);
+				return response;
+			}
+			receivedMove = receivedMoves.remove();
+		}
+		response.complete(receivedMove);
+		return response;
+	}
+
+	/**
+	 * Checks if local and remote boards are the same after a move of the 
+	 * server. Waits for the board that follows the oldest move of the server,
+	 * that has not been validated yet. If the server sends hash values, the 
+	 * full board is only requested if the hash values do not match.
+	 * @param situation the local situation after the move of the server.
+	 * @throws RemoteGameSynchronisationException
+	 */
+	public void validate(GameSituation situation) throws RemoteGameSynchronisationException
+	{
+		PendingResponse<ServerEvent> board;
+		synchronized (this)
+		{
+			board = unvalidatedBoards.poll();
+		}
+		ServerEvent serverState = this.await(board);
+		if (serverState == null)
+			return; // connection closed, no board to validate
+		
+		if ( serverState.getType() == ServerEvent.TYPE_BYE )
+		{
+			System.out.println("no validation, server said bye");
+		}
+		else if ( serverState.getType() == ServerEvent.TYPE_HASH )
+		{
+			String strClientHash = Protocol.buildHashString( situation );
+			if ( serverState.getValue().equals(strClientHash) )
 			{
-				retval = ProtocolRequest.getMove(cmd);
+				System.out.println("boards validated");
+				return;
 			}
-			else if ( cmd.startsWith(Protocol.COMMAND_BYE) )
+			
+			synchronized (this)
 			{
-				boardStates.add( cmd );
+				board = pendingBoard = new PendingResponse<ServerEvent>();
+				this.send( ProtocolResponse.postBoardRequest() );
 			}
+			serverState = this.await(board);
+			if (serverState == null)
+				return;
+			
+			this.validateBoard( serverState, situation );
+			System.out.println("hash values differ, boards validated");
+		}
+		else
+		{
+			this.validateBoard( serverState, situation );
+			System.out.println("boards validated");
 		}
-		
-		return retval;
 	}
 	
-	private String getCurrentBoardString()
+	private void validateBoard(ServerEvent serverState, GameSituation situation) throws RemoteGameSynchronisationException
 	{
-		return boardStates.isEmpty() ? null : boardStates.peek();
+		String strServerBoard = serverState.getValue();
+		String strClientBoard = Protocol.buildBoardString( player, situation );
+		if ( !strServerBoard.equals(strClientBoard) )
+		{
+			throw new RemoteGameSynchronisationException("invalid board state on server or client");
+		}
 	}
-	
-	private void callRemoteServer(String callString, int expectedResponseLines)
+		
+	/**
+	 * Waits for the given pending board.
+	 * @param board the pending board, may be null.
+	 * @return the board, or null, if the board will not arrive anymore.
+	 */
+	private ServerEvent await(PendingResponse<ServerEvent> board)
 	{
-		try 
+		if (board == null)
+			return null;
+		
+		try
 		{
-			if (socket != null && socket.isClosed())
-				throw new RuntimeException("socket already closed");
-			
-			if (socket == null)
-			{
-				socket = new Socket( GamePreferences.getInstance().getRemoteServerHost(), GamePreferences.getInstance().getRemoteServerPort() );
-				System.out.println("socket created");
-			}
-			
-			PrintStream output = new PrintStream( socket.getOutputStream() );
-			output.println( callString.trim() );
-			
-			BufferedReader input = new BufferedReader(
-					new InputStreamReader( socket.getInputStream()) );
+			return board.get();
+		}
+		catch (InterruptedException e)
+		{
+			return null;
+		}
+		catch (ExecutionException e)
+		{
+			return null;
+		}
+	}
 			
-			String line;
-			while ( expectedResponseLines > 0 )
-			{
-				line = input.readLine();
+	/**
+	 * Processes an event received from the server and completes the pending
+	 * responses waiting for it. Called by the response reader in the order
+	 * the events have been received.
+	 * @param event the received event.
+	 */
+	void receive(ServerEvent event)
+	{
+		PendingResponse<String> completedInit = null;
+		PendingResponse<Position> completedMove = null;
+		PendingResponse<Position> abandonedMove = null;
+		PendingResponse<ServerEvent> completedBoard = null;
+		Exception failure = null;
 
-				if (line.startsWith( Protocol.COMMENT_TAG ))
-					continue;
-				
-				else if (line.contains(Protocol.COMMAND_ERROR))
+		synchronized (this)
+		{
+			switch (event.getType())
+			{
+				case ServerEvent.TYPE_INITIALIZED :
+				{
+					player.setPlayerName( event.getValue() );
+					completedInit = pendingInit;
+					break;
+				}
+				case ServerEvent.TYPE_BOARD :
+				case ServerEvent.TYPE_HASH :
 				{
-					String error = ProtocolRequest.getError(line);
-					RemoteGameSynchronisationException e = new RemoteGameSynchronisationException(error);
-					player.getGame().notifyWithError(e);
+					completedBoard = pendingBoard;
+					break;
 				}
-				else if (line.startsWith(Protocol.COMMAND_BYE))
+				case ServerEvent.TYPE_MOVE :
 				{
-					expectedResponseLines = 0; // hier erwarten wir keine 'boards' mehr!
-					
-					if (socket != null)
+					pendingBoard = new PendingResponse<ServerEvent>();
+					unvalidatedBoards.add( pendingBoard );
+					if (pendingMove != null && !pendingMove.isDone())
+						completedMove = pendingMove;
+					else
+						receivedMoves.add( event.getMove() );
+					pendingMove = null;
+					break;
+				}
+				case ServerEvent.TYPE_BYE :
+				{
+					completedBoard = pendingBoard;
+					abandonedMove = pendingMove; // no move will follow
+					pendingMove = null;
+					this.close();
+					break;
+				}
+				case ServerEvent.TYPE_ERROR :
+				{
+					failure = new RemoteGameSynchronisationException(event.getValue());
+					break;
+				}
+				default : // TYPE_CLOSED
+				{
+					if (!isClosed)
 					{
-						socket.close();
-						System.out.println("socket has been closed");
+						failure = new RemoteGameSynchronisationException("connection to remote server lost");
 					}
+					this.close();
+					break;
 				}
-				
-				responseCmdsQueue.add(line);
-				expectedResponseLines--;
 			}
 		}
-		catch (IOException e) 
+		
+		if (completedInit != null)
+			completedInit.complete( event.getValue() );
+		if (completedBoard != null)
+			completedBoard.complete( event );
+		if (completedMove != null)
+			completedMove.complete( event.getMove() );
+		if (abandonedMove != null)
+			abandonedMove.fail( new RemoteGameSynchronisationException("server said bye") );
+
+		if (failure != null)
 		{
-			e.printStackTrace();
-		} 
-		catch (IllegalCommandException e)
+			player.getGame().notifyWithError(failure);
+		}
+		if (event.getType() == ServerEvent.TYPE_CLOSED)
 		{
-			e.printStackTrace();
+			this.failPendingResponses();
+		}
+	}
+	
+	private void failPendingResponses()
+	{
+		PendingResponse<String> init;
+		PendingResponse<ServerEvent> board;
+		PendingResponse<Position> move;
+		synchronized (this)
+		{
+			init = pendingInit;
+			board = pendingBoard;
+			move = pendingMove;
+		}
+		Exception e = new RemoteGameSynchronisationException("connection to remote server closed");
+		if (init != null)
+			init.fail(e);
+		if (board != null)
+			board.fail(e);
+		if (move != null)
+			move.fail(e);
+	}
+			
+	private void connect(int rows) throws IOException
+	{
+		if (socket != null)
+			throw new RuntimeException("socket already connected");
+
+		socket = new Socket( GamePreferences.getInstance().getRemoteServerHost(), GamePreferences.getInstance().getRemoteServerPort() );
+		socket.setTcpNoDelay(true);
+		System.out.println("socket created");
+
+		output = new PrintStream( socket.getOutputStream() );
+
+		ResponseReader reader = new ResponseReader(this, socket, rows);
+		reader.start();
+	}
+
+	private void send(String callString)
+	{
+		if (isClosed || output == null)
+			throw new RuntimeException("socket already closed");
+
+		output.print( callString.trim() );
+		output.print( Protocol.END_OF_CMD_LINE );
+		output.flush();
+	}
+
+	private synchronized void close()
+	{
+		if (isClosed)
+			return;
+
+		isClosed = true;
+
+		if (socket != null)
+		{
+			try
+			{
+				socket.close();
+				System.out.println("socket has been closed");
+			}
+			catch (IOException e)
+			{
+				e.printStackTrace();
+			}
 		}
 	}
 
@@ -0,0 +1,138 @@
+/*
+ * Created on 20.01.2007
+ */
+package network;
+
+/**
+ * Histogram of latencies in microseconds with logarithmic buckets. Each power
+ * of two is divided into eight buckets, so percentiles are accurate to about
+ * 12 percent, regardless of the range of the recorded values.
+ */
+class LatencyHistogram
+{
+	/**
+	 * Number of bits determining the bucket within a power of two.
+	 */
+	private static final int SUB_BUCKET_BITS = 3;
+
+	/**
+	 * Number of buckets per power of two.
+	 */
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	/**
+	 * The number of values recorded in each bucket.
+	 */
+	private long[] counts = new long[64 * SUB_BUCKETS];
+
+	/**
+	 * The number of recorded values.
+	 */
+	private long count = 0;
+
+	/**
+	 * The sum of all recorded values.
+	 */
+	private long sum = 0;
+
+	/**
+	 * The largest recorded value.
+	 */
+	private long max = 0;
+
+	/**
+	 * Records a latency.
+	 * @param micros the latency in microseconds.
+	 */
+	synchronized void record(long micros)
+	{
+		if (micros < 0)
+			micros = 0;
+
+		counts[bucketOf(micros)]++;
+		count++;
+		sum += micros;
+		max = Math.max(max, micros);
+	}
+
+	/**
+	 * Returns the number of recorded values.
+	 * @return the number of recorded values.
+	 */
+	synchronized long getCount()
+	{
+		return count;
+	}
+
+	/**
+	 * Returns the mean of the recorded values in microseconds.
+	 * @return the mean latency.
+	 */
+	synchronized long getMean()
+	{
+		return count == 0 ? 0 : sum / count;
+	}
+
+	/**
+	 * Returns the largest recorded value in microseconds.
+	 * @return the largest latency.
+	 */
+	synchronized long getMax()
+	{
+		return max;
+	}
+
+	/**
+	 * Returns the value in microseconds below or at which the given share of
+	 * all recorded values lies.
+	 * @param share the share of values, e.g. 0.99 for the 99th percentile.
+	 * @return the upper bound of the bucket holding the percentile.
+	 */
+	synchronized long getPercentile(double share)
+	{
+		if (count == 0)
+			return 0;
+
+		long rank = (long) Math.ceil(share * count);
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++)
+		{
+			seen += counts[i];
+			if (seen >= rank)
+			{
+				return Math.min(upperBoundOf(i), max);
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * Returns the index of the bucket a value is recorded in.
+	 * @param value the value.
+	 * @return the index of the value's bucket.
+	 */
+	private static int bucketOf(long value)
+	{
+		if (value < SUB_BUCKETS)
+			return (int) value;
+
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return ((exponent - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) + sub;
+	}
+
+	/**
+	 * Returns the largest value recorded in a bucket.
+	 * @param bucket the index of the bucket.
+	 * @return the upper bound of the bucket.
+	 */
+	private static long upperBoundOf(int bucket)
+	{
+		if (bucket < 2 * SUB_BUCKETS)
+			return bucket;
+
+		int shift = (bucket >> SUB_BUCKET_BITS) - 1;
+		long lower = (long) (SUB_BUCKETS + (bucket & (SUB_BUCKETS - 1))) << shift;
+		return lower + (1L << shift) - 1;
+	}
+}
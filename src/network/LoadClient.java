@@ -0,0 +1,283 @@
+/*
+ * Created on 20.01.2007
+ */
+package network;
+
+import gameelements.GameBoard;
+import gameelements.GameColor;
+import gameelements.GameSituation;
+import gameelements.Position;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A simulated client playing games against the server through the 'Kaskade'
+ * -protocol. Picks random legal moves and keeps a local copy of the board,
+ * which is validated against the hash values sent by the server after each
+ * turn. Reports latencies and failures to the load generator.
+ */
+class LoadClient implements Runnable
+{
+	/**
+	 * The number of the client.
+	 */
+	private int number;
+
+	/**
+	 * The load generator the client reports to.
+	 */
+	private LoadGenerator generator;
+
+	/**
+	 * The random generator for the client's moves.
+	 */
+	private Random random;
+
+	/**
+	 * The reader on the connection of the current game.
+	 */
+	private BufferedReader input;
+
+	/**
+	 * The print stream on the connection of the current game.
+	 */
+	private PrintStream output;
+
+	/**
+	 * The local copy of the board of the current game.
+	 */
+	private GameSituation situation;
+
+	/**
+	 * Initiates a simulated client.
+	 * @param number the number of the client.
+	 * @param generator the load generator the client reports to.
+	 * @param seed the seed of the client's random moves.
+	 */
+	LoadClient(int number, LoadGenerator generator, long seed)
+	{
+		this.number = number;
+		this.generator = generator;
+		this.random = new Random(seed);
+	}
+
+	/**
+	 * Plays the configured number of games, beginning every other game.
+	 * @see java.lang.Runnable#run()
+	 */
+	public void run()
+	{
+		for (int game = 0; game < generator.getGames() && !generator.isStopped(); game++)
+		{
+			try
+			{
+				this.playGame(game % 2 == 0);
+			}
+			catch (IOException e)
+			{
+				generator.countError("connection failed: " + e.getMessage());
+			}
+			catch (IllegalCommandException e)
+			{
+				generator.countError(e.getMessage());
+			}
+		}
+	}
+
+	private void playGame(boolean clientBegins) throws IOException, IllegalCommandException
+	{
+		Socket socket = new Socket(generator.getHost(), generator.getPort());
+		try
+		{
+			socket.setTcpNoDelay(true);
+			socket.setSoTimeout(generator.getResponseTimeout());
+			input = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+			output = new PrintStream(socket.getOutputStream());
+
+			int dim = generator.getDim();
+			situation = new GameSituation(new GameBoard(dim, dim), null);
+			GameColor color = clientBegins ? GameColor.WHITE : GameColor.BLACK;
+
+			long start = System.nanoTime();
+			this.send( ProtocolResponse.postInit(dim, dim, clientBegins, "load" + number, true) );
+			this.expect( Protocol.COMMAND_INITIALIZED );
+			if (!this.validate( this.expect( Protocol.COMMAND_HASH ) ))
+				return;
+			generator.recordInit( (System.nanoTime() - start) / 1000 );
+
+			if (!clientBegins && !this.awaitTurn(color))
+				return;
+
+			while (!generator.isStopped())
+			{
+				this.think();
+
+				Position move = this.selectMove(color);
+				situation.addToken(move, color, false);
+
+				start = System.nanoTime();
+				this.send( ProtocolResponse.postMove(move) );
+				boolean goesOn = this.awaitTurn(color);
+				generator.recordMove( (System.nanoTime() - start) / 1000 );
+
+				if (!goesOn)
+					break;
+			}
+		}
+		finally
+		{
+			socket.close();
+		}
+	}
+
+	/**
+	 * Reads the server's response to the client's move: the server's move
+	 * followed by the hash value of the board, or 'bye' if the game is over.
+	 * @param color the color of the client.
+	 * @return true, if the game goes on, else false.
+	 */
+	private boolean awaitTurn(GameColor color) throws IOException, IllegalCommandException
+	{
+		while (true)
+		{
+			String line = this.readLine();
+			if (line.startsWith( Protocol.COMMAND_BYE ))
+			{
+				generator.countGame();
+				return false;
+			}
+			else if (line.startsWith( Protocol.COMMAND_MOVE ))
+			{
+				Position move = ProtocolRequest.getMove(line);
+				GameColor owner = situation.getColor(move);
+				if (owner != null && owner == color)
+				{
+					generator.countDesync("illegal server move " + line.trim());
+					this.exit();
+					return false;
+				}
+				situation.addToken(move, color.getOppositeColor(), false);
+			}
+			else if (line.startsWith( Protocol.COMMAND_HASH ))
+			{
+				return this.validate(line);
+			}
+			else
+			{
+				throw new IllegalCommandException("unexpected response: " + line.trim());
+			}
+		}
+	}
+
+	/**
+	 * Compares the hash value sent by the server with the local board. Ends
+	 * the game, if they differ.
+	 * @param hashCmd the 'hash'-command of the server.
+	 * @return true, if the boards match, else false.
+	 */
+	private boolean validate(String hashCmd) throws IOException, IllegalCommandException
+	{
+		String hash = ProtocolRequest.getHash(hashCmd);
+		if (generator.countValidation( hash.equals( Long.toHexString(situation.getHash()) ) ))
+			return true;
+
+		this.exit();
+		return false;
+	}
+
+	/**
+	 * Reads the next response, which must be the given command.
+	 * @param cmdName the name of the expected command.
+	 * @return the response.
+	 */
+	private String expect(String cmdName) throws IOException, IllegalCommandException
+	{
+		String line = this.readLine();
+		if (!line.startsWith(cmdName))
+		{
+			throw new IllegalCommandException("expected " + cmdName + ", received: " + line.trim());
+		}
+		return line;
+	}
+
+	/**
+	 * Reads the next response, skipping comments. Errors sent by the server
+	 * are thrown as exceptions.
+	 * @return the response.
+	 */
+	private String readLine() throws IOException, IllegalCommandException
+	{
+		String line;
+		do
+		{
+			line = input.readLine();
+			if (line == null)
+				throw new IOException("connection closed by server");
+		}
+		while (line.length() == 0 || line.startsWith( Protocol.COMMENT_TAG ));
+
+		if (line.startsWith( Protocol.COMMAND_ERROR ))
+		{
+			throw new IllegalCommandException( "server error: " + ProtocolRequest.getError(line) );
+		}
+		return line;
+	}
+
+	private void send(String cmd)
+	{
+		output.print(cmd);
+		output.flush();
+	}
+
+	private void exit()
+	{
+		this.send( Protocol.COMMAND_EXIT + Protocol.END_OF_CMD_LINE );
+	}
+
+	/**
+	 * Waits for the configured think time, varied randomly by up to 50
+	 * percent to avoid clients moving in lockstep.
+	 */
+	private void think()
+	{
+		long thinkTime = generator.getThinkTime();
+		if (thinkTime <= 0)
+			return;
+
+		try
+		{
+			Thread.sleep(thinkTime / 2 + (long) (random.nextDouble() * thinkTime));
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Picks a random legal move, i.e. an empty field or a field of the own
+	 * color.
+	 * @param color the color of the client.
+	 * @return a legal move.
+	 */
+	private Position selectMove(GameColor color)
+	{
+		List<Position> legal = new ArrayList<Position>();
+		for (Position aPos : situation.getPositions())
+		{
+			GameColor owner = situation.getColor(aPos);
+			if (owner == null || owner == color)
+			{
+				legal.add(aPos);
+			}
+		}
+		return legal.get( random.nextInt(legal.size()) );
+	}
+}
@@ -0,0 +1,443 @@
+/*
+ * Created on 20.01.2007
+ */
+package network;
+
+import java.io.IOException;
+
+import ai.SearchScheduler;
+
+/**
+ * Puts load on a server by letting a number of simulated clients play games
+ * against it concurrently through the 'Kaskade'-protocol. Reports the
+ * latencies of 'init'- and 'move'-requests, the throughput in moves per
+ * second and the rates of errors and desynchronized boards.
+ * <p>
+ * By default a server is started within the same process on localhost. Use
+ * -external to test a server that is already running on localhost. Use
+ * -archive to let the local server record its games, e.g. for comparing the
+ * latencies with and without recording.
+ */
+public class LoadGenerator
+{
+	/**
+	 * The usage message.
+	 */
+	private static final String USAGE =
+		"usage: LoadGenerator [-clients n] [-games n] [-dim n] [-think ms]" +
+		" [-serverthink ms] [-searches n] [-port n] [-seed n] [-archive dir] [-external]";
+
+	/**
+	 * The interval in milliseconds of progress reports.
+	 */
+	private static final long REPORT_INTERVAL = 5000;
+
+	/**
+	 * Host of the server under load.
+	 */
+	private String host = "localhost";
+
+	/**
+	 * Port of the server under load.
+	 */
+	private int port = ServerPreferences.DEFAULT_SERVER_PORT;
+
+	/**
+	 * Number of concurrent clients.
+	 */
+	private int clients = 10;
+
+	/**
+	 * Number of games each client plays.
+	 */
+	private int games = 5;
+
+	/**
+	 * The x- and y-dimension of the boards.
+	 */
+	private int dim = 5;
+
+	/**
+	 * The average time in milliseconds a client waits before each move.
+	 */
+	private long thinkTime = 0;
+
+	/**
+	 * The thinking time in milliseconds of the local server.
+	 */
+	private long serverThinkingTime = 500;
+
+	/**
+	 * The number of search workers of the local server.
+	 */
+	private int searches = ServerPreferences.DEFAULT_MAX_SEARCHES;
+
+	/**
+	 * The seed of the clients' random moves.
+	 */
+	private long seed = System.currentTimeMillis();
+
+	/**
+	 * Indicates if a server already running should be used instead of a local
+	 * one.
+	 */
+	private boolean external = false;
+
+	/**
+	 * The directory the local server records its games in, null if the 
+	 * games are not recorded.
+	 */
+	private String archiveDirectory = null;
+
+	/**
+	 * Indicates if the load test has been stopped.
+	 */
+	private volatile boolean stopped = false;
+
+	/**
+	 * Latencies of 'init'-requests.
+	 */
+	private LatencyHistogram initLatencies = new LatencyHistogram();
+
+	/**
+	 * Latencies of 'move'-requests, until the server's move has been received.
+	 */
+	private LatencyHistogram moveLatencies = new LatencyHistogram();
+
+	/**
+	 * The number of finished games.
+	 */
+	private long finishedGames = 0;
+
+	/**
+	 * The number of failed requests.
+	 */
+	private long errors = 0;
+
+	/**
+	 * The number of board validations.
+	 */
+	private long validations = 0;
+
+	/**
+	 * The number of board validations that failed.
+	 */
+	private long desyncs = 0;
+
+	/**
+	 * Starts the load test with the given arguments.
+	 * @param args the arguments, see usage.
+	 */
+	public static void main(String[] args)
+	{
+		LoadGenerator generator = new LoadGenerator();
+		try
+		{
+			generator.parseArgs(args);
+		}
+		catch (IllegalArgumentException e)
+		{
+			System.err.println(e.getMessage());
+			System.err.println(USAGE);
+			System.exit(1);
+		}
+
+		try
+		{
+			generator.run();
+		}
+		catch (IOException e)
+		{
+			System.err.println("could not start server: " + e.getMessage());
+			System.exit(1);
+		}
+		System.exit(0);
+	}
+
+	private void parseArgs(String[] args)
+	{
+		for (int i = 0; i < args.length; i++)
+		{
+			String arg = args[i];
+			if (arg.equals("-external"))
+			{
+				external = true;
+				continue;
+			}
+			if (i + 1 >= args.length)
+			{
+				throw new IllegalArgumentException("missing value for " + arg);
+			}
+			if (arg.equals("-archive"))
+			{
+				archiveDirectory = args[++i];
+				continue;
+			}
+			try
+			{
+				long value = Long.parseLong(args[++i]);
+				if (arg.equals("-clients"))
+					clients = (int) value;
+				else if (arg.equals("-games"))
+					games = (int) value;
+				else if (arg.equals("-dim"))
+					dim = (int) value;
+				else if (arg.equals("-think"))
+					thinkTime = value;
+				else if (arg.equals("-serverthink"))
+					serverThinkingTime = value;
+				else if (arg.equals("-searches"))
+					searches = (int) value;
+				else if (arg.equals("-port"))
+					port = (int) value;
+				else if (arg.equals("-seed"))
+					seed = value;
+				else
+					throw new IllegalArgumentException("unknown argument: " + arg);
+			}
+			catch (NumberFormatException e)
+			{
+				throw new IllegalArgumentException("illegal value for " + arg + ": " + args[i]);
+			}
+		}
+	}
+
+	/**
+	 * Starts the local server, if needed, lets all clients play their games
+	 * and reports the results.
+	 * @throws IOException if the local server could not be started.
+	 */
+	private void run() throws IOException
+	{
+		if (!external)
+		{
+			ServerPreferences prefs = ServerPreferences.getInstance();
+			prefs.setThinkingTime(serverThinkingTime);
+			prefs.setMaxSearches(searches);
+			prefs.setMaxSessions(Math.max(prefs.getMaxSessions(), clients));
+			prefs.setArchiveDirectory(archiveDirectory);
+			Server.getInstance().startServer(port);
+		}
+
+		System.out.println("load test: " + clients + " clients, " + games + " games each, "
+				+ dim + "x" + dim + ", think time " + thinkTime + " ms, seed " + seed);
+
+		Thread[] threads = new Thread[clients];
+		for (int i = 0; i < clients; i++)
+		{
+			threads[i] = new Thread(new LoadClient(i, this, seed + i), "kaskade-load-" + i);
+			threads[i].start();
+		}
+
+		long start = System.currentTimeMillis();
+		long lastReport = start;
+		for (Thread aThread : threads)
+		{
+			while (aThread.isAlive())
+			{
+				try
+				{
+					aThread.join(REPORT_INTERVAL);
+				}
+				catch (InterruptedException e)
+				{
+					stopped = true;
+				}
+				if (System.currentTimeMillis() - lastReport >= REPORT_INTERVAL)
+				{
+					lastReport = System.currentTimeMillis();
+					this.report(lastReport - start, false);
+				}
+			}
+		}
+		this.report(System.currentTimeMillis() - start, true);
+
+		if (!external)
+		{
+			Server.getInstance().stopServer();
+		}
+	}
+
+	/**
+	 * Prints the results collected so far.
+	 * @param elapsed the elapsed time in milliseconds.
+	 * @param complete true for the final report with all details.
+	 */
+	private synchronized void report(long elapsed, boolean complete)
+	{
+		long moves = moveLatencies.getCount();
+		double seconds = Math.max(1, elapsed) / 1000.0;
+		System.out.println("after " + elapsed + " ms: " + moves + " moves, "
+				+ format(moves / seconds) + " moves/sec, " + finishedGames + " games, "
+				+ errors + " errors, " + desyncs + " desyncs");
+
+		if (!complete)
+			return;
+
+		long requests = moves + initLatencies.getCount() + errors;
+		System.out.println("init latency: " + describe(initLatencies));
+		System.out.println("move latency: " + describe(moveLatencies));
+		System.out.println("error rate:   " + format(rate(errors, requests)) + " %");
+		System.out.println("desync rate:  " + format(rate(desyncs, validations)) + " %");
+
+		if (!external)
+		{
+			SearchScheduler scheduler = Server.getInstance().getSearchScheduler();
+			System.out.println("search queue: n=" + scheduler.getFinishedSearches()
+					+ " mean=" + scheduler.getAverageQueueDelay()
+					+ " max=" + scheduler.getMaxQueueDelay() + " ms");
+		}
+	}
+
+	private static String describe(LatencyHistogram histogram)
+	{
+		return "n=" + histogram.getCount()
+			+ " mean=" + millis(histogram.getMean())
+			+ " p50=" + millis(histogram.getPercentile(0.5))
+			+ " p99=" + millis(histogram.getPercentile(0.99))
+			+ " p999=" + millis(histogram.getPercentile(0.999))
+			+ " max=" + millis(histogram.getMax()) + " ms";
+	}
+
+	private static String millis(long micros)
+	{
+		return format(micros / 1000.0);
+	}
+
+	private static String format(double value)
+	{
+		return String.valueOf( Math.round(value * 100) / 100.0 );
+	}
+
+	private static double rate(long count, long total)
+	{
+		return total == 0 ? 0 : 100.0 * count / total;
+	}
+
+	/**
+	 * Records the latency of an 'init'-request.
+	 * @param micros the latency in microseconds.
+	 */
+	void recordInit(long micros)
+	{
+		initLatencies.record(micros);
+	}
+
+	/**
+	 * Records the latency of a 'move'-request.
+	 * @param micros the latency in microseconds.
+	 */
+	void recordMove(long micros)
+	{
+		moveLatencies.record(micros);
+	}
+
+	/**
+	 * Counts a finished game.
+	 */
+	synchronized void countGame()
+	{
+		finishedGames++;
+	}
+
+	/**
+	 * Counts a failed request.
+	 * @param message the reason of the failure.
+	 */
+	synchronized void countError(String message)
+	{
+		errors++;
+		System.err.println("load test error: " + message);
+	}
+
+	/**
+	 * Counts a board validation.
+	 * @param match true, if the boards of server and client match.
+	 * @return the given match.
+	 */
+	synchronized boolean countValidation(boolean match)
+	{
+		validations++;
+		if (!match)
+		{
+			desyncs++;
+			System.err.println("load test desync: hash values differ");
+		}
+		return match;
+	}
+
+	/**
+	 * Counts a desynchronization detected outside of a board validation.
+	 * @param message the reason of the desynchronization.
+	 */
+	synchronized void countDesync(String message)
+	{
+		validations++;
+		desyncs++;
+		System.err.println("load test desync: " + message);
+	}
+
+	/**
+	 * Indicates if the load test has been stopped.
+	 * @return true, if the load test has been stopped.
+	 */
+	boolean isStopped()
+	{
+		return stopped;
+	}
+
+	/**
+	 * Returns the host of the server under load.
+	 * @return the host of the server.
+	 */
+	String getHost()
+	{
+		return host;
+	}
+
+	/**
+	 * Returns the port of the server under load.
+	 * @return the port of the server.
+	 */
+	int getPort()
+	{
+		return port;
+	}
+
+	/**
+	 * Returns the number of games each client plays.
+	 * @return the number of games per client.
+	 */
+	int getGames()
+	{
+		return games;
+	}
+
+	/**
+	 * Returns the x- and y-dimension of the boards.
+	 * @return the dimension of the boards.
+	 */
+	int getDim()
+	{
+		return dim;
+	}
+
+	/**
+	 * Returns the average time in milliseconds a client waits before a move.
+	 * @return the think time of the clients.
+	 */
+	long getThinkTime()
+	{
+		return thinkTime;
+	}
+
+	/**
+	 * Returns the time in milliseconds a client waits for a response, before
+	 * the request is considered failed.
+	 * @return the response timeout.
+	 */
+	int getResponseTimeout()
+	{
+		return (int) Math.max(30000, 20 * serverThinkingTime);
+	}
+}
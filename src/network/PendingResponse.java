@@ -0,0 +1,213 @@
+/*
+ * Created on 16.01.2007
+ */
+package network;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A response of a remote server that has been requested, but not necessarily
+ * received yet. Callers can either wait for the response or register a
+ * callback, which is called by the thread completing the response. Also used
+ * for the moves requested from players, which are completed by the players.
+ * @param <V> the type of the response value.
+ */
+public class PendingResponse<V> implements Future<V>
+{
+	/**
+	 * The value of the response, once completed.
+	 */
+	private V value;
+
+	/**
+	 * The reason of the failure, if the response has failed.
+	 */
+	private Exception failure;
+
+	/**
+	 * Indicates if the response is completed, failed or cancelled.
+	 */
+	private boolean done = false;
+
+	/**
+	 * Indicates if the response has been cancelled.
+	 */
+	private boolean cancelled = false;
+
+	/**
+	 * The callbacks waiting for the response.
+	 */
+	private List<ResponseCallback<V>> callbacks = new LinkedList<ResponseCallback<V>>();
+
+	/**
+	 * Completes the response with the given value.
+	 * @param value the value of the response.
+	 * @return true, if the response has been completed by this call.
+	 */
+	public boolean complete(V value)
+	{
+		List<ResponseCallback<V>> waiting;
+		synchronized (this)
+		{
+			if (done)
+				return false;
+
+			this.value = value;
+			waiting = this.finish();
+		}
+		for (ResponseCallback<V> aCallback : waiting)
+		{
+			aCallback.completed(value);
+		}
+		return true;
+	}
+
+	/**
+	 * Fails the response with the given reason.
+	 * @param e the reason of the failure.
+	 * @return true, if the response has been failed by this call.
+	 */
+	public boolean fail(Exception e)
+	{
+		List<ResponseCallback<V>> waiting;
+		synchronized (this)
+		{
+			if (done)
+				return false;
+
+			this.failure = e;
+			waiting = this.finish();
+		}
+		for (ResponseCallback<V> aCallback : waiting)
+		{
+			aCallback.failed(e);
+		}
+		return true;
+	}
+
+	/**
+	 * Fails the response with a timeout, if it has not been completed within
+	 * the given time.
+	 * @param timeout the timeout in milliseconds, 0 for no timeout.
+	 * @param timer the timer the timeout is scheduled with.
+	 */
+	void failAfter(long timeout, ScheduledExecutorService timer)
+	{
+		if (timeout <= 0)
+			return;
+
+		timer.schedule(new Runnable()
+		{
+			public void run()
+			{
+				fail( new TimeoutException("no response from remote server") );
+			}
+		}, timeout, TimeUnit.MILLISECONDS);
+	}
+
+	private List<ResponseCallback<V>> finish()
+	{
+		done = true;
+		this.notifyAll();
+		List<ResponseCallback<V>> waiting = callbacks;
+		callbacks = null;
+		return waiting;
+	}
+
+	/**
+	 * Registers a callback, that is called as soon as the response is
+	 * completed. If the response is already completed, the callback is called
+	 * immediately by the calling thread.
+	 * @param callback the callback to register.
+	 */
+	public void addCallback(ResponseCallback<V> callback)
+	{
+		synchronized (this)
+		{
+			if (!done)
+			{
+				callbacks.add(callback);
+				return;
+			}
+		}
+		if (failure == null)
+			callback.completed(value);
+		else
+			callback.failed(failure);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.concurrent.Future#cancel(boolean)
+	 */
+	public boolean cancel(boolean mayInterruptIfRunning)
+	{
+		synchronized (this)
+		{
+			if (done)
+				return false;
+			cancelled = true;
+		}
+		return fail( new CancellationException("request cancelled") );
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.concurrent.Future#isCancelled()
+	 */
+	public synchronized boolean isCancelled()
+	{
+		return cancelled;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.concurrent.Future#isDone()
+	 */
+	public synchronized boolean isDone()
+	{
+		return done;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.concurrent.Future#get()
+	 */
+	public synchronized V get() throws InterruptedException, ExecutionException
+	{
+		while (!done)
+		{
+			this.wait();
+		}
+		return this.getValue();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.concurrent.Future#get(long, java.util.concurrent.TimeUnit)
+	 */
+	public synchronized V get(long timeout, TimeUnit unit)
+	throws InterruptedException, ExecutionException, TimeoutException
+	{
+		long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+		while (!done)
+		{
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0)
+				throw new TimeoutException("no response from remote server");
+			this.wait(remaining);
+		}
+		return this.getValue();
+	}
+
+	private V getValue() throws ExecutionException
+	{
+		if (cancelled)
+			throw (CancellationException) failure;
+		if (failure != null)
+			throw new ExecutionException(failure);
+		return value;
+	}
+}
@@ -27,6 +27,11 @@ class Protocol
 	 */
 	public static final String ARG_NEUTRAL = "n";
 	
+	/**
+	 * An argument for synchronizing boards by their hash values.
+	 */
+	public static final String ARG_HASH = "hash";
+	
 	/**
 	 * The 'board'-command.
 	 */
@@ -62,11 +67,46 @@ class Protocol
 	 */
 	public static final String COMMAND_EXIT = "exit";
 	
+	/**
+	 * The 'watch'-command.
+	 */
+	public static final String COMMAND_WATCH = "watch";
+	
+	/**
+	 * The 'watching'-command.
+	 */
+	public static final String COMMAND_WATCHING = "watching";
+	
+	/**
+	 * The 'resume'-command.
+	 */
+	public static final String COMMAND_RESUME = "resume";
+	
+	/**
+	 * The 'analyze'-command.
+	 */
+	public static final String COMMAND_ANALYZE = "analyze";
+	
+	/**
+	 * The 'analysis'-command.
+	 */
+	public static final String COMMAND_ANALYSIS = "analysis";
+	
+	/**
+	 * The 'score'-command.
+	 */
+	public static final String COMMAND_SCORE = "score";
+	
 	/**
 	 * The 'help'-command.
 	 */
 	public static final String COMMAND_HELP = "help";
 	
+	/**
+	 * The 'hash'-command.
+	 */
+	public static final String COMMAND_HASH = "hash";
+	
 	/**
 	 * The tag used to indicate a comment, that should be ignored by the server.
 	 */
@@ -142,6 +182,56 @@ class Protocol
 	 */
 	public static final String PARAM_MESSAGE = "message";
 	
+	/**
+	 * The parameter name for the way boards are synchronized.
+	 */
+	public static final String PARAM_SYNC = "sync";
+	
+	/**
+	 * The parameter name for a value.
+	 */
+	public static final String PARAM_VALUE = "value";
+	
+	/**
+	 * The parameter name for the id of a game.
+	 */
+	public static final String PARAM_GAME = "game";
+	
+	/**
+	 * The parameter name for the player who has the next turn.
+	 */
+	public static final String PARAM_TURN = "turn";
+	
+	/**
+	 * The parameter name for the id of a game multiplexed over a connection.
+	 */
+	public static final String PARAM_ID = "id";
+	
+	/**
+	 * The parameter name for the token of a session.
+	 */
+	public static final String PARAM_SESSION = "session";
+	
+	/**
+	 * The parameter name for a thinking time in milliseconds.
+	 */
+	public static final String PARAM_TIME = "time";
+	
+	/**
+	 * The parameter name for the number of best moves.
+	 */
+	public static final String PARAM_TOP = "top";
+	
+	/**
+	 * The parameter name for a tree depth.
+	 */
+	public static final String PARAM_DEPTH = "depth";
+	
+	/**
+	 * The parameter name for a number of moves.
+	 */
+	public static final String PARAM_MOVES = "moves";
+	
 	/**
 	 * The tag for indicating an end of a command line.
 	 */
@@ -175,13 +265,39 @@ class Protocol
 	  +	">                  ('s' for server, 'c' for client or 'n' for neutral)." + Protocol.END_OF_CMD_LINE
 	  + ">                  Default is an empty board setup." + Protocol.END_OF_CMD_LINE
 	  + ">          user - client user name" + Protocol.END_OF_CMD_LINE
+	  + ">          sync - (optional) =hash  => server sends hash values instead of boards" + Protocol.END_OF_CMD_LINE
 	  + ">         Example for a simple 3x3 board:" + Protocol.END_OF_CMD_LINE
 	  + ">          init (xDim=3;yDim=3;begin=c;setup=0n0n0n1s2c0n0n1s0n;user=foobar)" + Protocol.END_OF_CMD_LINE
 	  + ">  move - make your turn" + Protocol.END_OF_CMD_LINE
 	  + ">         parameters:" + Protocol.END_OF_CMD_LINE
 	  + ">          x - horizontal position" + Protocol.END_OF_CMD_LINE
 	  + ">          y - vertical position" + Protocol.END_OF_CMD_LINE
-	  + ">  exit - goodbye";
+	  + ">  board - request the current board" + Protocol.END_OF_CMD_LINE
+	  + ">  resume - continue a game after the connection has been lost" + Protocol.END_OF_CMD_LINE
+	  + ">         parameters:" + Protocol.END_OF_CMD_LINE
+	  + ">          session - the session token sent with 'initialized'" + Protocol.END_OF_CMD_LINE
+	  + ">         The current board is sent, together with the player who has the next turn." + Protocol.END_OF_CMD_LINE
+	  + ">  watch - watch a running game instead of playing" + Protocol.END_OF_CMD_LINE
+	  + ">         parameters:" + Protocol.END_OF_CMD_LINE
+	  + ">          game - the id of the game" + Protocol.END_OF_CMD_LINE
+	  + ">         The current board is sent, followed by every move and the hash value" + Protocol.END_OF_CMD_LINE
+	  + ">         of the resulting board, until 'bye'. Spectators too slow to keep up" + Protocol.END_OF_CMD_LINE
+	  + ">         skip moves and are sent the current board instead." + Protocol.END_OF_CMD_LINE
+	  + ">  analyze - evaluate the moves on a board without playing" + Protocol.END_OF_CMD_LINE
+	  + ">         parameters:" + Protocol.END_OF_CMD_LINE
+	  + ">          xDim, yDim, setup - the board, as with 'init'" + Protocol.END_OF_CMD_LINE
+	  + ">          turn - =s  => the moves of the server ('s'-fields) are evaluated" + Protocol.END_OF_CMD_LINE
+	  + ">                 =c  => the moves of the client ('c'-fields) are evaluated" + Protocol.END_OF_CMD_LINE
+	  + ">          time - (optional) thinking time in milliseconds" + Protocol.END_OF_CMD_LINE
+	  + ">          top - (optional) number of best moves to send, default is all moves" + Protocol.END_OF_CMD_LINE
+	  + ">         The answer is 'analysis' with the tree depth and the number of moves," + Protocol.END_OF_CMD_LINE
+	  + ">         followed by a 'score' for each move, best move first." + Protocol.END_OF_CMD_LINE
+	  + ">  exit - goodbye" + Protocol.END_OF_CMD_LINE
+	  + ">" + Protocol.END_OF_CMD_LINE
+	  + "> Several games can be played over one connection by adding the parameter" + Protocol.END_OF_CMD_LINE
+	  + "> 'id' to 'init', 'move', 'board' and 'exit', e.g. move (id=7;x=1;y=2) or" + Protocol.END_OF_CMD_LINE
+	  + "> exit (id=7). The id is chosen by the client with 'init', and all responses" + Protocol.END_OF_CMD_LINE
+	  + "> for the game carry the same id.";
 	
 	/**
 	 * Returns true, if the given command allows the use of parameters.
@@ -249,4 +365,15 @@ class Protocol
 		return s.toString();
 	}
 	
+	/**
+	 * Generates the string representation of a situation's hash value as used
+	 * in the 'hash'-command.
+	 * @param situation the game situation to represent.
+	 * @return a string representation of the situation's hash value.
+	 */
+	protected static String buildHashString(GameSituation situation)
+	{
+		return Long.toHexString( situation.getHash() );
+	}
+	
 }
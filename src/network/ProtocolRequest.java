@@ -86,6 +86,74 @@ public class ProtocolRequest extends Protocol
 		Map<String, String> argMap = 
 			ProtocolRequest.parseCommand( COMMAND_INIT, initCmd );
 		
+		checkDimensions(argMap);
+		
+		if ( argMap.get( PARAM_BEGIN ) == null )
+		{
+			throw new IllegalCommandException("missing argument: " + PARAM_BEGIN);
+		}
+		if ( argMap.get( PARAM_USER ) == null )
+		{
+			throw new IllegalCommandException("missing argument: " + PARAM_USER);
+		}
+		
+		return argMap;
+	}
+	
+	/**
+	 * Interprets an 'analyze'-command. The board is given like the setup of
+	 * an 'init'-command, which is interpreted with {@link #getSetup}.
+	 * @param analyzeCmd the 'analyze'-command to interpret.
+	 * @return an argument map for analyzing a board.
+	 * @throws IllegalCommandException
+	 */
+	public static Map<String, String> getAnalyze(String analyzeCmd) throws IllegalCommandException
+	{
+		Map<String, String> argMap = 
+			ProtocolRequest.parseCommand( COMMAND_ANALYZE, analyzeCmd );
+		
+		checkDimensions(argMap);
+		
+		if ( argMap.get( PARAM_SETUP ) == null )
+		{
+			throw new IllegalCommandException("missing argument: " + PARAM_SETUP);
+		}
+		String turn = argMap.get( PARAM_TURN );
+		if ( turn == null )
+		{
+			throw new IllegalCommandException("missing argument: " + PARAM_TURN);
+		}
+		if ( !turn.equals(ARG_SERVER) && !turn.equals(ARG_CLIENT) )
+		{
+			throw new IllegalCommandException("illegal turn argument, must be " + ARG_SERVER + " or " + ARG_CLIENT);
+		}
+		
+		try
+		{
+			if ( argMap.get( PARAM_TIME ) != null && Long.parseLong( argMap.get( PARAM_TIME ) ) <= 0 )
+			{
+				throw new IllegalCommandException("time must be positive");
+			}
+			if ( argMap.get( PARAM_TOP ) != null && Integer.parseInt( argMap.get( PARAM_TOP ) ) <= 0 )
+			{
+				throw new IllegalCommandException("top must be positive");
+			}
+		}
+		catch (NumberFormatException e)
+		{
+			throw new IllegalCommandException("illegal format for time or top argument");
+		}
+		
+		return argMap;
+	}
+	
+	/**
+	 * Checks the board dimensions of an 'init'- or 'analyze'-command.
+	 * @param argMap the arguments of the command.
+	 * @throws IllegalCommandException
+	 */
+	private static void checkDimensions(Map<String, String> argMap) throws IllegalCommandException
+	{
 		String dimXStr, dimYStr;
 		if ( (dimXStr = argMap.get( PARAM_DIM_X )) == null )
 		{
@@ -111,21 +179,10 @@ public class ProtocolRequest extends Protocol
 		{
 			throw new IllegalCommandException("size lower than " + Game.NR_OF_FIELDS_MIN + " not supported");
 		}
-		if (dimY > Game.NR_OF_FIELDS_MAX || dimY > Game.NR_OF_FIELDS_MAX)
+		if (dimX > Game.NR_OF_FIELDS_MAX || dimY > Game.NR_OF_FIELDS_MAX)
 		{
 			throw new IllegalCommandException("size higher than " + Game.NR_OF_FIELDS_MAX + " not supported");
 		}
-		
-		if ( argMap.get( PARAM_BEGIN ) == null )
-		{
-			throw new IllegalCommandException("missing argument: " + PARAM_BEGIN);
-		}
-		if ( argMap.get( PARAM_USER ) == null )
-		{
-			throw new IllegalCommandException("missing argument: " + PARAM_USER);
-		}
-		
-		return argMap;
 	}
 	
 	/**
@@ -297,6 +354,136 @@ public class ProtocolRequest extends Protocol
 		return rep.toString();
 	}
 	
+	/**
+	 * Interprets a 'hash'-command.
+	 * @param hashCmd the 'hash'-command to interpret.
+	 * @return the string representation of the hash value.
+	 * @throws IllegalCommandException
+	 */
+	public static String getHash(String hashCmd) throws IllegalCommandException
+	{
+		Map<String, String> argMap = parseCommand(COMMAND_HASH, hashCmd);
+		String value = argMap.get(PARAM_VALUE);
+		if (value == null)
+		{
+			throw new IllegalCommandException("missing argument: " + PARAM_VALUE);
+		}
+		return value;
+	}
+	
+	/**
+	 * Interprets a 'board'-command requesting the current board.
+	 * @param boardCmd the 'board'-command to interpret.
+	 * @throws IllegalCommandException
+	 */
+	public static void getBoardRequest(String boardCmd) throws IllegalCommandException
+	{
+		if ( !boardCmd.trim().equals(COMMAND_BOARD) )
+		{
+			throw new IllegalCommandException("illegal command arguments");
+		}
+	}
+	
+	/**
+	 * Returns the id of the multiplexed game a command is meant for.
+	 * @param cmdLine the command.
+	 * @return the id of the game, null if the command has no id.
+	 */
+	public static String getId(String cmdLine)
+	{
+		String line = cmdLine.trim();
+		int paramStart = line.indexOf(COMMAND_PARAM_START);
+		int paramEnd = line.lastIndexOf(COMMAND_PARAM_END);
+		if (paramStart < 0 || paramEnd < paramStart)
+			return null;
+		
+		String[] args = line.substring(paramStart+1, paramEnd).split( COMMAND_PARAM_SEPARATOR );
+		for (int i=0; i<args.length; i++)
+		{
+			String[] keyval = args[i].split( PARAM_KEYVAL_SEPARATOR );
+			if (keyval.length == 2 && keyval[0].trim().equals(PARAM_ID))
+			{
+				return keyval[1].trim();
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Removes the id of the multiplexed game from a command, so the command 
+	 * can be interpreted like a command of a connection with a single game.
+	 * A command left without parameters is reduced to its name.
+	 * @param cmdLine the command.
+	 * @return the command without the id.
+	 */
+	public static String removeId(String cmdLine)
+	{
+		String line = cmdLine.trim();
+		int paramStart = line.indexOf(COMMAND_PARAM_START);
+		int paramEnd = line.lastIndexOf(COMMAND_PARAM_END);
+		if (paramStart < 0 || paramEnd < paramStart)
+			return line;
+		
+		StringBuffer args = new StringBuffer();
+		String[] argArray = line.substring(paramStart+1, paramEnd).split( COMMAND_PARAM_SEPARATOR );
+		for (int i=0; i<argArray.length; i++)
+		{
+			String[] keyval = argArray[i].split( PARAM_KEYVAL_SEPARATOR );
+			if (keyval.length == 2 && keyval[0].trim().equals(PARAM_ID))
+				continue;
+			
+			if (args.length() > 0)
+				args.append( COMMAND_PARAM_SEPARATOR );
+			args.append( argArray[i] );
+		}
+		
+		if (args.length() == 0)
+			return line.substring(0, paramStart).trim();
+		
+		return line.substring(0, paramStart+1) + args + line.substring(paramEnd);
+	}
+	
+	/**
+	 * Interprets a 'resume'-command.
+	 * @param resumeCmd the 'resume'-command to interpret.
+	 * @return the token of the session to resume.
+	 * @throws IllegalCommandException
+	 */
+	public static String getResume(String resumeCmd) throws IllegalCommandException
+	{
+		Map<String, String> argMap = parseCommand(COMMAND_RESUME, resumeCmd);
+		String token = argMap.get(PARAM_SESSION);
+		if (token == null)
+		{
+			throw new IllegalCommandException("missing argument: " + PARAM_SESSION);
+		}
+		return token;
+	}
+	
+	/**
+	 * Interprets a 'watch'-command.
+	 * @param watchCmd the 'watch'-command to interpret.
+	 * @return the id of the game to watch.
+	 * @throws IllegalCommandException
+	 */
+	public static long getWatch(String watchCmd) throws IllegalCommandException
+	{
+		Map<String, String> argMap = parseCommand(COMMAND_WATCH, watchCmd);
+		String game = argMap.get(PARAM_GAME);
+		if (game == null)
+		{
+			throw new IllegalCommandException("missing argument: " + PARAM_GAME);
+		}
+		try
+		{
+			return Long.parseLong(game);
+		}
+		catch (NumberFormatException e)
+		{
+			throw new IllegalCommandException("illegal format for game argument");
+		}
+	}
+	
 	/**
 	 * Interprets an 'error'-command.
 	 * @param errCmd the 'error'-command to interpret.
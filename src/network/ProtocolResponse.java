@@ -5,6 +5,7 @@ package network;
 
 import gameelements.GameSituation;
 import gameelements.Position;
+import ai.Analysis;
 
 import java.util.HashMap;
 import java.util.Iterator;
@@ -72,6 +73,23 @@ public class ProtocolResponse extends Protocol
 	 * @return a command for initializing a game with the given parameters.
 	 */
 	public static String postInit(Player server, GameSituation situation, boolean clientBegins, String user)
+	{
+		return postInit(server, situation, clientBegins, user, false);
+	}
+	
+	/**
+	 * Generates an 'init'-command. 
+	 * @param server the player that represents the server according to the 
+	 * defined 'Kaskade'-protocol.
+	 * @param situation the game situation at initialization.
+	 * @param clientBegins indicates if the client according to the 'Kaskade'
+	 * -protocol begins the game.
+	 * @param user the name of the client.
+	 * @param hashSync indicates if the server should send hash values instead
+	 * of boards.
+	 * @return a command for initializing a game with the given parameters.
+	 */
+	public static String postInit(Player server, GameSituation situation, boolean clientBegins, String user, boolean hashSync)
 	{
 		Map<String, String> args = new HashMap<String, String>();
 		
@@ -80,10 +98,63 @@ public class ProtocolResponse extends Protocol
 		args.put( PARAM_BEGIN, clientBegins ? ARG_CLIENT : ARG_SERVER );
 		args.put( PARAM_SETUP, buildBoardString( server, situation ) );
 		args.put( PARAM_USER, user );
+		if (hashSync)
+		{
+			args.put( PARAM_SYNC, ARG_HASH );
+		}
 		
 		return generateCmd( COMMAND_INIT, args );
 	}
 	
+	/**
+	 * Generates an 'init'-command for an empty board, i.e. without setup.
+	 * @param dimX the x-dimension of the board.
+	 * @param dimY the y-dimension of the board.
+	 * @param clientBegins indicates if the client according to the 'Kaskade'
+	 * -protocol begins the game.
+	 * @param user the name of the client.
+	 * @param hashSync indicates if the server should send hash values instead
+	 * of boards.
+	 * @return a command for initializing a game with the given parameters.
+	 */
+	public static String postInit(int dimX, int dimY, boolean clientBegins, String user, boolean hashSync)
+	{
+		Map<String, String> args = new HashMap<String, String>();
+		
+		args.put( PARAM_DIM_X, String.valueOf( dimX ) );
+		args.put( PARAM_DIM_Y, String.valueOf( dimY ) );
+		args.put( PARAM_BEGIN, clientBegins ? ARG_CLIENT : ARG_SERVER );
+		args.put( PARAM_USER, user );
+		if (hashSync)
+		{
+			args.put( PARAM_SYNC, ARG_HASH );
+		}
+		
+		return generateCmd( COMMAND_INIT, args );
+	}
+	
+	/**
+	 * Generates a 'hash'-command to represent the current game situation by
+	 * its hash value.
+	 * @param situation the game situation that should be represented.
+	 * @return a command representing a game situation by its hash value.
+	 */
+	public static String postHash(GameSituation situation)
+	{
+		Map<String, String> args = new HashMap<String, String>();
+		args.put( PARAM_VALUE, buildHashString( situation ) );
+		return generateCmd( COMMAND_HASH, args );
+	}
+	
+	/**
+	 * Generates a 'board'-command requesting the current board.
+	 * @return a command requesting the current board.
+	 */
+	public static String postBoardRequest()
+	{
+		return COMMAND_BOARD + END_OF_CMD_LINE;
+	}
+	
 	/**
 	 * Generates an 'initialized'-command.
 	 * @param user the name of the player that sends the command.
@@ -96,6 +167,78 @@ public class ProtocolResponse extends Protocol
 		return generateCmd( COMMAND_INITIALIZED, args );
 	}
 	
+	/**
+	 * Generates an 'initialized'-command with the token needed for resuming
+	 * the session.
+	 * @param user the name of the player that sends the command.
+	 * @param token the token of the session.
+	 * @return a command for confirming an initialized state.
+	 */
+	public static String postInitialized(String user, String token)
+	{
+		Map<String, String> args = new HashMap<String, String>();
+		args.put( PARAM_USER, user );
+		args.put( PARAM_SESSION, token );
+		return generateCmd( COMMAND_INITIALIZED, args );
+	}
+	
+	/**
+	 * Generates an 'initialized'-command confirming a resumed session.
+	 * @param user the name of the player that sends the command.
+	 * @param token the token of the session.
+	 * @param serverMoves indicates if the server (according to the 'Kaskade'
+	 * -protocol) has the next turn.
+	 * @return a command for confirming a resumed state.
+	 */
+	public static String postInitialized(String user, String token, boolean serverMoves)
+	{
+		Map<String, String> args = new HashMap<String, String>();
+		args.put( PARAM_USER, user );
+		args.put( PARAM_SESSION, token );
+		args.put( PARAM_TURN, serverMoves ? ARG_SERVER : ARG_CLIENT );
+		return generateCmd( COMMAND_INITIALIZED, args );
+	}
+	
+	/**
+	 * Generates a 'watching'-command confirming a spectator's subscription.
+	 * @param gameId the id of the watched game.
+	 * @param serverMoves indicates if the server (according to the 'Kaskade'
+	 * -protocol) has the next turn.
+	 * @return a command confirming the watched game.
+	 */
+	public static String postWatching(long gameId, boolean serverMoves)
+	{
+		Map<String, String> args = new HashMap<String, String>();
+		args.put( PARAM_GAME, String.valueOf( gameId ) );
+		args.put( PARAM_TURN, serverMoves ? ARG_SERVER : ARG_CLIENT );
+		return generateCmd( COMMAND_WATCHING, args );
+	}
+	
+	/**
+	 * Generates an 'analysis'-command, followed by a 'score'-command for each
+	 * analyzed move.
+	 * @param analysis the analysis to represent.
+	 * @return the commands representing the analysis.
+	 */
+	public static String postAnalysis(Analysis analysis)
+	{
+		Map<String, String> args = new HashMap<String, String>();
+		args.put( PARAM_DEPTH, String.valueOf( analysis.getDepth() ) );
+		args.put( PARAM_MOVES, String.valueOf( analysis.size() ) );
+		StringBuffer s = new StringBuffer( generateCmd( COMMAND_ANALYSIS, args ) );
+		
+		for (int i=0; i<analysis.size(); i++)
+		{
+			Position move = analysis.getMove(i);
+			args = new HashMap<String, String>();
+			args.put( PARAM_X, String.valueOf( move.getX() ) );
+			args.put( PARAM_Y, String.valueOf( move.getY() ) );
+			args.put( PARAM_VALUE, String.valueOf( analysis.getScore(i) ) );
+			s.append( generateCmd( COMMAND_SCORE, args ) );
+		}
+		return s.toString();
+	}
+	
 	/**
 	 * Generates an 'error'-command.
 	 * @param msg the error message.
@@ -125,6 +268,50 @@ public class ProtocolResponse extends Protocol
 		return generateCmd( COMMAND_BYE, args );
 	}
 	
+	/**
+	 * Adds the id of a multiplexed game to all commands within the given 
+	 * responses. Comments are left as they are.
+	 * @param responses one or more responses, separated by line separators.
+	 * @param id the id of the game.
+	 * @return the responses carrying the id of the game.
+	 */
+	public static String tag(String responses, String id)
+	{
+		StringBuffer tagged = new StringBuffer( responses.length() + 16 );
+		int start = 0;
+		while (start < responses.length())
+		{
+			int end = responses.indexOf( END_OF_CMD_LINE, start );
+			if (end < 0)
+				end = responses.length();
+			
+			String line = responses.substring(start, end);
+			int paramStart = line.indexOf( COMMAND_PARAM_START );
+			if (line.length() == 0 || line.startsWith( COMMENT_TAG ))
+			{
+				tagged.append( line );
+			}
+			else if (paramStart < 0)
+			{
+				tagged.append( line ).append( COMMAND_PARAM_START ).append( PARAM_ID )
+					.append( PARAM_KEYVAL_SEPARATOR ).append( id ).append( COMMAND_PARAM_END );
+			}
+			else
+			{
+				tagged.append( line.substring(0, paramStart+1) ).append( PARAM_ID )
+					.append( PARAM_KEYVAL_SEPARATOR ).append( id );
+				if (line.charAt(paramStart+1) != COMMAND_PARAM_END.charAt(0))
+					tagged.append( COMMAND_PARAM_SEPARATOR );
+				tagged.append( line.substring(paramStart+1) );
+			}
+			
+			if (end < responses.length())
+				tagged.append( END_OF_CMD_LINE );
+			start = end + END_OF_CMD_LINE.length();
+		}
+		return tagged.toString();
+	}
+	
 	private static String generateCmd(String cmdName, Map<String, String> args)
 	{
 		StringBuffer cmd = new StringBuffer( cmdName );
@@ -0,0 +1,23 @@
+/*
+ * Created on 16.01.2007
+ */
+package network;
+
+/**
+ * Callback for a pending response of a remote server.
+ * @param <V> the type of the response value.
+ */
+public interface ResponseCallback<V>
+{
+	/**
+	 * Called when the response has been received.
+	 * @param value the value of the response.
+	 */
+	void completed(V value);
+
+	/**
+	 * Called when the response has failed, timed out or has been cancelled.
+	 * @param e the reason of the failure.
+	 */
+	void failed(Exception e);
+}
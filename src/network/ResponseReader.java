@@ -0,0 +1,140 @@
+/*
+ * Created on 15.01.2007
+ */
+package network;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.Socket;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Reads the responses of a remote server for the whole lifetime of a
+ * connection, decodes them into server events as they arrive and hands them
+ * over to the client in the order of their arrival. One reader is used per 
+ * connection, so no read-ahead data gets lost between requests.
+ */
+class ResponseReader implements Runnable
+{
+	/**
+	 * The reader on the socket's input stream.
+	 */
+	private BufferedReader input;
+
+	/**
+	 * Number of rows of the game board, i.e. the number of 'board'-commands
+	 * that make up a complete board.
+	 */
+	private int rows;
+
+	/**
+	 * 'board'-commands of the board that is currently being received.
+	 */
+	private List<String> boardCmds = new LinkedList<String>();
+
+	/**
+	 * The client the decoded events are handed over to.
+	 */
+	private Client client;
+
+	/**
+	 * Initiates a reader on the given socket.
+	 * @param client the client the events are handed over to.
+	 * @param socket the socket connected to the remote server.
+	 * @param rows the number of rows of the game board.
+	 * @throws IOException
+	 */
+	ResponseReader(Client client, Socket socket, int rows) throws IOException
+	{
+		this.client = client;
+		this.input = new BufferedReader(
+				new InputStreamReader( socket.getInputStream() ) );
+		this.rows = rows;
+	}
+
+	/**
+	 * Starts the reader in its own daemon thread.
+	 */
+	void start()
+	{
+		Thread t = new Thread(this, "kaskade-client-reader");
+		t.setDaemon(true);
+		t.start();
+	}
+
+	/**
+	 * Reads and decodes lines until the connection is closed.
+	 * @see java.lang.Runnable#run()
+	 */
+	public void run()
+	{
+		try
+		{
+			String line;
+			while ( (line = input.readLine()) != null )
+			{
+				try
+				{
+					this.decode(line);
+				}
+				catch (IllegalCommandException e)
+				{
+					client.receive( new ServerEvent(ServerEvent.TYPE_ERROR, e.getMessage(), null) );
+				}
+			}
+		}
+		catch (IOException e)
+		{
+			System.out.println("connection to remote server closed: " + e.getMessage());
+		}
+		client.receive( new ServerEvent(ServerEvent.TYPE_CLOSED, null, null) );
+	}
+
+	private void decode(String line) throws IllegalCommandException
+	{
+		if (line.startsWith( Protocol.COMMENT_TAG ))
+		{
+			return;
+		}
+		else if (line.startsWith( Protocol.COMMAND_INITIALIZED ))
+		{
+			client.receive( new ServerEvent(ServerEvent.TYPE_INITIALIZED,
+					ProtocolRequest.getInitialized(line), null) );
+		}
+		else if (line.startsWith( Protocol.COMMAND_BOARD ))
+		{
+			boardCmds.add( line );
+			if ( boardCmds.size() == rows )
+			{
+				String boardString = ProtocolRequest.getBoard( boardCmds );
+				boardCmds.clear();
+				client.receive( new ServerEvent(ServerEvent.TYPE_BOARD, boardString, null) );
+			}
+		}
+		else if (line.startsWith( Protocol.COMMAND_HASH ))
+		{
+			client.receive( new ServerEvent(ServerEvent.TYPE_HASH,
+					ProtocolRequest.getHash(line), null) );
+		}
+		else if (line.startsWith( Protocol.COMMAND_MOVE ))
+		{
+			client.receive( new ServerEvent(ServerEvent.TYPE_MOVE, line,
+					ProtocolRequest.getMove(line)) );
+		}
+		else if (line.startsWith( Protocol.COMMAND_BYE ))
+		{
+			client.receive( new ServerEvent(ServerEvent.TYPE_BYE, line, null) );
+		}
+		else if (line.startsWith( Protocol.COMMAND_ERROR ))
+		{
+			client.receive( new ServerEvent(ServerEvent.TYPE_ERROR,
+					ProtocolRequest.getError(line), null) );
+		}
+		else
+		{
+			throw new IllegalCommandException("unknown response: " + line);
+		}
+	}
+}
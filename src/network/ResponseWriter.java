@@ -0,0 +1,300 @@
+/*
+ * Created on 14.01.2007
+ */
+package network;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects all responses a service produces within one turn and writes them
+ * to the socket with a single write call. Responses are encoded directly into
+ * byte buffers, which are taken from a pool shared by all connections and
+ * returned to it on every flush, so that idle connections hold no buffer.
+ * <p>
+ * A blocking socket write has no timeout of its own, so a watchdog closes
+ * the socket of a writer whose write has not finished within the write 
+ * timeout, e.g. because the client stopped reading. The write then fails,
+ * and the thread writing is free again.
+ */
+class ResponseWriter
+{
+	/**
+	 * Initial size of a pooled buffer in bytes. Big enough for a move and
+	 * all board rows of a 20x20 board.
+	 */
+	private static final int BUFFER_SIZE = 2048;
+
+	/**
+	 * Maximum number of buffers kept in the pool.
+	 */
+	private static final int POOL_SIZE = 64;
+
+	/**
+	 * Pool of unused buffers, shared by all connections.
+	 */
+	private static final ConcurrentLinkedQueue<byte[]> pool = new ConcurrentLinkedQueue<byte[]>();
+
+	/**
+	 * The time in milliseconds a write may take, before the connection is
+	 * taken to be stalled and closed.
+	 */
+	static final long WRITE_TIMEOUT = 10000;
+
+	/**
+	 * The writers currently writing to their socket, with the system time in
+	 * milliseconds their write has started.
+	 */
+	private static final Map<ResponseWriter, Long> writing = new ConcurrentHashMap<ResponseWriter, Long>();
+
+	/**
+	 * The thread closing the sockets of stalled writes, started with the 
+	 * first writer of a socket.
+	 */
+	private static ScheduledExecutorService watchdog;
+
+	/**
+	 * The socket the responses are written to.
+	 */
+	private Socket socket;
+
+	/**
+	 * The stream of the socket the responses are written to.
+	 */
+	private OutputStream output;
+
+	/**
+	 * The buffer holding the pending responses, null if nothing is pending.
+	 */
+	private byte[] buffer;
+
+	/**
+	 * Number of pending bytes in the buffer.
+	 */
+	private int count;
+
+	/**
+	 * Initiates a response writer for the given socket and sets the socket
+	 * options used for the short and interactive responses of the protocol.
+	 * @param socket the socket to write to.
+	 * @throws IOException
+	 */
+	ResponseWriter(Socket socket) throws IOException
+	{
+		configure(socket);
+		this.socket = socket;
+		this.output = socket.getOutputStream();
+		startWatchdog();
+	}
+
+	/**
+	 * Initiates a writer without a socket, for writers passing their responses
+	 * on to another writer.
+	 */
+	ResponseWriter()
+	{
+	}
+
+	/**
+	 * Sets the socket options for a connection. Nagle's algorithm is disabled,
+	 * as responses are already coalesced per turn and should not wait for an
+	 * acknowledgement of the previous turn.
+	 * @param socket the socket to configure.
+	 */
+	static void configure(Socket socket)
+	{
+		try
+		{
+			socket.setTcpNoDelay(true);
+			socket.setKeepAlive(true);
+		}
+		catch (SocketException e)
+		{
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Appends a response to the pending responses.
+	 * @param response the response to append.
+	 */
+	synchronized void print(String response)
+	{
+		int length = response.length();
+		ensureCapacity(count + length);
+		for (int i=0; i<length; i++)
+		{
+			char c = response.charAt(i);
+			buffer[count++] = (byte) (c < 256 ? c : '?');
+		}
+	}
+
+	/**
+	 * Writes the pending responses followed by an already encoded frame to 
+	 * the socket. The frame is written as it is, so the same frame can be
+	 * written to many sockets.
+	 * @param frame the encoded frame to write.
+	 * @throws IOException
+	 */
+	synchronized void write(byte[] frame) throws IOException
+	{
+		flush();
+		writing.put(this, Long.valueOf(System.currentTimeMillis()));
+		try
+		{
+			output.write(frame);
+			output.flush();
+		}
+		finally
+		{
+			writing.remove(this);
+		}
+	}
+
+	/**
+	 * Encodes responses into a frame, the same way they are encoded when 
+	 * printed.
+	 * @param responses the responses to encode.
+	 * @return the encoded frame.
+	 */
+	static byte[] encode(String responses)
+	{
+		int length = responses.length();
+		byte[] frame = new byte[length];
+		for (int i=0; i<length; i++)
+		{
+			char c = responses.charAt(i);
+			frame[i] = (byte) (c < 256 ? c : '?');
+		}
+		return frame;
+	}
+
+	/**
+	 * Appends a response to the pending responses and terminates it with a
+	 * line separator.
+	 * @param response the response to append.
+	 */
+	synchronized void println(String response)
+	{
+		print(response);
+		print(Protocol.END_OF_CMD_LINE);
+	}
+
+	/**
+	 * Writes all pending responses to the socket at once and returns the
+	 * buffer to the pool.
+	 * @throws IOException
+	 */
+	synchronized void flush() throws IOException
+	{
+		if (buffer == null)
+			return;
+
+		try
+		{
+			if (count > 0)
+			{
+				writing.put(this, Long.valueOf(System.currentTimeMillis()));
+				output.write(buffer, 0, count);
+				output.flush();
+			}
+		}
+		finally
+		{
+			writing.remove(this);
+			release();
+		}
+	}
+
+	/**
+	 * Discards all pending responses and returns the buffer to the pool.
+	 */
+	synchronized void release()
+	{
+		if (buffer != null && buffer.length == BUFFER_SIZE && pool.size() < POOL_SIZE)
+		{
+			pool.offer(buffer);
+		}
+		buffer = null;
+		count = 0;
+	}
+
+	/**
+	 * Starts the watchdog, unless it is already running.
+	 */
+	private static synchronized void startWatchdog()
+	{
+		if (watchdog != null)
+			return;
+
+		watchdog = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+		{
+			public Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, "kaskade-write-watchdog");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		watchdog.scheduleWithFixedDelay(new Runnable()
+		{
+			public void run()
+			{
+				closeStalled();
+			}
+		}, 1000, 1000, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Closes the sockets of all writers whose write has taken longer than the
+	 * write timeout.
+	 */
+	private static void closeStalled()
+	{
+		long now = System.currentTimeMillis();
+		for (Map.Entry<ResponseWriter, Long> anEntry : writing.entrySet())
+		{
+			if (now - anEntry.getValue().longValue() > WRITE_TIMEOUT)
+			{
+				Socket stalled = anEntry.getKey().socket;
+				System.out.println("closing stalled connection " + stalled.getRemoteSocketAddress());
+				writing.remove(anEntry.getKey());
+				try
+				{
+					stalled.close();
+				}
+				catch (IOException e)
+				{
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	private void ensureCapacity(int capacity)
+	{
+		if (buffer == null)
+		{
+			buffer = pool.poll();
+			if (buffer == null)
+			{
+				buffer = new byte[BUFFER_SIZE];
+			}
+		}
+		if (capacity > buffer.length)
+		{
+			byte[] newBuffer = new byte[Math.max(capacity, 2 * buffer.length)];
+			System.arraycopy(buffer, 0, newBuffer, 0, count);
+			buffer = newBuffer;
+		}
+	}
+}
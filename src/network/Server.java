@@ -6,10 +6,14 @@ package network;
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.Collection;
+
+import ai.SearchScheduler;
 
 /**
  * The Server takes requests from remote clients to start a new console game 
- * and allocates a new service thread to the client to play the game.
+ * and allocates a new service thread to the client to play the game. All
+ * connections are registered as sessions, whose number is limited.
  */
 public class Server implements Runnable
 {
@@ -28,6 +32,11 @@ public class Server implements Runnable
 	 */
 	private boolean running;
 	
+	/**
+	 * The registry of the server's sessions.
+	 */
+	private SessionRegistry sessions;
+	
 	/**
 	 * Server should not be instantiated from outside.
 	 */
@@ -62,14 +71,81 @@ public class Server implements Runnable
 			} 
 			catch (IOException e)
 			{
+				if (!running)
+					break;
+				
 				e.printStackTrace();
+				continue;
 			}
-				
-			Thread t = new Thread(new Service(so));
+			
+			Session session = sessions.open(so);
+			if (session == null)
+			{
+				this.reject(so);
+				continue;
+			}
+			
+			Thread t = new Thread(new Service(so, session, sessions), "kaskade-service-" + session.getId());
 			t.start();
 		}
 	}
 	
+	/**
+	 * Tells the client that the server is busy and closes the connection.
+	 * @param so the socket of the rejected connection.
+	 */
+	private void reject(Socket so)
+	{
+		try
+		{
+			ResponseWriter output = new ResponseWriter(so);
+			output.print( ProtocolResponse.postError("server busy, please try again later") );
+			output.flush();
+			so.close();
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Returns all current sessions of the server.
+	 * @return all current sessions of the server.
+	 */
+	public Collection<Session> getSessions()
+	{
+		return sessions.getSessions();
+	}
+	
+	/**
+	 * Returns the scheduler running the searches of the server's computer
+	 * players, e.g. to report their queueing delay.
+	 * @return the search scheduler of the server.
+	 */
+	public SearchScheduler getSearchScheduler()
+	{
+		return sessions.getScheduler();
+	}
+	
+	/**
+	 * Returns the number of analyses that have been answered from the cache.
+	 * @return the number of analysis cache hits.
+	 */
+	public long getAnalysisCacheHits()
+	{
+		return sessions.getAnalyses().getHits();
+	}
+	
+	/**
+	 * Returns the number of analyses that have not been found in the cache.
+	 * @return the number of analysis cache misses.
+	 */
+	public long getAnalysisCacheMisses()
+	{
+		return sessions.getAnalyses().getMisses();
+	}
+	
 	/**
 	 * Connects to the server socket and starts the server thread.
 	 * @throws IOException 
@@ -78,18 +154,27 @@ public class Server implements Runnable
 	{
 		serversocket = new ServerSocket(portNr);
 		
-		Thread t = new Thread(this);
+		sessions = new SessionRegistry(ServerPreferences.getInstance());
+		sessions.start();
+		
+		Thread t = new Thread(this, "kaskade-server");
 		this.running = true;
 		t.start();
 	}
 	
 	/**
-	 * Stops the server and closes the server socket.
+	 * Stops the server and closes the server socket. All running games are
+	 * stopped and their clients are notified.
 	 */
 	public void stopServer()
 	{
 		this.running = false;
 		
+		if (this.sessions != null)
+		{
+			this.sessions.shutdown();
+		}
+		
 		if (this.serversocket != null)
 		{
 			try
@@ -0,0 +1,105 @@
+/*
+ * Created on 15.01.2007
+ */
+package network;
+
+import gameelements.Position;
+
+/**
+ * A decoded command received from a remote server. Complete boards are
+ * delivered as one event, regardless of the number of 'board'-commands they
+ * were sent in.
+ */
+class ServerEvent
+{
+	/**
+	 * Type of an 'initialized'-event.
+	 */
+	static final int TYPE_INITIALIZED = 0;
+
+	/**
+	 * Type of a 'move'-event.
+	 */
+	static final int TYPE_MOVE = 1;
+
+	/**
+	 * Type of a complete board, assembled from all 'board'-commands of a turn.
+	 */
+	static final int TYPE_BOARD = 2;
+
+	/**
+	 * Type of a 'bye'-event.
+	 */
+	static final int TYPE_BYE = 3;
+
+	/**
+	 * Type of an 'error'-event.
+	 */
+	static final int TYPE_ERROR = 4;
+
+	/**
+	 * Type of the event created if the connection has been closed or lost.
+	 */
+	static final int TYPE_CLOSED = 5;
+
+	/**
+	 * Type of a 'hash'-event, representing a board by its hash value.
+	 */
+	static final int TYPE_HASH = 6;
+
+	/**
+	 * The type of the event.
+	 */
+	private int type;
+
+	/**
+	 * The text value of the event: the user name, the board string, the
+	 * hash value, the error message or the original command line.
+	 */
+	private String value;
+
+	/**
+	 * The move of a 'move'-event, else null.
+	 */
+	private Position move;
+
+	/**
+	 * Initiates an event.
+	 * @param type the type of the event.
+	 * @param value the text value of the event.
+	 * @param move the move of the event, if any.
+	 */
+	ServerEvent(int type, String value, Position move)
+	{
+		this.type = type;
+		this.value = value;
+		this.move = move;
+	}
+
+	/**
+	 * Returns the type of the event.
+	 * @return the type of the event.
+	 */
+	int getType()
+	{
+		return type;
+	}
+
+	/**
+	 * Returns the text value of the event.
+	 * @return the text value of the event.
+	 */
+	String getValue()
+	{
+		return value;
+	}
+
+	/**
+	 * Returns the move of a 'move'-event.
+	 * @return the move of a 'move'-event, else null.
+	 */
+	Position getMove()
+	{
+		return move;
+	}
+}
@@ -18,6 +18,37 @@ public class ServerPreferences
 	 */
 	public static int DEFAULT_SERVER_PORT = 4711;
 	
+	/**
+	 * Default maximum number of concurrent sessions.
+	 */
+	public static int DEFAULT_MAX_SESSIONS = 50;
+	
+	/**
+	 * Default maximum number of concurrent searches of the computer players.
+	 */
+	public static int DEFAULT_MAX_SEARCHES = Runtime.getRuntime().availableProcessors();
+	
+	/**
+	 * Default time in milliseconds after which an inactive session is closed.
+	 */
+	public static long DEFAULT_IDLE_TIMEOUT = 300000;
+	
+	/**
+	 * Default time in milliseconds a game is kept after its connection has
+	 * been lost.
+	 */
+	public static long DEFAULT_RESUME_GRACE_PERIOD = 120000;
+	
+	/**
+	 * Default maximum thinking time in milliseconds of an analysis.
+	 */
+	public static long DEFAULT_MAX_ANALYSIS_TIME = 10000;
+	
+	/**
+	 * Default number of analyses kept in the cache.
+	 */
+	public static int DEFAULT_ANALYSIS_CACHE_SIZE = 1000;
+	
 	/**
 	 * The server's thinking time.
 	 */
@@ -28,6 +59,43 @@ public class ServerPreferences
 	 */
 	private int serverPort = DEFAULT_SERVER_PORT;
 	
+	/**
+	 * The maximum number of concurrent sessions.
+	 */
+	private int maxSessions = DEFAULT_MAX_SESSIONS;
+	
+	/**
+	 * The maximum number of concurrent searches of the computer players.
+	 */
+	private int maxSearches = DEFAULT_MAX_SEARCHES;
+	
+	/**
+	 * The time in milliseconds after which an inactive session is closed.
+	 */
+	private long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+	
+	/**
+	 * The time in milliseconds a game is kept after its connection has been
+	 * lost.
+	 */
+	private long resumeGracePeriod = DEFAULT_RESUME_GRACE_PERIOD;
+	
+	/**
+	 * The maximum thinking time in milliseconds of an analysis.
+	 */
+	private long maxAnalysisTime = DEFAULT_MAX_ANALYSIS_TIME;
+	
+	/**
+	 * The number of analyses kept in the cache.
+	 */
+	private int analysisCacheSize = DEFAULT_ANALYSIS_CACHE_SIZE;
+	
+	/**
+	 * The directory of the archive of the server's games, null if the games
+	 * are not recorded.
+	 */
+	private String archiveDirectory = null;
+	
 	/**
 	 * The instance of the preference singleton.
 	 */
@@ -82,4 +150,143 @@ public class ServerPreferences
 		this.thinkingTime = thinkingTime;
 	}
 	
+	/**
+	 * Returns the maximum number of concurrent sessions. Further connections
+	 * are rejected with an error.
+	 * @return the maximum number of concurrent sessions.
+	 */
+	public int getMaxSessions()
+	{
+		return maxSessions;
+	}
+	
+	/**
+	 * Sets the maximum number of concurrent sessions.
+	 * @param maxSessions the maximum number of sessions to set.
+	 */
+	public void setMaxSessions(int maxSessions)
+	{
+		this.maxSessions = maxSessions;
+	}
+	
+	/**
+	 * Returns the maximum number of concurrent searches of the computer 
+	 * players. Further searches are queued.
+	 * @return the maximum number of concurrent searches.
+	 */
+	public int getMaxSearches()
+	{
+		return maxSearches;
+	}
+	
+	/**
+	 * Sets the maximum number of concurrent searches of the computer players.
+	 * @param maxSearches the maximum number of searches to set.
+	 */
+	public void setMaxSearches(int maxSearches)
+	{
+		this.maxSearches = maxSearches;
+	}
+	
+	/**
+	 * Returns the time in milliseconds after which an inactive session is 
+	 * closed.
+	 * @return the idle timeout.
+	 */
+	public long getIdleTimeout()
+	{
+		return idleTimeout;
+	}
+	
+	/**
+	 * Sets the time in milliseconds after which an inactive session is 
+	 * closed.
+	 * @param idleTimeout the idle timeout to set.
+	 */
+	public void setIdleTimeout(long idleTimeout)
+	{
+		this.idleTimeout = idleTimeout;
+	}
+	
+	/**
+	 * Returns the time in milliseconds a game is kept after its connection 
+	 * has been lost. Within this time the client can resume the game from a
+	 * new connection.
+	 * @return the grace period for resuming a session.
+	 */
+	public long getResumeGracePeriod()
+	{
+		return resumeGracePeriod;
+	}
+	
+	/**
+	 * Sets the time in milliseconds a game is kept after its connection has
+	 * been lost.
+	 * @param resumeGracePeriod the grace period to set.
+	 */
+	public void setResumeGracePeriod(long resumeGracePeriod)
+	{
+		this.resumeGracePeriod = resumeGracePeriod;
+	}
+	
+	/**
+	 * Returns the maximum thinking time in milliseconds of an analysis. 
+	 * Analyses asking for more time are limited to this time.
+	 * @return the maximum thinking time of an analysis.
+	 */
+	public long getMaxAnalysisTime()
+	{
+		return maxAnalysisTime;
+	}
+	
+	/**
+	 * Sets the maximum thinking time in milliseconds of an analysis.
+	 * @param maxAnalysisTime the maximum thinking time to set.
+	 */
+	public void setMaxAnalysisTime(long maxAnalysisTime)
+	{
+		this.maxAnalysisTime = maxAnalysisTime;
+	}
+	
+	/**
+	 * Returns the number of analyses kept in the cache. The analyses used
+	 * least recently are evicted first.
+	 * @return the size of the analysis cache.
+	 */
+	public int getAnalysisCacheSize()
+	{
+		return analysisCacheSize;
+	}
+	
+	/**
+	 * Sets the number of analyses kept in the cache. Takes effect when the
+	 * server is started.
+	 * @param analysisCacheSize the size of the analysis cache to set.
+	 */
+	public void setAnalysisCacheSize(int analysisCacheSize)
+	{
+		this.analysisCacheSize = analysisCacheSize;
+	}
+	
+	/**
+	 * Returns the directory of the archive the server's games are recorded 
+	 * in.
+	 * @return the directory of the archive, null if games are not recorded.
+	 */
+	public String getArchiveDirectory()
+	{
+		return archiveDirectory;
+	}
+	
+	/**
+	 * Sets the directory of the archive the server's games are recorded in.
+	 * Takes effect when the server is started.
+	 * @param archiveDirectory the directory to set, null for not recording
+	 * the games.
+	 */
+	public void setArchiveDirectory(String archiveDirectory)
+	{
+		this.archiveDirectory = archiveDirectory;
+	}
+	
 }
\ No newline at end of file
@@ -5,17 +5,28 @@ package network;
 
 import gameelements.ConsoleGame;
 import gameelements.Game;
+import gameelements.GameColor;
+import gameelements.GameEvent;
 import gameelements.GamePreferences;
+import gameelements.GameSituation;
 import gameelements.Position;
 import gameelements.GameSituation.FieldSetup;
+import ai.Analysis;
+import ai.SearchJob;
+import ai.Strategy;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.PrintStream;
 import java.net.Socket;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import player.ConsolePlayer;
 import player.Player;
@@ -23,29 +34,99 @@ import player.Player;
 /**
  * A class that works as server for a remote client by communicating with the
  * console player and synchronizing the local game with the console output.
+ * Further games can be multiplexed over the same connection. Each of them is
+ * served by a service of its own, which receives the commands carrying its
+ * game's id from the service of the connection, and tags its responses with 
+ * that id.
  */
 public class Service implements Runnable
 {
 	/**
-	 * The socket the service is connected to.
+	 * The socket the service is connected to. Replaced when a session is
+	 * resumed.
 	 */
-	private Socket socket;
+	private volatile Socket socket;
 	
 	/**
-	 * The print stream the service prints out to.
+	 * The session of the service's connection.
 	 */
-	private PrintStream output;
+	private Session session;
+	
+	/**
+	 * The registry the session is registered in.
+	 */
+	private SessionRegistry registry;
+	
+	/**
+	 * The writer collecting the responses of the service until they are 
+	 * flushed to the socket. Replaced when a session is resumed.
+	 */
+	private volatile ResponseWriter output;
 	
 	/**
 	 * Indicates if a game is already initialized with the init-command.
 	 */
 	private boolean initialized = false;
 	
+	/**
+	 * Indicates if the client has asked for hash values instead of boards.
+	 */
+	private boolean isHashSync = false;
+	
 	/**
 	 * The player using the service client.
 	 */
 	private ConsolePlayer player;
 	
+	/**
+	 * The broadcast of the service's game to its spectators.
+	 */
+	private Broadcast broadcast;
+	
+	/**
+	 * The subscription of the service's connection, if it watches a game.
+	 */
+	private Spectator spectator;
+	
+	/**
+	 * The broadcast the service's connection watches.
+	 */
+	private Broadcast watched;
+	
+	/**
+	 * The service of the connection, if the service serves a multiplexed 
+	 * game, else null.
+	 */
+	private Service parent;
+	
+	/**
+	 * The id of the multiplexed game served by the service.
+	 */
+	private String id;
+	
+	/**
+	 * The services of the games multiplexed over the connection by their ids.
+	 */
+	private Map<String, Service> games = new ConcurrentHashMap<String, Service>();
+	
+	/**
+	 * The threads sending responses that are not answers to a request, like
+	 * finished analyses, so the threads producing them never wait for a 
+	 * socket.
+	 */
+	private static final ExecutorService responder = 
+		Executors.newCachedThreadPool(new ThreadFactory()
+		{
+			private int count = 0;
+			
+			public synchronized Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, "kaskade-response-" + (++count));
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	
 	/**
 	 * The welcome message for ne connections.
 	 */
@@ -58,10 +139,33 @@ public class Service implements Runnable
 	/**
 	 * Initiates a new service that is connected to the given socket.
 	 * @param socket the socket the service is connected to.
+	 * @param session the session of the connection.
+	 * @param registry the registry the session is registered in.
 	 */
-	Service(Socket socket)
+	Service(Socket socket, Session session, SessionRegistry registry)
 	{
 		this.socket = socket;
+		this.session = session;
+		this.registry = registry;
+		session.setService(this);
+	}
+	
+	/**
+	 * Initiates a service for a game multiplexed over the connection of 
+	 * another service.
+	 * @param parent the service of the connection.
+	 * @param id the id of the game chosen by the client.
+	 * @param session the session of the game.
+	 */
+	private Service(Service parent, String id, Session session)
+	{
+		this.parent = parent;
+		this.id = id;
+		this.socket = parent.socket;
+		this.session = session;
+		this.registry = parent.registry;
+		this.output = new TaggedResponseWriter( parent.output, id );
+		session.setService(this);
 	}
 	
 	/**
@@ -76,52 +180,177 @@ public class Service implements Runnable
 			input = new BufferedReader(
 					new InputStreamReader( socket.getInputStream()) );
 
-			output = new PrintStream( socket.getOutputStream() );
+			output = new ResponseWriter( socket );
 
 			output.println( MSG_WELCOME );
-
+			this.flush();
+		}
+		catch (IOException e) 
+		{
+			e.printStackTrace();
+			registry.close(session);
+			return;
+		}
+		
+		this.serve(input);
+	}
+	
+	/**
+	 * Interprets the requests read from the given reader, until the 
+	 * connection is closed or handed over to a resumed session. If the 
+	 * connection is lost while a game is running, the session is suspended, 
+	 * so that it can be resumed from another connection.
+	 * @param input the reader on the socket's input stream.
+	 */
+	private void serve(BufferedReader input)
+	{
+		boolean handedOver = false;
+		try
+		{
 			while (!socket.isClosed()) 
 			{
 				String line = input.readLine();
+				if (line == null)
+				{
+					break; // connection closed by client
+				}
+				session.touch();
 				try
 				{
-					if (line != null)
+					String gameId = ProtocolRequest.getId(line);
+					if (line.startsWith( Protocol.COMMENT_TAG ))
+					{
+						continue; // ignore!
+					}
+					else if (gameId != null)
+					{
+						multiplex(gameId, line);
+					}
+					else if (line.startsWith(Protocol.COMMAND_RESUME))
+					{
+						Service resumed = receiveResume(line);
+						handedOver = true;
+						resumed.serve(input);
+						return;
+					}
+					else
 					{
-						if (line.startsWith( Protocol.COMMENT_TAG ))
-						{
-							continue; // ignore!
-						}
-						else if (line.startsWith(Protocol.COMMAND_HELP))
-						{
-							receiveHelp(line);
-						}
-						else if (line.startsWith(Protocol.COMMAND_INIT))
-						{
-							receiveInit(line);
-						}
-						else if (line.startsWith(Protocol.COMMAND_MOVE))
-						{
-							receiveMove(line);
-						}
-						else if (line.startsWith(Protocol.COMMAND_EXIT))
-						{
-							receiveExit(line);
-						}
-						else
-						{
-							throw new IllegalCommandException("illegal command");
-						}
+						receive(line);
 					}
 				}
 				catch(IllegalCommandException e) 
 				{
 					respondWithError(e);
 				}
+				this.flush();
 			}
 		}
 		catch (IOException e) 
 		{
-			e.printStackTrace();
+			if (!socket.isClosed())
+			{
+				e.printStackTrace();
+			}
+		}
+		finally
+		{
+			for (Service aGame : games.values())
+			{
+				registry.close(aGame.session);
+			}
+			if (!handedOver)
+			{
+				registry.disconnect(session);
+			}
+		}
+	}
+	
+	/**
+	 * Interprets a request for the service's game.
+	 * @param line the request.
+	 * @throws IllegalCommandException
+	 */
+	private void receive(String line) throws IllegalCommandException
+	{
+		if (line.startsWith(Protocol.COMMAND_HELP))
+		{
+			receiveHelp(line);
+		}
+		else if (line.startsWith(Protocol.COMMAND_INIT))
+		{
+			receiveInit(line);
+		}
+		else if (line.startsWith(Protocol.COMMAND_MOVE))
+		{
+			receiveMove(line);
+		}
+		else if (line.startsWith(Protocol.COMMAND_EXIT))
+		{
+			receiveExit(line);
+		}
+		else if (line.startsWith(Protocol.COMMAND_BOARD))
+		{
+			receiveBoard(line);
+		}
+		else if (line.startsWith(Protocol.COMMAND_WATCH))
+		{
+			receiveWatch(line);
+		}
+		else if (line.startsWith(Protocol.COMMAND_ANALYZE))
+		{
+			receiveAnalyze(line);
+		}
+		else
+		{
+			throw new IllegalCommandException("illegal command");
+		}
+	}
+	
+	/**
+	 * Passes a request carrying the id of a multiplexed game on to the 
+	 * service of that game. A game is created with its 'init'-request.
+	 * Errors are responded with the id of the game.
+	 * @param gameId the id of the game.
+	 * @param line the request.
+	 */
+	private void multiplex(String gameId, String line)
+	{
+		Service game = games.get(gameId);
+		try
+		{
+			if (spectator != null)
+			{
+				throw new IllegalCommandException("watching a game, please exit first");
+			}
+			
+			String cmd = ProtocolRequest.removeId(line);
+			if (game == null)
+			{
+				if (!cmd.startsWith(Protocol.COMMAND_INIT))
+				{
+					throw new IllegalCommandException("no game with id " + gameId + ", please initialize first");
+				}
+				Session gameSession = registry.open(session);
+				if (gameSession == null)
+				{
+					throw new IllegalCommandException("server busy, please try again later");
+				}
+				game = new Service(this, gameId, gameSession);
+				games.put(gameId, game);
+			}
+			
+			game.session.touch();
+			game.receive(cmd);
+		}
+		catch (IllegalCommandException e)
+		{
+			output.print( ProtocolResponse.tag( ProtocolResponse.postError( e.getMessage() ), gameId ) );
+			System.err.println("error: " + e.getMessage());
+			
+			if (game != null && !game.initialized)
+			{
+				registry.close(game.session); // failed 'init'
+			}
 		}
 	}
 	
@@ -137,6 +366,10 @@ public class Service implements Runnable
 		{
 			throw new IllegalCommandException("already initialized, please move or exit");
 		}
+		if ( spectator != null )
+		{
+			throw new IllegalCommandException("watching a game, please exit first");
+		}
 		
 		Map<String, String> args = ProtocolRequest.getInit(initCmd );
 		
@@ -148,6 +381,8 @@ public class Service implements Runnable
 		String begin = args.get( Protocol.PARAM_BEGIN );
 		String user = args.get( Protocol.PARAM_USER );
 		
+		isHashSync = Protocol.ARG_HASH.equals( args.get( Protocol.PARAM_SYNC ) );
+		
 		boolean serverBegins = (begin.equals(Protocol.ARG_SERVER));
 		
 		String defaultName = GamePreferences.DEFAULT_PLAYER_NAME;
@@ -166,32 +401,356 @@ public class Service implements Runnable
 		prefs.setSetup(setup);
 		
 		ConsoleGame game = new ConsoleGame(prefs);
-		game.startGame();
+		game.setArchive( registry.getArchive() );
 		
 		this.player = game.getConsolePlayer();
 		this.player.setService(this);
 		
+		this.broadcast = new Broadcast( session.getId(), player.getOpponent(), game.getSnapshot().getSituation(), serverBegins );
+		
 		initialized = true;
+		session.setState(Session.STATE_PLAYING);
 		
+		// respond before the game starts, so the response precedes the first move
 		this.respondInit();
+		
+		game.startGame();
 	}
 
+	/**
+	 * Analyzes the moves on a board given by the client and responds with 
+	 * their scores. The analysis does not affect the game of the connection.
+	 * The response is written as soon as the analysis is finished, without 
+	 * holding up the requests following the 'analyze'-command.
+	 * @param analyzeCmd the 'analyze'-command.
+	 * @throws IllegalCommandException
+	 */
+	private void receiveAnalyze(String analyzeCmd) throws IllegalCommandException
+	{
+		if ( spectator != null )
+		{
+			throw new IllegalCommandException("watching a game, please exit first");
+		}
+		
+		Map<String, String> args = ProtocolRequest.getAnalyze( analyzeCmd );
+		
+		GamePreferences prefs = GamePreferences.getNewGamePreferences();
+		prefs.setDimX( Integer.valueOf( args.get( Protocol.PARAM_DIM_X ) ) );
+		prefs.setDimY( Integer.valueOf( args.get( Protocol.PARAM_DIM_Y ) ) );
+		
+		// the player having the turn is the beginning player of the analyzed game
+		String turn = args.get( Protocol.PARAM_TURN );
+		boolean serverMoves = turn.equals( Protocol.ARG_SERVER );
+		prefs.setSetup( ProtocolRequest.getSetup(prefs.getDimX(), prefs.getDimY(), serverMoves, args.get( Protocol.PARAM_SETUP ), turn) );
+		prefs.setPlayerName(0, GamePreferences.DEFAULT_PLAYER_NAME);
+		prefs.setPlayerName(1, GamePreferences.DEFAULT_PLAYER_NAME);
+		prefs.setPlayerType(0, Player.TYPE_COMPUTER);
+		prefs.setPlayerType(1, Player.TYPE_COMPUTER);
+		
+		long time = ServerPreferences.getInstance().getThinkingTime();
+		if ( args.get( Protocol.PARAM_TIME ) != null )
+		{
+			time = Long.parseLong( args.get( Protocol.PARAM_TIME ) );
+		}
+		time = Math.min(time, ServerPreferences.getInstance().getMaxAnalysisTime());
+		
+		final int top = args.get( Protocol.PARAM_TOP ) != null ? Integer.parseInt( args.get( Protocol.PARAM_TOP ) ) : 0;
+		
+		// the setup colors the server's fields white if it begins, else black,
+		// so the fields of the side having the turn are white in either case
+		final GameColor color = GameColor.WHITE;
+		
+		// the game only provides the players for the strategy, it is never started
+		Game game = new Game(prefs);
+		final GameSituation situation = game.getSituation();
+		Strategy strategy = new Strategy( game.getPlayerOfTurn(1), Strategy.STRATEGY_HARD );
+		
+		final SearchJob<Analysis> job = registry.analyze( session, situation, strategy, time );
+		job.addListener(new Runnable()
+		{
+			public void run()
+			{
+				// not on the search worker finishing the job, which must not wait for the socket
+				responder.execute(new Runnable()
+				{
+					public void run()
+					{
+						respondWithAnalysis(job, top, situation, color);
+					}
+				});
+			}
+		});
+	}
+	
+	/**
+	 * Creates the response to an 'analyze'-command and sends it, or an error
+	 * message, if the analysis has failed or has been cancelled. Called by 
+	 * a thread of the responder once the analysis is finished.
+	 * @param job the finished analysis.
+	 * @param top the number of best moves to respond with, 0 for all moves.
+	 * @param situation the analyzed board.
+	 * @param color the color of the player having the turn, who may only 
+	 * move on empty fields and fields of his own.
+	 */
+	private void respondWithAnalysis(SearchJob<Analysis> job, int top, GameSituation situation, GameColor color)
+	{
+		if ( session.getState() == Session.STATE_CLOSED )
+		{
+			return;
+		}
+		
+		try
+		{
+			Analysis analysis = job.get();
+			checkAnalysis( analysis, situation, color );
+			if ( top > 0 )
+			{
+				analysis = analysis.top( top );
+			}
+			output.print( ProtocolResponse.postAnalysis(analysis) );
+		}
+		catch (InterruptedException e)
+		{
+			respondWithError( new IllegalCommandException("analysis cancelled, please try again") );
+		}
+		catch (CancellationException e)
+		{
+			respondWithError( new IllegalCommandException("analysis cancelled, please try again") );
+		}
+		catch (ExecutionException e)
+		{
+			respondWithError( new IllegalCommandException("analysis failed: " + e.getCause()) );
+		}
+		catch (IllegalCommandException e)
+		{
+			respondWithError( e );
+		}
+		this.flush();
+	}
+	
+	/**
+	 * Checks that an analysis only scores moves of the player having the 
+	 * turn, i.e. moves on empty fields and on fields of his own color.
+	 * @param analysis the analysis.
+	 * @param situation the analyzed board.
+	 * @param color the color of the player having the turn.
+	 * @throws IllegalCommandException if a move is on a field of the opponent.
+	 */
+	private static void checkAnalysis(Analysis analysis, GameSituation situation, GameColor color) 
+	throws IllegalCommandException
+	{
+		for (int i=0; i<analysis.size(); i++)
+		{
+			Position pos = analysis.getMove(i);
+			if ( !situation.isEmpty(pos) && situation.getColor(pos) != color )
+			{
+				throw new IllegalCommandException("analysis failed: move on a field of the opponent");
+			}
+		}
+	}
+	
 	private void respondInit()
 	{
-		StringBuffer cmd = new StringBuffer();
+		String user = this.player.getOpponent().getPlayerName();
+		if (parent == null)
+		{
+			output.print( ProtocolResponse.postInitialized( user, session.getToken() ) );
+		}
+		else
+		{
+			output.print( ProtocolResponse.postInitialized( user ) ); // multiplexed games cannot be resumed
+		}
 		
-		cmd.append( ProtocolResponse.postInitialized( this.player.getOpponent().getPlayerName() ) );
+		this.respondWithBoard( isHashSync );
+	}
+	
+	/**
+	 * Creates the representation of the current board, either as hash value
+	 * or as full set of 'board'-commands.
+	 * @param hashOnly true, if only the hash value should be sent.
+	 */
+	private void respondWithBoard(boolean hashOnly)
+	{
+		this.respondWithBoard( hashOnly, getGame().getSnapshot().getSituation() );
+	}
+	
+	/**
+	 * Creates the representation of the given board, either as hash value
+	 * or as full set of 'board'-commands.
+	 * @param hashOnly true, if only the hash value should be sent.
+	 * @param situation the board.
+	 */
+	private void respondWithBoard(boolean hashOnly, GameSituation situation)
+	{
+		if (hashOnly)
+		{
+			output.print( ProtocolResponse.postHash( situation ) );
+			return;
+		}
 		
-		String[] boardCmds = ProtocolResponse.postBoard( this.player.getOpponent(), this.player.getSituation() );
+		String[] boardCmds = ProtocolResponse.postBoard( this.player.getOpponent(), situation );
 		for (int i=0; i<boardCmds.length; i++)
 		{
-			cmd.append(boardCmds[i]);
+			output.print( boardCmds[i] );
 		}
+	}
+	
+	private void receiveBoard(String boardCmd) throws IllegalCommandException
+	{
+		ProtocolRequest.getBoardRequest( boardCmd );
 		
-		output.print( cmd.toString() );
+		if ( !initialized )
+		{
+			throw new IllegalCommandException("not initialized, please initialize first");
+		}
+		
+		this.respondWithBoard( false );
 	}
 	
 	
+	/**
+	 * Resumes the suspended session with the token given by a 'resume'
+	 * -command and hands the connection over to its service.
+	 * @param resumeCmd the 'resume'-command.
+	 * @return the service of the resumed session.
+	 * @throws IllegalCommandException
+	 */
+	private Service receiveResume(String resumeCmd) throws IllegalCommandException
+	{
+		String token = ProtocolRequest.getResume( resumeCmd );
+		
+		if ( initialized || spectator != null || !games.isEmpty() )
+		{
+			throw new IllegalCommandException("already playing or watching, please exit first");
+		}
+		
+		this.flush();
+		Session resumed = registry.resume( token, session );
+		if ( resumed == null )
+		{
+			throw new IllegalCommandException("no suspended session for token " + token);
+		}
+		
+		Service service = resumed.getService();
+		service.rebind( socket, output );
+		return service;
+	}
+	
+	/**
+	 * Continues the session on a new connection. Sends the current board, 
+	 * the player who has the next turn, and 'bye' if the game has ended while
+	 * the session was suspended. Moves made while the session was suspended 
+	 * are not repeated, as they are part of the sent board.
+	 * @param newSocket the socket of the new connection.
+	 * @param newOutput the writer of the new connection.
+	 */
+	private synchronized void rebind(Socket newSocket, ResponseWriter newOutput)
+	{
+		this.socket = newSocket;
+		this.output = newOutput;
+		
+		// board, turn and end of the game are taken from the same published move
+		GameSituation situation;
+		boolean serverMoving;
+		synchronized (broadcast)
+		{
+			situation = broadcast.getSituation();
+			serverMoving = broadcast.isServerMoving();
+		}
+		
+		output.print( ProtocolResponse.postInitialized( this.player.getOpponent().getPlayerName(),
+				session.getToken(), serverMoving ) );
+		String[] boardCmds = ProtocolResponse.postBoard( this.player.getOpponent(), situation );
+		for (int i=0; i<boardCmds.length; i++)
+		{
+			output.print( boardCmds[i] );
+		}
+		
+		if ( situation.isUniColored() )
+		{
+			this.respondWithBye( situation.getColor() != player.getColor() );
+		}
+		else
+		{
+			this.flush();
+		}
+	}
+	
+	/**
+	 * Indicates if the session of the service can be suspended when its 
+	 * connection is lost, i.e. if it plays a game that is still running.
+	 * @return true, if the session can be resumed later.
+	 */
+	boolean isResumable()
+	{
+		Game game = getGame();
+		return game != null && !game.isStopped() && !game.isGameOver();
+	}
+	
+	private void receiveWatch(String watchCmd) throws IllegalCommandException
+	{
+		long gameId = ProtocolRequest.getWatch( watchCmd );
+		
+		if ( parent != null )
+		{
+			throw new IllegalCommandException("games cannot be watched with an id");
+		}
+		if ( initialized || spectator != null || !games.isEmpty() )
+		{
+			throw new IllegalCommandException("already playing or watching, please exit first");
+		}
+		
+		Session watchedSession = registry.getSession( gameId );
+		Service watchedService = watchedSession == null ? null : watchedSession.getService();
+		if ( watchedService == null || watchedService.broadcast == null )
+		{
+			throw new IllegalCommandException("no game with id " + gameId);
+		}
+		
+		Spectator newSpectator = new Spectator( session, output, registry );
+		if ( !watchedService.broadcast.subscribe( newSpectator ) )
+		{
+			throw new IllegalCommandException("game " + gameId + " has ended");
+		}
+		this.spectator = newSpectator;
+		this.watched = watchedService.broadcast;
+		session.setState(Session.STATE_WATCHING);
+	}
+	
+	/**
+	 * Sends a move of the service's game to its spectators. Called for every
+	 * move in the order of the moves, after the move has been applied.
+	 * @param applied the event of the applied move.
+	 */
+	public void broadcastMove(GameEvent.MoveApplied applied)
+	{
+		Player winner = applied.getWinner();
+		broadcast.publishMove( applied.getMove(), applied.getSituation(), 
+				applied.getPlayer() == player,
+				winner == null ? null : Boolean.valueOf( winner != player ) );
+	}
+	
+	/**
+	 * Ends the broadcast of the service's game and the subscription of the 
+	 * service's connection, and removes a multiplexed game from its 
+	 * connection. Called when the session is closed.
+	 */
+	void sessionClosed()
+	{
+		if (parent != null)
+		{
+			parent.games.remove(id);
+		}
+		if (broadcast != null)
+		{
+			broadcast.finish( Protocol.COMMAND_BYE + Protocol.END_OF_CMD_LINE );
+		}
+		if (watched != null)
+		{
+			watched.unsubscribe( spectator );
+		}
+	}
+	
 	private void receiveMove(String moveCmd) throws IllegalCommandException
 	{
 		if ( !initialized )
@@ -212,7 +771,8 @@ public class Service implements Runnable
 	
 	
 	/**
-	 * Creates a 'bye'-response on the console.
+	 * Creates a 'bye'-response on the console and sends it together with all
+	 * pending responses before the connection is closed.
 	 * @param winnerS indicates if the local server is the winner of the game.
 	 */
 	public void respondWithBye(boolean winnerS)
@@ -225,6 +785,14 @@ public class Service implements Runnable
 
 	private void endGame()
 	{
+		this.flush();
+		
+		if (parent != null)
+		{
+			registry.close(session); // the connection is kept for the other games
+			return;
+		}
+		
 		try
 		{
 			socket.close();
@@ -237,29 +805,59 @@ public class Service implements Runnable
 	
 
 	/**
-	 * Creates a 'move'-command on the console.
+	 * Creates a 'move'-command on the console, followed by the board after the
+	 * move, unless the move has ended the game.
 	 * @param move the responded move.
+	 * @param situation the situation after the move.
 	 */
-	public void respondWithMove(Position move)
+	public void respondWithMove(Position move, GameSituation situation)
 	{
-		StringBuffer cmd = new StringBuffer();
-		
-		cmd.append( ProtocolResponse.postMove( move ) );
-		
-		if (!getGame().isGameOver())
+		synchronized (output) // keep the turn together, even if flushed concurrently
+		{
+			output.print( ProtocolResponse.postMove( move ) );
+			
+			if (!situation.isUniColored())
+			{
+				this.respondWithBoard( isHashSync, situation );
+			}
+		}
+	}
+	
+	/**
+	 * Writes all responses collected since the last flush to the socket in a
+	 * single write. Called once per request and once per turn.
+	 */
+	public void flush()
+	{
+		try
+		{
+			output.flush();
+			session.touch();
+		} 
+		catch (IOException e)
 		{
-			String[] boardCmds = 
-				ProtocolResponse.postBoard( this.player.getOpponent(), getGame().getSituation() );
-			for (int i=0; i<boardCmds.length; i++)
+			if (!socket.isClosed())
 			{
-				cmd.append(boardCmds[i]);
+				e.printStackTrace();
 			}
 		}
-		output.print( cmd.toString() );
 	}
 	
 	/**
-	 * Creates an error message on the console.
+	 * Lets the computer player of the service's game search for its next move,
+	 * as soon as the server's limit of concurrent searches allows it. The 
+	 * move is not waited for.
+	 * @param strategy the strategy of the computer player.
+	 * @return the submitted search for the next move of the computer player.
+	 */
+	public SearchJob<Position> search(Strategy strategy)
+	{
+		return registry.search(session, strategy);
+	}
+	
+	/**
+	 * Creates an error message on the console. The message is sent with the
+	 * next flush.
 	 * @param e the exception the error message is created for.
 	 */
 	public void respondWithError(Exception e)
@@ -286,7 +884,11 @@ public class Service implements Runnable
 		this.endGame();
 	}
 
-	private Game getGame()
+	/**
+	 * Returns the game of the service, null if no game is initialized.
+	 * @return the game of the service.
+	 */
+	Game getGame()
 	{
 		if (player == null)
 			return null;
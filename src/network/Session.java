@@ -0,0 +1,346 @@
+/*
+ * Created on 18.01.2007
+ */
+package network;
+
+import gameelements.Game;
+
+import java.net.Socket;
+import java.security.SecureRandom;
+
+/**
+ * Record of a connection to the server and the game played over it. Holds
+ * the state of the connection, the time of its last activity and the CPU time
+ * spent by the computer player on the game.
+ */
+public class Session
+{
+	/**
+	 * State of a connected session without a game.
+	 */
+	public static final int STATE_CONNECTED = 0;
+
+	/**
+	 * State of a session with an initialized game.
+	 */
+	public static final int STATE_PLAYING = 1;
+
+	/**
+	 * State of a session whose computer player is searching for a move.
+	 */
+	public static final int STATE_SEARCHING = 2;
+
+	/**
+	 * State of a closed session.
+	 */
+	public static final int STATE_CLOSED = 3;
+
+	/**
+	 * State of a session watching the game of another session.
+	 */
+	public static final int STATE_WATCHING = 4;
+
+	/**
+	 * State of a session whose connection has been lost, while its game is
+	 * kept for being resumed.
+	 */
+	public static final int STATE_SUSPENDED = 5;
+
+	/**
+	 * The generator of session tokens.
+	 */
+	private static final SecureRandom tokens = new SecureRandom();
+
+	/**
+	 * The id of the session, unique within the server's lifetime.
+	 */
+	private long id;
+
+	/**
+	 * The secret token a client resumes the session with.
+	 */
+	private String token;
+
+	/**
+	 * The socket of the session's connection. Replaced when the session is
+	 * resumed.
+	 */
+	private volatile Socket socket;
+
+	/**
+	 * The session of the connection a multiplexed game is played over, null
+	 * if the session has a connection of its own.
+	 */
+	private Session parent;
+
+	/**
+	 * The service serving the session's connection.
+	 */
+	private Service service;
+
+	/**
+	 * The current state of the session.
+	 */
+	private volatile int state = STATE_CONNECTED;
+
+	/**
+	 * The owner of the analyses requested by the session. Unlike the 
+	 * session's searches, they are not cancelled when the session is closed.
+	 */
+	private final Object analysisOwner = new Object();
+
+	/**
+	 * The system time in milliseconds of the session's creation.
+	 */
+	private long startTime;
+
+	/**
+	 * The system time in milliseconds of the session's last activity.
+	 */
+	private volatile long lastActivity;
+
+	/**
+	 * The system time in milliseconds the session has been suspended.
+	 */
+	private volatile long suspendTime;
+
+	/**
+	 * The CPU time in nanoseconds spent on searches for the session's game.
+	 */
+	private long cpuTime;
+
+	/**
+	 * The time in milliseconds the session's searches have been queued.
+	 */
+	private long queueDelay;
+
+	/**
+	 * Initiates a session.
+	 * @param id the id of the session.
+	 * @param socket the socket of the session's connection.
+	 */
+	Session(long id, Socket socket)
+	{
+		this(id, socket, null);
+	}
+
+	/**
+	 * Initiates a session for a game multiplexed over the connection of 
+	 * another session.
+	 * @param id the id of the session.
+	 * @param socket the socket of the shared connection.
+	 * @param parent the session of the shared connection, null if the 
+	 * session has a connection of its own.
+	 */
+	Session(long id, Socket socket, Session parent)
+	{
+		this.id = id;
+		this.token = Long.toHexString(tokens.nextLong());
+		this.socket = socket;
+		this.parent = parent;
+		this.startTime = System.currentTimeMillis();
+		this.lastActivity = startTime;
+	}
+
+	/**
+	 * Returns the id of the session.
+	 * @return the id of the session.
+	 */
+	public long getId()
+	{
+		return id;
+	}
+
+	/**
+	 * Returns the secret token a client resumes the session with.
+	 * @return the token of the session.
+	 */
+	String getToken()
+	{
+		return token;
+	}
+
+	/**
+	 * Returns the socket of the session's connection.
+	 * @return the socket of the session's connection.
+	 */
+	Socket getSocket()
+	{
+		return socket;
+	}
+
+	/**
+	 * Returns the session of the connection a multiplexed game is played
+	 * over.
+	 * @return the session of the shared connection, null if the session has
+	 * a connection of its own.
+	 */
+	Session getParent()
+	{
+		return parent;
+	}
+
+	/**
+	 * Marks the session as suspended after its connection has been lost.
+	 */
+	synchronized void suspend()
+	{
+		this.suspendTime = System.currentTimeMillis();
+		this.state = STATE_SUSPENDED;
+	}
+
+	/**
+	 * Continues the suspended session on a new connection.
+	 * @param newSocket the socket of the new connection.
+	 */
+	synchronized void resume(Socket newSocket)
+	{
+		this.socket = newSocket;
+		this.state = STATE_PLAYING;
+		this.touch();
+	}
+
+	/**
+	 * Returns the system time in milliseconds the session has been suspended.
+	 * @return the time of the suspension.
+	 */
+	long getSuspendTime()
+	{
+		return suspendTime;
+	}
+
+	/**
+	 * Returns the service serving the session.
+	 * @return the service serving the session.
+	 */
+	Service getService()
+	{
+		return service;
+	}
+
+	/**
+	 * Sets the service serving the session.
+	 * @param service the service to set.
+	 */
+	void setService(Service service)
+	{
+		this.service = service;
+	}
+
+	/**
+	 * Returns the owner the session's analyses are scheduled for.
+	 * @return the owner of the session's analyses.
+	 */
+	Object getAnalysisOwner()
+	{
+		return analysisOwner;
+	}
+
+	/**
+	 * Returns the game played in the session, null if no game is initialized.
+	 * @return the game played in the session.
+	 */
+	public Game getGame()
+	{
+		return service == null ? null : service.getGame();
+	}
+
+	/**
+	 * Returns the current state of the session.
+	 * @return the current state of the session.
+	 */
+	public int getState()
+	{
+		return state;
+	}
+
+	/**
+	 * Sets the current state of the session.
+	 * @param state the state to set.
+	 */
+	synchronized void setState(int state)
+	{
+		this.state = state;
+	}
+
+	/**
+	 * Changes the state of the session, if it is in the expected state.
+	 * @param expected the expected current state.
+	 * @param newState the state to set.
+	 * @return true, if the state has been changed.
+	 */
+	synchronized boolean changeState(int expected, int newState)
+	{
+		if (state != expected)
+			return false;
+
+		this.state = newState;
+		return true;
+	}
+
+	/**
+	 * Returns the system time in milliseconds of the session's creation.
+	 * @return the start time of the session.
+	 */
+	public long getStartTime()
+	{
+		return startTime;
+	}
+
+	/**
+	 * Returns the system time in milliseconds of the session's last activity.
+	 * @return the time of the last activity.
+	 */
+	public long getLastActivity()
+	{
+		return lastActivity;
+	}
+
+	/**
+	 * Notes an activity of the session.
+	 */
+	void touch()
+	{
+		this.lastActivity = System.currentTimeMillis();
+	}
+
+	/**
+	 * Returns the CPU time in nanoseconds spent on searches for the session's
+	 * game.
+	 * @return the CPU time spent for the session.
+	 */
+	public synchronized long getCpuTime()
+	{
+		return cpuTime;
+	}
+
+	/**
+	 * Returns the time in milliseconds the searches for the session's game
+	 * have been queued before they were started.
+	 * @return the queueing delay of the session.
+	 */
+	public synchronized long getQueueDelay()
+	{
+		return queueDelay;
+	}
+
+	/**
+	 * Adds the queueing delay and the CPU time of a search for the session's
+	 * game.
+	 * @param delay the queueing delay in milliseconds.
+	 * @param nanos the CPU time in nanoseconds.
+	 */
+	synchronized void addSearch(long delay, long nanos)
+	{
+		this.queueDelay += delay;
+		this.cpuTime += nanos;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString()
+	{
+		return "session " + id + " (" + socket.getRemoteSocketAddress() + ")";
+	}
+}
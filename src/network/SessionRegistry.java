@@ -0,0 +1,460 @@
+/*
+ * Created on 18.01.2007
+ */
+package network;
+
+import gameelements.Game;
+import gameelements.GameSituation;
+import gameelements.Position;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import ai.Analysis;
+import ai.SearchJob;
+import ai.SearchScheduler;
+import ai.Strategy;
+import archive.GameArchive;
+
+/**
+ * Keeps track of all sessions of the server. Admits new connections only up
+ * to the configured maximum number of sessions, runs the searches of the
+ * computer players and the analyses requested by the clients on a shared 
+ * pool of workers, caches the analyses, closes sessions that have
+ * been inactive for too long, keeps the games of lost connections for being
+ * resumed, and closes all sessions and their games when the server shuts 
+ * down.
+ */
+class SessionRegistry
+{
+	/**
+	 * The registered sessions by their ids.
+	 */
+	private Map<Long, Session> sessions = new ConcurrentHashMap<Long, Session>();
+
+	/**
+	 * The id of the next session.
+	 */
+	private long nextId = 1;
+
+	/**
+	 * The scheduler running the searches of all sessions' computer players.
+	 */
+	private SearchScheduler scheduler;
+
+	/**
+	 * The analyses of all sessions.
+	 */
+	private AnalysisCache analyses;
+
+	/**
+	 * The archive the games are recorded in, null if they are not recorded.
+	 */
+	private GameArchive archive;
+
+	/**
+	 * The thread periodically closing inactive sessions.
+	 */
+	private ScheduledExecutorService reaper;
+
+	/**
+	 * The preferences the limits are taken from.
+	 */
+	private ServerPreferences prefs;
+
+	/**
+	 * Initiates a registry with the limits of the given preferences.
+	 * @param prefs the server preferences.
+	 */
+	SessionRegistry(ServerPreferences prefs)
+	{
+		this.prefs = prefs;
+		this.scheduler = new SearchScheduler(prefs.getMaxSearches());
+		this.analyses = new AnalysisCache(prefs.getAnalysisCacheSize());
+		if (prefs.getArchiveDirectory() != null)
+		{
+			try
+			{
+				this.archive = new GameArchive(new File(prefs.getArchiveDirectory()));
+			}
+			catch (IOException e)
+			{
+				System.out.println("games are not recorded: " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Starts reaping inactive sessions.
+	 */
+	void start()
+	{
+		reaper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+		{
+			public Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, "kaskade-session-reaper");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+
+		long period = Math.max(1000, Math.min(prefs.getIdleTimeout(), prefs.getResumeGracePeriod()) / 4);
+		reaper.scheduleWithFixedDelay(new Runnable()
+		{
+			public void run()
+			{
+				reapIdleSessions();
+			}
+		}, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Registers a new session for the given connection.
+	 * @param socket the socket of the connection.
+	 * @return the new session, or null if the maximum number of sessions is
+	 * reached.
+	 */
+	synchronized Session open(Socket socket)
+	{
+		return this.register(socket, null);
+	}
+
+	/**
+	 * Registers a new session for a game multiplexed over the connection of
+	 * the given session. The session counts against the maximum number of 
+	 * sessions like a session with a connection of its own.
+	 * @param parent the session of the shared connection.
+	 * @return the new session, or null if the maximum number of sessions is
+	 * reached.
+	 */
+	synchronized Session open(Session parent)
+	{
+		return this.register(parent.getSocket(), parent);
+	}
+
+	private Session register(Socket socket, Session parent)
+	{
+		if (sessions.size() >= prefs.getMaxSessions())
+			return null;
+
+		Session session = new Session(nextId++, socket, parent);
+		sessions.put(session.getId(), session);
+		return session;
+	}
+
+	/**
+	 * Removes a session from the registry, stops its game and closes its
+	 * connection, unless the connection is shared with other games.
+	 * @param session the session to close.
+	 */
+	void close(Session session)
+	{
+		if (sessions.remove(session.getId()) == null)
+			return;
+
+		session.setState(Session.STATE_CLOSED);
+
+		// stop the game first, so cancelled searches are not taken for errors
+		Game game = session.getGame();
+		if (game != null && !game.isStopped())
+		{
+			game.stopGame();
+		}
+
+		scheduler.cancel(session);
+
+		Service service = session.getService();
+		if (service != null)
+		{
+			service.sessionClosed();
+		}
+
+		if (session.getParent() != null)
+			return;
+
+		try
+		{
+			session.getSocket().close();
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Handles the end of a session's connection. If the session's game is
+	 * still running, the session is suspended and kept for the grace period,
+	 * so the client can resume it. Otherwise the session is closed.
+	 * @param session the session whose connection has ended.
+	 */
+	void disconnect(Session session)
+	{
+		synchronized (this)
+		{
+			Service service = session.getService();
+			if (sessions.containsKey(session.getId()) && service != null && service.isResumable())
+			{
+				session.suspend();
+				System.out.println("suspended " + session);
+				return;
+			}
+		}
+		this.close(session);
+	}
+
+	/**
+	 * Resumes the suspended session with the given token on the connection
+	 * of a new session. The new session is removed from the registry, its
+	 * connection now belongs to the resumed session.
+	 * @param token the token of the suspended session.
+	 * @param newSession the session of the new connection.
+	 * @return the resumed session, null if there is no suspended session
+	 * with the given token.
+	 */
+	synchronized Session resume(String token, Session newSession)
+	{
+		for (Session aSession : sessions.values())
+		{
+			if (aSession.getState() == Session.STATE_SUSPENDED && aSession.getToken().equals(token))
+			{
+				sessions.remove(newSession.getId());
+				aSession.resume(newSession.getSocket());
+				System.out.println("resumed " + aSession);
+				return aSession;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the session with the given id.
+	 * @param id the id of the session.
+	 * @return the session, null if there is no such session.
+	 */
+	Session getSession(long id)
+	{
+		return sessions.get(id);
+	}
+
+	/**
+	 * Returns all registered sessions.
+	 * @return all registered sessions.
+	 */
+	Collection<Session> getSessions()
+	{
+		return new ArrayList<Session>(sessions.values());
+	}
+
+	/**
+	 * Returns the archive the games are recorded in.
+	 * @return the archive, null if the games are not recorded.
+	 */
+	GameArchive getArchive()
+	{
+		return archive;
+	}
+
+	/**
+	 * Returns the scheduler running the searches of the computer players.
+	 * @return the search scheduler.
+	 */
+	SearchScheduler getScheduler()
+	{
+		return scheduler;
+	}
+
+	/**
+	 * Lets the given strategy search for a move on the shared search workers
+	 * without waiting for the move. When the search is finished, its queueing
+	 * delay and CPU time are noted for the session.
+	 * @param session the session the search is made for.
+	 * @param strategy the strategy of the computer player.
+	 * @return the submitted search.
+	 */
+	SearchJob<Position> search(final Session session, Strategy strategy)
+	{
+		session.changeState(Session.STATE_PLAYING, Session.STATE_SEARCHING); // queued searches are not idle
+		final SearchJob<Position> job = scheduler.submit(session, strategy, prefs.getThinkingTime());
+		job.addListener(new Runnable()
+		{
+			public void run()
+			{
+				session.addSearch(job.getQueueDelay(), job.getCpuTime());
+				session.changeState(Session.STATE_SEARCHING, Session.STATE_PLAYING);
+				session.touch();
+			}
+		});
+		return job;
+	}
+
+	/**
+	 * Analyzes all legal moves of the given strategy's player in the given
+	 * situation without waiting for the analysis. The analysis is taken from
+	 * the cache, if the situation has already been analyzed with the same 
+	 * thinking time, otherwise it is made on the shared search workers and 
+	 * cached. Analyses are scheduled per requesting session, so a session 
+	 * requesting many analyses only delays its own, but they are not owned
+	 * by the session itself, so an analysis other sessions wait for as well
+	 * is not cancelled when the requesting session is closed. Failed and 
+	 * cancelled analyses are removed from the cache.
+	 * @param session the session the analysis is made for.
+	 * @param situation the situation to analyze.
+	 * @param strategy the strategy of the player who has the turn, used if 
+	 * the situation has to be analyzed.
+	 * @param thinkingTime the thinking time in milliseconds.
+	 * @return the analysis, which may still be running.
+	 */
+	SearchJob<Analysis> analyze(final Session session, GameSituation situation, Strategy strategy, long thinkingTime)
+	{
+		final String key = AnalysisCache.key(situation, thinkingTime);
+		SearchJob<Analysis> cached;
+		boolean submitted = false;
+		synchronized (analyses)
+		{
+			cached = analyses.get(key);
+			if (cached == null)
+			{
+				cached = scheduler.submitAnalysis(session.getAnalysisOwner(), strategy, thinkingTime);
+				analyses.put(key, cached);
+				submitted = true;
+			}
+		}
+		
+		final SearchJob<Analysis> job = cached;
+		final boolean counted = submitted;
+		job.addListener(new Runnable()
+		{
+			public void run()
+			{
+				try
+				{
+					job.get();
+				}
+				catch (InterruptedException e)
+				{
+					// finished, so not waiting
+				}
+				catch (CancellationException e)
+				{
+					analyses.remove(key, job);
+				}
+				catch (ExecutionException e)
+				{
+					analyses.remove(key, job);
+				}
+				if (counted)
+				{
+					session.addSearch(job.getQueueDelay(), job.getCpuTime());
+				}
+				session.touch();
+			}
+		});
+		return job;
+	}
+
+	/**
+	 * Returns the cache of the analyses.
+	 * @return the analysis cache.
+	 */
+	AnalysisCache getAnalyses()
+	{
+		return analyses;
+	}
+
+	/**
+	 * Closes all sessions that have been inactive for longer than the idle
+	 * timeout. Sessions waiting for a search and spectators are not 
+	 * considered inactive, as they wait for the server; spectators that stop
+	 * reading are closed when a write to them stalls. Suspended sessions
+	 * are closed when their grace period has passed.
+	 */
+	void reapIdleSessions()
+	{
+		long now = System.currentTimeMillis();
+		for (Session aSession : getSessions())
+		{
+			if (aSession.getState() == Session.STATE_SUSPENDED)
+			{
+				this.expire(aSession, now);
+				continue;
+			}
+			
+			boolean waiting = aSession.getState() == Session.STATE_SEARCHING
+				|| aSession.getState() == Session.STATE_WATCHING;
+
+			if (!waiting && now - aSession.getLastActivity() > prefs.getIdleTimeout()
+					|| aSession.getSocket().isClosed())
+			{
+				System.out.println("closing inactive " + aSession);
+				Service service = aSession.getService();
+				if (service != null && !aSession.getSocket().isClosed())
+				{
+					service.respondWithError(new IllegalCommandException("session timed out"));
+					service.flush();
+				}
+				this.close(aSession);
+			}
+		}
+	}
+
+	/**
+	 * Closes a suspended session, if its grace period has passed and it has
+	 * not been resumed meanwhile.
+	 * @param session the suspended session.
+	 * @param now the current system time in milliseconds.
+	 */
+	private synchronized void expire(Session session, long now)
+	{
+		if (session.getState() == Session.STATE_SUSPENDED
+				&& now - session.getSuspendTime() > prefs.getResumeGracePeriod())
+		{
+			System.out.println("closing suspended " + session);
+			this.close(session);
+		}
+	}
+
+	/**
+	 * Stops reaping, tells all clients that the server is shutting down, stops
+	 * all games and closes all sessions.
+	 */
+	void shutdown()
+	{
+		if (reaper != null)
+		{
+			reaper.shutdownNow();
+		}
+		scheduler.shutdown();
+
+		List<Session> all = new ArrayList<Session>(sessions.values());
+		for (Session aSession : all)
+		{
+			Service service = aSession.getService();
+			if (service != null)
+			{
+				service.respondWithError(new IllegalCommandException("server shutting down"));
+				service.flush();
+			}
+			this.close(aSession);
+		}
+
+		// after the sessions, so their games are recorded
+		if (archive != null)
+		{
+			archive.close();
+		}
+	}
+}
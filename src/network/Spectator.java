@@ -0,0 +1,211 @@
+/*
+ * Created on 21.01.2007
+ */
+package network;
+
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A connection watching a game. Frames published for the game are queued per
+ * spectator and written to its socket by a pool of threads shared by all
+ * spectators, so a slow spectator never holds up the game. The queue is
+ * bounded: if a spectator falls too far behind, its queued frames are
+ * replaced by a snapshot of the current board. A spectator that stops 
+ * reading would still hold a thread of the pool in a blocking write, so its
+ * connection is closed once a write takes longer than the write timeout of
+ * {@link ResponseWriter}.
+ */
+class Spectator implements Runnable
+{
+	/**
+	 * Maximum number of frames queued for a spectator.
+	 */
+	static final int QUEUE_SIZE = 32;
+
+	/**
+	 * The threads writing the queued frames of all spectators.
+	 */
+	private static final ExecutorService executor =
+		Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()),
+		new ThreadFactory()
+		{
+			private int count = 0;
+
+			public synchronized Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, "kaskade-spectator-" + (++count));
+				t.setDaemon(true);
+				return t;
+			}
+		});
+
+	/**
+	 * The session of the spectator's connection.
+	 */
+	private Session session;
+
+	/**
+	 * The writer of the spectator's connection.
+	 */
+	private ResponseWriter output;
+
+	/**
+	 * The registry the session is registered in.
+	 */
+	private SessionRegistry registry;
+
+	/**
+	 * The frames waiting to be written.
+	 */
+	private LinkedList<byte[]> frames = new LinkedList<byte[]>();
+
+	/**
+	 * Indicates if a thread of the pool is writing the queued frames.
+	 */
+	private boolean draining = false;
+
+	/**
+	 * Indicates if the connection is closed after the queued frames.
+	 */
+	private boolean closing = false;
+
+	/**
+	 * The number of frames dropped because the spectator fell behind.
+	 */
+	private int dropped = 0;
+
+	/**
+	 * Initiates a spectator.
+	 * @param session the session of the spectator's connection.
+	 * @param output the writer of the spectator's connection.
+	 * @param registry the registry the session is registered in.
+	 */
+	Spectator(Session session, ResponseWriter output, SessionRegistry registry)
+	{
+		this.session = session;
+		this.output = output;
+		this.registry = registry;
+	}
+
+	/**
+	 * Queues a frame, unless the queue is full.
+	 * @param frame the frame to queue.
+	 * @return true, if the frame has been queued, false if the spectator has
+	 * fallen behind.
+	 */
+	synchronized boolean offer(byte[] frame)
+	{
+		if (closing)
+			return true;
+		if (frames.size() >= QUEUE_SIZE)
+			return false;
+
+		frames.add(frame);
+		this.schedule();
+		return true;
+	}
+
+	/**
+	 * Replaces all queued frames by a snapshot of the current board.
+	 * @param snapshot the encoded snapshot.
+	 */
+	synchronized void reset(byte[] snapshot)
+	{
+		if (closing)
+			return;
+
+		dropped += frames.size();
+		frames.clear();
+		frames.add(snapshot);
+		this.schedule();
+	}
+
+	/**
+	 * Queues a last frame, regardless of the queue's bound, and closes the
+	 * connection once all queued frames have been written.
+	 * @param frame the last frame.
+	 */
+	synchronized void close(byte[] frame)
+	{
+		if (closing)
+			return;
+
+		frames.add(frame);
+		closing = true;
+		this.schedule();
+	}
+
+	/**
+	 * Returns the number of frames dropped because the spectator fell behind.
+	 * @return the number of dropped frames.
+	 */
+	synchronized int getDropped()
+	{
+		return dropped;
+	}
+
+	private void schedule()
+	{
+		if (!draining)
+		{
+			draining = true;
+			executor.execute(this);
+		}
+	}
+
+	/**
+	 * Writes the queued frames to the spectator's connection.
+	 * @see java.lang.Runnable#run()
+	 */
+	public void run()
+	{
+		while (true)
+		{
+			byte[] frame;
+			synchronized (this)
+			{
+				frame = frames.poll();
+				if (frame == null)
+				{
+					draining = false;
+					if (!closing)
+						return;
+				}
+			}
+
+			if (frame == null)
+			{
+				registry.close(session);
+				return;
+			}
+
+			try
+			{
+				output.write(frame);
+				session.touch();
+			}
+			catch (IOException e)
+			{
+				synchronized (this)
+				{
+					frames.clear();
+					closing = true;
+				}
+				registry.close(session);
+				return;
+			}
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString()
+	{
+		return "spectator " + session;
+	}
+}
@@ -0,0 +1,68 @@
+/*
+ * Created on 22.01.2007
+ */
+package network;
+
+import java.io.IOException;
+
+/**
+ * Writer of a game multiplexed over a connection. Adds the id of the game to
+ * every response and passes it on to the writer of the connection, so that
+ * the responses of all games of a connection are coalesced into the same
+ * writes.
+ */
+class TaggedResponseWriter extends ResponseWriter
+{
+	/**
+	 * The writer of the connection.
+	 */
+	private ResponseWriter connection;
+
+	/**
+	 * The id of the game.
+	 */
+	private String id;
+
+	/**
+	 * Initiates a writer for a multiplexed game.
+	 * @param connection the writer of the connection.
+	 * @param id the id of the game.
+	 */
+	TaggedResponseWriter(ResponseWriter connection, String id)
+	{
+		this.connection = connection;
+		this.id = id;
+	}
+
+	/* (non-Javadoc)
+	 * @see network.ResponseWriter#print(java.lang.String)
+	 */
+	synchronized void print(String response)
+	{
+		connection.print( ProtocolResponse.tag(response, id) );
+	}
+
+	/* (non-Javadoc)
+	 * @see network.ResponseWriter#flush()
+	 */
+	synchronized void flush() throws IOException
+	{
+		connection.flush();
+	}
+
+	/* (non-Javadoc)
+	 * @see network.ResponseWriter#write(byte[])
+	 */
+	synchronized void write(byte[] frame) throws IOException
+	{
+		connection.write(frame);
+	}
+
+	/* (non-Javadoc)
+	 * @see network.ResponseWriter#release()
+	 */
+	synchronized void release()
+	{
+		// the buffer belongs to the connection's writer
+	}
+}
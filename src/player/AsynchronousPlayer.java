@@ -7,16 +7,35 @@ import gameelements.Game;
 import gameelements.GameColor;
 import gameelements.Position;
 
+import java.util.concurrent.Future;
+
+import network.PendingResponse;
+import network.ResponseCallback;
+
 /**
  * A player that naturally communicates in an ansynchronous manner, if asked
- * for the next move.
+ * for the next move. The move is handed over to the game through a buffer 
+ * holding a single move, which is only accessed while holding the player's
+ * lock. If the game has requested the move without waiting, the move is 
+ * delivered directly to the game instead.
  */
-public class AsynchronousPlayer extends Player
+public class AsynchronousPlayer extends Player implements NonBlockingPlayer
 {
 	/**
 	 * Buffer for the player's next move.
 	 */
-	protected Position nextMove;
+	private Position nextMove;
+	
+	/**
+	 * The move requested by the game without waiting, null if the game has
+	 * not requested a move.
+	 */
+	private PendingResponse<Position> requestedMove;
+	
+	/**
+	 * Indicates if waiting for the next move has been cancelled.
+	 */
+	private boolean cancelled = false;
 	
 	public AsynchronousPlayer(String name, Game game, GameColor color)
 	{
@@ -31,47 +50,141 @@ public class AsynchronousPlayer extends Player
 	 */
 	public Position getNextMove()
 	{
-		// this is, where the black magic happens.
-		synchronized(this)
+		try
+		{
+			return this.takeNextMove(0);
+		}
+		catch (InterruptedException e)
 		{
-			if (nextMove == null)
+			Thread.currentThread().interrupt();
+			return null;
+		}
+	}
+	
+	/**
+	 * Waits for the buffer to be filled for at most the given time, and 
+	 * empties it.
+	 * @param timeout the maximum time to wait in milliseconds, 0 for waiting
+	 * without limit.
+	 * @return the next move, null if the time has passed or waiting has been
+	 * cancelled.
+	 * @throws InterruptedException if interrupted while waiting.
+	 */
+	public synchronized Position takeNextMove(long timeout) throws InterruptedException
+	{
+		long deadline = System.currentTimeMillis() + timeout;
+		while (nextMove == null && !cancelled)
+		{
+			if (timeout == 0)
+			{
+				this.wait();
+			}
+			else
 			{
-				try
-				{
-					this.wait();
-				} 
-				catch (InterruptedException e)
-				{
-					e.printStackTrace();
-				}
+				long remaining = deadline - System.currentTimeMillis();
+				if (remaining <= 0)
+					return null;
+				this.wait(remaining);
 			}
 		}
 		
-		Position move = nextMove;
-			
+		Position move = cancelled ? null : nextMove;
 		this.clean();
-		
 		return move;
 	}
 	
 	/**
-	 * Buffers the next move.
-	 * @param nextMove the next move to buffer.
+	 * Takes the buffered move, if there is one, otherwise delivers the next
+	 * move as soon as it is set.
+	 * @see player.NonBlockingPlayer#requestNextMove(player.MoveCallback)
+	 */
+	public Future<Position> requestNextMove(final MoveCallback callback)
+	{
+		PendingResponse<Position> response = new PendingResponse<Position>();
+		response.addCallback(new ResponseCallback<Position>()
+		{
+			public void completed(Position move)
+			{
+				callback.moveReady(move);
+			}
+
+			public void failed(Exception e)
+			{
+				callback.moveFailed(e);
+			}
+		});
+		
+		Position move;
+		boolean wasCancelled;
+		synchronized (this)
+		{
+			if (nextMove == null && !cancelled)
+			{
+				requestedMove = response;
+				return response;
+			}
+			move = nextMove;
+			wasCancelled = cancelled;
+			this.clean();
+		}
+		
+		if (wasCancelled)
+			response.cancel(false);
+		else
+			response.complete(move);
+		return response;
+	}
+	
+	/**
+	 * Delivers the next move to the game, if it has requested the move, 
+	 * otherwise buffers the move, replacing a move that has not been taken 
+	 * yet.
+	 * @param nextMove the next move.
 	 */
 	public void setNextMove(Position nextMove)
 	{
+		PendingResponse<Position> response;
 		synchronized (this)
 		{
-			this.nextMove = nextMove;
-			this.notifyAll();
+			response = requestedMove;
+			requestedMove = null;
+			if (response == null || response.isDone())
+			{
+				this.nextMove = nextMove;
+				this.notifyAll();
+				return;
+			}
+		}
+		response.complete(nextMove);
+	}
+	
+	/**
+	 * Cancels waiting for the next move, e.g. because the game has been 
+	 * stopped. The current or next request for a move returns null.
+	 */
+	public void cancelNextMove()
+	{
+		PendingResponse<Position> response;
+		synchronized (this)
+		{
+			response = requestedMove;
+			requestedMove = null;
+			if (response == null)
+			{
+				this.cancelled = true;
+				this.notifyAll();
+				return;
+			}
 		}
+		response.cancel(false);
 	}
 	
 	/**
 	 * Cleans the buffer.
 	 */
-	protected void clean()
+	protected synchronized void clean()
 	{
 		this.nextMove = null;
+		this.cancelled = false;
 	}
 }
@@ -0,0 +1,489 @@
+/*
+ * Created on 29.01.2007
+ */
+package player;
+
+import gameelements.Game;
+import gameelements.GamePreferences;
+import gameelements.Position;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Puts the move handoff of the asynchronous player under stress. Each of a
+ * number of games has a producer thread setting the moves of a player and a
+ * consumer thread taking them, randomly by getNextMove(), by takeNextMove()
+ * or by requestNextMove(). The producer sets a move as soon as the previous
+ * one has been taken, like a client does. Every move must be taken exactly
+ * once and in order, the latencies of the handoffs are reported.
+ * <p>
+ * Then the games are stopped repeatedly by a third thread, racing with the
+ * consumer waiting for a move and the producer setting one. The consumer
+ * must neither hang nor take a move of an earlier round.
+ */
+public class AsynchronousPlayerStress
+{
+	/**
+	 * The usage message.
+	 */
+	private static final String USAGE =
+		"usage: AsynchronousPlayerStress [-threads n] [-moves n] [-rounds n] [-seed n]";
+
+	/**
+	 * The time in milliseconds after which a thread waiting for a move is
+	 * taken to hang.
+	 */
+	private static final long HANG_TIMEOUT = 5000;
+
+	/**
+	 * Number of games, each with a producer and a consumer.
+	 */
+	private int threads = 8;
+
+	/**
+	 * Number of moves handed over in each game.
+	 */
+	private int moves = 20000;
+
+	/**
+	 * Number of rounds each game is stopped.
+	 */
+	private int rounds = 2000;
+
+	/**
+	 * The seed of the random choices.
+	 */
+	private long seed = System.currentTimeMillis();
+
+	/**
+	 * The number of moves that have been lost, duplicated or taken out of
+	 * order.
+	 */
+	private int misordered = 0;
+
+	/**
+	 * The number of threads that have hung waiting for a move.
+	 */
+	private int hung = 0;
+
+	/**
+	 * The number of stopped rounds in which a move of an earlier round has
+	 * been taken.
+	 */
+	private int stale = 0;
+
+	/**
+	 * The system time in milliseconds a consumer has last taken a move.
+	 */
+	private volatile long lastProgress;
+
+	/**
+	 * Starts the stress test with the given arguments.
+	 * @param args the arguments, see usage.
+	 */
+	public static void main(String[] args)
+	{
+		AsynchronousPlayerStress stress = new AsynchronousPlayerStress();
+		try
+		{
+			stress.parseArgs(args);
+		}
+		catch (IllegalArgumentException e)
+		{
+			System.err.println(e.getMessage());
+			System.err.println(USAGE);
+			System.exit(1);
+		}
+
+		System.exit(stress.run() ? 0 : 1);
+	}
+
+	private void parseArgs(String[] args)
+	{
+		for (int i = 0; i < args.length; i++)
+		{
+			String arg = args[i];
+			if (i + 1 >= args.length)
+			{
+				throw new IllegalArgumentException("missing value for " + arg);
+			}
+			try
+			{
+				long value = Long.parseLong(args[++i]);
+				if (value <= 0)
+					throw new NumberFormatException();
+				if (arg.equals("-threads"))
+					threads = (int) value;
+				else if (arg.equals("-moves"))
+					moves = (int) value;
+				else if (arg.equals("-rounds"))
+					rounds = (int) value;
+				else if (arg.equals("-seed"))
+					seed = value;
+				else
+					throw new IllegalArgumentException("unknown argument: " + arg);
+			}
+			catch (NumberFormatException e)
+			{
+				throw new IllegalArgumentException("illegal value for " + arg + ": " + args[i]);
+			}
+		}
+	}
+
+	/**
+	 * Runs both phases of the test and reports the results.
+	 * @return true, if no move has been lost, duplicated or taken out of
+	 * order and no thread has hung.
+	 */
+	private boolean run()
+	{
+		System.out.println("stress test: " + threads + " threads, " + moves + " moves, "
+				+ rounds + " rounds, seed " + seed);
+
+		long[][] latencies = new long[threads][];
+		Thread[] workers = new Thread[2 * threads];
+		for (int i = 0; i < threads; i++)
+		{
+			latencies[i] = new long[moves];
+			this.startHandoff(i, latencies[i], workers);
+		}
+		this.join(workers);
+
+		long[] all = new long[threads * moves];
+		for (int i = 0; i < threads; i++)
+		{
+			System.arraycopy(latencies[i], 0, all, i * moves, moves);
+		}
+		Arrays.sort(all);
+		System.out.println("handoff latency: n=" + all.length
+				+ " p50=" + percentile(all, 0.5)
+				+ " p99=" + percentile(all, 0.99)
+				+ " max=" + all[all.length - 1] + " us");
+
+		workers = new Thread[3 * threads];
+		for (int i = 0; i < threads; i++)
+		{
+			this.startStops(i, workers);
+		}
+		this.join(workers);
+
+		synchronized (this)
+		{
+			System.out.println("lost, duplicated or misordered moves: " + misordered);
+			System.out.println("stale moves after stop: " + stale);
+			System.out.println("hung threads: " + hung);
+			return misordered == 0 && stale == 0 && hung == 0;
+		}
+	}
+
+	/**
+	 * Starts the producer and consumer of a game handing over all moves.
+	 * @param game the number of the game.
+	 * @param latencies the array receiving the latency in microseconds of
+	 * each handoff.
+	 * @param workers the array receiving the started threads.
+	 */
+	private void startHandoff(final int game, final long[] latencies, Thread[] workers)
+	{
+		final AsynchronousPlayer player = createPlayer();
+		final long[] setTimes = new long[moves];
+		final Object taken = new Object();
+		final int[] takenMoves = new int[1];
+		final Random random = new Random(seed + game);
+
+		workers[2 * game] = start("kaskade-stress-producer-" + game, new Runnable()
+		{
+			public void run()
+			{
+				for (int i = 0; i < moves; i++)
+				{
+					synchronized (taken)
+					{
+						while (takenMoves[0] < i)
+						{
+							try
+							{
+								taken.wait();
+							}
+							catch (InterruptedException e)
+							{
+								return;
+							}
+						}
+					}
+					setTimes[i] = System.nanoTime();
+					player.setNextMove(new Position(i, game));
+				}
+			}
+		});
+
+		workers[2 * game + 1] = start("kaskade-stress-consumer-" + game, new Runnable()
+		{
+			public void run()
+			{
+				for (int i = 0; i < moves; i++)
+				{
+					Position move = take(player, random.nextInt(3));
+					latencies[i] = (System.nanoTime() - setTimes[i]) / 1000;
+					lastProgress = System.currentTimeMillis();
+					if (move == null || move.getX() != i || move.getY() != game)
+					{
+						misordered("game " + game + ": expected move " + i + ", took " + move);
+						return;
+					}
+					synchronized (taken)
+					{
+						takenMoves[0] = i + 1;
+						taken.notifyAll();
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Starts the threads of a game that is stopped in every round, while its
+	 * consumer waits for a move and its producer may set one.
+	 * @param game the number of the game.
+	 * @param workers the array receiving the started threads.
+	 */
+	private void startStops(final int game, Thread[] workers)
+	{
+		final Game stoppedGame = createGame();
+		final AsynchronousPlayer player = (AsynchronousPlayer) stoppedGame.getPlayerOfTurn(0);
+		final CyclicBarrier barrier = new CyclicBarrier(3);
+		final Random random = new Random(seed - game);
+
+		workers[3 * game] = start("kaskade-stress-producer-" + game, new Runnable()
+		{
+			public void run()
+			{
+				for (int r = 0; r < rounds && await(barrier); r++)
+				{
+					if (r % 2 == 0)
+					{
+						spin(random.nextInt(50));
+						player.setNextMove(new Position(r, game));
+					}
+					await(barrier);
+				}
+			}
+		});
+
+		workers[3 * game + 1] = start("kaskade-stress-stopper-" + game, new Runnable()
+		{
+			public void run()
+			{
+				for (int r = 0; r < rounds && await(barrier); r++)
+				{
+					spin(random.nextInt(50));
+					stoppedGame.stopGame();
+					await(barrier);
+				}
+			}
+		});
+
+		workers[3 * game + 2] = start("kaskade-stress-consumer-" + game, new Runnable()
+		{
+			public void run()
+			{
+				for (int r = 0; r < rounds && await(barrier); r++)
+				{
+					Position move = take(player, r % 3);
+					lastProgress = System.currentTimeMillis();
+					if (move != null && move.getX() != r)
+					{
+						stale("game " + game + ": took " + move + " in round " + r);
+					}
+					if (!await(barrier))
+						return;
+
+					// drop what the round has left behind, a move or a cancellation
+					try
+					{
+						player.takeNextMove(1);
+					}
+					catch (InterruptedException e)
+					{
+						return;
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Takes the next move of a player in one of the ways the game does.
+	 * @param player the player.
+	 * @param way 0 for getNextMove(), 1 for takeNextMove(), 2 for
+	 * requestNextMove().
+	 * @return the move, null if waiting has been cancelled.
+	 */
+	private Position take(AsynchronousPlayer player, int way)
+	{
+		try
+		{
+			if (way == 0)
+			{
+				return player.getNextMove();
+			}
+			else if (way == 1)
+			{
+				return player.takeNextMove(HANG_TIMEOUT);
+			}
+
+			Future<Position> move = player.requestNextMove(new MoveCallback()
+			{
+				public void moveReady(Position move)
+				{
+				}
+
+				public void moveFailed(Exception e)
+				{
+				}
+			});
+			return move.get(HANG_TIMEOUT, TimeUnit.MILLISECONDS);
+		}
+		catch (CancellationException e)
+		{
+			return null;
+		}
+		catch (InterruptedException e)
+		{
+			return null;
+		}
+		catch (ExecutionException e)
+		{
+			misordered("move failed: " + e.getCause());
+			return null;
+		}
+		catch (TimeoutException e)
+		{
+			hung(Thread.currentThread().getName() + ": no move within " + HANG_TIMEOUT + " ms");
+			return null;
+		}
+	}
+
+	/**
+	 * Waits for the threads. If no consumer has taken a move for a while, the
+	 * threads still running are taken to hang and are abandoned.
+	 * @param workers the threads.
+	 */
+	private void join(Thread[] workers)
+	{
+		lastProgress = System.currentTimeMillis();
+		for (Thread aWorker : workers)
+		{
+			try
+			{
+				while (aWorker.isAlive())
+				{
+					aWorker.join(HANG_TIMEOUT);
+					if (aWorker.isAlive() && System.currentTimeMillis() - lastProgress >= HANG_TIMEOUT)
+					{
+						this.abandon(workers);
+						return;
+					}
+				}
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	private void abandon(Thread[] workers)
+	{
+		for (Thread aWorker : workers)
+		{
+			if (aWorker.isAlive())
+			{
+				hung(aWorker.getName() + " hangs");
+			}
+		}
+	}
+
+	private synchronized void misordered(String message)
+	{
+		misordered++;
+		System.err.println(message);
+	}
+
+	private synchronized void stale(String message)
+	{
+		stale++;
+		System.err.println(message);
+	}
+
+	private synchronized void hung(String message)
+	{
+		hung++;
+		System.err.println(message);
+	}
+
+	private static boolean await(CyclicBarrier barrier)
+	{
+		try
+		{
+			barrier.await(HANG_TIMEOUT, TimeUnit.MILLISECONDS);
+			return true;
+		}
+		catch (InterruptedException e)
+		{
+			return false;
+		}
+		catch (BrokenBarrierException e)
+		{
+			return false;
+		}
+		catch (TimeoutException e)
+		{
+			System.err.println(Thread.currentThread().getName() + " hung");
+			return false;
+		}
+	}
+
+	private static void spin(int iterations)
+	{
+		for (int i = 0; i < iterations; i++)
+		{
+			Thread.yield();
+		}
+	}
+
+	private static Thread start(String name, Runnable runnable)
+	{
+		Thread t = new Thread(runnable, name);
+		t.setDaemon(true);
+		t.start();
+		return t;
+	}
+
+	private static long percentile(long[] sorted, double p)
+	{
+		return sorted[Math.min(sorted.length - 1, (int) (p * sorted.length))];
+	}
+
+	private static Game createGame()
+	{
+		GamePreferences prefs = GamePreferences.getNewGamePreferences();
+		prefs.setPlayerType(0, Player.TYPE_HUMAN);
+		prefs.setPlayerType(1, Player.TYPE_HUMAN);
+		return new Game(prefs);
+	}
+
+	private static AsynchronousPlayer createPlayer()
+	{
+		return (AsynchronousPlayer) createGame().getPlayerOfTurn(0);
+	}
+}
@@ -8,13 +8,22 @@ import gameelements.Game;
 import gameelements.GameColor;
 import gameelements.GamePreferences;
 import gameelements.Position;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import network.PendingResponse;
+import network.ResponseCallback;
+import ai.SearchJob;
 import ai.Strategy;
 
 /**
  * Represents the local computer player using the available strategy for 
- * generating moves.
+ * generating moves. In console games the moves are searched by the server's
+ * search workers, so the game does not hold a thread during the search.
  */
-public class ComputerPlayer extends SynchronousPlayer
+public class ComputerPlayer extends SynchronousPlayer implements NonBlockingPlayer
 {
 	/**
 	 * The strategy used by this player.
@@ -32,12 +41,100 @@ public class ComputerPlayer extends SynchronousPlayer
 		super(name, game, color);
 	}
 	
-	/* (non-Javadoc)
+	/**
+	 * Searches the next move with the player's strategy and waits for it.
 	 * @see player.Player#getNextMove()
 	 */
 	public Position getNextMove()
 	{
-		return strategy.requestMove();
+		try
+		{
+			return this.requestNextMove(null).get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		catch (CancellationException e)
+		{
+			return null;
+		}
+		catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+	
+	/**
+	 * Searches the next move with the player's strategy. In console games the
+	 * search is submitted through the service, which limits the number of 
+	 * concurrent searches on the server, and the move is delivered by the 
+	 * search worker. Otherwise the search is made by the calling thread.
+	 * @see player.NonBlockingPlayer#requestNextMove(player.MoveCallback)
+	 */
+	public Future<Position> requestNextMove(final MoveCallback callback)
+	{
+		final PendingResponse<Position> response = new PendingResponse<Position>();
+		if (callback != null)
+		{
+			response.addCallback(new ResponseCallback<Position>()
+			{
+				public void completed(Position move)
+				{
+					callback.moveReady(move);
+				}
+
+				public void failed(Exception e)
+				{
+					callback.moveFailed(e);
+				}
+			});
+		}
+		
+		if (this.game instanceof ConsoleGame)
+		{
+			ConsolePlayer opponent = ((ConsoleGame) this.game).getConsolePlayer();
+			if (opponent != null && opponent.getService() != null)
+			{
+				final SearchJob<Position> search = opponent.getService().search(strategy);
+				search.addListener(new Runnable()
+				{
+					public void run()
+					{
+						try
+						{
+							response.complete( search.get() );
+						}
+						catch (CancellationException e)
+						{
+							response.cancel(false);
+						}
+						catch (Exception e)
+						{
+							response.fail(e);
+						}
+					}
+				});
+				response.addCallback(new ResponseCallback<Position>()
+				{
+					public void completed(Position move)
+					{
+					}
+
+					public void failed(Exception e)
+					{
+						search.cancel(); // e.g. the game has been stopped
+					}
+				});
+				return response;
+			}
+		}
+		
+		response.complete( strategy.requestMove() );
+		return response;
 	}
 	
 	/* (non-Javadoc)
@@ -52,7 +149,7 @@ public class ComputerPlayer extends SynchronousPlayer
 	 * Returns the strategy type to set for this player.
 	 * @return the strategy type to set for this player.
 	 */
-	private int getUsedStrategyType()
+	public int getUsedStrategyType()
 	{
 		if (this.game instanceof ConsoleGame)
 		{
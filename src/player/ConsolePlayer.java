@@ -5,12 +5,12 @@ package player;
 
 import gameelements.Game;
 import gameelements.GameColor;
+import gameelements.GameEvent;
+import gameelements.GameListener;
+import gameelements.GameSituation;
 import gameelements.IllegalMoveException;
 import gameelements.Position;
 
-import java.util.Observable;
-import java.util.Observer;
-
 import network.Service;
 
 /**
@@ -18,7 +18,7 @@ import network.Service;
  * that is acting as client and which is provided by the local server to manage 
  * the communication between local game and player.
  */
-public class ConsolePlayer extends AsynchronousPlayer implements Observer
+public class ConsolePlayer extends AsynchronousPlayer implements GameListener
 {
 	/**
 	 * The service client used for the communication.
@@ -36,9 +36,9 @@ public class ConsolePlayer extends AsynchronousPlayer implements Observer
 		super(name, game, color);
 	}
 
-	private void respondWithMove(Position move)
+	private void respondWithMove(Position move, GameSituation situation)
 	{
-		this.service.respondWithMove(move);
+		this.service.respondWithMove(move, situation);
 	}
 
 	private void respondWithBye(boolean b)
@@ -59,31 +59,57 @@ public class ConsolePlayer extends AsynchronousPlayer implements Observer
 	{
 		this.service = service;
 	}
+	
+	/**
+	 * Returns the service client used for the communication.
+	 * @return the service client used for the communication.
+	 */
+	public Service getService()
+	{
+		return service;
+	}
 
 	/**
 	 * Triggers server responses that will be viewable on the console of the 
-	 * console player.
-	 * @see java.util.Observer#update(java.util.Observable, java.lang.Object)
+	 * console player. All responses of one turn are sent in one write.
+	 * Every move is also sent to the spectators of the game. The responses are
+	 * created from the situation carried by the event, as the game may have
+	 * moved on in the meantime.
+	 * @see gameelements.GameListener#handleEvent(gameelements.GameEvent)
 	 */
-	public void update(Observable o, Object arg)
+	public void handleEvent(GameEvent event)
 	{
-		if (arg instanceof IllegalMoveException)
-		{
-			this.respondWithError((Exception) arg);
-			return;
-		}
-		
-		if (!game.getActivePlayer().equals( this ))
+		synchronized (this.service) // a resumed session takes its snapshot between turns
 		{
-			this.respondWithMove((Position) arg);
-			if (game.isGameOver())
+			if (event instanceof GameEvent.GameError)
 			{
-				this.respondWithBye(true);
+				Exception error = ((GameEvent.GameError) event).getError();
+				if (error instanceof IllegalMoveException)
+				{
+					this.respondWithError(error);
+					this.service.flush();
+				}
+				return;
 			}
-		}
-		else if (game.isGameOver())
-		{
-			this.respondWithBye(false);
+			if ( !(event instanceof GameEvent.MoveApplied) )
+				return;
+			
+			GameEvent.MoveApplied applied = (GameEvent.MoveApplied) event;
+			this.service.broadcastMove(applied);
+			
+			if (applied.getPlayer() != this)
+			{
+				this.respondWithMove(applied.getMove(), applied.getSituation());
+				if (applied.getWinner() != null)
+				{
+					this.respondWithBye(true);
+				}
+			}
+			else if (applied.getWinner() != null)
+			{
+				this.respondWithBye(false);
+			}
+			this.service.flush();
 		}
 	}
 
@@ -0,0 +1,25 @@
+/*
+ * Created on 16.01.2007
+ */
+package player;
+
+import gameelements.Position;
+
+/**
+ * Callback for a move that has been requested from a non-blocking player.
+ */
+public interface MoveCallback
+{
+	/**
+	 * Called when the player has decided on its move.
+	 * @param move the move of the player, may be null if the player has no 
+	 * move to deliver.
+	 */
+	void moveReady(Position move);
+	
+	/**
+	 * Called when the player failed to deliver a move.
+	 * @param e the reason of the failure.
+	 */
+	void moveFailed(Exception e);
+}
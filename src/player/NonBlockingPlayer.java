@@ -0,0 +1,22 @@
+/*
+ * Created on 16.01.2007
+ */
+package player;
+
+import java.util.concurrent.Future;
+
+import gameelements.Position;
+
+/**
+ * A player that delivers its next move via callback, so that the game does 
+ * not need to hold a thread while waiting for the move.
+ */
+public interface NonBlockingPlayer
+{
+	/**
+	 * Requests the next move of the player without waiting for it.
+	 * @param callback the callback that receives the move.
+	 * @return the pending move, which can be used to cancel the request.
+	 */
+	Future<Position> requestNextMove(MoveCallback callback);
+}
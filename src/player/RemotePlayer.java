@@ -5,21 +5,28 @@ package player;
 
 import gameelements.Game;
 import gameelements.GameColor;
+import gameelements.GameEvent;
+import gameelements.GameListener;
+import gameelements.GamePreferences;
+import gameelements.GameSituation;
 import gameelements.IllegalMoveException;
 import gameelements.Position;
 
-import java.util.Observable;
-import java.util.Observer;
+import java.util.concurrent.Future;
 
 import network.Client;
 import network.IllegalCommandException;
+import network.PendingResponse;
 import network.RemoteGameSynchronisationException;
+import network.ResponseCallback;
 
 /**
  * A player that represents the remote server, therefore utilizing a local 
  * client that connects the local game with the remote server. The player
+ * delivers its moves without blocking, so the game does not hold a thread
+ * during the network round trip and the server's thinking time.
  */
-public class RemotePlayer extends SynchronousPlayer implements Observer
+public class RemotePlayer extends SynchronousPlayer implements GameListener, NonBlockingPlayer
 {
 	/**
 	 * The client used for communication with the remote server.
@@ -54,15 +61,40 @@ public class RemotePlayer extends SynchronousPlayer implements Observer
 		}
 	}
 
+	/* (non-Javadoc)
+	 * @see player.NonBlockingPlayer#requestNextMove(player.MoveCallback)
+	 */
+	public Future<Position> requestNextMove(final MoveCallback callback)
+	{
+		PendingResponse<Position> response = 
+			client.requestMoveAsync( GamePreferences.getInstance().getRemoteServerTimeout() );
+		
+		response.addCallback(new ResponseCallback<Position>()
+		{
+			public void completed(Position move)
+			{
+				callback.moveReady(move);
+			}
+
+			public void failed(Exception e)
+			{
+				callback.moveFailed(e);
+			}
+		});
+		
+		return response;
+	}
+
 	/**
 	 * Checking for synchronization errors between client and server. In case
 	 * of an error, the game will be notified with the error 
+	 * @param situation the local situation after the latest move of the server.
 	 */
-	public void validate()
+	public void validate(GameSituation situation)
 	{
 		try
 		{
-			this.client.validate();
+			this.client.validate(situation);
 		} 
 		catch (RemoteGameSynchronisationException e)
 		{
@@ -71,28 +103,47 @@ public class RemotePlayer extends SynchronousPlayer implements Observer
 		}
 	}
 
-	/* (non-Javadoc)
+	/**
+	 * Sends the init request to the remote server without waiting for the
+	 * confirmation. Requests for moves are sent on the same connection after
+	 * the init request, so there is no need to wait.
 	 * @see player.SynchronousPlayer#init()
 	 */
 	public void init()
 	{
-		this.client.requestInit(
+		PendingResponse<String> response = this.client.requestInitAsync(
 				game.getSituation(), 
 				!game.isStartingPlayer(this), 
 				this.getOpponent().getPlayerName());
+		
+		response.addCallback(new ResponseCallback<String>()
+		{
+			public void completed(String remoteName)
+			{
+				// player name has already been set by the client
+			}
+
+			public void failed(Exception e)
+			{
+				game.notifyWithError(new RemoteGameSynchronisationException(e.getMessage()));
+			}
+		});
 	}
 
-	/* (non-Javadoc)
-	 * @see java.util.Observer#update(java.util.Observable, java.lang.Object)
+	/**
+	 * Validates the situation after each move of the server. The validation
+	 * waits for the server's board, but does not hold up the game.
+	 * @see gameelements.GameListener#handleEvent(gameelements.GameEvent)
 	 */
-	public void update(Observable o, Object arg)
+	public void handleEvent(GameEvent event)
 	{
-		if (arg instanceof Exception)
-			return;
-		
-		if (this.equals(game.getActivePlayer()))
+		if (event instanceof GameEvent.MoveApplied)
 		{
-			this.validate();
+			GameEvent.MoveApplied applied = (GameEvent.MoveApplied) event;
+			if (applied.getPlayer() == this)
+			{
+				this.validate(applied.getSituation());
+			}
 		}
 	}
 	